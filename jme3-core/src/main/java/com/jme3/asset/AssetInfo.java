@@ -31,7 +31,9 @@
  */
 package com.jme3.asset;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * The result of locating an asset through an AssetKey. Provides
@@ -73,4 +75,24 @@ public abstract class AssetInfo {
      */
     public abstract InputStream openStream();
 
+    /**
+     * Returns the asset data mapped in memory, if the locator can provide it.
+     * <p>
+     * Loaders of large binary assets can use this to access the data without
+     * copying it through a stream. The returned buffer is read only and
+     * starts at the beginning of the asset. It is a mapping of its own, that
+     * is released once it is no longer referenced.
+     * Loaders must copy the data they keep in assets whose buffers are
+     * writable or destroyed with the asset, like images and audio buffers,
+     * instead of keeping slices of the mapping.
+     * The default implementation returns null, loaders must then fall back
+     * to {@link #openStream() }.
+     * 
+     * @return The mapped asset data, or null if the data can't be mapped.
+     * @throws IOException If the data could not be mapped.
+     */
+    public ByteBuffer mapContent() throws IOException {
+        return null;
+    }
+
 }
@@ -37,11 +37,13 @@ import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
+import com.jme3.texture.Format;
 import com.jme3.texture.ITexture;
 import com.jme3.texture.Image;
 import com.jme3.texture.Texture;
 import com.jme3.texture.TextureProcessor;
 import com.jme3.texture.Type;
+import com.jme3.texture.image.TextureCompressor;
 
 import java.io.IOException;
 
@@ -61,6 +63,9 @@ public class TextureKey extends AssetKey<Texture> {
     private boolean generateMips;
     private boolean flipY;
     private int anisotropy;
+    private boolean mipStreaming;
+    private Format compressFormat;
+    private TextureCompressor.Quality compressQuality = TextureCompressor.Quality.Fast;
     private Type textureTypeHint = ITexture.Type.TwoDimensional;
 
     public TextureKey(String name, boolean flipY) {
@@ -96,7 +101,8 @@ public class TextureKey extends AssetKey<Texture> {
                 type = " (" + textureTypeHint.toString() + ")";
                 break;
         }
-        return name + (flipY ? " (Flipped)" : "") + type + (generateMips ? " (Mipmapped)" : "");
+        return name + (flipY ? " (Flipped)" : "") + type + (generateMips ? " (Mipmapped)" : "")
+                + (compressFormat != null ? " (" + compressFormat + ")" : "");
     }
     
     @Override
@@ -133,6 +139,63 @@ public class TextureKey extends AssetKey<Texture> {
         this.generateMips = generateMips;
     }
 
+    /**
+     * @return true if the mip levels of the texture are streamed
+     * @see #setMipStreaming(boolean)
+     */
+    public boolean isMipStreaming() {
+        return mipStreaming;
+    }
+
+    /**
+     * Enables mip streaming for the loaded texture. Only the small mip
+     * levels are uploaded at first, the finer levels are uploaded by the
+     * {@link com.jme3.texture.TextureStreamer} as the texture gets closer
+     * to the camera and released under its memory budget.
+     * 
+     * @param mipStreaming true to stream the mip levels
+     */
+    public void setMipStreaming(boolean mipStreaming) {
+        this.mipStreaming = mipStreaming;
+    }
+
+    /**
+     * @return the format the texture is compressed to when loaded, or null
+     * @see #setCompressFormat(com.jme3.texture.Format)
+     */
+    public Format getCompressFormat() {
+        return compressFormat;
+    }
+
+    /**
+     * Compresses the loaded image to the given format, if it isn't already
+     * compressed. See {@link TextureCompressor} for the supported formats.
+     * The compressor and its disk cache are set with
+     * {@link TextureProcessor#setCompressor(com.jme3.texture.image.TextureCompressor) }.
+     * <p>
+     * If mipmaps are to be generated, they are generated before the
+     * compression since the renderer can't generate them for compressed
+     * textures.
+     * 
+     * @param compressFormat the compressed format, or null to keep the
+     * format of the image
+     */
+    public void setCompressFormat(Format compressFormat) {
+        this.compressFormat = compressFormat;
+    }
+
+    public TextureCompressor.Quality getCompressQuality() {
+        return compressQuality;
+    }
+
+    /**
+     * @param compressQuality the quality of the compression on load
+     * @see #setCompressFormat(com.jme3.texture.Format)
+     */
+    public void setCompressQuality(TextureCompressor.Quality compressQuality) {
+        this.compressQuality = compressQuality;
+    }
+
     /**
      * The type of texture expected to be returned.
      * 
@@ -172,6 +235,15 @@ public class TextureKey extends AssetKey<Texture> {
         if (this.anisotropy != other.anisotropy) {
             return false;
         }
+        if (this.mipStreaming != other.mipStreaming) {
+            return false;
+        }
+        if (this.compressFormat != other.compressFormat) {
+            return false;
+        }
+        if (this.compressQuality != other.compressQuality) {
+            return false;
+        }
         if (this.textureTypeHint != other.textureTypeHint) {
             return false;
         }
@@ -185,6 +257,9 @@ public class TextureKey extends AssetKey<Texture> {
         hash = 17 * hash + (this.generateMips ? 1 : 0);
         hash = 17 * hash + (this.flipY ? 1 : 0);
         hash = 17 * hash + this.anisotropy;
+        hash = 17 * hash + (this.mipStreaming ? 1 : 0);
+        hash = 17 * hash + (this.compressFormat != null ? this.compressFormat.hashCode() : 0);
+        hash = 17 * hash + (this.compressQuality != null ? this.compressQuality.hashCode() : 0);
         hash = 17 * hash + (this.textureTypeHint != null ? this.textureTypeHint.hashCode() : 0);
         return hash;
     }
@@ -196,6 +271,9 @@ public class TextureKey extends AssetKey<Texture> {
         oc.write(flipY, "flip_y", false);
         oc.write(generateMips, "generate_mips", false);
         oc.write(anisotropy, "anisotropy", 0);
+        oc.write(mipStreaming, "mip_streaming", false);
+        oc.write(compressFormat, "compress_format", null);
+        oc.write(compressQuality, "compress_quality", TextureCompressor.Quality.Fast);
         oc.write(textureTypeHint, "tex_type", Type.TwoDimensional);
         
         // Backwards compat
@@ -209,6 +287,9 @@ public class TextureKey extends AssetKey<Texture> {
         flipY = ic.readBoolean("flip_y", false);
         generateMips = ic.readBoolean("generate_mips", false);
         anisotropy = ic.readInt("anisotropy", 0);
+        mipStreaming = ic.readBoolean("mip_streaming", false);
+        compressFormat = ic.readEnum("compress_format", Format.class, null);
+        compressQuality = ic.readEnum("compress_quality", TextureCompressor.Quality.class, TextureCompressor.Quality.Fast);
         boolean asCube = ic.readBoolean("as_cubemap", false);
         
         if (asCube) {
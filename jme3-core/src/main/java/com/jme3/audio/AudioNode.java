@@ -90,6 +90,7 @@ public class AudioNode extends Node implements AudioSource {
     protected float outerAngle = 360;
     protected boolean positional = true;
     protected boolean velocityFromTranslation = false;
+    protected int priority = 0;
     protected float lastTpf;
 
     /**
@@ -446,7 +447,8 @@ public class AudioNode extends Node implements AudioSource {
 
     @Override
     public float getPlaybackTime() {
-        if (channel >= 0)
+        // virtual sources have no channel
+        if (status != AudioSource.Status.Stopped)
             return getRenderer().getSourcePlaybackTime(this);
         else
             return 0;
@@ -690,6 +692,28 @@ public class AudioNode extends Node implements AudioSource {
         return positional;
     }
 
+    /**
+     * Sets the priority of the audio node, 0 by default.
+     * <p>
+     * When more sounds play than the audio renderer has channels, the
+     * sounds of higher priority get the channels first, then the most
+     * audible ones. The others keep playing virtually and are heard again
+     * when they get a channel.
+     *
+     * @param priority the priority
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return the priority of the audio node
+     * @see AudioNode#setPriority(int)
+     */
+    public int getPriority() {
+        return priority;
+    }
+
     /**
      * Set the audio node as positional.
      * The position, velocity, and distance parameters effect positional
@@ -803,6 +827,7 @@ public class AudioNode extends Node implements AudioSource {
 
         oc.write(positional, "positional", false);
         oc.write(velocityFromTranslation, "velocity_from_translation", false);
+        oc.write(priority, "priority", 0);
     }
 
     @Override
@@ -838,6 +863,7 @@ public class AudioNode extends Node implements AudioSource {
 
         positional = ic.readBoolean("positional", false);
         velocityFromTranslation = ic.readBoolean("velocity_from_translation", false);
+        priority = ic.readInt("priority", 0);
 
         if (audioKey != null) {
             try {
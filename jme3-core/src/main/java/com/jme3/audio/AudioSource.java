@@ -178,4 +178,11 @@ public interface AudioSource {
      */
     public boolean isPositional();
 
+    /**
+     * @return the priority of the source. When more sources play than
+     * the audio renderer has channels, the sources of higher priority get
+     * the channels first.
+     */
+    public int getPriority();
+
 }
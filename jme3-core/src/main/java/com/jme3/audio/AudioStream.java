@@ -35,6 +35,7 @@ import com.jme3.util.NativeObject;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +43,10 @@ import java.util.logging.Logger;
  * <code>AudioStream</code> is an implementation of AudioData that acquires the
  * audio from an InputStream. Audio can be streamed from network, hard drive
  * etc. It is assumed the data coming from the input stream is uncompressed.
+ * <p>
+ * Uncompressed audio stored in a memory mapped asset can instead be set with
+ * {@link #updateData(java.nio.ByteBuffer, float) }, the audio renderer then
+ * uploads slices of the mapping without copying them and seeking is free.
  *
  * @author Kirill Vainer
  */
@@ -49,12 +54,15 @@ public class AudioStream extends AudioData implements Closeable {
 
     private final static Logger logger = Logger.getLogger(AudioStream.class.getName());
     protected InputStream in;
+    protected ByteBuffer mappedData;
     protected float duration = -1f;
     protected boolean open = false;
     protected boolean eof = false;
     protected int[] ids;
 
     protected int unqueuedBuffersBytes = 0;
+    protected int streamingBufferCount = 0;
+    protected int streamingBufferSize = 0;
     
     public AudioStream() {
         super();
@@ -78,6 +86,58 @@ public class AudioStream extends AudioData implements Closeable {
         open = true;
     }
 
+    /**
+     * Sets the samples of the stream from memory, typically a slice of a
+     * memory mapped asset. The data is read from its position to its limit
+     * and is never copied by the stream.
+     *
+     * @param data the samples, in the format of the stream
+     * @param duration the duration of the stream in seconds
+     */
+    public void updateData(ByteBuffer data, float duration) {
+        if (id != -1 || this.in != null || mappedData != null) {
+            throw new IllegalStateException("Data already set!");
+        }
+
+        this.mappedData = data.slice();
+        this.duration = duration;
+        open = true;
+    }
+
+    /**
+     * @return true if the samples are read from memory rather than from an
+     * input stream
+     */
+    public boolean isMapped() {
+        return mappedData != null;
+    }
+
+    /**
+     * Reads samples from a stream set from memory without copying them.
+     *
+     * @param length the maximum number of bytes to read
+     * @return a buffer over the next samples, or null at the end of the
+     * stream
+     * @throws IllegalStateException if the stream is not mapped
+     */
+    public ByteBuffer readSlice(int length) {
+        if (mappedData == null) {
+            throw new IllegalStateException("The stream is not mapped");
+        }
+        if (!open || eof) {
+            return null;
+        }
+        int size = Math.min(length, mappedData.remaining());
+        if (size <= 0) {
+            eof = true;
+            return null;
+        }
+        ByteBuffer slice = mappedData.slice();
+        slice.limit(size);
+        mappedData.position(mappedData.position() + size);
+        return slice;
+    }
+
     /**
      * Reads samples from the stream. The format of the data depends on the
      * getSampleRate(), getChannels(), getBitsPerSample() values.
@@ -92,6 +152,16 @@ public class AudioStream extends AudioData implements Closeable {
             return -1;
         }
 
+        if (mappedData != null) {
+            int size = Math.min(length, mappedData.remaining());
+            if (size <= 0) {
+                eof = true;
+                return -1;
+            }
+            mappedData.get(buf, offset, size);
+            return size;
+        }
+
         try {
             int totalRead = in.read(buf, offset, length);
             if (totalRead < 0) {
@@ -183,7 +253,9 @@ public class AudioStream extends AudioData implements Closeable {
      * @throws IOException
      */
     public void close() {
-        if (in != null && open) {
+        if (mappedData != null && open) {
+            open = false;
+        } else if (in != null && open) {
             try {
                 in.close();
             } catch (IOException ex) {
@@ -195,6 +267,12 @@ public class AudioStream extends AudioData implements Closeable {
     }
     
     public boolean isSeekable() {
+        if (mappedData != null) {
+            return true;
+        }
+        if (in instanceof PrefetchInputStream) {
+            return ((PrefetchInputStream) in).isSeekable();
+        }
         return in instanceof SeekableStream;
     }
 
@@ -205,14 +283,65 @@ public class AudioStream extends AudioData implements Closeable {
     public void setUnqueuedBufferBytes(int unqueuedBuffers) {
         this.unqueuedBuffersBytes = unqueuedBuffers;
     }
+
+    /**
+     * Sets the number of buffers the audio renderer keeps queued for this
+     * stream. More buffers survive longer decoder stalls at the cost of
+     * memory. Must be set while the stream is stopped.
+     *
+     * @param count the number of buffers, or 0 to use the renderer default
+     */
+    public void setStreamingBufferCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Buffer count cannot be negative");
+        }
+        if (count != streamingBufferCount) {
+            streamingBufferCount = count;
+            setUpdateNeeded();
+        }
+    }
+
+    /**
+     * @return the number of queued buffers, 0 for the renderer default
+     */
+    public int getStreamingBufferCount() {
+        return streamingBufferCount;
+    }
+
+    /**
+     * Sets the size in bytes of each buffer the audio renderer fills for
+     * this stream. Smaller buffers lower the latency and the memory used,
+     * larger ones need fewer refills. Must be set while the stream is
+     * stopped.
+     *
+     * @param size the size in bytes, or 0 to use the renderer default
+     */
+    public void setStreamingBufferSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Buffer size cannot be negative");
+        }
+        streamingBufferSize = size;
+    }
+
+    /**
+     * @return the size of the buffers, 0 for the renderer default
+     */
+    public int getStreamingBufferSize() {
+        return streamingBufferSize;
+    }
     
     public void setTime(float time) {
-        if (in instanceof SeekableStream) {
+        if (mappedData != null) {
+            int offset = Math.min(getByteOffset(time), mappedData.limit());
+            mappedData.position(offset);
+            eof = false;
+            unqueuedBuffersBytes = offset;
+        } else if (isSeekable()) {
             ((SeekableStream) in).setTime(time);
             eof = false;
             
-            // TODO: when we actually support seeking, this will need to be properly set.
-            unqueuedBuffersBytes = 0; 
+            // the playback time of the renderer starts from here
+            unqueuedBuffersBytes = getByteOffset(time);
         } else {
             throw new IllegalStateException(
                     "Cannot use setTime on a stream that "
@@ -221,6 +350,19 @@ public class AudioStream extends AudioData implements Closeable {
         }
     }
 
+    /**
+     * Converts a time to the offset of the sample frame playing at that
+     * time.
+     */
+    private int getByteOffset(float time) {
+        int frameSize = getChannels() * getBitsPerSample() / 8;
+        if (time <= 0 || frameSize <= 0) {
+            return 0;
+        }
+        long frames = (long) (time * getSampleRate());
+        return (int) Math.min(Integer.MAX_VALUE - frameSize, frames * frameSize);
+    }
+
     @Override
     public long getUniqueId() {
         return ((long) OBJTYPE_AUDIOSTREAM << 32) | ((long) ids[0]);
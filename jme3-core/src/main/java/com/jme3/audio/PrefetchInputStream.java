@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.audio;
+
+import com.jme3.util.ParallelTasks;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+
+/**
+ * An input stream reading ahead of its consumer on a background thread.
+ * <p>
+ * Audio streams are read by the audio decoder thread, which must never
+ * wait for the disk, the network or a slow decoder or the sources starve.
+ * Loaders of compressed or remote streams wrap their decoding stream in a
+ * PrefetchInputStream: a few chunks are decoded ahead by a shared prefetch
+ * thread and the decoder thread only copies them.
+ * <p>
+ * Seeking is delegated to the wrapped stream if it is a
+ * {@link SeekableStream}, the chunks read ahead are then discarded.
+ */
+public class PrefetchInputStream extends InputStream implements SeekableStream {
+
+    private static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+    private static final int DEFAULT_CHUNK_COUNT = 4;
+
+    // reading ahead blocks, so it runs on its own threads rather than
+    // holding up the shared pool
+    private static volatile Executor prefetchExecutor =
+            ParallelTasks.newDaemonThreadPool("jME3 Audio Prefetch", 2);
+
+    private final InputStream in;
+    private final byte[][] chunks;
+    private final int[] lengths;
+
+    // guarded by this
+    private int head;
+    private int count;
+    private boolean running;
+    private boolean seeking;
+    private boolean eof;
+    private boolean closed;
+    private IOException error;
+
+    // consumer state, chunks[head] is not touched by the prefetcher
+    // while it is current
+    private boolean current;
+    private int readPos;
+
+    private final Runnable prefetcher = new Runnable() {
+        public void run() {
+            prefetch();
+        }
+    };
+
+    /**
+     * Creates a prefetching stream with 4 chunks of 32 KB.
+     *
+     * @param in the stream to read ahead
+     */
+    public PrefetchInputStream(InputStream in) {
+        this(in, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+    }
+
+    /**
+     * Creates a prefetching stream.
+     *
+     * @param in the stream to read ahead
+     * @param chunkSize the size of the chunks read at once
+     * @param chunkCount the number of chunks read ahead, at least 2
+     */
+    public PrefetchInputStream(InputStream in, int chunkSize, int chunkCount) {
+        if (chunkSize <= 0 || chunkCount < 2) {
+            throw new IllegalArgumentException("Invalid chunk size or count");
+        }
+        this.in = in;
+        chunks = new byte[chunkCount][chunkSize];
+        lengths = new int[chunkCount];
+        synchronized (this) {
+            schedule();
+        }
+    }
+
+    /**
+     * Sets the executor reading the streams ahead. If null, the streams
+     * are read when needed by the thread consuming them.
+     *
+     * @param executor the executor, or null
+     */
+    public static void setPrefetchExecutor(Executor executor) {
+        prefetchExecutor = executor;
+    }
+
+    /**
+     * Returns the executor reading the streams ahead, by default a pool of
+     * two daemon threads.
+     *
+     * @return the executor, or null
+     */
+    public static Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * @return true if the wrapped stream supports seeking
+     */
+    public boolean isSeekable() {
+        return in instanceof SeekableStream;
+    }
+
+    /**
+     * Starts reading ahead if there are free chunks. Must hold the lock.
+     */
+    private void schedule() {
+        if (running || eof || closed || seeking || count == chunks.length) {
+            return;
+        }
+        Executor executor = getPrefetchExecutor();
+        if (executor != null) {
+            running = true;
+            executor.execute(prefetcher);
+        }
+    }
+
+    /**
+     * Fills the free chunks, on the prefetch thread.
+     */
+    private void prefetch() {
+        while (true) {
+            int slot;
+            synchronized (this) {
+                if (eof || closed || seeking || count == chunks.length) {
+                    running = false;
+                    notifyAll();
+                    return;
+                }
+                slot = (head + count) % chunks.length;
+            }
+
+            int length = 0;
+            IOException ex = null;
+            try {
+                length = readChunk(chunks[slot]);
+            } catch (IOException e) {
+                ex = e;
+            }
+
+            synchronized (this) {
+                if (seeking || closed) {
+                    // read before the seek, discard it
+                    continue;
+                }
+                if (ex != null) {
+                    error = ex;
+                    eof = true;
+                } else if (length > 0) {
+                    lengths[slot] = length;
+                    count++;
+                }
+                if (length < chunks[slot].length) {
+                    eof = true;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private int readChunk(byte[] chunk) throws IOException {
+        int length = 0;
+        while (length < chunk.length) {
+            int read = in.read(chunk, length, chunk.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Releases the current chunk and waits for the next one.
+     *
+     * @return false at the end of the stream
+     */
+    private synchronized boolean nextChunk() throws IOException {
+        if (current) {
+            head = (head + 1) % chunks.length;
+            count--;
+            current = false;
+            readPos = 0;
+        }
+        while (count == 0) {
+            if (error != null) {
+                throw error;
+            }
+            if (eof || closed) {
+                return false;
+            }
+            schedule();
+            if (!running) {
+                // no prefetch thread, read here
+                int slot = head;
+                int length = readChunk(chunks[slot]);
+                if (length > 0) {
+                    lengths[slot] = length;
+                    count++;
+                }
+                if (length < chunks[slot].length) {
+                    eof = true;
+                }
+                continue;
+            }
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        current = true;
+        schedule();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!current || readPos == lengths[head]) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        return chunks[head][readPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!current || readPos == lengths[head]) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, lengths[head] - readPos);
+        System.arraycopy(chunks[head], readPos, b, off, n);
+        readPos += n;
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        if (count == 0) {
+            return 0;
+        }
+        int available = lengths[head] - (current ? readPos : 0);
+        for (int i = 1; i < count; i++) {
+            available += lengths[(head + i) % chunks.length];
+        }
+        return available;
+    }
+
+    /**
+     * Waits for the prefetch thread to stop reading. Must hold the lock.
+     */
+    private void waitForPrefetch() {
+        boolean interrupted = false;
+        while (running) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized void setTime(float time) {
+        if (!isSeekable()) {
+            throw new UnsupportedOperationException("The prefetched stream is not seekable");
+        }
+        seeking = true;
+        try {
+            waitForPrefetch();
+            ((SeekableStream) in).setTime(time);
+            head = 0;
+            count = 0;
+            current = false;
+            readPos = 0;
+            eof = false;
+            error = null;
+        } finally {
+            seeking = false;
+        }
+        schedule();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            waitForPrefetch();
+        }
+        in.close();
+    }
+}
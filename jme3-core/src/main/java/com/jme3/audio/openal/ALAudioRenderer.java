@@ -36,16 +36,45 @@ import com.jme3.audio.AudioSource.Status;
 import com.jme3.math.Vector3f;
 import com.jme3.util.BufferUtils;
 import com.jme3.util.NativeObjectManager;
+import com.jme3.util.RecordQueue;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.jme3.audio.openal.AL.*;
 
+/**
+ * OpenAL audio renderer.
+ * <p>
+ * All the OpenAL calls are made by the audio decoder thread. The
+ * {@link AudioRenderer} methods, called from the render thread, only keep
+ * track of the channels and of the status of the sources, and post
+ * commands to the decoder thread through a lock free queue, so that the
+ * render thread never waits for the decoder. The decoder thread reports the
+ * sources that stopped playing on their own through a second queue, read
+ * in {@link #update(float) }.
+ * <p>
+ * Instead of polling at a fixed rate, the decoder thread sleeps until
+ * commands are posted or until the streams need to be refilled, which is
+ * estimated from the duration of their buffers.
+ * <p>
+ * When more sources play than there are OpenAL sources, the extra ones are
+ * virtual: they keep playing silently, their playback time advancing, and
+ * every update the voices are ranked by {@link AudioSource#getPriority() }
+ * and then by audibility (volume, distance attenuation and the volume of
+ * the dry filter, standing for occlusion) weighted by age. The best ranked
+ * voices get the channels, taken from the worst ranked ones, and resume at
+ * their current playback time.
+ */
 public class ALAudioRenderer implements AudioRenderer, Runnable {
 
     private static final Logger logger = Logger.getLogger(ALAudioRenderer.class.getName());
@@ -55,17 +84,16 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     private final NativeObjectManager objManager = new NativeObjectManager();
     // When multiplied by STREAMING_BUFFER_COUNT, will equal 44100 * 2 * 2
     // which is exactly 1 second of audio.
+    // These are the defaults, see AudioStream.setStreamingBufferSize()
+    // and AudioStream.setStreamingBufferCount().
     private static final int BUFFER_SIZE = 35280;
     private static final int STREAMING_BUFFER_COUNT = 5;
     private final static int MAX_NUM_CHANNELS = 64;
     private IntBuffer ib = BufferUtils.createIntBuffer(1);
     private final FloatBuffer fb = BufferUtils.createVector3Buffer(2);
-    private final ByteBuffer nativeBuf = BufferUtils.createByteBuffer(BUFFER_SIZE);
-    private final byte[] arrayBuf = new byte[BUFFER_SIZE];
+    private ByteBuffer nativeBuf = BufferUtils.createByteBuffer(BUFFER_SIZE);
+    private byte[] arrayBuf = new byte[BUFFER_SIZE];
     private int[] channels;
-    private AudioSource[] chanSrcs;
-    private int nextChan = 0;
-    private final ArrayList<Integer> freeChans = new ArrayList<Integer>();
     private Listener listener;
     private boolean audioDisabled = false;
     private boolean supportEfx = false;
@@ -73,16 +101,202 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     private int auxSends = 0;
     private int reverbFx = -1;
     private int reverbFxSlot = -1;
+
+    // Render thread state: channel allocation.
+    // Every allocation of a channel increments its generation, so that
+    // commands and events meant for a previous source are ignored.
+    private Voice[] chanVoices;
+    private int[] chanGens;
+    private int nextChan = 0;
+    private final ArrayList<Integer> freeChans = new ArrayList<Integer>();
+    private boolean commandsPosted = false;
+
+    // Render thread state: voice management.
+    private static final int MAX_VIRTUAL_VOICES = 1024;
+    // Voices with a channel are favored so that they don't swap every frame
+    private static final float CHANNEL_BONUS = 1.25f;
+    // Score lost per second of playing, up to half
+    private static final float AGE_WEIGHT = 0.1f;
+    private final ArrayList<Voice> voices = new ArrayList<Voice>();
+    private final ArrayList<Voice> rankedVoices = new ArrayList<Voice>();
+    private final IdentityHashMap<AudioSource, Voice> boundVoices = new IdentityHashMap<AudioSource, Voice>();
+    private int virtualVoices = 0;
+
+    // Decoder thread state: what is attached to the OpenAL sources.
+    private AudioSource[] alSrcs;
+    private int[] alGens;
+    private boolean[] alInstanced;
+    private boolean[] alPlaying;
+
+    // Playback offset of each channel in bytes, with the generation in the
+    // high bits, and the time it was sampled at.
+    private AtomicLongArray playbackOffsets;
+    private AtomicLongArray playbackStamps;
     
-    // Fill streaming sources every 50 ms
+    // Fill streaming sources at least every 50 ms
     private static final float UPDATE_RATE = 0.05f;
+    // Do not wake up more than every millisecond
+    private static final long MIN_WAIT_NANOS = 1000000L;
+    private static final int QUEUE_CAPACITY = 4096;
     private final Thread decoderThread = new Thread(this, THREAD_NAME);
-    private final Object threadLock = new Object();
+    private final RecordQueue<Command> commands = new RecordQueue<Command>(newCommands(QUEUE_CAPACITY));
+    private final RecordQueue<Command> events = new RecordQueue<Command>(newCommands(256));
+    private long waitNanos;
 
     private final AL al;
     private final ALC alc;
     private final EFX efx;
-    
+
+    private static final int CMD_PLAY = 0;
+    private static final int CMD_PLAY_INSTANCE = 1;
+    private static final int CMD_PAUSE = 2;
+    private static final int CMD_STOP = 3;
+    private static final int CMD_SOURCE_PARAM = 4;
+    private static final int CMD_LISTENER_PARAM = 5;
+    private static final int CMD_LISTENER = 6;
+    private static final int CMD_ENVIRONMENT = 7;
+    private static final int CMD_DELETE_DATA = 8;
+    private static final int CMD_DELETE_FILTER = 9;
+    private static final int CMD_VIRTUALIZE = 10;
+    private static final int EVENT_STOPPED = 11;
+
+    /**
+     * A playing source, bound (played with
+     * {@link #playSource(com.jme3.audio.AudioSource) }) or instanced, with a
+     * channel or virtual.
+     */
+    private static final class Voice {
+
+        final AudioSource src;
+        final boolean instanced;
+        final long startTime = System.nanoTime();
+        int channel = -1;
+        int index;
+        /**
+         * The playback time, kept up to date while virtual.
+         */
+        float time;
+        int priority;
+        float score;
+
+        Voice(AudioSource src, boolean instanced, float time) {
+            this.src = src;
+            this.instanced = instanced;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Ranks the most important voices first.
+     */
+    private static final Comparator<Voice> VOICE_ORDER = new Comparator<Voice>() {
+        public int compare(Voice a, Voice b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            return Float.compare(b.score, a.score);
+        }
+    };
+
+    /**
+     * The parameters of a source, copied when it's played so that the
+     * decoder thread sets up the channel with the values of that time.
+     */
+    private static final class SourceState {
+
+        boolean positional;
+        boolean directional;
+        boolean reverbEnabled;
+        boolean looping;
+        float posX, posY, posZ;
+        float velX, velY, velZ;
+        float dirX, dirY, dirZ;
+        float maxDistance;
+        float refDistance;
+        float innerAngle;
+        float outerAngle;
+        float volume;
+        float pitch;
+        Filter reverbFilter;
+        Filter dryFilter;
+
+        void set(AudioSource src) {
+            positional = src.isPositional();
+            directional = src.isDirectional();
+            reverbEnabled = src.isReverbEnabled();
+            looping = src.isLooping();
+            Vector3f pos = src.getPosition();
+            posX = pos.x;
+            posY = pos.y;
+            posZ = pos.z;
+            Vector3f vel = src.getVelocity();
+            velX = vel.x;
+            velY = vel.y;
+            velZ = vel.z;
+            Vector3f dir = src.getDirection();
+            dirX = dir.x;
+            dirY = dir.y;
+            dirZ = dir.z;
+            maxDistance = src.getMaxDistance();
+            refDistance = src.getRefDistance();
+            innerAngle = src.getInnerAngle();
+            outerAngle = src.getOuterAngle();
+            volume = src.getVolume();
+            pitch = src.getPitch();
+            reverbFilter = src.getReverbFilter();
+            dryFilter = src.getDryFilter();
+        }
+
+        void clear() {
+            reverbFilter = null;
+            dryFilter = null;
+        }
+    }
+
+    /**
+     * A command to the decoder thread, or an event from it. The parameters
+     * that change every frame are copied into the command, so that the
+     * decoder thread doesn't read objects the render thread is modifying.
+     */
+    private static final class Command extends RecordQueue.Record {
+
+        int type;
+        int channel;
+        int generation;
+        AudioParam sourceParam;
+        ListenerParam listenerParam;
+        AudioSource src;
+        Object data;
+        boolean flag;
+        boolean seek;
+        float x, y, z;
+        float upX, upY, upZ;
+        final SourceState state = new SourceState();
+
+        void set(Vector3f v) {
+            x = v.x;
+            y = v.y;
+            z = v.z;
+        }
+
+        @Override
+        protected void clear() {
+            src = null;
+            data = null;
+            sourceParam = null;
+            listenerParam = null;
+            state.clear();
+        }
+    }
+
+    private static Command[] newCommands(int capacity) {
+        Command[] commands = new Command[capacity];
+        for (int i = 0; i < capacity; i++) {
+            commands[i] = new Command();
+        }
+        return commands;
+    }
+
     public ALAudioRenderer(AL al, ALC alc, EFX efx) {
         this.al = al;
         this.alc = alc;
@@ -117,7 +331,14 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
         }
 
         ib = BufferUtils.createIntBuffer(channels.length);
-        chanSrcs = new AudioSource[channels.length];
+        chanVoices = new Voice[channels.length];
+        chanGens = new int[channels.length];
+        alSrcs = new AudioSource[channels.length];
+        alGens = new int[channels.length];
+        alInstanced = new boolean[channels.length];
+        alPlaying = new boolean[channels.length];
+        playbackOffsets = new AtomicLongArray(channels.length);
+        playbackStamps = new AtomicLongArray(channels.length);
 
         final String deviceName = alc.alcGetString(ALC.ALC_DEVICE_SPECIFIER);
 
@@ -186,8 +407,8 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
         }
 
         // stop any playing channels
-        for (int i = 0; i < chanSrcs.length; i++) {
-            if (chanSrcs[i] != null) {
+        for (int i = 0; i < alSrcs.length; i++) {
+            if (alSrcs[i] != null) {
                 clearChannel(i);
             }
         }
@@ -238,31 +459,14 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     }
 
     public void run() {
-        long updateRateNanos = (long) (UPDATE_RATE * 1000000000);
-        mainloop:
-        while (true) {
-            long startTime = System.nanoTime();
-
-            if (Thread.interrupted()) {
-                break;
-            }
-
-            synchronized (threadLock) {
-                updateInDecoderThread(UPDATE_RATE);
-            }
-
-            long endTime = System.nanoTime();
-            long diffTime = endTime - startTime;
-
-            if (diffTime < updateRateNanos) {
-                long desiredEndTime = startTime + updateRateNanos;
-                while (System.nanoTime() < desiredEndTime) {
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException ex) {
-                        break mainloop;
-                    }
-                }
+        long maxWaitNanos = (long) (UPDATE_RATE * 1000000000);
+        while (!Thread.interrupted()) {
+            waitNanos = maxWaitNanos;
+            updateInDecoderThread(UPDATE_RATE);
+
+            // sleep until commands are posted or a stream needs data
+            if (commands.peek() == null) {
+                LockSupport.parkNanos(this, Math.max(waitNanos, MIN_WAIT_NANOS));
             }
         }
     }
@@ -283,6 +487,33 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
         destroyOpenAL();
     }
 
+    /**
+     * Claims a command in the queue, waking up the decoder thread and
+     * waiting for it to catch up if the queue is full.
+     */
+    private Command postCommand(int type) {
+        Command cmd = commands.claim();
+        while (cmd == null) {
+            LockSupport.unpark(decoderThread);
+            Thread.yield();
+            cmd = commands.claim();
+        }
+        cmd.type = type;
+        commandsPosted = true;
+        return cmd;
+    }
+
+    /**
+     * Publishes a command, waking up the decoder thread right away for
+     * the commands that must not wait for the end of the frame.
+     */
+    private void publish(Command cmd, boolean wakeUp) {
+        commands.publish(cmd);
+        if (wakeUp) {
+            LockSupport.unpark(decoderThread);
+        }
+    }
+
     private void updateFilter(Filter f) {
         int id = f.getId();
         if (id == -1) {
@@ -310,235 +541,393 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     @Override
     public float getSourcePlaybackTime(AudioSource src) {
         checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return 0;
-            }
-            
-            // See comment in updateSourceParam().
-            if (src.getChannel() < 0) {
-                return 0;
-            }
-            
-            int id = channels[src.getChannel()];
-            AudioData data = src.getAudioData();
-            int playbackOffsetBytes = 0;
-            
-            if (data instanceof AudioStream) {
-                // Because audio streams are processed in buffer chunks, 
-                // we have to compute the amount of time the stream was already
-                // been playing based on the number of buffers that were processed.
-                AudioStream stream = (AudioStream) data;
-                
-                // NOTE: the assumption is that all enqueued buffers are the same size.
-                //       this is currently enforced by fillBuffer().
-                
-                // The number of unenqueued bytes that the decoder thread
-                // keeps track of.
-                int unqueuedBytes = stream.getUnqueuedBufferBytes();
-                
-                // Additional processed buffers that the decoder thread
-                // did not unenqueue yet (it only updates 20 times per second).
-                int unqueuedBytesExtra = al.alGetSourcei(id, AL_BUFFERS_PROCESSED) * BUFFER_SIZE;
-                
-                // Total additional bytes that need to be considered.
-                playbackOffsetBytes = unqueuedBytes; // + unqueuedBytesExtra;
-            }
-            
-            // Add byte offset from source (for both streams and buffers)
-            playbackOffsetBytes += al.alGetSourcei(id, AL_BYTE_OFFSET);
-            
-            // Compute time value from bytes
-            // E.g. for 44100 source with 2 channels and 16 bits per sample:
-            //    (44100 * 2 * 16 / 8) = 176400
-            int bytesPerSecond = (data.getSampleRate() * 
-                                  data.getChannels() * 
-                                  data.getBitsPerSample() / 8);
-            
-            return (float)playbackOffsetBytes / bytesPerSecond;
+        if (audioDisabled) {
+            return 0;
+        }
+
+        Voice voice = boundVoices.get(src);
+        if (voice == null) {
+            return 0;
+        }
+        if (voice.channel < 0) {
+            // virtual voice
+            return voice.time;
+        }
+        float time = getChannelPlaybackTime(voice, src.getStatus() == Status.Playing);
+        return time < 0 ? voice.time : time;
+    }
+
+    /**
+     * Returns the playback time of a voice with a channel, or -1 if the
+     * decoder thread didn't play it yet.
+     */
+    private float getChannelPlaybackTime(Voice voice, boolean playing) {
+        // The decoder thread samples the playback offset of the channels
+        // every time it updates, the offset of a playing source is
+        // extrapolated from the time it was sampled at.
+        int chan = voice.channel;
+        long stamp = playbackStamps.get(chan);
+        long packed = playbackOffsets.get(chan);
+        if ((int) (packed >>> 32) != chanGens[chan]) {
+            // not played by the decoder thread yet
+            return -1;
+        }
+        int playbackOffsetBytes = (int) packed;
+
+        // Compute time value from bytes
+        // E.g. for 44100 source with 2 channels and 16 bits per sample:
+        //    (44100 * 2 * 16 / 8) = 176400
+        AudioData data = voice.src.getAudioData();
+        int bytesPerSecond = (data.getSampleRate() * 
+                              data.getChannels() * 
+                              data.getBitsPerSample() / 8);
+
+        float time = (float) playbackOffsetBytes / bytesPerSecond;
+        if (playing) {
+            float elapsed = (System.nanoTime() - stamp) / 1000000000f;
+            time += Math.min(elapsed, UPDATE_RATE * 2) * voice.src.getPitch();
+        }
+        return time;
+    }
+
+    /**
+     * Samples the playback offset of a channel, read by
+     * {@link #getSourcePlaybackTime(com.jme3.audio.AudioSource) }.
+     */
+    private void updatePlaybackOffset(int index, AudioSource src) {
+        int id = channels[index];
+        int playbackOffsetBytes = 0;
+        AudioData data = src.getAudioData();
+
+        if (data instanceof AudioStream) {
+            // Because audio streams are processed in buffer chunks, 
+            // we have to compute the amount of time the stream was already
+            // been playing based on the number of buffers that were processed.
+            AudioStream stream = (AudioStream) data;
+
+            // NOTE: the assumption is that all enqueued buffers are the same size.
+            //       this is currently enforced by fillBuffer().
+
+            // The number of unenqueued bytes that the decoder thread
+            // keeps track of.
+            playbackOffsetBytes = stream.getUnqueuedBufferBytes();
         }
+
+        // Add byte offset from source (for both streams and buffers)
+        playbackOffsetBytes += al.alGetSourcei(id, AL_BYTE_OFFSET);
+
+        playbackStamps.set(index, System.nanoTime());
+        playbackOffsets.set(index, ((long) alGens[index] << 32) | (playbackOffsetBytes & 0xFFFFFFFFL));
     }
     
     public void updateSourceParam(AudioSource src, AudioParam param) {
         checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
-            }
+        if (audioDisabled) {
+            return;
+        }
 
-            // There is a race condition in AudioSource that can
-            // cause this to be called for a node that has been
-            // detached from its channel.  For example, setVolume()
-            // called from the render thread may see that that AudioSource
-            // still has a channel value but the audio thread may
-            // clear that channel before setVolume() gets to call
-            // updateSourceParam() (because the audio stopped playing
-            // on its own right as the volume was set).  In this case, 
-            // it should be safe to just ignore the update
-            if (src.getChannel() < 0) {
-                return;
-            }
+        // There is a race condition in AudioSource that can
+        // cause this to be called for a node that has been
+        // detached from its channel.  For example, setVolume()
+        // called from the render thread may see that that AudioSource
+        // still has a channel value but the audio thread may
+        // clear that channel before setVolume() gets to call
+        // updateSourceParam() (because the audio stopped playing
+        // on its own right as the volume was set).  In this case, 
+        // it should be safe to just ignore the update
+        int chan = src.getChannel();
+        if (chan < 0) {
+            return;
+        }
 
-            assert src.getChannel() >= 0;
+        switch (param) {
+            case Position:
+            case Velocity:
+            case MaxDistance:
+            case RefDistance:
+                if (!src.isPositional()) {
+                    return;
+                }
+                break;
+            case ReverbFilter:
+                if (!supportEfx || !src.isPositional() || !src.isReverbEnabled()) {
+                    return;
+                }
+                break;
+            case ReverbEnabled:
+                if (!supportEfx || !src.isPositional()) {
+                    return;
+                }
+                break;
+            case Direction:
+            case InnerAngle:
+            case OuterAngle:
+                if (!src.isDirectional()) {
+                    return;
+                }
+                break;
+            case DryFilter:
+                if (!supportEfx) {
+                    return;
+                }
+                break;
+        }
 
-            int id = channels[src.getChannel()];
-            switch (param) {
-                case Position:
-                    if (!src.isPositional()) {
-                        return;
-                    }
+        Command cmd = postCommand(CMD_SOURCE_PARAM);
+        cmd.channel = chan;
+        cmd.generation = chanGens[chan];
+        cmd.src = src;
+        cmd.sourceParam = param;
+        switch (param) {
+            case Position:
+                cmd.set(src.getPosition());
+                break;
+            case Velocity:
+                cmd.set(src.getVelocity());
+                break;
+            case Direction:
+                cmd.set(src.getDirection());
+                break;
+            case MaxDistance:
+                cmd.x = src.getMaxDistance();
+                break;
+            case RefDistance:
+                cmd.x = src.getRefDistance();
+                break;
+            case InnerAngle:
+                cmd.x = src.getInnerAngle();
+                break;
+            case OuterAngle:
+                cmd.x = src.getOuterAngle();
+                break;
+            case Volume:
+                cmd.x = src.getVolume();
+                break;
+            case Pitch:
+                cmd.x = src.getPitch();
+                break;
+            case Looping:
+                cmd.flag = src.isLooping() && !(src.getAudioData() instanceof AudioStream);
+                break;
+        }
+        publish(cmd, false);
+    }
 
-                    Vector3f pos = src.getPosition();
-                    al.alSource3f(id, AL_POSITION, pos.x, pos.y, pos.z);
-                    break;
-                case Velocity:
-                    if (!src.isPositional()) {
-                        return;
-                    }
+    /**
+     * Applies a source parameter copied in a command, in the decoder
+     * thread.
+     */
+    private void executeSourceParam(Command cmd) {
+        int chan = cmd.channel;
+        if (alSrcs[chan] != cmd.src || alGens[chan] != cmd.generation) {
+            // the source stopped in the meantime
+            return;
+        }
 
-                    Vector3f vel = src.getVelocity();
-                    al.alSource3f(id, AL_VELOCITY, vel.x, vel.y, vel.z);
-                    break;
-                case MaxDistance:
-                    if (!src.isPositional()) {
-                        return;
-                    }
+        int id = channels[chan];
+        switch (cmd.sourceParam) {
+            case Position:
+                al.alSource3f(id, AL_POSITION, cmd.x, cmd.y, cmd.z);
+                break;
+            case Velocity:
+                al.alSource3f(id, AL_VELOCITY, cmd.x, cmd.y, cmd.z);
+                break;
+            case Direction:
+                al.alSource3f(id, AL_DIRECTION, cmd.x, cmd.y, cmd.z);
+                break;
+            case MaxDistance:
+                al.alSourcef(id, AL_MAX_DISTANCE, cmd.x);
+                break;
+            case RefDistance:
+                al.alSourcef(id, AL_REFERENCE_DISTANCE, cmd.x);
+                break;
+            case InnerAngle:
+                al.alSourcef(id, AL_CONE_INNER_ANGLE, cmd.x);
+                break;
+            case OuterAngle:
+                al.alSourcef(id, AL_CONE_OUTER_ANGLE, cmd.x);
+                break;
+            case Volume:
+                al.alSourcef(id, AL_GAIN, cmd.x);
+                break;
+            case Pitch:
+                al.alSourcef(id, AL_PITCH, cmd.x);
+                break;
+            case Looping:
+                al.alSourcei(id, AL_LOOPING, cmd.flag ? AL_TRUE : AL_FALSE);
+                break;
+            default:
+                applySourceParam(id, cmd.src, cmd.sourceParam);
+                break;
+        }
+    }
 
-                    al.alSourcef(id, AL_MAX_DISTANCE, src.getMaxDistance());
-                    break;
-                case RefDistance:
-                    if (!src.isPositional()) {
-                        return;
-                    }
+    /**
+     * Applies a source parameter read from the source, used for the
+     * parameters that seldom change.
+     */
+    private void applySourceParam(int id, AudioSource src, AudioParam param) {
+        switch (param) {
+            case Position:
+                if (!src.isPositional()) {
+                    return;
+                }
 
-                    al.alSourcef(id, AL_REFERENCE_DISTANCE, src.getRefDistance());
-                    break;
-                case ReverbFilter:
-                    if (!supportEfx || !src.isPositional() || !src.isReverbEnabled()) {
-                        return;
-                    }
+                Vector3f pos = src.getPosition();
+                al.alSource3f(id, AL_POSITION, pos.x, pos.y, pos.z);
+                break;
+            case Velocity:
+                if (!src.isPositional()) {
+                    return;
+                }
 
-                    int filter = EFX.AL_FILTER_NULL;
-                    if (src.getReverbFilter() != null) {
-                        Filter f = src.getReverbFilter();
-                        if (f.isUpdateNeeded()) {
-                            updateFilter(f);
-                        }
-                        filter = f.getId();
-                    }
-                    al.alSource3i(id, EFX.AL_AUXILIARY_SEND_FILTER, reverbFxSlot, 0, filter);
-                    break;
-                case ReverbEnabled:
-                    if (!supportEfx || !src.isPositional()) {
-                        return;
-                    }
+                Vector3f vel = src.getVelocity();
+                al.alSource3f(id, AL_VELOCITY, vel.x, vel.y, vel.z);
+                break;
+            case MaxDistance:
+                if (!src.isPositional()) {
+                    return;
+                }
 
-                    if (src.isReverbEnabled()) {
-                        updateSourceParam(src, AudioParam.ReverbFilter);
-                    } else {
-                        al.alSource3i(id, EFX.AL_AUXILIARY_SEND_FILTER, 0, 0, EFX.AL_FILTER_NULL);
-                    }
-                    break;
-                case IsPositional:
-                    if (!src.isPositional()) {
-                        // Play in headspace
-                        al.alSourcei(id, AL_SOURCE_RELATIVE, AL_TRUE);
-                        al.alSource3f(id, AL_POSITION, 0, 0, 0);
-                        al.alSource3f(id, AL_VELOCITY, 0, 0, 0);
-                        
-                        // Disable reverb
-                        al.alSource3i(id, EFX.AL_AUXILIARY_SEND_FILTER, 0, 0, EFX.AL_FILTER_NULL);
-                    } else {
-                        al.alSourcei(id, AL_SOURCE_RELATIVE, AL_FALSE);
-                        updateSourceParam(src, AudioParam.Position);
-                        updateSourceParam(src, AudioParam.Velocity);
-                        updateSourceParam(src, AudioParam.MaxDistance);
-                        updateSourceParam(src, AudioParam.RefDistance);
-                        updateSourceParam(src, AudioParam.ReverbEnabled);
-                    }
-                    break;
-                case Direction:
-                    if (!src.isDirectional()) {
-                        return;
-                    }
+                al.alSourcef(id, AL_MAX_DISTANCE, src.getMaxDistance());
+                break;
+            case RefDistance:
+                if (!src.isPositional()) {
+                    return;
+                }
 
-                    Vector3f dir = src.getDirection();
-                    al.alSource3f(id, AL_DIRECTION, dir.x, dir.y, dir.z);
-                    break;
-                case InnerAngle:
-                    if (!src.isDirectional()) {
-                        return;
-                    }
+                al.alSourcef(id, AL_REFERENCE_DISTANCE, src.getRefDistance());
+                break;
+            case ReverbFilter:
+                if (!supportEfx || !src.isPositional() || !src.isReverbEnabled()) {
+                    return;
+                }
 
-                    al.alSourcef(id, AL_CONE_INNER_ANGLE, src.getInnerAngle());
-                    break;
-                case OuterAngle:
-                    if (!src.isDirectional()) {
-                        return;
+                int filter = EFX.AL_FILTER_NULL;
+                if (src.getReverbFilter() != null) {
+                    Filter f = src.getReverbFilter();
+                    if (f.isUpdateNeeded()) {
+                        updateFilter(f);
                     }
+                    filter = f.getId();
+                }
+                al.alSource3i(id, EFX.AL_AUXILIARY_SEND_FILTER, reverbFxSlot, 0, filter);
+                break;
+            case ReverbEnabled:
+                if (!supportEfx || !src.isPositional()) {
+                    return;
+                }
 
-                    al.alSourcef(id, AL_CONE_OUTER_ANGLE, src.getOuterAngle());
-                    break;
-                case IsDirectional:
-                    if (src.isDirectional()) {
-                        updateSourceParam(src, AudioParam.Direction);
-                        updateSourceParam(src, AudioParam.InnerAngle);
-                        updateSourceParam(src, AudioParam.OuterAngle);
-                        al.alSourcef(id, AL_CONE_OUTER_GAIN, 0);
-                    } else {
-                        al.alSourcef(id, AL_CONE_INNER_ANGLE, 360);
-                        al.alSourcef(id, AL_CONE_OUTER_ANGLE, 360);
-                        al.alSourcef(id, AL_CONE_OUTER_GAIN, 1f);
-                    }
-                    break;
-                case DryFilter:
-                    if (!supportEfx) {
-                        return;
-                    }
+                if (src.isReverbEnabled()) {
+                    applySourceParam(id, src, AudioParam.ReverbFilter);
+                } else {
+                    al.alSource3i(id, EFX.AL_AUXILIARY_SEND_FILTER, 0, 0, EFX.AL_FILTER_NULL);
+                }
+                break;
+            case IsPositional:
+                if (!src.isPositional()) {
+                    // Play in headspace
+                    al.alSourcei(id, AL_SOURCE_RELATIVE, AL_TRUE);
+                    al.alSource3f(id, AL_POSITION, 0, 0, 0);
+                    al.alSource3f(id, AL_VELOCITY, 0, 0, 0);
+                    
+                    // Disable reverb
+                    al.alSource3i(id, EFX.AL_AUXILIARY_SEND_FILTER, 0, 0, EFX.AL_FILTER_NULL);
+                } else {
+                    al.alSourcei(id, AL_SOURCE_RELATIVE, AL_FALSE);
+                    applySourceParam(id, src, AudioParam.Position);
+                    applySourceParam(id, src, AudioParam.Velocity);
+                    applySourceParam(id, src, AudioParam.MaxDistance);
+                    applySourceParam(id, src, AudioParam.RefDistance);
+                    applySourceParam(id, src, AudioParam.ReverbEnabled);
+                }
+                break;
+            case Direction:
+                if (!src.isDirectional()) {
+                    return;
+                }
 
-                    if (src.getDryFilter() != null) {
-                        Filter f = src.getDryFilter();
-                        if (f.isUpdateNeeded()) {
-                            updateFilter(f);
+                Vector3f dir = src.getDirection();
+                al.alSource3f(id, AL_DIRECTION, dir.x, dir.y, dir.z);
+                break;
+            case InnerAngle:
+                if (!src.isDirectional()) {
+                    return;
+                }
 
-                            // NOTE: must re-attach filter for changes to apply.
-                            al.alSourcei(id, EFX.AL_DIRECT_FILTER, f.getId());
-                        }
-                    } else {
-                        al.alSourcei(id, EFX.AL_DIRECT_FILTER, EFX.AL_FILTER_NULL);
-                    }
-                    break;
-                case Looping:
-                    if (src.isLooping() && !(src.getAudioData() instanceof AudioStream)) {
-                        al.alSourcei(id, AL_LOOPING, AL_TRUE);
-                    } else {
-                        al.alSourcei(id, AL_LOOPING, AL_FALSE);
+                al.alSourcef(id, AL_CONE_INNER_ANGLE, src.getInnerAngle());
+                break;
+            case OuterAngle:
+                if (!src.isDirectional()) {
+                    return;
+                }
+
+                al.alSourcef(id, AL_CONE_OUTER_ANGLE, src.getOuterAngle());
+                break;
+            case IsDirectional:
+                if (src.isDirectional()) {
+                    applySourceParam(id, src, AudioParam.Direction);
+                    applySourceParam(id, src, AudioParam.InnerAngle);
+                    applySourceParam(id, src, AudioParam.OuterAngle);
+                    al.alSourcef(id, AL_CONE_OUTER_GAIN, 0);
+                } else {
+                    al.alSourcef(id, AL_CONE_INNER_ANGLE, 360);
+                    al.alSourcef(id, AL_CONE_OUTER_ANGLE, 360);
+                    al.alSourcef(id, AL_CONE_OUTER_GAIN, 1f);
+                }
+                break;
+            case DryFilter:
+                if (!supportEfx) {
+                    return;
+                }
+
+                if (src.getDryFilter() != null) {
+                    Filter f = src.getDryFilter();
+                    if (f.isUpdateNeeded()) {
+                        updateFilter(f);
+
+                        // NOTE: must re-attach filter for changes to apply.
+                        al.alSourcei(id, EFX.AL_DIRECT_FILTER, f.getId());
                     }
-                    break;
-                case Volume:
-                    al.alSourcef(id, AL_GAIN, src.getVolume());
-                    break;
-                case Pitch:
-                    al.alSourcef(id, AL_PITCH, src.getPitch());
-                    break;
-            }
+                } else {
+                    al.alSourcei(id, EFX.AL_DIRECT_FILTER, EFX.AL_FILTER_NULL);
+                }
+                break;
+            case Looping:
+                if (src.isLooping() && !(src.getAudioData() instanceof AudioStream)) {
+                    al.alSourcei(id, AL_LOOPING, AL_TRUE);
+                } else {
+                    al.alSourcei(id, AL_LOOPING, AL_FALSE);
+                }
+                break;
+            case Volume:
+                al.alSourcef(id, AL_GAIN, src.getVolume());
+                break;
+            case Pitch:
+                al.alSourcef(id, AL_PITCH, src.getPitch());
+                break;
         }
     }
 
-    private void setSourceParams(int id, AudioSource src, boolean forceNonLoop) {
-        if (src.isPositional()) {
-            Vector3f pos = src.getPosition();
-            Vector3f vel = src.getVelocity();
-            al.alSource3f(id, AL_POSITION, pos.x, pos.y, pos.z);
-            al.alSource3f(id, AL_VELOCITY, vel.x, vel.y, vel.z);
-            al.alSourcef(id, AL_MAX_DISTANCE, src.getMaxDistance());
-            al.alSourcef(id, AL_REFERENCE_DISTANCE, src.getRefDistance());
+    /**
+     * Sets up a channel for a source from the parameters copied when it
+     * was played.
+     *
+     * @param timeOffset the offset in the buffer, 0 for streams which are
+     * moved with {@link #seekStream(com.jme3.audio.AudioStream, float) }
+     */
+    private void setSourceParams(int id, SourceState src, boolean stream, boolean forceNonLoop, float timeOffset) {
+        if (src.positional) {
+            al.alSource3f(id, AL_POSITION, src.posX, src.posY, src.posZ);
+            al.alSource3f(id, AL_VELOCITY, src.velX, src.velY, src.velZ);
+            al.alSourcef(id, AL_MAX_DISTANCE, src.maxDistance);
+            al.alSourcef(id, AL_REFERENCE_DISTANCE, src.refDistance);
             al.alSourcei(id, AL_SOURCE_RELATIVE, AL_FALSE);
 
-            if (src.isReverbEnabled() && supportEfx) {
+            if (src.reverbEnabled && supportEfx) {
                 int filter = EFX.AL_FILTER_NULL;
-                if (src.getReverbFilter() != null) {
-                    Filter f = src.getReverbFilter();
+                if (src.reverbFilter != null) {
+                    Filter f = src.reverbFilter;
                     if (f.isUpdateNeeded()) {
                         updateFilter(f);
                     }
@@ -553,8 +942,8 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
             al.alSource3f(id, AL_VELOCITY, 0, 0, 0);
         }
 
-        if (src.getDryFilter() != null && supportEfx) {
-            Filter f = src.getDryFilter();
+        if (src.dryFilter != null && supportEfx) {
+            Filter f = src.dryFilter;
             if (f.isUpdateNeeded()) {
                 updateFilter(f);
 
@@ -563,20 +952,19 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
             }
         }
 
-        if (forceNonLoop || src.getAudioData() instanceof AudioStream) {
+        if (forceNonLoop || stream) {
             al.alSourcei(id, AL_LOOPING, AL_FALSE);
         } else {
-            al.alSourcei(id, AL_LOOPING, src.isLooping() ? AL_TRUE : AL_FALSE);
+            al.alSourcei(id, AL_LOOPING, src.looping ? AL_TRUE : AL_FALSE);
         }
-        al.alSourcef(id, AL_GAIN, src.getVolume());
-        al.alSourcef(id, AL_PITCH, src.getPitch());
-        al.alSourcef(id, AL_SEC_OFFSET, src.getTimeOffset());
-
-        if (src.isDirectional()) {
-            Vector3f dir = src.getDirection();
-            al.alSource3f(id, AL_DIRECTION, dir.x, dir.y, dir.z);
-            al.alSourcef(id, AL_CONE_INNER_ANGLE, src.getInnerAngle());
-            al.alSourcef(id, AL_CONE_OUTER_ANGLE, src.getOuterAngle());
+        al.alSourcef(id, AL_GAIN, src.volume);
+        al.alSourcef(id, AL_PITCH, src.pitch);
+        al.alSourcef(id, AL_SEC_OFFSET, timeOffset);
+
+        if (src.directional) {
+            al.alSource3f(id, AL_DIRECTION, src.dirX, src.dirY, src.dirZ);
+            al.alSourcef(id, AL_CONE_INNER_ANGLE, src.innerAngle);
+            al.alSourcef(id, AL_CONE_OUTER_ANGLE, src.outerAngle);
             al.alSourcef(id, AL_CONE_OUTER_GAIN, 0);
         } else {
             al.alSourcef(id, AL_CONE_INNER_ANGLE, 360);
@@ -587,33 +975,51 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
 
     public void updateListenerParam(Listener listener, ListenerParam param) {
         checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
-            }
+        if (audioDisabled) {
+            return;
+        }
 
-            switch (param) {
-                case Position:
-                    Vector3f pos = listener.getLocation();
-                    al.alListener3f(AL_POSITION, pos.x, pos.y, pos.z);
-                    break;
-                case Rotation:
-                    Vector3f dir = listener.getDirection();
-                    Vector3f up = listener.getUp();
-                    fb.rewind();
-                    fb.put(dir.x).put(dir.y).put(dir.z);
-                    fb.put(up.x).put(up.y).put(up.z);
-                    fb.flip();
-                    al.alListener(AL_ORIENTATION, fb);
-                    break;
-                case Velocity:
-                    Vector3f vel = listener.getVelocity();
-                    al.alListener3f(AL_VELOCITY, vel.x, vel.y, vel.z);
-                    break;
-                case Volume:
-                    al.alListenerf(AL_GAIN, listener.getVolume());
-                    break;
-            }
+        Command cmd = postCommand(CMD_LISTENER_PARAM);
+        cmd.listenerParam = param;
+        switch (param) {
+            case Position:
+                cmd.set(listener.getLocation());
+                break;
+            case Rotation:
+                Vector3f up = listener.getUp();
+                cmd.set(listener.getDirection());
+                cmd.upX = up.x;
+                cmd.upY = up.y;
+                cmd.upZ = up.z;
+                break;
+            case Velocity:
+                cmd.set(listener.getVelocity());
+                break;
+            case Volume:
+                cmd.x = listener.getVolume();
+                break;
+        }
+        publish(cmd, false);
+    }
+
+    private void executeListenerParam(Command cmd) {
+        switch (cmd.listenerParam) {
+            case Position:
+                al.alListener3f(AL_POSITION, cmd.x, cmd.y, cmd.z);
+                break;
+            case Rotation:
+                fb.rewind();
+                fb.put(cmd.x).put(cmd.y).put(cmd.z);
+                fb.put(cmd.upX).put(cmd.upY).put(cmd.upZ);
+                fb.flip();
+                al.alListener(AL_ORIENTATION, fb);
+                break;
+            case Velocity:
+                al.alListener3f(AL_VELOCITY, cmd.x, cmd.y, cmd.z);
+                break;
+            case Volume:
+                al.alListenerf(AL_GAIN, cmd.x);
+                break;
         }
     }
 
@@ -634,16 +1040,20 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     }
 
     private int newChannel() {
+        int index;
         if (freeChans.size() > 0) {
-            return freeChans.remove(0);
+            index = freeChans.remove(0);
         } else if (nextChan < channels.length) {
-            return nextChan++;
+            index = nextChan++;
         } else {
             return -1;
         }
+        chanGens[index]++;
+        return index;
     }
 
     private void freeChannel(int index) {
+        chanVoices[index] = null;
         if (index == nextChan - 1) {
             nextChan--;
         } else {
@@ -653,35 +1063,70 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
 
     public void setEnvironment(Environment env) {
         checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled || !supportEfx) {
-                return;
-            }
+        if (audioDisabled || !supportEfx) {
+            return;
+        }
 
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_DENSITY, env.getDensity());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_DIFFUSION, env.getDiffusion());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_GAIN, env.getGain());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_GAINHF, env.getGainHf());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_DECAY_TIME, env.getDecayTime());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_DECAY_HFRATIO, env.getDecayHFRatio());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_REFLECTIONS_GAIN, env.getReflectGain());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_REFLECTIONS_DELAY, env.getReflectDelay());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_LATE_REVERB_GAIN, env.getLateReverbGain());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_LATE_REVERB_DELAY, env.getLateReverbDelay());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_AIR_ABSORPTION_GAINHF, env.getAirAbsorbGainHf());
-            efx.alEffectf(reverbFx, EFX.AL_REVERB_ROOM_ROLLOFF_FACTOR, env.getRoomRolloffFactor());
-
-            // attach effect to slot
-            efx.alAuxiliaryEffectSloti(reverbFxSlot, EFX.AL_EFFECTSLOT_EFFECT, reverbFx);
+        Command cmd = postCommand(CMD_ENVIRONMENT);
+        cmd.data = env;
+        publish(cmd, false);
+    }
+
+    private void applyEnvironment(Environment env) {
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_DENSITY, env.getDensity());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_DIFFUSION, env.getDiffusion());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_GAIN, env.getGain());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_GAINHF, env.getGainHf());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_DECAY_TIME, env.getDecayTime());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_DECAY_HFRATIO, env.getDecayHFRatio());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_REFLECTIONS_GAIN, env.getReflectGain());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_REFLECTIONS_DELAY, env.getReflectDelay());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_LATE_REVERB_GAIN, env.getLateReverbGain());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_LATE_REVERB_DELAY, env.getLateReverbDelay());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_AIR_ABSORPTION_GAINHF, env.getAirAbsorbGainHf());
+        efx.alEffectf(reverbFx, EFX.AL_REVERB_ROOM_ROLLOFF_FACTOR, env.getRoomRolloffFactor());
+
+        // attach effect to slot
+        efx.alAuxiliaryEffectSloti(reverbFxSlot, EFX.AL_EFFECTSLOT_EFFECT, reverbFx);
+    }
+
+    private int getBufferCount(AudioStream stream) {
+        int count = stream.getStreamingBufferCount();
+        return count > 0 ? count : STREAMING_BUFFER_COUNT;
+    }
+
+    private int getBufferSize(AudioStream stream) {
+        int size = stream.getStreamingBufferSize();
+        if (size <= 0) {
+            return BUFFER_SIZE;
         }
+        // whole sample frames only
+        int frameSize = Math.max(1, stream.getChannels() * stream.getBitsPerSample() / 8);
+        return Math.max(frameSize, size - size % frameSize);
     }
 
     private boolean fillBuffer(AudioStream stream, int id) {
+        int bufferSize = getBufferSize(stream);
+        if (stream.isMapped()) {
+            // upload straight from the mapped asset, no copy
+            ByteBuffer slice = stream.readSlice(bufferSize);
+            if (slice == null) {
+                return false;
+            }
+            al.alBufferData(id, convertFormat(stream), slice, slice.remaining(), stream.getSampleRate());
+            return true;
+        }
+
+        if (arrayBuf.length < bufferSize) {
+            arrayBuf = new byte[bufferSize];
+            nativeBuf = BufferUtils.createByteBuffer(bufferSize);
+        }
+
         int size = 0;
         int result;
 
-        while (size < arrayBuf.length) {
-            result = stream.readSamples(arrayBuf, size, arrayBuf.length - size);
+        while (size < bufferSize) {
+            result = stream.readSamples(arrayBuf, size, bufferSize - size);
 
             if (result > 0) {
                 size += result;
@@ -707,6 +1152,7 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
         boolean success = false;
         int processed = al.alGetSourcei(sourceId, AL_BUFFERS_PROCESSED);
         int unqueuedBufferBytes = 0;
+        int bufferSize = getBufferSize(stream);
         
         for (int i = 0; i < processed; i++) {
             int buffer;
@@ -716,9 +1162,9 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
             buffer = ib.get(0);
             
             // XXX: assume that reading from AudioStream always 
-            // gives BUFFER_SIZE amount of bytes! This might not always
+            // gives the buffer size amount of bytes! This might not always
             // be the case...
-            unqueuedBufferBytes += BUFFER_SIZE;
+            unqueuedBufferBytes += bufferSize;
             
             boolean active = fillBuffer(stream, buffer);
             
@@ -752,6 +1198,40 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
         return success;
     }
 
+    /**
+     * Shortens the time the decoder thread sleeps so that it wakes up
+     * before the buffers queued on a streaming source run out. A buffer is
+     * consumed every buffer duration, the thread wakes up after half of it
+     * so that the processed buffers are refilled well before the last one
+     * is played; a starving source is refilled as soon as possible.
+     */
+    private void scheduleRefill(int sourceId, AudioStream stream) {
+        int bytesPerSecond = stream.getSampleRate() * stream.getChannels() * stream.getBitsPerSample() / 8;
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        int queued = al.alGetSourcei(sourceId, AL_BUFFERS_QUEUED);
+        int processed = al.alGetSourcei(sourceId, AL_BUFFERS_PROCESSED);
+        long bufferNanos = (long) getBufferSize(stream) * 1000000000L / bytesPerSecond;
+        long wait = queued - processed <= 1 ? MIN_WAIT_NANOS : bufferNanos / 2;
+        waitNanos = Math.min(waitNanos, wait);
+    }
+
+    /**
+     * Moves a stream to the playback time of a virtual voice getting a
+     * channel, if the stream supports it.
+     */
+    private void seekStream(AudioStream stream, float time) {
+        if (time <= 0 || !stream.isSeekable()) {
+            return;
+        }
+        try {
+            stream.setTime(time);
+        } catch (UnsupportedOperationException ex) {
+            logger.log(Level.FINE, "Cannot resume stream at {0} seconds, resuming at its current position", time);
+        }
+    }
+
     private void attachStreamToSource(int sourceId, AudioStream stream, boolean looping) {
         boolean success = false;
         
@@ -807,8 +1287,8 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
 
     private void clearChannel(int index) {
         // make room at this channel
-        if (chanSrcs[index] != null) {
-            AudioSource src = chanSrcs[index];
+        if (alSrcs[index] != null) {
+            AudioSource src = alSrcs[index];
 
             int sourceId = channels[index];
             al.alSourceStop(sourceId);
@@ -827,7 +1307,8 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
                 }
             }
 
-            chanSrcs[index] = null;
+            alSrcs[index] = null;
+            alPlaying[index] = false;
         }
     }
     
@@ -846,92 +1327,65 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     }
 
     public void update(float tpf) {
-        synchronized (threadLock) {
-            updateInRenderThread(tpf);
-        }
+        updateInRenderThread(tpf);
     }
 
+    /**
+     * Reclaims the channels of the sources that stopped playing on their
+     * own, as reported by the decoder thread, updates the virtual voices
+     * and wakes up the decoder thread if commands were posted during the
+     * frame.
+     */
     public void updateInRenderThread(float tpf) {
         if (audioDisabled) {
             return;
         }
-        
-        for (int i = 0; i < channels.length; i++) {
-            AudioSource src = chanSrcs[i];
-            
-            if (src == null) {
-                continue;
-            }
 
-            int sourceId = channels[i];
-            boolean boundSource = i == src.getChannel();
-            boolean reclaimChannel = false;
-            
-            Status oalStatus = convertStatus(al.alGetSourcei(sourceId, AL_SOURCE_STATE));
-            
-            if (!boundSource) {
-                // Rules for instanced playback vary significantly. 
-                // Handle it here.
-                if (oalStatus == Status.Stopped) {
-                    // Instanced audio stopped playing. Reclaim channel.
-                    clearChannel(i);
-                    freeChannel(i);
-                } else if (oalStatus == Status.Paused) {
-                    throw new AssertionError("Instanced audio cannot be paused");
-                }
-                
+        Command event;
+        while ((event = events.peek()) != null) {
+            int i = event.channel;
+            AudioSource src = event.src;
+            events.release();
+
+            Voice voice = chanVoices[i];
+            if (voice == null || voice.src != src || chanGens[i] != event.generation) {
+                // the channel was stopped or reused in the meantime
                 continue;
             }
-            
-            Status jmeStatus = src.getStatus();
-            
-            // Check if we need to sync JME status with OAL status.
-            if (oalStatus != jmeStatus) {
-                if (oalStatus == Status.Stopped && jmeStatus == Status.Playing) {
-                    // Maybe we need to reclaim the channel.
-                    if (src.getAudioData() instanceof AudioStream) {
-                        AudioStream stream = (AudioStream) src.getAudioData();
-                        
-                        if (stream.isEOF() && !src.isLooping()) {
-                            // Stream finished playing
-                            reclaimChannel = true;
-                        } else {
-                            // Stream still has data. 
-                            // Buffer starvation occured.
-                            // Audio decoder thread will fill the data 
-                            // and start the channel again.
-                        }
-                    } else {
-                        // Buffer finished playing.
-                        if (src.isLooping()) {
-                            // When a device is disconnected, all sources
-                            // will enter the "stopped" state.
-                            logger.warning("A looping sound has stopped playing");
-                        }
 
-                        reclaimChannel = true;
-                    }
-                    
-                    if (reclaimChannel) {
-                        src.setStatus(Status.Stopped);
-                        src.setChannel(-1);
-                        clearChannel(i);
-                        freeChannel(i);
-                    }
-                } else {
-                    // jME3 state does not match OAL state.
-                    // This is only relevant for bound sources.
-                    throw new AssertionError("Unexpected sound status. "
-                                            + "OAL: " + oalStatus 
-                                            + ", JME: " + jmeStatus);
-                }
-            } else {
-                // Stopped channel was not cleared correctly.
-                if (oalStatus == Status.Stopped) {
-                    throw new AssertionError("Channel " + i + " was not reclaimed");
-                }
-            }
+            // Bound source finished playing, or instanced audio
+            // stopped playing. Reclaim channel.
+            finishVoice(voice);
+        }
+
+        if (virtualVoices > 0) {
+            updateVirtualVoices(tpf);
         }
+
+        if (commandsPosted) {
+            commandsPosted = false;
+            LockSupport.unpark(decoderThread);
+        }
+    }
+
+    /**
+     * Reports a source that stopped playing on its own to the render
+     * thread.
+     *
+     * @return false if the event queue is full, the event must then be
+     * sent again later
+     */
+    private boolean postStopped(int index) {
+        Command event = events.claim();
+        if (event == null) {
+            return false;
+        }
+        event.type = EVENT_STOPPED;
+        event.channel = index;
+        event.generation = alGens[index];
+        event.src = alSrcs[index];
+        events.publish(event);
+        return true;
     }
     
     public void updateInDecoderThread(float tpf) {
@@ -939,61 +1393,192 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
             return;
         }
 
+        Command cmd;
+        while ((cmd = commands.peek()) != null) {
+            try {
+                executeCommand(cmd);
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Failed to execute audio command", ex);
+            } finally {
+                commands.release();
+            }
+        }
+
         for (int i = 0; i < channels.length; i++) {
-            AudioSource src = chanSrcs[i];
+            AudioSource src = alSrcs[i];
             
-            if (src == null || !(src.getAudioData() instanceof AudioStream)) {
+            if (src == null) {
                 continue;
             }
 
             int sourceId = channels[i];
-            AudioStream stream = (AudioStream) src.getAudioData();
-
             Status oalStatus = convertStatus(al.alGetSourcei(sourceId, AL_SOURCE_STATE));
-            Status jmeStatus = src.getStatus();
-
-            // Keep filling data (even if we are stopped / paused)
-            boolean buffersWereFilled = fillStreamingSource(sourceId, stream, src.isLooping());
-
-            if (buffersWereFilled) {
-                if (oalStatus == Status.Stopped && jmeStatus == Status.Playing) {
-                    // The source got stopped due to buffer starvation.
-                    // Start it again.
-                    logger.log(Level.WARNING, "Buffer starvation "
-                                            + "occurred while playing stream");
-                    al.alSourcePlay(sourceId);
-                } else {
-                    // Buffers were filled, stream continues to play.
-                    if (oalStatus == Status.Playing && jmeStatus == Status.Playing) {
-                        // Nothing to do.
-                    } else {
-                        throw new AssertionError();
+
+            if (src.getAudioData() instanceof AudioStream) {
+                AudioStream stream = (AudioStream) src.getAudioData();
+
+                // Keep filling data (even if we are stopped / paused)
+                boolean buffersWereFilled = fillStreamingSource(sourceId, stream, src.isLooping());
+
+                if (oalStatus == Status.Stopped && alPlaying[i]) {
+                    if (buffersWereFilled) {
+                        // The source got stopped due to buffer starvation.
+                        // Start it again.
+                        logger.log(Level.WARNING, "Buffer starvation "
+                                                + "occurred while playing stream");
+                        al.alSourcePlay(sourceId);
+                        oalStatus = Status.Playing;
+                    } else if (stream.isEOF()) {
+                        // Stream finished playing
+                        if (postStopped(i)) {
+                            clearChannel(i);
+                        }
+                        continue;
                     }
                 }
+                if (oalStatus == Status.Playing) {
+                    scheduleRefill(sourceId, stream);
+                }
+            } else if (oalStatus == Status.Stopped && (alPlaying[i] || alInstanced[i])) {
+                // Buffer finished playing.
+                if (src.isLooping() && !alInstanced[i]) {
+                    // When a device is disconnected, all sources
+                    // will enter the "stopped" state.
+                    logger.warning("A looping sound has stopped playing");
+                }
+                if (postStopped(i)) {
+                    clearChannel(i);
+                }
+                continue;
             }
+
+            updatePlaybackOffset(i, src);
         }
 
         // Delete any unused objects.
         objManager.deleteUnused(this);
     }
 
+    private void executeCommand(Command cmd) {
+        int i = cmd.channel;
+        switch (cmd.type) {
+            case CMD_PLAY:
+                if (cmd.flag) {
+                    // newly allocated channel
+                    AudioSource src = cmd.src;
+                    clearChannel(i);
+
+                    AudioData data = src.getAudioData();
+                    if (data.isUpdateNeeded()) {
+                        updateAudioData(data);
+                    }
+
+                    alSrcs[i] = src;
+                    alGens[i] = cmd.generation;
+                    alInstanced[i] = false;
+                    playbackStamps.set(i, System.nanoTime());
+                    playbackOffsets.set(i, (long) cmd.generation << 32);
+                    boolean stream = data instanceof AudioStream;
+                    if (cmd.seek && stream) {
+                        seekStream((AudioStream) data, cmd.x);
+                    }
+                    // a stream is positioned by seeking, not with AL_SEC_OFFSET
+                    setSourceParams(channels[i], cmd.state, stream, false, stream ? 0 : cmd.x);
+                    attachAudioToSource(channels[i], data, src.isLooping());
+                } else if (alSrcs[i] != cmd.src || alGens[i] != cmd.generation) {
+                    // resumed after it finished playing
+                    return;
+                }
+                alPlaying[i] = true;
+                al.alSourcePlay(channels[i]);
+                break;
+            case CMD_PLAY_INSTANCE:
+                AudioSource src = cmd.src;
+                clearChannel(i);
+
+                if (src.getAudioData().isUpdateNeeded()) {
+                    updateAudioData(src.getAudioData());
+                }
+
+                // set parameters, like position and max distance
+                setSourceParams(channels[i], cmd.state, src.getAudioData() instanceof AudioStream, true, cmd.x);
+                attachAudioToSource(channels[i], src.getAudioData(), false);
+                alSrcs[i] = src;
+                alGens[i] = cmd.generation;
+                alInstanced[i] = true;
+                alPlaying[i] = true;
+
+                // play the channel
+                al.alSourcePlay(channels[i]);
+                break;
+            case CMD_PAUSE:
+                if (alSrcs[i] == cmd.src && alGens[i] == cmd.generation) {
+                    al.alSourcePause(channels[i]);
+                    alPlaying[i] = false;
+                    updatePlaybackOffset(i, cmd.src);
+                }
+                break;
+            case CMD_VIRTUALIZE:
+                if (alSrcs[i] == cmd.src && alGens[i] == cmd.generation) {
+                    clearChannel(i);
+                }
+                break;
+            case CMD_STOP:
+                // virtual voices have no channel
+                if (i >= 0 && alSrcs[i] == cmd.src && alGens[i] == cmd.generation) {
+                    clearChannel(i);
+                }
+
+                if (cmd.src.getAudioData() instanceof AudioStream) {
+                    // If the stream is seekable, then rewind it.
+                    // Otherwise, close it, as it is no longer valid.
+                    AudioStream stream = (AudioStream) cmd.src.getAudioData();
+                    if (stream.isSeekable()) {
+                        stream.setTime(0);
+                    } else {
+                        stream.close();
+                    }
+                }
+                break;
+            case CMD_SOURCE_PARAM:
+                executeSourceParam(cmd);
+                break;
+            case CMD_LISTENER_PARAM:
+                executeListenerParam(cmd);
+                break;
+            case CMD_LISTENER:
+                setListenerParams((Listener) cmd.data);
+                break;
+            case CMD_ENVIRONMENT:
+                applyEnvironment((Environment) cmd.data);
+                break;
+            case CMD_DELETE_DATA:
+                deleteAudioDataNow((AudioData) cmd.data);
+                break;
+            case CMD_DELETE_FILTER:
+                deleteFilterNow((Filter) cmd.data);
+                break;
+        }
+    }
+
     public void setListener(Listener listener) {
         checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
-            }
-
-            if (this.listener != null) {
-                // previous listener no longer associated with current
-                // renderer
-                this.listener.setRenderer(null);
-            }
+        if (audioDisabled) {
+            return;
+        }
 
-            this.listener = listener;
-            this.listener.setRenderer(this);
-            setListenerParams(listener);
+        if (this.listener != null) {
+            // previous listener no longer associated with current
+            // renderer
+            this.listener.setRenderer(null);
         }
+
+        this.listener = listener;
+        this.listener.setRenderer(this);
+
+        Command cmd = postCommand(CMD_LISTENER);
+        cmd.data = listener;
+        publish(cmd, false);
     }
     
     public void pauseAll() {
@@ -1014,122 +1599,332 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
 
     public void playSourceInstance(AudioSource src) {
         checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
-            }
+        if (audioDisabled) {
+            return;
+        }
 
-            if (src.getAudioData() instanceof AudioStream) {
-                throw new UnsupportedOperationException(
-                        "Cannot play instances "
-                        + "of audio streams. Use play() instead.");
-            }
+        if (src.getAudioData() instanceof AudioStream) {
+            throw new UnsupportedOperationException(
+                    "Cannot play instances "
+                    + "of audio streams. Use play() instead.");
+        }
 
-            if (src.getAudioData().isUpdateNeeded()) {
-                updateAudioData(src.getAudioData());
-            }
+        Voice voice = new Voice(src, true, src.getTimeOffset());
+        addVoice(voice);
 
-            // create a new index for an audio-channel
-            int index = newChannel();
+        // create a new index for an audio-channel
+        int index = allocateChannel(voice);
+        if (index == -1) {
+            logger.log(Level.FINE, "No channel available, {0} is virtual", src);
+            return;
+        }
+        startVoice(voice, index, false);
+    }
+
+    public void playSource(AudioSource src) {
+        checkDead();
+        if (audioDisabled) {
+            return;
+        }
+
+        if (src.getStatus() == Status.Playing) {
+            return;
+        } else if (src.getStatus() == Status.Stopped) {
+            //Assertion removed as it seems it's not possible to have 
+            //something different than =1 when first playing an AudioNode
+            // assert src.getChannel() != -1;
+            
+            Voice voice = new Voice(src, false, src.getTimeOffset());
+            addVoice(voice);
+            boundVoices.put(src, voice);
+            src.setStatus(Status.Playing);
+
+            // allocate channel to this source
+            int index = allocateChannel(voice);
             if (index == -1) {
+                logger.log(Level.FINE, "No channel available, {0} is virtual", src);
                 return;
             }
+            startVoice(voice, index, false);
+        } else {
+            Voice voice = boundVoices.get(src);
+            src.setStatus(Status.Playing);
+            if (voice.channel >= 0) {
+                // resume
+                Command cmd = postCommand(CMD_PLAY);
+                cmd.channel = voice.channel;
+                cmd.generation = chanGens[voice.channel];
+                cmd.src = src;
+                cmd.flag = false;
+                publish(cmd, true);
+            } else {
+                int index = allocateChannel(voice);
+                if (index >= 0) {
+                    startVoice(voice, index, true);
+                }
+            }
+        }
+    }
 
-            int sourceId = channels[index];
+    public void pauseSource(AudioSource src) {
+        checkDead();
+        if (audioDisabled) {
+            return;
+        }
 
-            clearChannel(index);
+        if (src.getStatus() == Status.Playing) {
+            Voice voice = boundVoices.get(src);
+            if (voice.channel >= 0) {
+                Command cmd = postCommand(CMD_PAUSE);
+                cmd.channel = voice.channel;
+                cmd.generation = chanGens[voice.channel];
+                cmd.src = src;
+                publish(cmd, true);
+            }
+            src.setStatus(Status.Paused);
+        }
+    }
+
+    public void stopSource(AudioSource src) {
+        if (audioDisabled) {
+            return;
+        }
+
+        if (src.getStatus() != Status.Stopped) {
+            Voice voice = boundVoices.get(src);
+            int chan = voice.channel;
 
-            // set parameters, like position and max distance
-            setSourceParams(sourceId, src, true);
-            attachAudioToSource(sourceId, src.getAudioData(), false);
-            chanSrcs[index] = src;
+            // the stream is rewound by the decoder thread,
+            // that may be reading it
+            Command cmd = postCommand(CMD_STOP);
+            cmd.channel = chan;
+            cmd.generation = chan >= 0 ? chanGens[chan] : 0;
+            cmd.src = src;
+            publish(cmd, true);
 
-            // play the channel
-            al.alSourcePlay(sourceId);
+            finishVoice(voice);
         }
     }
 
-    public void playSource(AudioSource src) {
-        checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
-            }
+    private void addVoice(Voice voice) {
+        voice.index = voices.size();
+        voices.add(voice);
+        virtualVoices++;
+    }
 
-            if (src.getStatus() == Status.Playing) {
-                return;
-            } else if (src.getStatus() == Status.Stopped) {
-                //Assertion removed as it seems it's not possible to have 
-                //something different than =1 when first playing an AudioNode
-                // assert src.getChannel() != -1;
-                
-                // allocate channel to this source
-                int index = newChannel();
-                if (index == -1) {
-                    logger.log(Level.WARNING, "No channel available to play {0}", src);
-                    return;
-                }
-                clearChannel(index);
-                src.setChannel(index);
+    /**
+     * Removes a voice that stopped playing, freeing its channel.
+     */
+    private void finishVoice(Voice voice) {
+        // swap with the last voice
+        Voice last = voices.remove(voices.size() - 1);
+        if (last != voice) {
+            voices.set(voice.index, last);
+            last.index = voice.index;
+        }
 
-                AudioData data = src.getAudioData();
-                if (data.isUpdateNeeded()) {
-                    updateAudioData(data);
-                }
+        if (voice.channel >= 0) {
+            freeChannel(voice.channel);
+            voice.channel = -1;
+        } else {
+            virtualVoices--;
+        }
+        if (!voice.instanced) {
+            boundVoices.remove(voice.src);
+            voice.src.setStatus(Status.Stopped);
+            voice.src.setChannel(-1);
+        }
+    }
+
+    /**
+     * Allocates a channel for a voice, taking it from the worst ranked voice
+     * if they are all used and the voice outranks it.
+     *
+     * @return the channel, or -1 if the voice must stay virtual
+     */
+    private int allocateChannel(Voice voice) {
+        int index = newChannel();
+        if (index != -1) {
+            return index;
+        }
 
-                chanSrcs[index] = src;
-                setSourceParams(channels[index], src, false);
-                attachAudioToSource(channels[index], data, src.isLooping());
+        long now = System.nanoTime();
+        scoreVoice(voice, now);
+        Voice worst = null;
+        for (Voice v : chanVoices) {
+            if (v != null) {
+                scoreVoice(v, now);
+                if (worst == null || VOICE_ORDER.compare(v, worst) > 0) {
+                    worst = v;
+                }
             }
+        }
+        if (worst == null || VOICE_ORDER.compare(voice, worst) >= 0) {
+            return -1;
+        }
+        virtualize(worst);
+        return newChannel();
+    }
 
-            al.alSourcePlay(channels[src.getChannel()]);
-            src.setStatus(Status.Playing);
+    /**
+     * Plays a voice on the given channel.
+     *
+     * @param seek true to resume a virtual voice at its playback time
+     */
+    private void startVoice(Voice voice, int index, boolean seek) {
+        chanVoices[index] = voice;
+        voice.channel = index;
+        virtualVoices--;
+        if (!voice.instanced) {
+            voice.src.setChannel(index);
         }
+
+        Command cmd = postCommand(voice.instanced ? CMD_PLAY_INSTANCE : CMD_PLAY);
+        cmd.channel = index;
+        cmd.generation = chanGens[index];
+        cmd.src = voice.src;
+        cmd.state.set(voice.src);
+        cmd.flag = true;
+        cmd.seek = seek;
+        cmd.x = voice.time;
+        publish(cmd, true);
     }
 
-    public void pauseSource(AudioSource src) {
-        checkDead();
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
-            }
+    /**
+     * Takes the channel of a voice, which keeps playing virtually.
+     */
+    private void virtualize(Voice voice) {
+        int chan = voice.channel;
+        boolean playing = voice.instanced || voice.src.getStatus() == Status.Playing;
+        float time = getChannelPlaybackTime(voice, playing);
+        if (time >= 0) {
+            voice.time = time;
+        }
+
+        Command cmd = postCommand(CMD_VIRTUALIZE);
+        cmd.channel = chan;
+        cmd.generation = chanGens[chan];
+        cmd.src = voice.src;
+        publish(cmd, false);
+
+        freeChannel(chan);
+        voice.channel = -1;
+        virtualVoices++;
+        if (!voice.instanced) {
+            voice.src.setChannel(-1);
+        }
+    }
 
-            if (src.getStatus() == Status.Playing) {
-                assert src.getChannel() != -1;
+    /**
+     * Computes the rank of a voice. Paused voices rank last; streams keep
+     * their channel since they can't always be resumed at their playback
+     * time.
+     */
+    private void scoreVoice(Voice voice, long now) {
+        AudioSource src = voice.src;
+        if (!voice.instanced && src.getStatus() != Status.Playing) {
+            voice.priority = Integer.MIN_VALUE;
+            voice.score = 0;
+            return;
+        }
+        if (voice.channel >= 0 && src.getAudioData() instanceof AudioStream) {
+            voice.priority = Integer.MAX_VALUE;
+            voice.score = Float.MAX_VALUE;
+            return;
+        }
 
-                al.alSourcePause(channels[src.getChannel()]);
-                src.setStatus(Status.Paused);
+        float audibility = src.getVolume();
+        if (src.isPositional() && listener != null) {
+            // inverse distance clamped model, the OpenAL default
+            float ref = src.getRefDistance();
+            float distance = src.getPosition().distance(listener.getLocation());
+            distance = Math.min(Math.max(distance, ref), src.getMaxDistance());
+            if (distance > 0) {
+                audibility *= ref / distance;
             }
         }
+        if (src.getDryFilter() instanceof LowPassFilter) {
+            // muffled sounds, e.g. occluded ones
+            audibility *= ((LowPassFilter) src.getDryFilter()).getVolume();
+        }
+
+        float age = (now - voice.startTime) / 1000000000f;
+        voice.priority = src.getPriority();
+        voice.score = audibility / (1f + AGE_WEIGHT * Math.min(age, 1f / AGE_WEIGHT));
+        if (voice.channel >= 0) {
+            voice.score *= CHANNEL_BONUS;
+        }
     }
 
-    public void stopSource(AudioSource src) {
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
+    /**
+     * Advances the playback time of the virtual voices, and gives the
+     * channels to the best ranked voices.
+     */
+    private void updateVirtualVoices(float tpf) {
+        for (int i = voices.size() - 1; i >= 0; i--) {
+            Voice voice = voices.get(i);
+            AudioSource src = voice.src;
+            if (voice.channel >= 0 || (!voice.instanced && src.getStatus() != Status.Playing)) {
+                continue;
             }
 
-            if (src.getStatus() != Status.Stopped) {
-                int chan = src.getChannel();
-                assert chan != -1; // if it's not stopped, must have id
+            voice.time += tpf * src.getPitch();
+            float duration = src.getAudioData().getDuration();
+            if (duration > 0 && voice.time >= duration) {
+                if (!voice.instanced && src.isLooping()) {
+                    voice.time %= duration;
+                } else {
+                    // finished playing virtually
+                    finishVoice(voice);
+                }
+            }
+        }
+        if (virtualVoices == 0) {
+            return;
+        }
 
-                src.setStatus(Status.Stopped);
-                src.setChannel(-1);
-                clearChannel(chan);
-                freeChannel(chan);
-                
-                if (src.getAudioData() instanceof AudioStream) {
-                    // If the stream is seekable, then rewind it.
-                    // Otherwise, close it, as it is no longer valid.
-                    AudioStream stream = (AudioStream)src.getAudioData();
-                    if (stream.isSeekable()) {
-                        stream.setTime(0);
-                    } else {
-                        stream.close();
-                    }
+        long now = System.nanoTime();
+        rankedVoices.clear();
+        for (int i = 0; i < voices.size(); i++) {
+            Voice voice = voices.get(i);
+            scoreVoice(voice, now);
+            rankedVoices.add(voice);
+        }
+        Collections.sort(rankedVoices, VOICE_ORDER);
+
+        // the best ranked voices take the channels of the worst ranked ones
+        int slots = channels.length;
+        int worst = rankedVoices.size() - 1;
+        for (int i = 0; i < slots && i < rankedVoices.size(); i++) {
+            Voice voice = rankedVoices.get(i);
+            if (voice.channel >= 0 || voice.priority == Integer.MIN_VALUE) {
+                continue;
+            }
+            int index = newChannel();
+            while (index == -1) {
+                while (worst >= slots && rankedVoices.get(worst).channel < 0) {
+                    worst--;
                 }
+                if (worst < slots) {
+                    break;
+                }
+                virtualize(rankedVoices.get(worst--));
+                index = newChannel();
+            }
+            if (index == -1) {
+                break;
+            }
+            startVoice(voice, index, true);
+        }
+
+        // forget the worst ranked one shots if there are too many
+        for (int i = rankedVoices.size() - 1; i >= slots && virtualVoices > MAX_VIRTUAL_VOICES; i--) {
+            Voice voice = rankedVoices.get(i);
+            if (voice.instanced && voice.channel < 0) {
+                finishVoice(voice);
             }
         }
+        rankedVoices.clear();
     }
 
     private int convertFormat(AudioData ad) {
@@ -1171,13 +1966,17 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
 
     private void updateAudioStream(AudioStream as) {
         if (as.getIds() != null) {
-            deleteAudioData(as);
+            deleteAudioDataNow(as);
         }
 
-        int[] ids = new int[STREAMING_BUFFER_COUNT];
-        ib.position(0).limit(STREAMING_BUFFER_COUNT);
-        al.alGenBuffers(STREAMING_BUFFER_COUNT, ib);
-        ib.position(0).limit(STREAMING_BUFFER_COUNT);
+        int count = getBufferCount(as);
+        if (ib.capacity() < count) {
+            ib = BufferUtils.createIntBuffer(count);
+        }
+        int[] ids = new int[count];
+        ib.position(0).limit(count);
+        al.alGenBuffers(count, ib);
+        ib.position(0).limit(count);
         ib.get(ids);
 
         // Not registered with object manager.
@@ -1197,6 +1996,16 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     }
 
     public void deleteFilter(Filter filter) {
+        if (Thread.currentThread() == decoderThread || !decoderThread.isAlive()) {
+            deleteFilterNow(filter);
+        } else {
+            Command cmd = postCommand(CMD_DELETE_FILTER);
+            cmd.data = filter;
+            publish(cmd, false);
+        }
+    }
+
+    private void deleteFilterNow(Filter filter) {
         int id = filter.getId();
         if (id != -1) {
             ib.position(0).limit(1);
@@ -1207,29 +2016,41 @@ public class ALAudioRenderer implements AudioRenderer, Runnable {
     }
 
     public void deleteAudioData(AudioData ad) {
-        synchronized (threadLock) {
-            if (audioDisabled) {
-                return;
-            }
+        if (audioDisabled) {
+            return;
+        }
 
-            if (ad instanceof AudioBuffer) {
-                AudioBuffer ab = (AudioBuffer) ad;
-                int id = ab.getId();
-                if (id != -1) {
-                    ib.put(0, id);
-                    ib.position(0).limit(1);
-                    al.alDeleteBuffers(1, ib);
-                    ab.resetObject();
-                }
-            } else if (ad instanceof AudioStream) {
-                AudioStream as = (AudioStream) ad;
-                int[] ids = as.getIds();
-                if (ids != null) {
-                    ib.clear();
-                    ib.put(ids).flip();
-                    al.alDeleteBuffers(ids.length, ib);
-                    as.resetObject();
+        // the object manager deletes unused data from the decoder thread
+        if (Thread.currentThread() == decoderThread || !decoderThread.isAlive()) {
+            deleteAudioDataNow(ad);
+        } else {
+            Command cmd = postCommand(CMD_DELETE_DATA);
+            cmd.data = ad;
+            publish(cmd, false);
+        }
+    }
+
+    private void deleteAudioDataNow(AudioData ad) {
+        if (ad instanceof AudioBuffer) {
+            AudioBuffer ab = (AudioBuffer) ad;
+            int id = ab.getId();
+            if (id != -1) {
+                ib.put(0, id);
+                ib.position(0).limit(1);
+                al.alDeleteBuffers(1, ib);
+                ab.resetObject();
+            }
+        } else if (ad instanceof AudioStream) {
+            AudioStream as = (AudioStream) ad;
+            int[] ids = as.getIds();
+            if (ids != null) {
+                if (ib.capacity() < ids.length) {
+                    ib = BufferUtils.createIntBuffer(ids.length);
                 }
+                ib.clear();
+                ib.put(ids).flip();
+                al.alDeleteBuffers(ids.length, ib);
+                as.resetObject();
             }
         }
     }
@@ -31,15 +31,30 @@
  */
 package com.jme3.util.blockparser;
 
+import com.jme3.util.DigestUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BlockLanguageParser {
     
+    private static int cacheSize = 256;
+    private static final LinkedHashMap<String, List<Statement>> cache
+            = new LinkedHashMap<String, List<Statement>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Statement>> eldest) {
+            return size() > cacheSize;
+        }
+    };
+    
     private Reader reader;
     private ArrayList<Statement> statementStack = new ArrayList<Statement>();
     private Statement lastStatement;
@@ -121,4 +136,72 @@ public class BlockLanguageParser {
         parser.load(in);
         return parser.statementStack.get(0).getContents();
     }
+    
+    /**
+     * Parses the given stream, reusing the statement tree of a previous
+     * parse if a document with the same content was already parsed.
+     * The trees are keyed by a hash of the content, so the same document
+     * loaded under different names or reloaded after the asset cache was
+     * cleared is only parsed once.
+     * <p>
+     * The returned statements are shared and must be treated as read only.
+     * 
+     * @param in the stream to parse
+     * @return the root statements
+     * @throws IOException if the stream cannot be read
+     */
+    public static List<Statement> parseCached(InputStream in) throws IOException {
+        byte[] content = readFully(in);
+        String hash = DigestUtil.sha1Hex(content);
+        synchronized (cache) {
+            List<Statement> roots = cache.get(hash);
+            if (roots != null) {
+                return roots;
+            }
+        }
+        List<Statement> roots = Collections.unmodifiableList(parse(new ByteArrayInputStream(content)));
+        synchronized (cache) {
+            if (cacheSize > 0) {
+                cache.put(hash, roots);
+            }
+        }
+        return roots;
+    }
+    
+    /**
+     * Sets the maximum number of statement trees kept by
+     * {@link #parseCached(java.io.InputStream) }, the least recently used
+     * ones are evicted first. 0 disables the cache.
+     * default is 256.
+     * 
+     * @param size the maximum number of cached documents
+     */
+    public static void setCacheSize(int size) {
+        synchronized (cache) {
+            cacheSize = size;
+            while (cache.size() > size) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+    
+    /**
+     * Removes all the statement trees from the cache.
+     */
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+    
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+    
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.util.clone;
+
+import java.util.Arrays;
+
+/**
+ *  Records the sequence of clone operations performed by a Cloner on
+ *  an object graph so that later clones of the same graph can replay it.
+ *
+ *  <p>The first time a Cloner clones an object with a plan set, every
+ *  call to clone() made while cloning that graph is recorded along with how
+ *  the object was cloned (clone function, array copy, jmeClone() or Java
+ *  clone()) and, for objects already cloned, which earlier clone they
+ *  resolved to.  When the same root object is cloned again with the plan,
+ *  the Cloner verifies each call against the recorded original object by
+ *  identity and takes the recorded action directly: the clones are kept in
+ *  a plain array indexed by their position in the plan instead of the
+ *  identity hash map, and the clone function is only looked up for the
+ *  objects recorded as cloned by one.</p>
+ *
+ *  <p>This makes repeatedly spawning copies of the same prefab much
+ *  cheaper.  If the graph changed since the plan was recorded, the first
+ *  mismatching call makes the Cloner fall back to its regular behavior
+ *  for the rest of the clone, which is then just as correct, and the plan
+ *  is recorded again the next time it is used.</p>
+ *
+ *  <p>A plan keeps references to the objects of the original graph.  It
+ *  should only be shared between cloners configured with the same clone
+ *  functions and is not thread safe.</p>
+ *
+ *  <p>Usage:</p>
+ *  <pre>
+ *  ClonePlan plan = new ClonePlan();
+ *  for( int i = 0; i &lt; 100; i++ ) {
+ *      Spatial enemy = prefab.clone(true, plan);
+ *      ...
+ *  }
+ *  </pre>
+ */
+public class ClonePlan {
+
+    // Operations
+    static final byte NEW_FUNCTION = 1;
+    static final byte NEW_ARRAY = 2;
+    static final byte NEW_JME = 3;
+    static final byte NEW_JAVA = 4;
+    static final byte SEEN = 5;
+    static final byte PRESET = 6;
+    static final byte QUERY = 7;
+
+    Object root;
+    Object[] originals = new Object[64];
+    byte[] ops = new byte[64];
+    int[] args = new int[64];
+    int size;
+    int slotCount;
+    boolean recorded;
+
+    /**
+     *  Creates an empty plan, recorded by the first clone it is used for.
+     */
+    public ClonePlan() {
+    }
+
+    /**
+     *  Returns true if the plan has been recorded and will be replayed
+     *  when its root object is cloned.
+     */
+    public boolean isRecorded() {
+        return recorded;
+    }
+
+    /**
+     *  Returns the number of recorded clone() and isCloned() calls.
+     */
+    public int getStepCount() {
+        return size;
+    }
+
+    /**
+     *  Forgets the recorded sequence and the references to the original
+     *  graph.  The plan is recorded again the next time it is used.
+     */
+    public void reset() {
+        // new arrays, a cloner may still refer to the previous sequence
+        originals = new Object[64];
+        ops = new byte[64];
+        args = new int[64];
+        root = null;
+        size = 0;
+        slotCount = 0;
+        recorded = false;
+    }
+
+    /**
+     *  Starts recording a new sequence for the specified root.
+     */
+    void beginRecording( Object root ) {
+        reset();
+        this.root = root;
+    }
+
+    void add( Object original, byte op, int arg ) {
+        if( size == ops.length ) {
+            int capacity = size * 2;
+            originals = Arrays.copyOf(originals, capacity);
+            ops = Arrays.copyOf(ops, capacity);
+            args = Arrays.copyOf(args, capacity);
+        }
+        originals[size] = original;
+        ops[size] = op;
+        args[size] = arg;
+        size++;
+    }
+}
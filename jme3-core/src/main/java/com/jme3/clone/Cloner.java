@@ -35,11 +35,14 @@ package com.jme3.util.clone;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -95,6 +98,10 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  *  </pre>
  *
+ *  <p>Cloners cloning the same object graph many times, for example to
+ *  spawn copies of a prefab, can record and replay the clone sequence
+ *  with a {@link ClonePlan}.</p>
+ *
  *  @author    Paul Speed
  */
 public class Cloner {
@@ -111,6 +118,29 @@ public class Cloner {
      */
     private Map<Class, CloneFunction> functions = new HashMap<Class, CloneFunction>();
 
+    /**
+     *  Types known to have no custom clone function.
+     */
+    private Set<Class> noFunctions = new HashSet<Class>();
+
+    /**
+     *  Marks the clone slots of a replayed plan that are not filled yet.
+     */
+    private static final Object UNSET = new Object();
+
+    private ClonePlan plan;
+    private int depth;
+    private boolean recording;
+    private IdentityHashMap<Object, Integer> recordedSlots;
+    private boolean replaying;
+    private int replayStep;
+    private Object[] slotClones = new Object[0];
+    private boolean replayedIndexPending;
+    private Object[] pendingOriginals;
+    private byte[] pendingOps;
+    private int[] pendingArgs;
+    private int pendingSteps;
+
     /**
      *  Cache the clone methods once for all cloners.
      */
@@ -199,30 +229,100 @@ public class Cloner {
             return null;
         }
 
+        if( depth == 0 ) {
+            beginPlan(object);
+        }
+        depth++;
+        boolean completed = false;
+        try {
+            T result = doClone(object, useFunctions);
+            completed = true;
+            return result;
+        } finally {
+            depth--;
+            if( depth == 0 ) {
+                endPlan(completed);
+            }
+        }
+    }
+
+    private <T> T doClone( T object, boolean useFunctions ) {
+
         if( log.isLoggable(Level.FINER) ) {
             log.finer("cloning:" + object.getClass() + "@" + System.identityHashCode(object));
         }
 
         Class<T> type = objectClass(object);
 
-        // Check the index to see if we already have it
-        Object clone = index.get(object);
-        if( clone != null || index.containsKey(object) ) {
-            if( log.isLoggable(Level.FINER) ) {
-                log.finer("cloned:" + object.getClass() + "@" + System.identityHashCode(object)
-                            + " as cached:" + (clone == null ? "null" : (clone.getClass() + "@" + System.identityHashCode(clone))));
+        // A replayed plan tells directly how to clone the object
+        int op = 0;
+        int slot = -1;
+        CloneFunction<T> f = null;
+        if( replaying ) {
+            op = nextStep(object);
+            if( op == ClonePlan.SEEN ) {
+                return type.cast(slotClones[plan.args[replayStep - 1]]);
+            } else if( op != 0 && op != ClonePlan.PRESET ) {
+                slot = plan.args[replayStep - 1];
+                if( op == ClonePlan.NEW_FUNCTION ) {
+                    f = getCloneFunction(type);
+                    if( f == null ) {
+                        // Not configured like the recording cloner
+                        abandonReplay();
+                        slot = -1;
+                    }
+                }
+            }
+        }
+
+        if( slot < 0 ) {
+            // Check the index to see if we already have it
+            Object clone = index.get(object);
+            if( clone != null || index.containsKey(object) ) {
+                if( log.isLoggable(Level.FINER) ) {
+                    log.finer("cloned:" + object.getClass() + "@" + System.identityHashCode(object)
+                                + " as cached:" + (clone == null ? "null" : (clone.getClass() + "@" + System.identityHashCode(clone))));
+                }
+                if( recording ) {
+                    Integer seen = recordedSlots.get(object);
+                    if( seen != null ) {
+                        plan.add(object, ClonePlan.SEEN, seen);
+                    } else {
+                        plan.add(object, ClonePlan.PRESET, -1);
+                    }
+                }
+                return type.cast(clone);
             }
-            return type.cast(clone);
         }
 
         // See if there is a custom function... that trumps everything.
-        CloneFunction<T> f = getCloneFunction(type);
-        if( f != null ) {
+        if( slot < 0 ) {
+            f = getCloneFunction(type);
+            if( f != null ) {
+                op = ClonePlan.NEW_FUNCTION;
+            } else if( object.getClass().isArray() ) {
+                op = ClonePlan.NEW_ARRAY;
+            } else if( object instanceof JmeCloneable ) {
+                op = ClonePlan.NEW_JME;
+            } else if( object instanceof Cloneable ) {
+                op = ClonePlan.NEW_JAVA;
+            } else {
+                throw new IllegalArgumentException("Object is not cloneable, type:" + type);
+            }
+            if( recording ) {
+                slot = plan.slotCount++;
+                recordedSlots.put(object, slot);
+                plan.add(object, (byte)op, slot);
+            }
+        }
+
+        Object clone;
+        if( op == ClonePlan.NEW_FUNCTION ) {
             T result = f.cloneObject(this, object);
 
             // Store the object in the identity map so that any circular references
             // are resolvable.
-            index.put(object, result);
+            register(object, result, slot);
 
             // Now call the function again to deep clone the fields
             f.cloneFields(this, result, object);
@@ -239,21 +339,21 @@ public class Cloner {
             return result;
         }
 
-        if( object.getClass().isArray() ) {
+        if( op == ClonePlan.NEW_ARRAY ) {
             // Perform an array clone
-            clone = arrayClone(object);
+            clone = arrayClone(object, slot);
 
             // Array clone already indexes the clone
-        } else if( object instanceof JmeCloneable ) {
+        } else if( op == ClonePlan.NEW_JME ) {
             // Use the two-step cloning semantics
             clone = ((JmeCloneable)object).jmeClone();
 
             // Store the object in the identity map so that any circular references
             // are resolvable
-            index.put(object, clone);
+            register(object, clone, slot);
 
             ((JmeCloneable)clone).cloneFields(this, object);
-        } else if( object instanceof Cloneable ) {
+        } else {
 
             // Perform a regular Java shallow clone
             try {
@@ -264,9 +364,7 @@ public class Cloner {
 
             // Store the object in the identity map so that any circular references
             // are resolvable
-            index.put(object, clone);
-        } else {
-            throw new IllegalArgumentException("Object is not cloneable, type:" + type);
+            register(object, clone, slot);
         }
 
         if( log.isLoggable(Level.FINER) ) {
@@ -290,6 +388,7 @@ public class Cloner {
         } else {
             functions.put(type, function);
         }
+        noFunctions.clear();
     }
 
     /**
@@ -299,7 +398,7 @@ public class Cloner {
     @SuppressWarnings("unchecked")
     public <T> CloneFunction<T> getCloneFunction( Class<T> type ) {
         CloneFunction<T> result = (CloneFunction<T>)functions.get(type);
-        if( result == null ) {
+        if( result == null && !noFunctions.contains(type) ) {
             // Do a more exhaustive search
             for( Map.Entry<Class, CloneFunction> e : functions.entrySet() ) {
                 if( e.getKey().isAssignableFrom(type) ) {
@@ -310,6 +409,9 @@ public class Cloner {
             if( result != null ) {
                 // Cache it for later
                 functions.put(type, result);
+            } else {
+                // Most types have no function, don't search again
+                noFunctions.add(type);
             }
         }
         return result;
@@ -323,6 +425,11 @@ public class Cloner {
      *  normally.
      */
     public <T> void setClonedValue( T original, T clone ) {
+        if( replaying ) {
+            abandonReplay();
+        } else if( replayedIndexPending ) {
+            materializeIndex();
+        }
         index.put(original, clone);
     }
 
@@ -333,7 +440,20 @@ public class Cloner {
      *  objects have already been cloned.
      */
     public boolean isCloned( Object o ) {
-        return index.containsKey(o);
+        if( replaying ) {
+            if( replayStep < plan.size && plan.originals[replayStep] == o
+                && plan.ops[replayStep] == ClonePlan.QUERY ) {
+                return plan.args[replayStep++] != 0;
+            }
+            abandonReplay();
+        } else if( replayedIndexPending ) {
+            materializeIndex();
+        }
+        boolean result = index.containsKey(o);
+        if( recording ) {
+            plan.add(o, ClonePlan.QUERY, result ? 1 : 0);
+        }
+        return result;
     }
 
     /**
@@ -342,6 +462,150 @@ public class Cloner {
      */
     public void clearIndex() {
         index.clear();
+        replayedIndexPending = false;
+        pendingOriginals = null;
+        pendingOps = null;
+        pendingArgs = null;
+    }
+
+    /**
+     *  Sets the plan recorded by the next clone of an object graph, or
+     *  replayed if it was recorded for the same root object.  The plan stays
+     *  set for the following clones until set to null.
+     *
+     *  @see ClonePlan
+     */
+    public void setClonePlan( ClonePlan plan ) {
+        if( depth > 0 ) {
+            throw new IllegalStateException("Cannot change the plan while cloning");
+        }
+        this.plan = plan;
+    }
+
+    /**
+     *  Returns the plan used by this cloner or null if it does not use one.
+     */
+    public ClonePlan getClonePlan() {
+        return plan;
+    }
+
+    /**
+     *  Called when a top level clone starts, begins to record or replay
+     *  the plan if any.
+     */
+    private void beginPlan( Object root ) {
+        if( replayedIndexPending ) {
+            materializeIndex();
+        }
+        if( plan == null ) {
+            return;
+        }
+        if( plan.recorded && plan.root == root ) {
+            replaying = true;
+            replayStep = 0;
+            if( slotClones.length < plan.slotCount ) {
+                slotClones = new Object[plan.slotCount];
+            }
+            Arrays.fill(slotClones, 0, plan.slotCount, UNSET);
+        } else {
+            plan.beginRecording(root);
+            recording = true;
+            recordedSlots = new IdentityHashMap<Object, Integer>();
+        }
+    }
+
+    /**
+     *  Called when a top level clone ends.
+     */
+    private void endPlan( boolean completed ) {
+        if( recording ) {
+            recording = false;
+            recordedSlots = null;
+            if( completed ) {
+                plan.recorded = true;
+            } else {
+                plan.reset();
+            }
+        } else if( replaying ) {
+            replaying = false;
+            // The clones are only put in the index if the cloner is used
+            // again, usually it is not.
+            pendingOriginals = plan.originals;
+            pendingOps = plan.ops;
+            pendingArgs = plan.args;
+            pendingSteps = replayStep;
+            replayedIndexPending = true;
+            if( !completed || replayStep != plan.size ) {
+                // The graph changed, record it again next time
+                materializeIndex();
+                plan.reset();
+            }
+        }
+    }
+
+    /**
+     *  Returns the recorded operation for the next clone() call if it is
+     *  made for the recorded object, else stops replaying and returns 0.
+     */
+    private int nextStep( Object object ) {
+        if( replayStep < plan.size && plan.originals[replayStep] == object ) {
+            byte op = plan.ops[replayStep];
+            if( op != ClonePlan.QUERY ) {
+                replayStep++;
+                return op;
+            }
+        }
+        abandonReplay();
+        return 0;
+    }
+
+    /**
+     *  Stops replaying the plan in the middle of a clone, the rest of the
+     *  graph is cloned normally.
+     */
+    private void abandonReplay() {
+        if( log.isLoggable(Level.FINE) ) {
+            log.fine("Clone plan of " + plan.root.getClass() + " does not match at step " + replayStep);
+        }
+        replaying = false;
+        pendingOriginals = plan.originals;
+        pendingOps = plan.ops;
+        pendingArgs = plan.args;
+        pendingSteps = replayStep;
+        materializeIndex();
+        plan.reset();
+    }
+
+    /**
+     *  Puts the clones made by a replayed plan in the index.
+     */
+    private void materializeIndex() {
+        for( int i = 0; i < pendingSteps; i++ ) {
+            byte op = pendingOps[i];
+            if( op == ClonePlan.SEEN || op == ClonePlan.PRESET || op == ClonePlan.QUERY ) {
+                continue;
+            }
+            Object clone = slotClones[pendingArgs[i]];
+            if( clone != UNSET ) {
+                index.put(pendingOriginals[i], clone);
+            }
+        }
+        replayedIndexPending = false;
+        pendingOriginals = null;
+        pendingOps = null;
+        pendingArgs = null;
+    }
+
+    /**
+     *  Stores the clone of an object in the plan slots while replaying,
+     *  else in the index.
+     */
+    private void register( Object object, Object clone, int slot ) {
+        if( replaying && slot >= 0 ) {
+            slotClones[slot] = clone;
+        } else {
+            index.put(object, clone);
+        }
     }
 
     /**
@@ -384,6 +648,10 @@ public class Cloner {
      *  Cloner.clone().
      */
     protected <T> T arrayClone( T object ) {
+        return arrayClone(object, -1);
+    }
+
+    private <T> T arrayClone( T object, int slot ) {
 
         // Java doesn't support the cloning of arrays through reflection unless
         // you open access to Object's protected clone array... which requires
@@ -397,7 +665,7 @@ public class Cloner {
         Object clone = Array.newInstance(elementType, size);
 
         // Store the clone for later lookups
-        index.put(object, clone);
+        register(object, clone, slot);
 
         if( elementType.isPrimitive() ) {
             // Then our job is a bit easier
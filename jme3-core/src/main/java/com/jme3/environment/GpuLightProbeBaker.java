@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.environment;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.environment.generation.JobProgressListener;
+import com.jme3.environment.util.EnvMapUtils;
+import com.jme3.light.LightProbe;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.math.ColorRGBA;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.Renderer;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.shape.Quad;
+import com.jme3.texture.Format;
+import com.jme3.texture.FrameBuffer;
+import com.jme3.texture.MagFilter;
+import com.jme3.texture.MinFilter;
+import com.jme3.texture.TextureCubeMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Bakes LightProbes entirely on the GPU.
+ *
+ * Unlike the {@link EnvironmentCamera} / {@link LightProbeFactory} pair, the
+ * environment is rendered directly into the faces of a cube map, and the
+ * irradiance map and each mip level of the prefiltered env map are then
+ * rendered from it with full screen passes (see Common/MatDefs/Light/IBLKernels.j3md).
+ * Nothing is read back to the CPU.
+ *
+ * A bake is split in steps (6 capture steps, 6 irradiance steps, and 6 steps
+ * per prefiltered mip level). By default all the steps are rendered in the
+ * frame following the bake request, but the number of steps per frame can be
+ * limited with {@link #setStepsPerFrame(int)} so that probes can be rebaked
+ * continuously (for example for a dynamic time of day) within a frame budget.
+ * When a probe that is already ready is rebaked, its maps are updated in place
+ * and it stays ready during the whole process.
+ *
+ * The listener methods are called inside an app.enqueue callable, like with
+ * {@link LightProbeFactory}.
+ *
+ * @see LightProbeFactory
+ */
+public class GpuLightProbeBaker extends BaseAppState {
+
+    private static final int CAPTURE_STEPS = 6;
+    private static final int IRRADIANCE_STEPS = 6;
+
+    protected int size = 128;
+    protected Format imageFormat = Format.RGB16F;
+    protected int stepsPerFrame = 0;
+
+    private TextureCubeMap envMap;
+    private final ViewPort[] viewports = new ViewPort[6];
+    private final FrameBuffer[] captureBuffers = new FrameBuffer[6];
+    private final Map<TextureCubeMap, FrameBuffer[]> targetBuffers = new HashMap<TextureCubeMap, FrameBuffer[]>();
+    private final List<BakeJob> jobs = new ArrayList<BakeJob>();
+    private Material kernelMaterial;
+    private Geometry fsQuad;
+    private Camera quadCam;
+
+    /**
+     * Creates a GpuLightProbeBaker with a size of 128
+     */
+    public GpuLightProbeBaker() {
+    }
+
+    /**
+     * Creates a GpuLightProbeBaker with the given size and format.
+     *
+     * @param size the size of the environment map and of the generated maps.
+     * @param imageFormat the format of the generated maps.
+     */
+    public GpuLightProbeBaker(int size, Format imageFormat) {
+        this.size = size;
+        this.imageFormat = imageFormat;
+    }
+
+    /**
+     * Bakes (or rebakes) the given probe at its position.
+     * Must be called from the render thread.
+     *
+     * @param scene the scene to capture
+     * @param probe the probe to bake
+     * @param listener the listener of the bake progress, can be null.
+     */
+    public void bake(Spatial scene, LightProbe probe, JobProgressListener<LightProbe> listener) {
+        if (probe.getIrradianceMap() == null || probe.getIrradianceMap().getImage().getWidth() != size
+                || probe.getIrradianceMap().getImage().getFormat() != imageFormat) {
+            probe.setReady(false);
+            releaseTargets(probe.getIrradianceMap());
+            releaseTargets(probe.getPrefilteredEnvMap());
+            probe.setIrradianceMap(EnvMapUtils.createIrradianceMap(size, imageFormat));
+            probe.setPrefilteredMap(EnvMapUtils.createPrefilteredEnvMap(size, imageFormat));
+        }
+        jobs.add(new BakeJob(scene, probe, listener));
+    }
+
+    /**
+     * Sets the maximum number of bake steps rendered each frame.
+     * A step is the rendering of one face of one map (or of one mip level of
+     * the prefiltered env map). 0 means that a whole bake is rendered in one frame.
+     *
+     * @param stepsPerFrame the number of steps per frame, 0 for no limit.
+     */
+    public void setStepsPerFrame(int stepsPerFrame) {
+        this.stepsPerFrame = stepsPerFrame;
+    }
+
+    /**
+     * @return the maximum number of bake steps rendered each frame.
+     */
+    public int getStepsPerFrame() {
+        return stepsPerFrame;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Format getImageFormat() {
+        return imageFormat;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        ColorRGBA backgroundColor = app.getViewPort().getBackgroundColor();
+
+        envMap = new TextureCubeMap(size, size, imageFormat);
+        envMap.setMagFilter(MagFilter.Bilinear);
+        envMap.setMinFilter(MinFilter.BilinearNoMipMaps);
+
+        for (int i = 0; i < 6; i++) {
+            Camera cam = new Camera(size, size);
+            cam.setAxes(EnvironmentCamera.axisX[i], EnvironmentCamera.axisY[i], EnvironmentCamera.axisZ[i]);
+            cam.setFrustumPerspective(90f, 1f, 1, 1000);
+            viewports[i] = new ViewPort("GpuEnvView" + i, cam);
+            viewports[i].setClearFlags(true, true, true);
+            viewports[i].setBackgroundColor(backgroundColor);
+
+            captureBuffers[i] = new FrameBuffer(size, size, 1);
+            captureBuffers[i].setDepthBuffer(Format.Depth);
+            captureBuffers[i].setColorTexture(envMap, TextureCubeMap.Face.values()[i]);
+            viewports[i].setOutputFrameBuffer(captureBuffers[i]);
+        }
+
+        kernelMaterial = new Material(app.getAssetManager(), "Common/MatDefs/Light/IBLKernels.j3md");
+        kernelMaterial.setTexture("EnvMap", envMap);
+        kernelMaterial.getAdditionalRenderState().setDepthTest(false);
+        kernelMaterial.getAdditionalRenderState().setDepthWrite(false);
+        kernelMaterial.getAdditionalRenderState().setFaceCullMode(RenderState.FaceCullMode.Off);
+
+        fsQuad = new Geometry("IBL quad", new Quad(1, 1));
+        fsQuad.setMaterial(kernelMaterial);
+        fsQuad.updateGeometricState();
+
+        quadCam = new Camera(size, size);
+    }
+
+    @Override
+    public void render(RenderManager renderManager) {
+        int budget = stepsPerFrame <= 0 ? Integer.MAX_VALUE : stepsPerFrame;
+        boolean rendered = false;
+        while (budget > 0 && !jobs.isEmpty()) {
+            BakeJob job = jobs.get(0);
+            renderStep(renderManager, job);
+            rendered = true;
+            budget--;
+            job.step++;
+            if (job.step == job.nbSteps) {
+                jobs.remove(0);
+                notifyDone(job);
+            } else {
+                notifyProgress(job);
+            }
+        }
+        if (rendered) {
+            renderManager.getRenderer().setFrameBuffer(null);
+        }
+    }
+
+    private void renderStep(RenderManager renderManager, BakeJob job) {
+        int step = job.step;
+        if (step == 0) {
+            notifyStart(job);
+        }
+        if (step < CAPTURE_STEPS) {
+            ViewPort vp = viewports[step];
+            vp.getCamera().setLocation(job.probe.getPosition());
+            vp.clearScenes();
+            vp.attachScene(job.scene);
+            renderManager.renderViewPort(vp, 0.16f);
+            vp.clearScenes();
+            return;
+        }
+
+        step -= CAPTURE_STEPS;
+        if (step < IRRADIANCE_STEPS) {
+            kernelMaterial.setBoolean("Irradiance", true);
+            kernelMaterial.setInt("NbSamples", 1024);
+            renderKernel(renderManager, job.probe.getIrradianceMap(), step, 0, 1);
+            return;
+        }
+
+        step -= IRRADIANCE_STEPS;
+        int mipLevel = step / 6;
+        int face = step % 6;
+        kernelMaterial.setBoolean("Irradiance", false);
+        kernelMaterial.setFloat("Roughness", EnvMapUtils.getRoughnessFromMip(mipLevel, job.nbMipMaps));
+        kernelMaterial.setInt("NbSamples", EnvMapUtils.getSampleFromMip(mipLevel, job.nbMipMaps));
+        renderKernel(renderManager, job.probe.getPrefilteredEnvMap(), face, mipLevel, job.nbMipMaps);
+    }
+
+    private void renderKernel(RenderManager renderManager, TextureCubeMap target, int face, int mipLevel, int nbMipMaps) {
+        FrameBuffer[] buffers = targetBuffers.get(target);
+        if (buffers == null) {
+            buffers = new FrameBuffer[6 * nbMipMaps];
+            targetBuffers.put(target, buffers);
+        }
+        int mipSize = Math.max(1, target.getImage().getWidth() >> mipLevel);
+        FrameBuffer fb = buffers[mipLevel * 6 + face];
+        if (fb == null) {
+            fb = new FrameBuffer(mipSize, mipSize, 1);
+            fb.setColorTexture(target, TextureCubeMap.Face.values()[face], mipLevel);
+            buffers[mipLevel * 6 + face] = fb;
+        }
+
+        kernelMaterial.setInt("FaceId", face);
+        quadCam.resize(mipSize, mipSize, false);
+        renderManager.setCamera(quadCam, true);
+
+        Renderer r = renderManager.getRenderer();
+        r.setFrameBuffer(fb);
+        r.clearBuffers(true, false, false);
+        renderManager.renderGeometry(fsQuad);
+    }
+
+    private void notifyStart(final BakeJob job) {
+        if (job.listener == null) {
+            return;
+        }
+        getApplication().enqueue(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                job.listener.start();
+                return null;
+            }
+        });
+    }
+
+    private void notifyProgress(final BakeJob job) {
+        if (job.listener == null) {
+            return;
+        }
+        final double progress = (double) job.step / (double) job.nbSteps;
+        getApplication().enqueue(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                job.listener.progress(progress);
+                return null;
+            }
+        });
+    }
+
+    private void notifyDone(final BakeJob job) {
+        getApplication().enqueue(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                job.probe.setReady(true);
+                if (job.listener != null) {
+                    job.listener.done(job.probe);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void releaseTargets(TextureCubeMap target) {
+        if (target == null) {
+            return;
+        }
+        FrameBuffer[] buffers = targetBuffers.remove(target);
+        if (buffers != null) {
+            for (FrameBuffer fb : buffers) {
+                if (fb != null) {
+                    fb.dispose();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        jobs.clear();
+        for (FrameBuffer fb : captureBuffers) {
+            if (fb != null) {
+                fb.dispose();
+            }
+        }
+        for (TextureCubeMap target : new ArrayList<TextureCubeMap>(targetBuffers.keySet())) {
+            releaseTargets(target);
+        }
+        envMap.getImage().dispose();
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    /**
+     * An inner class to keep track of a bake job.
+     */
+    protected class BakeJob {
+
+        final Spatial scene;
+        final LightProbe probe;
+        final JobProgressListener<LightProbe> listener;
+        final int nbMipMaps;
+        final int nbSteps;
+        int step = 0;
+
+        BakeJob(Spatial scene, LightProbe probe, JobProgressListener<LightProbe> listener) {
+            this.scene = scene;
+            this.probe = probe;
+            this.listener = listener;
+            this.nbMipMaps = probe.getPrefilteredEnvMap().getImage().getMipMapSizes().length;
+            this.nbSteps = CAPTURE_STEPS + IRRADIANCE_STEPS + 6 * nbMipMaps;
+        }
+    }
+}
@@ -33,14 +33,16 @@ package com.jme3.environment;
 
 import com.jme3.light.LightProbe;
 import com.jme3.environment.generation.JobProgressListener;
-import com.jme3.environment.generation.PrefilteredEnvMapFaceGenerator;
+import com.jme3.environment.generation.PrefilteredEnvMapTileGenerator;
 import com.jme3.environment.generation.IrradianceMapGenerator;
 import com.jme3.environment.util.EnvMapUtils;
+import com.jme3.environment.util.FloatCubeMap;
 import com.jme3.environment.generation.JobProgressAdapter;
 import com.jme3.app.Application;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 import com.jme3.texture.TextureCubeMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 /**
@@ -59,6 +61,9 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
  * with a {@link JobProgressListener} to be notified of the progress of the generation process.
  * 
  * The generation will be split in several threads for faster generation. 
+ * By default one thread per available core is used, you can also provide your
+ * own ExecutorService, and ask for a progressive generation of the prefiltered
+ * env map (a coarse map is available quickly, and is then refined).
  * 
  * This class is entirely thread safe and can be called from any thread. 
  * 
@@ -67,11 +72,20 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
  * This means that it's completely safe to modify the scenegraph within the 
  * Listener method, but also means that the even will be delayed until next update loop.
  * 
+ * For probes that need to be rebaked often, see {@link GpuLightProbeBaker}
+ * that does the whole generation on the GPU.
+ * 
  * @see EnvironmentCamera
  * @author bouquet
  */
 public class LightProbeFactory {
 
+    /**
+     * The number of rows (at mip 0) of the prefiltered env map faces that are
+     * generated in a single job.
+     */
+    public static final int TILE_SIZE = 32;
+
     /**
      * Creates a LightProbe with the giver EnvironmentCamera in the given scene.
      * 
@@ -113,6 +127,28 @@ public class LightProbeFactory {
      * @return the created LightProbe
      */
     public static LightProbe makeProbe(final EnvironmentCamera envCam, Spatial scene, final JobProgressListener<LightProbe> listener) {
+        return makeProbe(envCam, scene, listener, null, 1);
+    }
+
+    /**
+     * Creates a LightProbe with the giver EnvironmentCamera in the given scene.
+     * 
+     * Same as {@link LightProbeFactory#makeProbe(com.jme3.environment.EnvironmentCamera, com.jme3.scene.Spatial, com.jme3.environment.generation.JobProgressListener) }
+     * but the generation jobs are run by the given executor, and the 
+     * prefiltered env map can be generated progressively: the probe is marked
+     * as ready after the first (coarse) pass, and each following pass uses 4
+     * times more samples until the full quality is reached.
+     * 
+     * @param envCam the EnvironmentCamera
+     * @param scene the Scene
+     * @param listener the listener of the genration progress.
+     * @param executor the executor running the generation jobs. It won't be
+     * shutdown when the generation is done. If null, a dedicated executor with 
+     * one thread per core is used.
+     * @param refinementPasses the number of passes for the prefiltered env map (1 for no refinement)
+     * @return the created LightProbe
+     */
+    public static LightProbe makeProbe(final EnvironmentCamera envCam, Spatial scene, final JobProgressListener<LightProbe> listener, final ExecutorService executor, final int refinementPasses) {
         final LightProbe probe = new LightProbe();
         probe.setPosition(envCam.getPosition());
         probe.setIrradianceMap(EnvMapUtils.createIrradianceMap(envCam.getSize(), envCam.getImageFormat()));
@@ -121,7 +157,7 @@ public class LightProbeFactory {
 
             @Override
             public void done(TextureCubeMap map) {
-                generatePbrMaps(map, probe, envCam.getApplication(), listener);
+                generatePbrMaps(map, probe, envCam.getApplication(), listener, executor, refinementPasses);
             }
         });
         return probe;
@@ -148,6 +184,24 @@ public class LightProbeFactory {
      * @return the created LightProbe
      */
     public static LightProbe updateProbe(final LightProbe probe, final EnvironmentCamera envCam, Spatial scene, final JobProgressListener<LightProbe> listener) {
+        return updateProbe(probe, envCam, scene, listener, null, 1);
+    }
+
+    /**
+     * Updates a LightProbe with the giver EnvironmentCamera in the given scene.
+     * 
+     * See {@link LightProbeFactory#makeProbe(com.jme3.environment.EnvironmentCamera, com.jme3.scene.Spatial, com.jme3.environment.generation.JobProgressListener, java.util.concurrent.ExecutorService, int) }
+     * for the executor and refinementPasses parameters.
+     * 
+     * @param probe the Light probe to update
+     * @param envCam the EnvironmentCamera
+     * @param scene the Scene
+     * @param listener the listener of the genration progress.
+     * @param executor the executor running the generation jobs, or null.
+     * @param refinementPasses the number of passes for the prefiltered env map
+     * @return the created LightProbe
+     */
+    public static LightProbe updateProbe(final LightProbe probe, final EnvironmentCamera envCam, Spatial scene, final JobProgressListener<LightProbe> listener, final ExecutorService executor, final int refinementPasses) {
         
         envCam.setPosition(probe.getPosition());
         
@@ -166,7 +220,7 @@ public class LightProbeFactory {
 
             @Override
             public void done(TextureCubeMap map) {
-                generatePbrMaps(map, probe, envCam.getApplication(), listener);
+                generatePbrMaps(map, probe, envCam.getApplication(), listener, executor, refinementPasses);
             }
         });
         return probe;
@@ -174,30 +228,58 @@ public class LightProbeFactory {
 
     /**
      * Internally called to generate the maps.
-     * This method will spawn 7 thread (one for the IrradianceMap, and one for each face of the prefiltered env map).
-     * Those threads will be executed in a ScheduledThreadPoolExecutor that will be shutdown when the genration is done.
+     * The irradiance map is generated in one job, and each face of the
+     * prefiltered env map is split in bands of {@link #TILE_SIZE} rows (at mip 0)
+     * that are generated in their own job, so that all the threads of the
+     * executor are kept busy.
+     * 
+     * If refinementPasses is greater than 1, the prefiltered env map is first
+     * generated with fewer samples, the probe is marked as ready, and the map
+     * is then regenerated with 4 times more samples each pass until full quality.
      * 
      * @param envMap the raw env map rendered by the env camera
      * @param probe the LigthProbe to generate maps for
      * @param app the Application
      * @param listener a progress listener. (can be null if no progress reporting is needed)
+     * @param executor the executor to run the jobs, or null to use a dedicated one that will be shutdown when the generation is done.
+     * @param refinementPasses the number of passes for the prefiltered env map
      */
-    private static void generatePbrMaps(TextureCubeMap envMap, final LightProbe probe, Application app, final JobProgressListener<LightProbe> listener) {
-        IrradianceMapGenerator irrMapGenerator;
-        PrefilteredEnvMapFaceGenerator[] pemGenerators = new PrefilteredEnvMapFaceGenerator[6];
-
-        final JobState jobState = new JobState(new ScheduledThreadPoolExecutor(7));
+    private static void generatePbrMaps(TextureCubeMap envMap, final LightProbe probe, final Application app, final JobProgressListener<LightProbe> listener, ExecutorService executor, int refinementPasses) {
+        final int size = envMap.getImage().getWidth();
+        final int nbTiles = Math.max(1, size / TILE_SIZE);
+        boolean ownsExecutor = executor == null;
+        if (ownsExecutor) {
+            executor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors());
+        }
+        final JobState jobState = new JobState(executor, ownsExecutor, app, size, nbTiles, Math.max(1, refinementPasses));
 
-        irrMapGenerator = new IrradianceMapGenerator(app, new JobListener(listener, jobState, probe, 6));
-        int size = envMap.getImage().getWidth();
+        IrradianceMapGenerator irrMapGenerator = new IrradianceMapGenerator(app, new JobListener(listener, jobState, probe, 0));
         irrMapGenerator.setGenerationParam(EnvMapUtils.duplicateCubeMap(envMap), size, EnvMapUtils.FixSeamsMethod.Wrap, probe.getIrradianceMap());
+        executor.execute(irrMapGenerator);
+
+        final TextureCubeMap sourceMap = EnvMapUtils.duplicateCubeMap(envMap);
+        executor.execute(new Runnable() {
 
-        jobState.executor.execute(irrMapGenerator);
+            @Override
+            public void run() {
+                jobState.source = new FloatCubeMap(sourceMap);
+                startPass(jobState, probe, listener);
+            }
+        });
+    }
 
-        for (int i = 0; i < pemGenerators.length; i++) {
-            pemGenerators[i] = new PrefilteredEnvMapFaceGenerator(app, i, new JobListener(listener, jobState, probe, i));
-            pemGenerators[i].setGenerationParam(EnvMapUtils.duplicateCubeMap(envMap), size, EnvMapUtils.FixSeamsMethod.Wrap, probe.getPrefilteredEnvMap());
-            jobState.executor.execute(pemGenerators[i]);
+    /**
+     * Sends the prefiltered env map jobs of the current pass to the executor.
+     */
+    private static void startPass(JobState jobState, LightProbe probe, JobProgressListener<LightProbe> listener) {
+        float[][] samples = PrefilteredEnvMapTileGenerator.createSampleTables(jobState.size, jobState.passes - 1 - jobState.pass);
+        int index = 1;
+        for (int face = 0; face < 6; face++) {
+            for (int tile = 0; tile < jobState.nbTiles; tile++) {
+                PrefilteredEnvMapTileGenerator generator = new PrefilteredEnvMapTileGenerator(jobState.app, face, tile, jobState.nbTiles, new JobListener(listener, jobState, probe, index++));
+                generator.setGenerationParam(jobState.source, samples, jobState.size, probe.getPrefilteredEnvMap());
+                jobState.executor.execute(generator);
+            }
         }
     }
 
@@ -206,13 +288,27 @@ public class LightProbeFactory {
      */
     private static class JobState {
 
-        double progress[] = new double[7];
-        boolean done[] = new boolean[7];
-        ScheduledThreadPoolExecutor executor;
+        double progress[];
+        boolean done[];
+        ExecutorService executor;
+        boolean ownsExecutor;
+        Application app;
         boolean started = false;
+        volatile FloatCubeMap source;
+        int size;
+        int nbTiles;
+        int passes;
+        int pass = 0;
 
-        public JobState(ScheduledThreadPoolExecutor executor) {
+        public JobState(ExecutorService executor, boolean ownsExecutor, Application app, int size, int nbTiles, int passes) {
             this.executor = executor;
+            this.ownsExecutor = ownsExecutor;
+            this.app = app;
+            this.size = size;
+            this.nbTiles = nbTiles;
+            this.passes = passes;
+            progress = new double[1 + 6 * nbTiles];
+            done = new boolean[1 + 6 * nbTiles];
         }
 
         boolean isDone() {
@@ -224,12 +320,25 @@ public class LightProbeFactory {
             return true;
         }
 
+        /**
+         * resets the prefiltered env map jobs for the next pass. The irradiance
+         * map job (index 0) is only run once.
+         */
+        void nextPass() {
+            pass++;
+            for (int i = 1; i < done.length; i++) {
+                done[i] = false;
+                progress[i] = 0;
+            }
+        }
+
         float getProgress() {
             float mean = 0;
             for (double progres : progress) {
                 mean += progres;
             }
-            return mean / 7f;
+            mean /= progress.length;
+            return (pass + mean) / passes;
         }
     }
 
@@ -270,21 +379,34 @@ public class LightProbeFactory {
         @Override
         public void done(Integer result) {
             if (globalListener != null) {
-                if (result < 6) {
-                    globalListener.step("Prefiltered env map face " + result + " generated");
+                if (index > 0) {
+                    globalListener.step("Prefiltered env map face " + result + " tile generated");
                 } else {
                     globalListener.step("Irradiance map generated");
-
                 }
             }
 
             jobState.done[index] = true;
             if (jobState.isDone()) {
+                if (probe.isReady()) {
+                    //a refined version of the map has been generated.
+                    probe.getPrefilteredEnvMap().getImage().setUpdateNeeded();
+                }
                 probe.setReady(true);
+                if (jobState.pass + 1 < jobState.passes) {
+                    if (globalListener != null) {
+                        globalListener.step("Refinement pass " + (jobState.pass + 1) + " of " + jobState.passes + " done");
+                    }
+                    jobState.nextPass();
+                    startPass(jobState, probe, globalListener);
+                    return;
+                }
                 if (globalListener != null) {
                     globalListener.done(probe);
                 }
-                jobState.executor.shutdownNow();
+                if (jobState.ownsExecutor) {
+                    jobState.executor.shutdownNow();
+                }
             }
         }
     }
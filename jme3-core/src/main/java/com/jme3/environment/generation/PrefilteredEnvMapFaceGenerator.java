@@ -33,21 +33,19 @@ package com.jme3.environment.generation;
 
 import com.jme3.environment.util.CubeMapWrapper;
 import com.jme3.environment.util.EnvMapUtils;
+import com.jme3.environment.util.FloatCubeMap;
 import com.jme3.app.Application;
-import com.jme3.math.ColorRGBA;
 import static com.jme3.math.FastMath.abs;
-import static com.jme3.math.FastMath.clamp;
 import static com.jme3.math.FastMath.pow;
 import static com.jme3.math.FastMath.sqrt;
 import com.jme3.math.Vector3f;
 import com.jme3.math.Vector4f;
 import com.jme3.texture.TextureCubeMap;
-import static com.jme3.environment.util.EnvMapUtils.getHammersleyPoint;
+import static com.jme3.environment.util.EnvMapUtils.getGGXSamples;
 import static com.jme3.environment.util.EnvMapUtils.getRoughnessFromMip;
 import static com.jme3.environment.util.EnvMapUtils.getSampleFromMip;
-import static com.jme3.environment.util.EnvMapUtils.getVectorFromCubemapFaceTexCoord;
+import static com.jme3.environment.util.EnvMapUtils.prefilterEnvMapRows;
 import java.util.concurrent.Callable;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -72,10 +70,6 @@ public class PrefilteredEnvMapFaceGenerator extends RunnableWithProgress {
     private TextureCubeMap store;
     private final Application app;
     private int face = 0;
-    Vector4f Xi = new Vector4f();
-    Vector3f H = new Vector3f();
-    Vector3f tmp = new Vector3f();
-    ColorRGBA c = new ColorRGBA();
     Vector3f tmp1 = new Vector3f();
     Vector3f tmp2 = new Vector3f();
     Vector3f tmp3 = new Vector3f();
@@ -117,10 +111,6 @@ public class PrefilteredEnvMapFaceGenerator extends RunnableWithProgress {
     }
     
     private void init(){
-         Xi.set(0, 0, 0, 0);
-         H.set(0, 0, 0);
-         tmp.set(0, 0, 0);
-         c.set(1, 1, 1, 1);
          tmp1.set(0, 0, 0);
          tmp2.set(0, 0, 0);
          tmp3.set(0, 0, 0);
@@ -170,67 +160,20 @@ public class PrefilteredEnvMapFaceGenerator extends RunnableWithProgress {
         setEnd(nbMipMap);
         
 
-        CubeMapWrapper sourceWrapper = new CubeMapWrapper(sourceEnvMap);
+        FloatCubeMap source = new FloatCubeMap(sourceEnvMap);
         CubeMapWrapper targetWrapper = new CubeMapWrapper(pem);
 
-        Vector3f texelVect = new Vector3f();
-        Vector3f color = new Vector3f();
-        ColorRGBA outColor = new ColorRGBA();
         for (int mipLevel = 0; mipLevel < nbMipMap; mipLevel++) {
             float roughness = getRoughnessFromMip(mipLevel, nbMipMap);
-            int nbSamples = getSampleFromMip(mipLevel, nbMipMap);
+            float[] samples = getGGXSamples(roughness, getSampleFromMip(mipLevel, nbMipMap));
             int targetMipMapSize = (int) pow(2, nbMipMap + 1 - mipLevel);
-
-            for (int y = 0; y < targetMipMapSize; y++) {
-                for (int x = 0; x < targetMipMapSize; x++) {
-                    color.set(0, 0, 0);
-                    getVectorFromCubemapFaceTexCoord(x, y, targetMipMapSize, face, texelVect, EnvMapUtils.FixSeamsMethod.Wrap);
-                    prefilterEnvMapTexel(sourceWrapper, roughness, texelVect, nbSamples, color);
-                    
-                    outColor.set(Math.max(color.x, 0.0001f), Math.max(color.y,0.0001f), Math.max(color.z, 0.0001f), 1);
-                    log.log(Level.FINE, "coords {0},{1}", new Object[]{x, y});
-                    targetWrapper.setPixel(x, y, face, mipLevel, outColor);
-
-                }
-            }
+            prefilterEnvMapRows(source, samples, face, mipLevel, targetMipMapSize, 0, targetMipMapSize, targetWrapper);
             progress();
         }
 
         return pem;
     }
 
-    private Vector3f prefilterEnvMapTexel(CubeMapWrapper envMapReader, float roughness, Vector3f N, int numSamples, Vector3f store) {
-
-        Vector3f prefilteredColor = store;
-        float totalWeight = 0.0f;
-
-        // a = roughness² and a2 = a²
-        float a2 = roughness * roughness;
-        a2 *= a2;
-        a2 *= 10;
-        for (int i = 0; i < numSamples; i++) {
-            Xi = getHammersleyPoint(i, numSamples, Xi);
-            H = importanceSampleGGX(Xi, a2, N, H);
-
-            H.normalizeLocal();
-            tmp.set(H);
-            float NoH = N.dot(tmp);
-
-            Vector3f L = tmp.multLocal(NoH * 2).subtractLocal(N);
-            float NoL = clamp(N.dot(L), 0.0f, 1.0f);
-            if (NoL > 0) {
-                envMapReader.getPixel(L, c);
-                prefilteredColor.setX(prefilteredColor.x + c.r * NoL);
-                prefilteredColor.setY(prefilteredColor.y + c.g * NoL);
-                prefilteredColor.setZ(prefilteredColor.z + c.b * NoL);
-
-                totalWeight += NoL;
-            }
-        }
-
-        return prefilteredColor.divideLocal(totalWeight);
-    }
-
     public Vector3f importanceSampleGGX(Vector4f xi, float a2, Vector3f normal, Vector3f store) {
         if (store == null) {
             store = new Vector3f();
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.environment.generation;
+
+import com.jme3.app.Application;
+import com.jme3.environment.util.CubeMapWrapper;
+import com.jme3.environment.util.EnvMapUtils;
+import com.jme3.environment.util.FloatCubeMap;
+import com.jme3.texture.TextureCubeMap;
+import static com.jme3.environment.util.EnvMapUtils.getGGXSamples;
+import static com.jme3.environment.util.EnvMapUtils.getRoughnessFromMip;
+import static com.jme3.environment.util.EnvMapUtils.getSampleFromMip;
+import static com.jme3.math.FastMath.pow;
+import java.util.concurrent.Callable;
+
+/**
+ *
+ * Generates a horizontal band of one face of the prefiltered environment map
+ * for PBR, for all the mip levels. Each face can be split in as many bands as
+ * needed so that the work can be spread over all the available cores.
+ *
+ * The source map and the GGX samples are shared (read only) between all the
+ * tiles of a generation, see {@link #createSampleTables(int, int)}.
+ * This job can be lauched from a separate thread.
+ */
+public class PrefilteredEnvMapTileGenerator extends RunnableWithProgress {
+
+    private final Application app;
+    private final int face;
+    private final int tile;
+    private final int nbTiles;
+    private FloatCubeMap sourceMap;
+    private float[][] samples;
+    private int targetMapSize;
+    private TextureCubeMap store;
+    private final JobProgressListener<Integer> faceListener;
+
+    /**
+     * Creates a pem generator for the given band of the given face. The app is
+     * needed to enqueue the call to the listener when the generation is done,
+     * so that this process is thread safe.
+     *
+     * @param app the Application
+     * @param face the face to generate
+     * @param tile the index of the band to generate
+     * @param nbTiles the number of bands the face is split into
+     * @param listener
+     */
+    public PrefilteredEnvMapTileGenerator(Application app, int face, int tile, int nbTiles, JobProgressListener<Integer> listener) {
+        super(listener);
+        this.faceListener = listener;
+        this.app = app;
+        this.face = face;
+        this.tile = tile;
+        this.nbTiles = nbTiles;
+    }
+
+    /**
+     * Fills all the genration parameters
+     *
+     * @param sourceMap the source cube map
+     * @param samples the GGX samples for each mip level
+     * @param targetMapSize the size of the generated map (width or height in
+     * pixel)
+     * @param store The cube map to store the result in.
+     */
+    public void setGenerationParam(FloatCubeMap sourceMap, float[][] samples, int targetMapSize, TextureCubeMap store) {
+        this.sourceMap = sourceMap;
+        this.samples = samples;
+        this.targetMapSize = targetMapSize;
+        this.store = store;
+        reset();
+    }
+
+    @Override
+    public void run() {
+        app.enqueue(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                faceListener.start();
+                return null;
+            }
+        });
+
+        int nbMipMap = samples.length;
+        setEnd(nbMipMap);
+        //each tile writes through its own buffer duplicates, positions are not shared.
+        CubeMapWrapper targetWrapper = new CubeMapWrapper(EnvMapUtils.duplicateCubeMap(store));
+        for (int mipLevel = 0; mipLevel < nbMipMap; mipLevel++) {
+            int targetMipMapSize = (int) pow(2, nbMipMap + 1 - mipLevel);
+            int startY = tile * targetMipMapSize / nbTiles;
+            int endY = (tile + 1) * targetMipMapSize / nbTiles;
+            EnvMapUtils.prefilterEnvMapRows(sourceMap, samples[mipLevel], face, mipLevel, targetMipMapSize, startY, endY, targetWrapper);
+            progress();
+        }
+
+        app.enqueue(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                faceListener.done(face);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Precomputes the GGX samples of each mip level of a prefiltered env map
+     * of the given size.
+     *
+     * The sample count of each level can be divided by 4^sampleReduction, this
+     * is used to quickly compute a coarse preview of the map before refining it.
+     *
+     * @param targetMapSize the size of the prefiltered env map
+     * @param sampleReduction 0 for full quality.
+     * @return the samples for each mip level
+     */
+    public static float[][] createSampleTables(int targetMapSize, int sampleReduction) {
+        int nbMipMap = (int) (Math.log(targetMapSize) / Math.log(2) - 1);
+        float[][] tables = new float[nbMipMap][];
+        for (int mipLevel = 0; mipLevel < nbMipMap; mipLevel++) {
+            int nbSamples = Math.max(1, getSampleFromMip(mipLevel, nbMipMap) >> (sampleReduction * 2));
+            tables[mipLevel] = getGGXSamples(getRoughnessFromMip(mipLevel, nbMipMap), nbSamples);
+        }
+        return tables;
+    }
+}
@@ -158,6 +158,7 @@ public class EnvMapUtils {
         for (ByteBuffer d : srcImg.getData()) {
             cubeImage.addData(d.duplicate());
         }
+        cubeImage.setMipMapSizes(srcImg.getMipMapSizes());
 
         if (srcImg.getEfficentData() != null) {
             // also consilidate efficient data
@@ -666,30 +667,16 @@ public class EnvMapUtils {
 
         int nbMipMap = (int) (Math.log(targetMapSize) / Math.log(2) - 1);
 
-        CubeMapWrapper sourceWrapper = new CubeMapWrapper(sourceEnvMap);
+        FloatCubeMap source = new FloatCubeMap(sourceEnvMap);
         CubeMapWrapper targetWrapper = new CubeMapWrapper(pem);
         targetWrapper.initMipMaps(nbMipMap);
 
-        Vector3f texelVect = new Vector3f();
-        Vector3f color = new Vector3f();
-        ColorRGBA outColor = new ColorRGBA();
         for (int mipLevel = 0; mipLevel < nbMipMap; mipLevel++) {
-            System.err.println("mip level " + mipLevel);
             float roughness = getRoughnessFromMip(mipLevel, nbMipMap);
-            int nbSamples = getSampleFromMip(mipLevel, nbMipMap);
+            float[] samples = getGGXSamples(roughness, getSampleFromMip(mipLevel, nbMipMap));
             int targetMipMapSize = (int) pow(2, nbMipMap + 1 - mipLevel);
             for (int face = 0; face < 6; face++) {
-                System.err.println("face " + face);
-                for (int y = 0; y < targetMipMapSize; y++) {
-                    for (int x = 0; x < targetMipMapSize; x++) {
-                        color.set(0, 0, 0);
-                        getVectorFromCubemapFaceTexCoord(x, y, targetMipMapSize, face, texelVect, FixSeamsMethod.Wrap);
-                        prefilterEnvMapTexel(sourceWrapper, roughness, texelVect, nbSamples, color);
-                        outColor.set(color.x, color.y, color.z, 1.0f);
-                        // System.err.println("coords " + x + "," + y);
-                        targetWrapper.setPixel(x, y, face, mipLevel, outColor);
-                    }
-                }
+                prefilterEnvMapRows(source, samples, face, mipLevel, targetMipMapSize, 0, targetMipMapSize, targetWrapper);
             }
         }
         return pem;
@@ -721,43 +708,6 @@ public class EnvMapUtils {
         return store;
     }
 
-    private static Vector3f prefilterEnvMapTexel(CubeMapWrapper envMapReader, float roughness, Vector3f N, int numSamples, Vector3f store) {        
-
-        Vector3f prefilteredColor = store;
-        float totalWeight = 0.0f;
-
-        TempVars vars = TempVars.get();
-        Vector4f Xi = vars.vect4f1;
-        Vector3f H = vars.vect1;
-        Vector3f tmp = vars.vect2;
-        ColorRGBA c = vars.color;
-        // a = roughness² and a2 = a²
-        float a2 = roughness * roughness;
-        a2 *= a2;
-        a2 *= 10;
-        for (int i = 0; i < numSamples; i++) {
-            Xi = getHammersleyPoint(i, numSamples, Xi);            
-            H = importanceSampleGGX(Xi, a2, N, H, vars);
-
-            H.normalizeLocal();
-            tmp.set(H);
-            float NoH = N.dot(tmp);
-
-            Vector3f L = tmp.multLocal(NoH * 2).subtractLocal(N);
-            float NoL = clamp(N.dot(L), 0.0f, 1.0f);
-            if (NoL > 0) {
-                envMapReader.getPixel(L, c);
-                prefilteredColor.setX(prefilteredColor.x + c.r * NoL);
-                prefilteredColor.setY(prefilteredColor.y + c.g * NoL);
-                prefilteredColor.setZ(prefilteredColor.z + c.b * NoL);
-
-                totalWeight += NoL;
-            }
-        }
-        vars.release();
-        return prefilteredColor.divideLocal(totalWeight);
-    }
-
     public static Vector3f importanceSampleGGX(Vector4f xi, float a2, Vector3f normal, Vector3f store, TempVars vars) {
         if (store == null) {
             store = new Vector3f();
@@ -789,6 +739,110 @@ public class EnvMapUtils {
         return store;
     }
 
+    /**
+     * Precomputes the GGX importance samples for the given roughness.
+     *
+     * In tangent space (the normal being the z axis) the reflected sample
+     * direction L = 2 * (N.H) * H - N does not depend on the normal, so it can be
+     * computed once per mip level instead of once per texel and per sample.
+     * Samples with a null or negative N.L are discarded.
+     *
+     * @param roughness the roughness of the mip level
+     * @param numSamples the number of Hammersley points to generate
+     * @return a packed array of tangent space directions (x,y,z), z being N.L
+     */
+    public static float[] getGGXSamples(float roughness, int numSamples) {
+        // a = roughness² and a2 = a²
+        float a2 = roughness * roughness;
+        a2 *= a2;
+        a2 *= 10;
+
+        Vector4f xi = new Vector4f();
+        float[] samples = new float[numSamples * 3];
+        int count = 0;
+        for (int i = 0; i < numSamples; i++) {
+            xi = getHammersleyPoint(i, numSamples, xi);
+            float cosTheta = sqrt((1f - xi.x) / (1f + (a2 - 1f) * xi.x));
+            float sinTheta = sqrt(1f - cosTheta * cosTheta);
+            float NoL = 2f * cosTheta * cosTheta - 1f;
+            if (NoL > 0) {
+                samples[count++] = 2f * cosTheta * sinTheta * xi.z;
+                samples[count++] = 2f * cosTheta * sinTheta * xi.w;
+                samples[count++] = NoL;
+            }
+        }
+        float[] result = new float[count];
+        System.arraycopy(samples, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Prefilters the given rows of a face of the prefiltered env map, for the
+     * given mip level, using precomputed GGX samples
+     * (see {@link #getGGXSamples(float, int)}).
+     *
+     * Rows are independent from each other so different row ranges of the same
+     * face can be computed from different threads, as long as each thread
+     * writes through its own CubeMapWrapper.
+     *
+     * @param source the source env map
+     * @param samples the tangent space samples for this mip level
+     * @param face the face to compute
+     * @param mipLevel the mip level to write to
+     * @param mipSize the size of the mip level
+     * @param startY the first row to compute
+     * @param endY the row after the last row to compute
+     * @param target the wrapper of the prefiltered env map
+     */
+    public static void prefilterEnvMapRows(FloatCubeMap source, float[] samples, int face, int mipLevel, int mipSize, int startY, int endY, CubeMapWrapper target) {
+        Vector3f N = new Vector3f();
+        ColorRGBA outColor = new ColorRGBA();
+        float[] c = new float[3];
+        for (int y = startY; y < endY; y++) {
+            for (int x = 0; x < mipSize; x++) {
+                getVectorFromCubemapFaceTexCoord(x, y, mipSize, face, N, FixSeamsMethod.Wrap);
+
+                // tangent frame, same as importanceSampleGGX
+                float upX = 1f, upY = 0f;
+                if (abs(N.z) < 0.999) {
+                    upX = 0f;
+                    upY = 1f;
+                }
+                float tXx = upY * N.z;
+                float tXy = -upX * N.z;
+                float tXz = upX * N.y - upY * N.x;
+                float invLength = 1f / sqrt(tXx * tXx + tXy * tXy + tXz * tXz);
+                tXx *= invLength;
+                tXy *= invLength;
+                tXz *= invLength;
+                float tYx = N.y * tXz - N.z * tXy;
+                float tYy = N.z * tXx - N.x * tXz;
+                float tYz = N.x * tXy - N.y * tXx;
+
+                float r = 0, g = 0, b = 0, totalWeight = 0;
+                for (int i = 0; i < samples.length; i += 3) {
+                    float sx = samples[i];
+                    float sy = samples[i + 1];
+                    float NoL = samples[i + 2];
+                    source.getPixel(sx * tXx + sy * tYx + NoL * N.x,
+                            sx * tXy + sy * tYy + NoL * N.y,
+                            sx * tXz + sy * tYz + NoL * N.z, c, 0);
+                    r += c[0] * NoL;
+                    g += c[1] * NoL;
+                    b += c[2] * NoL;
+                    totalWeight += NoL;
+                }
+                if (totalWeight > 0) {
+                    r /= totalWeight;
+                    g /= totalWeight;
+                    b /= totalWeight;
+                }
+                outColor.set(Math.max(r, 0.0001f), Math.max(g, 0.0001f), Math.max(b, 0.0001f), 1);
+                target.setPixel(x, y, face, mipLevel, outColor);
+            }
+        }
+    }
+
     /**
      * Creates a debug Node of the given cube map to attach to the gui node
      *
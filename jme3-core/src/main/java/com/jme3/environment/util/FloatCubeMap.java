@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.environment.util;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.texture.TextureCubeMap;
+
+/**
+ * A read only copy of the first mip level of a cube map, stored as plain float
+ * arrays (3 floats per texel, r,g,b).
+ *
+ * Reading from a {@link CubeMapWrapper} goes through the image raster and the
+ * image codecs for every texel, which is way too slow when the same source map
+ * is sampled millions of times during the prefiltered env map generation.
+ * This class decodes the map once and then allows allocation free lookups.
+ *
+ * Once created it is never written to, so it can be safely shared between
+ * several generation threads.
+ */
+public class FloatCubeMap {
+
+    private final int size;
+    private final float[][] faces = new float[6][];
+
+    /**
+     * Decodes the given cube map into float arrays.
+     *
+     * @param cubeMap the cube map to read from.
+     */
+    public FloatCubeMap(TextureCubeMap cubeMap) {
+        size = cubeMap.getImage().getWidth();
+        CubeMapWrapper wrapper = new CubeMapWrapper(cubeMap);
+        ColorRGBA c = new ColorRGBA();
+        for (int face = 0; face < 6; face++) {
+            float[] data = new float[size * size * 3];
+            int i = 0;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    wrapper.getPixel(x, y, face, c);
+                    data[i++] = c.r;
+                    data[i++] = c.g;
+                    data[i++] = c.b;
+                }
+            }
+            faces[face] = data;
+        }
+    }
+
+    /**
+     * @return the size of a face of the cube map
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the texel pointed by the given direction.
+     * Same lookup as {@link CubeMapWrapper#getPixel(com.jme3.math.Vector3f, com.jme3.math.ColorRGBA)}
+     * (nearest texel, {@link EnvMapUtils.FixSeamsMethod#Stretch}).
+     *
+     * @param x the x component of the direction
+     * @param y the y component of the direction
+     * @param z the z component of the direction
+     * @param store an array of at least 3 floats where the r,g,b values are stored.
+     * @param offset the offset in the store array.
+     */
+    public void getPixel(float x, float y, float z, float[] store, int offset) {
+        float absX = Math.abs(x);
+        float absY = Math.abs(y);
+        float absZ = Math.abs(z);
+        float max = Math.max(Math.max(absX, absY), absZ);
+        int face;
+        float u, v;
+        if (max == absX) {
+            if (x > 0) {
+                face = 0;
+                u = -z / x;
+                v = -y / x;
+            } else {
+                face = 1;
+                u = -z / x;
+                v = y / x;
+            }
+        } else if (max == absY) {
+            if (y > 0) {
+                face = 2;
+                u = x / y;
+                v = z / y;
+            } else {
+                face = 3;
+                u = -x / y;
+                v = z / y;
+            }
+        } else {
+            if (z > 0) {
+                face = 4;
+                u = x / z;
+                v = -y / z;
+            } else {
+                face = 5;
+                u = x / z;
+                v = y / z;
+            }
+        }
+
+        int tx = Math.round((u + 1.0f) * (size - 1.0f) * 0.5f);
+        int ty = Math.round((v + 1.0f) * (size - 1.0f) * 0.5f);
+        int i = (ty * size + tx) * 3;
+        float[] data = faces[face];
+        store[offset] = data[i];
+        store[offset + 1] = data[i + 1];
+        store[offset + 2] = data[i + 2];
+    }
+}
@@ -532,6 +532,21 @@ public class GLDebugES extends GLDebug implements GLConstants, GLFbo, GLExt {
         checkError();
     }
 
+    public void glGetProgramBinary(int program, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary) {
+        glext.glGetProgramBinary(program, length, binaryFormat, binary);
+        checkError();
+    }
+
+    public void glProgramBinary(int program, int binaryFormat, ByteBuffer binary) {
+        glext.glProgramBinary(program, binaryFormat, binary);
+        checkError();
+    }
+
+    public void glProgramParameteri(int program, int pname, int value) {
+        glext.glProgramParameteri(program, pname, value);
+        checkError();
+    }
+
     public void glRenderbufferStorageMultisampleEXT(int target, int samples, int internalformat, int width, int height) {
         glfbo.glRenderbufferStorageMultisampleEXT(target, samples, internalformat, width, height);
         checkError();
@@ -233,6 +233,11 @@ public final class GLImageFormats {
             formatComp(formatToGL, Format.ETC1, GLExt.GL_ETC1_RGB8_OES,        GLConstants.GL_RGB, GLConstants.GL_UNSIGNED_BYTE);
         }
         
+        if (caps.contains(Caps.TextureCompressionRGTC)) {
+            formatComp(formatToGL, Format.RGTC1, GLExt.GL_COMPRESSED_RED_RGTC1, GLConstants.GL_RED, GLConstants.GL_UNSIGNED_BYTE);
+            formatComp(formatToGL, Format.RGTC2, GLExt.GL_COMPRESSED_RG_RGTC2,  GL3.GL_RG,  GLConstants.GL_UNSIGNED_BYTE);
+        }
+        
         // Integer formats
         if(caps.contains(Caps.IntegerTexture)) {     
             format(formatToGL, Format.R8I, GL3.GL_R8I, GL3.GL_RED_INTEGER, GLConstants.GL_BYTE);
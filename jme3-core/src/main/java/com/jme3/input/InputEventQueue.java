@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.input;
+
+import com.jme3.input.event.InputEvent;
+import com.jme3.util.RecordQueue;
+
+/**
+ * The queue of the input events, flattened into preallocated records.
+ * <p>
+ * Input backends post events from their own thread or from the update
+ * thread, the {@link InputManager} consumes them on the update thread.
+ * A producer claims a record, fills its primitive fields and publishes it;
+ * the consumer counts the published records, dispatches them in as many
+ * passes as it needs and releases them at once.
+ */
+final class InputEventQueue extends RecordQueue<InputEventQueue.Record> {
+
+    static final int MOUSE_MOTION = 1;
+    static final int MOUSE_BUTTON = 2;
+    static final int KEY = 3;
+    static final int JOY_AXIS = 4;
+    static final int JOY_BUTTON = 5;
+    static final int TOUCH = 6;
+
+    /**
+     * An input event flattened into primitives. Only the fields of its
+     * type are meaningful.
+     */
+    static final class Record extends RecordQueue.Record {
+
+        int type;
+        long time;
+        // mouse position and motion, or the mouse button position
+        int x, y, dx, dy, wheel, deltaWheel;
+        // key code or button index
+        int code;
+        char keyChar;
+        boolean pressed;
+        boolean repeating;
+        // joystick axis value
+        float value;
+        // the joystick axis or button
+        Object device;
+        // the event object, when posted as one or created for the raw
+        // input listeners
+        InputEvent event;
+        // allocated while the queue was full, waits for room
+        boolean overflow;
+
+        void set(Record other) {
+            type = other.type;
+            time = other.time;
+            x = other.x;
+            y = other.y;
+            dx = other.dx;
+            dy = other.dy;
+            wheel = other.wheel;
+            deltaWheel = other.deltaWheel;
+            code = other.code;
+            keyChar = other.keyChar;
+            pressed = other.pressed;
+            repeating = other.repeating;
+            value = other.value;
+            device = other.device;
+            event = other.event;
+        }
+
+        boolean isConsumed() {
+            return event != null && event.isConsumed();
+        }
+
+        @Override
+        protected void clear() {
+            device = null;
+            event = null;
+        }
+    }
+
+    /**
+     * @param capacity the number of records, a power of two
+     */
+    InputEventQueue(int capacity) {
+        super(newRecords(capacity));
+    }
+
+    private static Record[] newRecords(int capacity) {
+        Record[] records = new Record[Math.max(capacity, 0)];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new Record();
+        }
+        return records;
+    }
+}
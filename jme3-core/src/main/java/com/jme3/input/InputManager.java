@@ -33,6 +33,8 @@ package com.jme3.input;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,8 +59,8 @@ import com.jme3.input.event.MouseMotionEvent;
 import com.jme3.input.event.TouchEvent;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector2f;
+import com.jme3.input.InputEventQueue.Record;
 import com.jme3.util.IntMap;
-import com.jme3.util.IntMap.Entry;
 import com.jme3.util.SafeArrayList;
 
 /**
@@ -97,10 +99,21 @@ import com.jme3.util.SafeArrayList;
  * argument will equal to the frame's time per frame (TPF) value but only
  * for digital inputs. For analog inputs however, the <code>value</code> argument
  * will equal the actual analog value.
+ * <p>
+ * Input events are queued as primitive records in a preallocated lock free
+ * queue and dispatched on the update thread, so the event path does not
+ * allocate. Backends may post events from any thread with the
+ * <code>post</code> methods, e.g.
+ * {@link #postMouseMotion(int, int, int, int, int, int, long) }, between
+ * two updates. Code sensitive to the input latency can receive every event
+ * with its timestamp through a {@link TimedInputListener}.
  */
 public class InputManager implements RawInputListener {
 
     private static final Logger logger = Logger.getLogger(InputManager.class.getName());
+    private static final int EVENT_QUEUE_CAPACITY = 4096;
+    // free records motion and axis events leave to button and key changes
+    private static final int EVENT_QUEUE_RESERVE = EVENT_QUEUE_CAPACITY / 4;
     private final KeyInput keys;
     private final MouseInput mouse;
     private final JoyInput joystick;
@@ -116,18 +129,21 @@ public class InputManager implements RawInputListener {
     private float globalAxisDeadZone = 0.05f;
     private final Vector2f cursorPos = new Vector2f();
     private Joystick[] joysticks;
-    private final IntMap<ArrayList<Mapping>> bindings = new IntMap<ArrayList<Mapping>>();
+    private final IntMap<SafeArrayList<Mapping>> bindings = new IntMap<SafeArrayList<Mapping>>();
     private final HashMap<String, Mapping> mappings = new HashMap<String, Mapping>();
-    private final IntMap<Long> pressedButtons = new IntMap<Long>();
-    private final IntMap<Float> axisValues = new IntMap<Float>();
+    private final InputStateTable pressedButtons = new InputStateTable();
+    private final InputStateTable axisValues = new InputStateTable();
     private final SafeArrayList<RawInputListener> rawListeners = new SafeArrayList<RawInputListener>(RawInputListener.class);
-    private final ArrayList<InputEvent> inputQueue = new ArrayList<InputEvent>();
+    private final SafeArrayList<TimedInputListener> timedListeners = new SafeArrayList<TimedInputListener>(TimedInputListener.class);
+    private final InputEventQueue eventQueue = new InputEventQueue(EVENT_QUEUE_CAPACITY);
+    private final AtomicInteger droppedEvents = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Record> overflowEvents = new ConcurrentLinkedQueue<Record>();
 
     private static class Mapping {
 
         private final String name;
         private final ArrayList<Integer> triggers = new ArrayList<Integer>();
-        private final ArrayList<InputListener> listeners = new ArrayList<InputListener>();
+        private final SafeArrayList<InputListener> listeners = new SafeArrayList<InputListener>(InputListener.class);
 
         public Mapping(String name) {
             this.name = name;
@@ -169,18 +185,17 @@ public class InputManager implements RawInputListener {
     }
 
     private void invokeActions(int hash, boolean pressed) {
-        ArrayList<Mapping> maps = bindings.get(hash);
+        SafeArrayList<Mapping> maps = bindings.get(hash);
         if (maps == null) {
             return;
         }
 
-        int size = maps.size();
-        for (int i = size - 1; i >= 0; i--) {
-            Mapping mapping = maps.get(i);
-            ArrayList<InputListener> listeners = mapping.listeners;
-            int listenerSize = listeners.size();
-            for (int j = listenerSize - 1; j >= 0; j--) {
-                InputListener listener = listeners.get(j);
+        Mapping[] mapArray = maps.getArray();
+        for (int i = mapArray.length - 1; i >= 0; i--) {
+            Mapping mapping = mapArray[i];
+            InputListener[] listeners = mapping.listeners.getArray();
+            for (int j = listeners.length - 1; j >= 0; j--) {
+                InputListener listener = listeners[j];
                 if (listener instanceof ActionListener) {
                     ((ActionListener) listener).onAction(mapping.name, pressed, frameTPF);
                 }
@@ -202,14 +217,15 @@ public class InputManager implements RawInputListener {
         }
 
         if (pressed) {
-            pressedButtons.put(hash, time);
+            pressedButtons.putTime(hash, time);
         } else {
-            Long pressTimeObj = pressedButtons.remove(hash);
-            if (pressTimeObj == null) {
-                return; // under certain circumstances it can be null, ignore
-            }                        // the event then.
+            int index = pressedButtons.indexOf(hash);
+            if (index < 0) {
+                return; // under certain circumstances it can be missing,
+            }           // ignore the event then.
 
-            long pressTime = pressTimeObj;
+            long pressTime = pressedButtons.getTime(index);
+            pressedButtons.remove(hash);
             long lastUpdate = lastLastUpdateTime;
             long releaseTime = time;
             long timeDelta = releaseTime - Math.max(pressTime, lastUpdate);
@@ -221,10 +237,14 @@ public class InputManager implements RawInputListener {
     }
 
     private void invokeUpdateActions() {
-        for (Entry<Long> pressedButton : pressedButtons) {
-            int hash = pressedButton.getKey();
+        // backwards, listeners may reset the tables while invoked
+        for (int i = pressedButtons.size() - 1; i >= 0; i--) {
+            if (i >= pressedButtons.size()) {
+                continue;
+            }
+            int hash = pressedButtons.getKey(i);
 
-            long pressTime = pressedButton.getValue();
+            long pressTime = pressedButtons.getTime(i);
             long timeDelta = lastUpdateTime - Math.max(lastLastUpdateTime, pressTime);
 
             if (timeDelta > 0) {
@@ -232,15 +252,18 @@ public class InputManager implements RawInputListener {
             }
         }
 
-        for (Entry<Float> axisValue : axisValues) {
-            int hash = axisValue.getKey();
-            float value = axisValue.getValue();
+        for (int i = axisValues.size() - 1; i >= 0; i--) {
+            if (i >= axisValues.size()) {
+                continue;
+            }
+            int hash = axisValues.getKey(i);
+            float value = axisValues.getValue(i);
             invokeAnalogs(hash, value * frameTPF, true);
         }
     }
 
     private void invokeAnalogs(int hash, float value, boolean isAxis) {
-        ArrayList<Mapping> maps = bindings.get(hash);
+        SafeArrayList<Mapping> maps = bindings.get(hash);
         if (maps == null) {
             return;
         }
@@ -249,13 +272,12 @@ public class InputManager implements RawInputListener {
             value *= frameTPF;
         }
 
-        int size = maps.size();
-        for (int i = size - 1; i >= 0; i--) {
-            Mapping mapping = maps.get(i);
-            ArrayList<InputListener> listeners = mapping.listeners;
-            int listenerSize = listeners.size();
-            for (int j = listenerSize - 1; j >= 0; j--) {
-                InputListener listener = listeners.get(j);
+        Mapping[] mapArray = maps.getArray();
+        for (int i = mapArray.length - 1; i >= 0; i--) {
+            Mapping mapping = mapArray[i];
+            InputListener[] listeners = mapping.listeners.getArray();
+            for (int j = listeners.length - 1; j >= 0; j--) {
+                InputListener listener = listeners[j];
                 if (listener instanceof AnalogListener) {
                     // NOTE: multiply by TPF for any button bindings
                     ((AnalogListener) listener).onAnalog(mapping.name, value, frameTPF);
@@ -270,7 +292,7 @@ public class InputManager implements RawInputListener {
             return;
         }
 
-        ArrayList<Mapping> maps = bindings.get(hash);
+        SafeArrayList<Mapping> maps = bindings.get(hash);
         if (maps == null) {
             return;
         }
@@ -280,13 +302,12 @@ public class InputManager implements RawInputListener {
             value *= frameTPF;
         }
 
-        int size = maps.size();
-        for (int i = size - 1; i >= 0; i--) {
-            Mapping mapping = maps.get(i);
-            ArrayList<InputListener> listeners = mapping.listeners;
-            int listenerSize = listeners.size();
-            for (int j = listenerSize - 1; j >= 0; j--) {
-                InputListener listener = listeners.get(j);
+        Mapping[] mapArray = maps.getArray();
+        for (int i = mapArray.length - 1; i >= 0; i--) {
+            Mapping mapping = mapArray[i];
+            InputListener[] listeners = mapping.listeners.getArray();
+            for (int j = listeners.length - 1; j >= 0; j--) {
+                InputListener listener = listeners[j];
 
                 if (listener instanceof ActionListener && valueChanged) {
                     ((ActionListener) listener).onAction(mapping.name, true, frameTPF);
@@ -314,26 +335,21 @@ public class InputManager implements RawInputListener {
     public void endInput() {
     }
 
-    private void onJoyAxisEventQueued(JoyAxisEvent evt) {
-//        for (int i = 0; i < rawListeners.size(); i++){
-//            rawListeners.get(i).onJoyAxisEvent(evt);
-//        }
-
-        int joyId = evt.getJoyIndex();
-        int axis = evt.getAxisIndex();
-        float value = evt.getValue();
-        float effectiveDeadZone = Math.max(globalAxisDeadZone, evt.getAxis().getDeadZone()); 
+    private void onJoyAxisQueued(JoystickAxis joyAxis, float value) {
+        int joyId = joyAxis.getJoystick().getJoyId();
+        int axis = joyAxis.getAxisId();
+        float effectiveDeadZone = Math.max(globalAxisDeadZone, joyAxis.getDeadZone()); 
         if (value < effectiveDeadZone && value > -effectiveDeadZone) {
             int hash1 = JoyAxisTrigger.joyAxisHash(joyId, axis, true);
             int hash2 = JoyAxisTrigger.joyAxisHash(joyId, axis, false);
 
-            Float val1 = axisValues.get(hash1);
-            Float val2 = axisValues.get(hash2);
+            float val1 = axisValues.getValue(hash1, 0f);
+            float val2 = axisValues.getValue(hash2, 0f);
 
-            if (val1 != null && val1 > effectiveDeadZone) {
+            if (val1 > effectiveDeadZone) {
                 invokeActions(hash1, false);
             }
-            if (val2 != null && val2 > effectiveDeadZone) {
+            if (val2 > effectiveDeadZone) {
                 invokeActions(hash2, false);
             }
 
@@ -346,13 +362,13 @@ public class InputManager implements RawInputListener {
 
             // Clear the reverse direction's actions in case we
             // crossed center too quickly
-            Float otherVal = axisValues.get(otherHash);
-            if (otherVal != null && otherVal > effectiveDeadZone) {
+            float otherVal = axisValues.getValue(otherHash, 0f);
+            if (otherVal > effectiveDeadZone) {
                 invokeActions(otherHash, false);
             }
 
             invokeAnalogsAndActions(hash, -value, effectiveDeadZone, true);
-            axisValues.put(hash, -value);
+            axisValues.putValue(hash, -value);
             axisValues.remove(otherHash);
         } else {
             int hash = JoyAxisTrigger.joyAxisHash(joyId, axis, false);
@@ -360,13 +376,13 @@ public class InputManager implements RawInputListener {
 
             // Clear the reverse direction's actions in case we
             // crossed center too quickly
-            Float otherVal = axisValues.get(otherHash);
-            if (otherVal != null && otherVal > effectiveDeadZone) {
+            float otherVal = axisValues.getValue(otherHash, 0f);
+            if (otherVal > effectiveDeadZone) {
                 invokeActions(otherHash, false);
             }
 
             invokeAnalogsAndActions(hash, value, effectiveDeadZone, true);
-            axisValues.put(hash, value);
+            axisValues.putValue(hash, value);
             axisValues.remove(otherHash);
         }
     }
@@ -380,17 +396,36 @@ public class InputManager implements RawInputListener {
             throw new UnsupportedOperationException("JoyInput has raised an event at an illegal time.");
         }
 
-        inputQueue.add(evt);
+        Record record = claimRecord(InputEventQueue.JOY_AXIS, evt.getTime());
+        if (record != null) {
+            record.device = evt.getAxis();
+            record.value = evt.getValue();
+            record.event = evt;
+            publishRecord(record);
+        }
     }
 
-    private void onJoyButtonEventQueued(JoyButtonEvent evt) {
-//        for (int i = 0; i < rawListeners.size(); i++){
-//            rawListeners.get(i).onJoyButtonEvent(evt);
-//        }
+    /**
+     * Posts a joystick axis event, to be dispatched at the next update.
+     * Can be called from any thread.
+     *
+     * @param axis the axis that moved
+     * @param value the new value of the axis
+     * @param time the time of the event, relative to {@link Input#getInputTimeNanos() }
+     */
+    public void postJoyAxis(JoystickAxis axis, float value, long time) {
+        Record record = claimRecord(InputEventQueue.JOY_AXIS, time);
+        if (record != null) {
+            record.device = axis;
+            record.value = value;
+            publishRecord(record);
+        }
+    }
 
-        int hash = JoyButtonTrigger.joyButtonHash(evt.getJoyIndex(), evt.getButtonIndex());
-        invokeActions(hash, evt.isPressed());
-        invokeTimedActions(hash, evt.getTime(), evt.isPressed());
+    private void onJoyButtonQueued(JoystickButton button, boolean pressed, long time) {
+        int hash = JoyButtonTrigger.joyButtonHash(button.getJoystick().getJoyId(), button.getButtonId());
+        invokeActions(hash, pressed);
+        invokeTimedActions(hash, time, pressed);
     }
 
     /**
@@ -402,25 +437,44 @@ public class InputManager implements RawInputListener {
             throw new UnsupportedOperationException("JoyInput has raised an event at an illegal time.");
         }
 
-        inputQueue.add(evt);
+        Record record = claimRecord(InputEventQueue.JOY_BUTTON, evt.getTime());
+        if (record != null) {
+            record.device = evt.getButton();
+            record.pressed = evt.isPressed();
+            record.event = evt;
+            publishRecord(record);
+        }
     }
 
-    private void onMouseMotionEventQueued(MouseMotionEvent evt) {
-//        for (int i = 0; i < rawListeners.size(); i++){
-//            rawListeners.get(i).onMouseMotionEvent(evt);
-//        }
+    /**
+     * Posts a joystick button event, to be dispatched at the next update.
+     * Can be called from any thread.
+     *
+     * @param button the button pressed or released
+     * @param pressed true if the button was pressed
+     * @param time the time of the event, relative to {@link Input#getInputTimeNanos() }
+     */
+    public void postJoyButton(JoystickButton button, boolean pressed, long time) {
+        Record record = claimRecord(InputEventQueue.JOY_BUTTON, time);
+        if (record != null) {
+            record.device = button;
+            record.pressed = pressed;
+            publishRecord(record);
+        }
+    }
 
-        if (evt.getDX() != 0) {
-            float val = Math.abs(evt.getDX()) / 1024f;
-            invokeAnalogsAndActions(MouseAxisTrigger.mouseAxisHash(MouseInput.AXIS_X, evt.getDX() < 0), val, globalAxisDeadZone, false);
+    private void onMouseMotionQueued(int dx, int dy, int deltaWheel) {
+        if (dx != 0) {
+            float val = Math.abs(dx) / 1024f;
+            invokeAnalogsAndActions(MouseAxisTrigger.mouseAxisHash(MouseInput.AXIS_X, dx < 0), val, globalAxisDeadZone, false);
         }
-        if (evt.getDY() != 0) {
-            float val = Math.abs(evt.getDY()) / 1024f;
-            invokeAnalogsAndActions(MouseAxisTrigger.mouseAxisHash(MouseInput.AXIS_Y, evt.getDY() < 0), val, globalAxisDeadZone, false);
+        if (dy != 0) {
+            float val = Math.abs(dy) / 1024f;
+            invokeAnalogsAndActions(MouseAxisTrigger.mouseAxisHash(MouseInput.AXIS_Y, dy < 0), val, globalAxisDeadZone, false);
         }
-        if (evt.getDeltaWheel() != 0) {
-            float val = Math.abs(evt.getDeltaWheel()) / 100f;
-            invokeAnalogsAndActions(MouseAxisTrigger.mouseAxisHash(MouseInput.AXIS_WHEEL, evt.getDeltaWheel() < 0), val, globalAxisDeadZone, false);
+        if (deltaWheel != 0) {
+            float val = Math.abs(deltaWheel) / 100f;
+            invokeAnalogsAndActions(MouseAxisTrigger.mouseAxisHash(MouseInput.AXIS_WHEEL, deltaWheel < 0), val, globalAxisDeadZone, false);
         }
     }
 
@@ -445,14 +499,50 @@ public class InputManager implements RawInputListener {
             throw new UnsupportedOperationException("MouseInput has raised an event at an illegal time.");
         }
 
-        cursorPos.set(evt.getX(), evt.getY());
-        inputQueue.add(evt);
+        Record record = claimRecord(InputEventQueue.MOUSE_MOTION, evt.getTime());
+        if (record != null) {
+            record.x = evt.getX();
+            record.y = evt.getY();
+            record.dx = evt.getDX();
+            record.dy = evt.getDY();
+            record.wheel = evt.getWheel();
+            record.deltaWheel = evt.getDeltaWheel();
+            record.event = evt;
+            publishRecord(record);
+        }
     }
 
-    private void onMouseButtonEventQueued(MouseButtonEvent evt) {
-        int hash = MouseButtonTrigger.mouseButtonHash(evt.getButtonIndex());
-        invokeActions(hash, evt.isPressed());
-        invokeTimedActions(hash, evt.getTime(), evt.isPressed());
+    /**
+     * Posts a mouse motion event, to be dispatched at the next update.
+     * Can be called from any thread, backends sampling the mouse faster
+     * than the frame rate use it to report each sample without creating
+     * event objects.
+     *
+     * @param x the cursor X position
+     * @param y the cursor Y position
+     * @param dx the X motion
+     * @param dy the Y motion
+     * @param wheel the wheel position
+     * @param deltaWheel the wheel motion
+     * @param time the time of the event, relative to {@link Input#getInputTimeNanos() }
+     */
+    public void postMouseMotion(int x, int y, int dx, int dy, int wheel, int deltaWheel, long time) {
+        Record record = claimRecord(InputEventQueue.MOUSE_MOTION, time);
+        if (record != null) {
+            record.x = x;
+            record.y = y;
+            record.dx = dx;
+            record.dy = dy;
+            record.wheel = wheel;
+            record.deltaWheel = deltaWheel;
+            publishRecord(record);
+        }
+    }
+
+    private void onMouseButtonQueued(int buttonIndex, boolean pressed, long time) {
+        int hash = MouseButtonTrigger.mouseButtonHash(buttonIndex);
+        invokeActions(hash, pressed);
+        invokeTimedActions(hash, time, pressed);
     }
 
     /**
@@ -463,19 +553,47 @@ public class InputManager implements RawInputListener {
         if (!eventsPermitted) {
             throw new UnsupportedOperationException("MouseInput has raised an event at an illegal time.");
         }
-        //updating cursor pos on click, so that non android touch events can properly update cursor position.
-        cursorPos.set(evt.getX(), evt.getY());
-        inputQueue.add(evt);
+
+        Record record = claimRecord(InputEventQueue.MOUSE_BUTTON, evt.getTime());
+        if (record != null) {
+            record.code = evt.getButtonIndex();
+            record.pressed = evt.isPressed();
+            record.x = evt.getX();
+            record.y = evt.getY();
+            record.event = evt;
+            publishRecord(record);
+        }
+    }
+
+    /**
+     * Posts a mouse button event, to be dispatched at the next update.
+     * Can be called from any thread.
+     *
+     * @param buttonIndex the mouse button index
+     * @param pressed true if the button was pressed
+     * @param x the cursor X position
+     * @param y the cursor Y position
+     * @param time the time of the event, relative to {@link Input#getInputTimeNanos() }
+     */
+    public void postMouseButton(int buttonIndex, boolean pressed, int x, int y, long time) {
+        Record record = claimRecord(InputEventQueue.MOUSE_BUTTON, time);
+        if (record != null) {
+            record.code = buttonIndex;
+            record.pressed = pressed;
+            record.x = x;
+            record.y = y;
+            publishRecord(record);
+        }
     }
 
-    private void onKeyEventQueued(KeyInputEvent evt) {
-        if (evt.isRepeating()) {
+    private void onKeyQueued(int keyCode, boolean pressed, boolean repeating, long time) {
+        if (repeating) {
             return; // repeat events not used for bindings
         }
 
-        int hash = KeyTrigger.keyHash(evt.getKeyCode());
-        invokeActions(hash, evt.isPressed());
-        invokeTimedActions(hash, evt.getTime(), evt.isPressed());
+        int hash = KeyTrigger.keyHash(keyCode);
+        invokeActions(hash, pressed);
+        invokeTimedActions(hash, time, pressed);
     }
 
     /**
@@ -487,7 +605,89 @@ public class InputManager implements RawInputListener {
             throw new UnsupportedOperationException("KeyInput has raised an event at an illegal time.");
         }
 
-        inputQueue.add(evt);
+        Record record = claimRecord(InputEventQueue.KEY, evt.getTime());
+        if (record != null) {
+            record.code = evt.getKeyCode();
+            record.keyChar = evt.getKeyChar();
+            record.pressed = evt.isPressed();
+            record.repeating = evt.isRepeating();
+            record.event = evt;
+            publishRecord(record);
+        }
+    }
+
+    /**
+     * Posts a keyboard event, to be dispatched at the next update.
+     * Can be called from any thread.
+     *
+     * @param keyCode the key code, see {@link KeyInput}
+     * @param keyChar the character typed, or 0
+     * @param pressed true if the key was pressed
+     * @param repeating true if this is a repeat of a held key
+     * @param time the time of the event, relative to {@link Input#getInputTimeNanos() }
+     */
+    public void postKey(int keyCode, char keyChar, boolean pressed, boolean repeating, long time) {
+        Record record = claimRecord(InputEventQueue.KEY, time);
+        if (record != null) {
+            record.code = keyCode;
+            record.keyChar = keyChar;
+            record.pressed = pressed;
+            record.repeating = repeating;
+            publishRecord(record);
+        }
+    }
+
+    /**
+     * Claims a record of the event queue. The producers may run on another
+     * thread than the update thread, they can't wait for it: motion and axis
+     * events are dropped once the queue is three quarters full. The other
+     * events are never dropped, a lost release would leave its button
+     * pressed. If the queue is full they wait in order in an overflow list
+     * until the next update makes room.
+     */
+    private Record claimRecord(int type, long time) {
+        Record record;
+        if (type == InputEventQueue.MOUSE_MOTION || type == InputEventQueue.JOY_AXIS) {
+            record = eventQueue.claim(EVENT_QUEUE_RESERVE);
+            if (record == null) {
+                droppedEvents.incrementAndGet();
+                return null;
+            }
+        } else {
+            // stay behind the events already waiting for room
+            record = overflowEvents.isEmpty() ? eventQueue.claim() : null;
+            if (record == null) {
+                record = new Record();
+                record.overflow = true;
+            }
+        }
+        record.type = type;
+        record.time = time;
+        return record;
+    }
+
+    private void publishRecord(Record record) {
+        if (record.overflow) {
+            overflowEvents.add(record);
+        } else {
+            eventQueue.publish(record);
+        }
+    }
+
+    /**
+     * Moves the events waiting for room into the event queue, in order.
+     */
+    private void requeueOverflow() {
+        Record waiting;
+        while ((waiting = overflowEvents.peek()) != null) {
+            Record record = eventQueue.claim();
+            if (record == null) {
+                return;
+            }
+            record.set(waiting);
+            eventQueue.publish(record);
+            overflowEvents.poll();
+        }
     }
 
     /**
@@ -582,9 +782,9 @@ public class InputManager implements RawInputListener {
 
         for (Trigger trigger : triggers) {
             int hash = trigger.triggerHashCode();
-            ArrayList<Mapping> names = bindings.get(hash);
+            SafeArrayList<Mapping> names = bindings.get(hash);
             if (names == null) {
-                names = new ArrayList<Mapping>();
+                names = new SafeArrayList<Mapping>(Mapping.class);
                 bindings.put(hash, names);
             }
             if (!names.contains(mapping)) {
@@ -631,7 +831,7 @@ public class InputManager implements RawInputListener {
         ArrayList<Integer> triggers = mapping.triggers;
         for (int i = triggers.size() - 1; i >= 0; i--) {
             int hash = triggers.get(i);
-            ArrayList<Mapping> maps = bindings.get(hash);
+            SafeArrayList<Mapping> maps = bindings.get(hash);
             maps.remove(mapping);
         }
     }
@@ -653,7 +853,7 @@ public class InputManager implements RawInputListener {
             throw new IllegalArgumentException("Cannot find mapping: " + mappingName);
         }
 
-        ArrayList<Mapping> maps = bindings.get(trigger.triggerHashCode());
+        SafeArrayList<Mapping> maps = bindings.get(trigger.triggerHashCode());
         maps.remove(mapping);
 
     }
@@ -825,68 +1025,191 @@ public class InputManager implements RawInputListener {
         }
     }
 
-    private void processQueue() {
-        int queueSize = inputQueue.size();
+    /**
+     * Adds a {@link TimedInputListener} to receive every input event with its
+     * timestamp.
+     *
+     * @param listener A listener to receive the timed input events.
+     *
+     * @see TimedInputListener
+     */
+    public void addTimedInputListener(TimedInputListener listener) {
+        timedListeners.add(listener);
+    }
+
+    /**
+     * Removes a {@link TimedInputListener} so that it no longer
+     * receives timed input events.
+     *
+     * @param listener The listener to cease receiving timed input events.
+     */
+    public void removeTimedInputListener(TimedInputListener listener) {
+        timedListeners.remove(listener);
+    }
+
+    /**
+     * Creates the event object of a record posted without one, for the raw
+     * input listeners.
+     */
+    private InputEvent createEvent(Record record) {
+        InputEvent event;
+        switch (record.type) {
+            case InputEventQueue.MOUSE_MOTION:
+                event = new MouseMotionEvent(record.x, record.y, record.dx, record.dy, record.wheel, record.deltaWheel);
+                break;
+            case InputEventQueue.MOUSE_BUTTON:
+                event = new MouseButtonEvent(record.code, record.pressed, record.x, record.y);
+                break;
+            case InputEventQueue.KEY:
+                event = new KeyInputEvent(record.code, record.keyChar, record.pressed, record.repeating);
+                break;
+            case InputEventQueue.JOY_AXIS:
+                event = new JoyAxisEvent((JoystickAxis) record.device, record.value);
+                break;
+            case InputEventQueue.JOY_BUTTON:
+                event = new JoyButtonEvent((JoystickButton) record.device, record.pressed);
+                break;
+            default:
+                throw new AssertionError();
+        }
+        event.setTime(record.time);
+        return event;
+    }
+
+    private void dispatchTimed(TimedInputListener listener, Record record, float frameTime) {
+        switch (record.type) {
+            case InputEventQueue.MOUSE_MOTION:
+                listener.onMouseMotion(record.time, frameTime, record.x, record.y, record.dx, record.dy, record.wheel, record.deltaWheel);
+                break;
+            case InputEventQueue.MOUSE_BUTTON:
+                listener.onMouseButton(record.time, frameTime, record.code, record.pressed, record.x, record.y);
+                break;
+            case InputEventQueue.KEY:
+                listener.onKey(record.time, frameTime, record.code, record.keyChar, record.pressed, record.repeating);
+                break;
+            case InputEventQueue.JOY_AXIS:
+                listener.onJoyAxis(record.time, frameTime, (JoystickAxis) record.device, record.value);
+                break;
+            case InputEventQueue.JOY_BUTTON:
+                listener.onJoyButton(record.time, frameTime, (JoystickButton) record.device, record.pressed);
+                break;
+            default:
+                // touch events are only dispatched as objects
+                break;
+        }
+    }
+
+    private void dispatchRaw(RawInputListener listener, InputEvent event) {
+        if (event instanceof MouseMotionEvent) {
+            listener.onMouseMotionEvent((MouseMotionEvent) event);
+        } else if (event instanceof KeyInputEvent) {
+            listener.onKeyEvent((KeyInputEvent) event);
+        } else if (event instanceof MouseButtonEvent) {
+            listener.onMouseButtonEvent((MouseButtonEvent) event);
+        } else if (event instanceof JoyAxisEvent) {
+            listener.onJoyAxisEvent((JoyAxisEvent) event);
+        } else if (event instanceof JoyButtonEvent) {
+            listener.onJoyButtonEvent((JoyButtonEvent) event);
+        } else if (event instanceof TouchEvent) {
+            listener.onTouchEvent((TouchEvent) event);
+        } else {
+            assert false;
+        }
+    }
+
+    private void dispatchMappings(Record record) {
+        switch (record.type) {
+            case InputEventQueue.MOUSE_MOTION:
+                onMouseMotionQueued(record.dx, record.dy, record.deltaWheel);
+                break;
+            case InputEventQueue.MOUSE_BUTTON:
+                onMouseButtonQueued(record.code, record.pressed, record.time);
+                break;
+            case InputEventQueue.KEY:
+                onKeyQueued(record.code, record.pressed, record.repeating, record.time);
+                break;
+            case InputEventQueue.JOY_AXIS:
+                onJoyAxisQueued((JoystickAxis) record.device, record.value);
+                break;
+            case InputEventQueue.JOY_BUTTON:
+                onJoyButtonQueued((JoystickButton) record.device, record.pressed, record.time);
+                break;
+            case InputEventQueue.TOUCH:
+                onTouchEventQueued((TouchEvent) record.event);
+                break;
+            default:
+                assert false;
+        }
+    }
+
+    private void processQueue(long currentTime) {
+        // only the events published so far, later ones wait for the next frame
+        int queueSize = eventQueue.published();
+
+        TimedInputListener[] timedArray = timedListeners.getArray();
+        long frameStart = lastUpdateTime;
+        long frameLength = currentTime - frameStart;
+        for (int i = 0; i < queueSize; i++) {
+            Record record = eventQueue.get(i);
+            if (record.type == InputEventQueue.TOUCH) {
+                TouchEvent touchEvent = (TouchEvent) record.event;
+                cursorPos.set(touchEvent.getX(), touchEvent.getY());
+            } else if (record.type == InputEventQueue.MOUSE_MOTION
+                    || record.type == InputEventQueue.MOUSE_BUTTON) {
+                cursorPos.set(record.x, record.y);
+            }
+            if (timedArray.length > 0) {
+                float frameTime = frameLength <= 0 ? 1f
+                        : FastMath.clamp((float) (record.time - frameStart) / frameLength, 0, 1);
+                for (TimedInputListener listener : timedArray) {
+                    dispatchTimed(listener, record, frameTime);
+                }
+            }
+        }
+
         RawInputListener[] array = rawListeners.getArray(); 
+        if (array.length > 0) {
+            for (int i = 0; i < queueSize; i++) {
+                Record record = eventQueue.get(i);
+                if (record.event == null) {
+                    record.event = createEvent(record);
+                }
+            }
+        }
 
         for (RawInputListener listener : array) {
             listener.beginInput();
 
             for (int j = 0; j < queueSize; j++) {
-                InputEvent event = inputQueue.get(j);
+                InputEvent event = eventQueue.get(j).event;
                 if (event.isConsumed()) {
                     continue;
                 }
-
-                if (event instanceof MouseMotionEvent) {
-                    listener.onMouseMotionEvent((MouseMotionEvent) event);
-                } else if (event instanceof KeyInputEvent) {
-                    listener.onKeyEvent((KeyInputEvent) event);
-                } else if (event instanceof MouseButtonEvent) {
-                    listener.onMouseButtonEvent((MouseButtonEvent) event);
-                } else if (event instanceof JoyAxisEvent) {
-                    listener.onJoyAxisEvent((JoyAxisEvent) event);
-                } else if (event instanceof JoyButtonEvent) {
-                    listener.onJoyButtonEvent((JoyButtonEvent) event);
-                } else if (event instanceof TouchEvent) {
-                    listener.onTouchEvent((TouchEvent) event);
-                } else {
-                    assert false;
-                }
+                dispatchRaw(listener, event);
             }
 
             listener.endInput();
         }
 
         for (int i = 0; i < queueSize; i++) {
-            InputEvent event = inputQueue.get(i);
-            if (event.isConsumed()) {
+            Record record = eventQueue.get(i);
+            if (record.isConsumed()) {
                 continue;
             }
 
-            if (event instanceof MouseMotionEvent) {
-                onMouseMotionEventQueued((MouseMotionEvent) event);
-            } else if (event instanceof KeyInputEvent) {
-                onKeyEventQueued((KeyInputEvent) event);
-            } else if (event instanceof MouseButtonEvent) {
-                onMouseButtonEventQueued((MouseButtonEvent) event);
-            } else if (event instanceof JoyAxisEvent) {
-                onJoyAxisEventQueued((JoyAxisEvent) event);
-            } else if (event instanceof JoyButtonEvent) {
-                onJoyButtonEventQueued((JoyButtonEvent) event);
-            } else if (event instanceof TouchEvent) {
-                onTouchEventQueued((TouchEvent) event);
-            } else {
-                assert false;
+            dispatchMappings(record);
+
+            if (record.event != null) {
+                // larynx, 2011.06.10 - flag event as reusable because
+                // the android input uses a non-allocating ringbuffer which
+                // needs to know when the event is not anymore in inputQueue
+                // and therefor can be reused.
+                record.event.setConsumed();
             }
-            // larynx, 2011.06.10 - flag event as reusable because
-            // the android input uses a non-allocating ringbuffer which
-            // needs to know when the event is not anymore in inputQueue
-            // and therefor can be reused.
-            event.setConsumed();
         }
 
-        inputQueue.clear();
+        eventQueue.release(queueSize);
+        requeueOverflow();
     }
 
     /**
@@ -919,7 +1242,12 @@ public class InputManager implements RawInputListener {
 
         eventsPermitted = false;
 
-        processQueue();
+        int dropped = droppedEvents.getAndSet(0);
+        if (dropped > 0) {
+            logger.log(Level.WARNING, "Input event queue full, {0} events dropped", dropped);
+        }
+
+        processQueue(currentTime);
         invokeUpdateActions();
 
         lastLastUpdateTime = lastUpdateTime;
@@ -931,18 +1259,17 @@ public class InputManager implements RawInputListener {
      * @param evt The touch event to be dispatched to all onTouch listeners
      */
     public void onTouchEventQueued(TouchEvent evt) {
-        ArrayList<Mapping> maps = bindings.get(TouchTrigger.touchHash(evt.getKeyCode()));
+        SafeArrayList<Mapping> maps = bindings.get(TouchTrigger.touchHash(evt.getKeyCode()));
         if (maps == null) {
             return;
         }
 
-        int size = maps.size();
-        for (int i = size - 1; i >= 0; i--) {
-            Mapping mapping = maps.get(i);
-            ArrayList<InputListener> listeners = mapping.listeners;
-            int listenerSize = listeners.size();
-            for (int j = listenerSize - 1; j >= 0; j--) {
-                InputListener listener = listeners.get(j);
+        Mapping[] mapArray = maps.getArray();
+        for (int i = mapArray.length - 1; i >= 0; i--) {
+            Mapping mapping = mapArray[i];
+            InputListener[] listeners = mapping.listeners.getArray();
+            for (int j = listeners.length - 1; j >= 0; j--) {
+                InputListener listener = listeners[j];
                 if (listener instanceof TouchListener) {
                     ((TouchListener) listener).onTouch(mapping.name, evt, frameTPF);
                 }
@@ -958,7 +1285,11 @@ public class InputManager implements RawInputListener {
         if (!eventsPermitted) {
             throw new UnsupportedOperationException("TouchInput has raised an event at an illegal time.");
         }
-        cursorPos.set(evt.getX(), evt.getY());
-        inputQueue.add(evt);
+
+        Record record = claimRecord(InputEventQueue.TOUCH, evt.getTime());
+        if (record != null) {
+            record.event = evt;
+            publishRecord(record);
+        }
     }
 }
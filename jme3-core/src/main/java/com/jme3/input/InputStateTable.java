@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.input;
+
+/**
+ * A small table of the triggers currently active, keyed by trigger hash.
+ * <p>
+ * Only a handful of keys are held down or axes deflected at once, so the
+ * entries are kept packed in primitive arrays and looked up by a linear
+ * scan: no boxing, no entry objects and no iterator when the
+ * {@link InputManager} walks them every frame.
+ */
+final class InputStateTable {
+
+    private int[] keys = new int[16];
+    private long[] times = new long[16];
+    private float[] values = new float[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    int getKey(int index) {
+        return keys[index];
+    }
+
+    long getTime(int index) {
+        return times[index];
+    }
+
+    float getValue(int index) {
+        return values[index];
+    }
+
+    int indexOf(int key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the value of the key, or the default value if it is not in
+     * the table
+     */
+    float getValue(int key, float defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    void putTime(int key, long time) {
+        times[put(key)] = time;
+    }
+
+    void putValue(int key, float value) {
+        values[put(key)] = value;
+    }
+
+    private int put(int key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return index;
+        }
+        if (size == keys.length) {
+            int capacity = size * 2;
+            int[] newKeys = new int[capacity];
+            long[] newTimes = new long[capacity];
+            float[] newValues = new float[capacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(times, 0, newTimes, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            times = newTimes;
+            values = newValues;
+        }
+        keys[size] = key;
+        times[size] = 0;
+        values[size] = 0;
+        return size++;
+    }
+
+    /**
+     * Removes a key, the last entry takes its place.
+     *
+     * @return the index the key had, or -1 if it was not in the table
+     */
+    int remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return -1;
+        }
+        size--;
+        keys[index] = keys[size];
+        times[index] = times[size];
+        values[index] = values[size];
+        return index;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.input;
+
+/**
+ * An interface used for receiving every raw input event with its timestamp,
+ * without event objects.
+ * <p>
+ * Registered with {@link InputManager#addTimedInputListener(com.jme3.input.TimedInputListener) },
+ * the listener is called on the update thread for each event received since
+ * the previous frame, in order and never coalesced, before the
+ * {@link RawInputListener raw input listeners} and the mappings. Latency
+ * sensitive code can use the time and the position within the frame of
+ * each event, for example to integrate the mouse motion at the rate the
+ * device reports it rather than once per frame.
+ * <p>
+ * The times are relative to {@link Input#getInputTimeNanos() }. The
+ * <code>frameTime</code> argument is the position of the event between the
+ * previous update (0) and the current one (1).
+ */
+public interface TimedInputListener {
+
+    /**
+     * Invoked on mouse movement/motion events.
+     */
+    public void onMouseMotion(long time, float frameTime, int x, int y, int dx, int dy, int wheel, int deltaWheel);
+
+    /**
+     * Invoked on mouse button events.
+     */
+    public void onMouseButton(long time, float frameTime, int buttonIndex, boolean pressed, int x, int y);
+
+    /**
+     * Invoked on keyboard key press or release events.
+     */
+    public void onKey(long time, float frameTime, int keyCode, char keyChar, boolean pressed, boolean repeating);
+
+    /**
+     * Invoked on joystick axis events.
+     */
+    public void onJoyAxis(long time, float frameTime, JoystickAxis axis, float value);
+
+    /**
+     * Invoked on joystick button presses.
+     */
+    public void onJoyButton(long time, float frameTime, JoystickButton button, boolean pressed);
+}
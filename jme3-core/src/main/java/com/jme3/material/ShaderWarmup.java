@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.material;
+
+import com.jme3.light.LightList;
+import com.jme3.material.TechniqueDef.LightMode;
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.Renderer;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.shader.Shader;
+import com.jme3.util.SafeArrayList;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>ShaderWarmup</code> compiles the shader permutations a scene or a set
+ * of {@link MaterialDef}s can reach before they are first drawn.
+ * <p>
+ * Shaders are otherwise compiled lazily, the first time a geometry with a new
+ * define combination is rendered, which shows up as a frame spike.
+ * The warm-up walks the given targets and enumerates, for every technique of
+ * their material definitions, the permutations produced by :
+ * <ul>
+ * <li>the material parameters of each material,</li>
+ * <li>the world overrides of each geometry (skinning, per-spatial overrides),</li>
+ * <li>the light mode preferred by the render manager and the lights affecting
+ * the geometry,</li>
+ * <li>the variants registered with {@link #addVariant(com.jme3.material.MatParamOverride[]) },
+ * for example <code>NumberOfBones</code> for skinning, <code>UseInstancing</code>
+ * for instancing or the shadow parameters set by the shadow renderers.</li>
+ * </ul>
+ * The compilation is spread over several frames by calling
+ * {@link #update() } once per frame, each call compiles shaders until the
+ * configured time budget is spent. This lets a loading screen absorb the cost
+ * while still displaying its progress.
+ * <p>
+ * The warm-up must be used from the render thread.
+ *
+ * @see RenderManager#preloadScene(com.jme3.scene.Spatial)
+ */
+public class ShaderWarmup {
+
+    private static final Logger logger = Logger.getLogger(ShaderWarmup.class.getName());
+
+    /**
+     * Receives progress notifications from a {@link ShaderWarmup}.
+     */
+    public interface Listener {
+
+        /**
+         * Called after each update that processed at least one permutation.
+         *
+         * @param warmup the warm-up
+         * @param processed the number of permutations processed so far
+         * @param total the total number of permutations enqueued
+         */
+        public void onProgress(ShaderWarmup warmup, int processed, int total);
+
+        /**
+         * Called once all the enqueued permutations have been processed.
+         *
+         * @param warmup the warm-up
+         * @param compiled the number of distinct shaders that were compiled
+         */
+        public void onComplete(ShaderWarmup warmup, int compiled);
+    }
+
+    /**
+     * A permutation to compile : a technique of a material, with the
+     * overrides and lights that apply to it.
+     */
+    private static class Job {
+
+        final Technique technique;
+        final SafeArrayList<MatParamOverride> worldOverrides;
+        final SafeArrayList<MatParamOverride> variant;
+        final LightList lights;
+
+        Job(Technique technique, SafeArrayList<MatParamOverride> worldOverrides,
+                SafeArrayList<MatParamOverride> variant, LightList lights) {
+            this.technique = technique;
+            this.worldOverrides = worldOverrides;
+            this.variant = variant;
+            this.lights = lights;
+        }
+    }
+
+    private final RenderManager renderManager;
+    private final List<SafeArrayList<MatParamOverride>> variants = new ArrayList<>();
+    private final List<Job> jobs = new ArrayList<>();
+    private final Map<Material, Map<TechniqueDef, Technique>> techniques = new IdentityHashMap<>();
+    private final Map<Shader, Shader> processedShaders = new IdentityHashMap<>();
+    private final LightList noLights = new LightList(null);
+    private Listener listener;
+    private long timeBudget = 4000000L;
+    private int processed = 0;
+    private int compiled = 0;
+
+    /**
+     * Creates a warm-up for the given render manager.
+     *
+     * @param renderManager the render manager whose renderer compiles the shaders
+     */
+    public ShaderWarmup(RenderManager renderManager) {
+        this.renderManager = renderManager;
+        variants.add(null);
+    }
+
+    /**
+     * Registers a permutation variant. Every target added after this call is
+     * enumerated once without overrides and once more for each registered
+     * variant, with the variant's overrides applied on top of its own.
+     * Overrides for parameters a material definition doesn't declare are
+     * ignored.
+     *
+     * @param overrides the overrides describing the variant
+     */
+    public void addVariant(MatParamOverride... overrides) {
+        SafeArrayList<MatParamOverride> variant = new SafeArrayList<>(MatParamOverride.class);
+        for (MatParamOverride override : overrides) {
+            variant.add(override);
+        }
+        variants.add(variant);
+    }
+
+    /**
+     * Enqueues the permutations reachable by the geometries of the given scene.
+     *
+     * @param scene the scene to walk
+     */
+    public void addScene(Spatial scene) {
+        if (scene instanceof Node) {
+            List<Spatial> children = ((Node) scene).getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                addScene(children.get(i));
+            }
+        } else if (scene instanceof Geometry) {
+            Geometry geom = (Geometry) scene;
+            if (geom.getMaterial() == null) {
+                throw new IllegalStateException("No material is set for Geometry: " + geom.getName());
+            }
+            addMaterial(geom.getMaterial(), geom.getWorldMatParamOverrides(), geom.getWorldLightList());
+        }
+    }
+
+    /**
+     * Enqueues the permutations reachable by a material with the default
+     * parameters of the given material definition.
+     *
+     * @param def the material definition
+     */
+    public void addMaterialDef(MaterialDef def) {
+        addMaterial(new Material(def), null, noLights);
+    }
+
+    /**
+     * Enqueues the permutations reachable by the given material.
+     *
+     * @param material the material
+     */
+    public void addMaterial(Material material) {
+        addMaterial(material, null, noLights);
+    }
+
+    private void addMaterial(Material material, SafeArrayList<MatParamOverride> worldOverrides, LightList lights) {
+        MaterialDef def = material.getMaterialDef();
+        for (String name : def.getTechniqueDefsNames()) {
+            TechniqueDef techDef = findTechniqueDef(def, name);
+            if (techDef == null || techDef.isNoRender()) {
+                continue;
+            }
+            Technique technique = getTechnique(material, techDef);
+            for (SafeArrayList<MatParamOverride> variant : variants) {
+                jobs.add(new Job(technique, worldOverrides, variant, lights));
+            }
+        }
+    }
+
+    /**
+     * Picks the technique definition {@link Material#selectTechnique(java.lang.String, com.jme3.renderer.RenderManager) }
+     * would pick for the given name, without changing the material.
+     */
+    private TechniqueDef findTechniqueDef(MaterialDef def, String name) {
+        EnumSet<Caps> rendererCaps = renderManager.getRenderer().getCaps();
+        TechniqueDef result = null;
+        for (TechniqueDef techDef : def.getTechniqueDefs(name)) {
+            if (rendererCaps.containsAll(techDef.getRequiredCaps())) {
+                result = techDef;
+                if (techDef.getLightMode() == renderManager.getPreferredLightMode()
+                        || techDef.getLightMode() == LightMode.Disable) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Technique getTechnique(Material material, TechniqueDef techDef) {
+        Map<TechniqueDef, Technique> materialTechniques = techniques.get(material);
+        if (materialTechniques == null) {
+            materialTechniques = new IdentityHashMap<>();
+            techniques.put(material, materialTechniques);
+        }
+        Technique technique = materialTechniques.get(techDef);
+        if (technique == null) {
+            technique = new Technique(material, techDef);
+            technique.notifyTechniqueSwitched();
+            materialTechniques.put(techDef, technique);
+        }
+        return technique;
+    }
+
+    /**
+     * Sets the time the warm-up may spend compiling in each call to
+     * {@link #update() }. At least one permutation is processed per call
+     * whatever the budget.
+     * default is 4 ms.
+     *
+     * @param milliseconds the budget in milliseconds
+     */
+    public void setTimeBudget(float milliseconds) {
+        this.timeBudget = (long) (milliseconds * 1000000f);
+    }
+
+    /**
+     * returns the time budget per update in milliseconds
+     *
+     * @return the budget
+     */
+    public float getTimeBudget() {
+        return timeBudget / 1000000f;
+    }
+
+    /**
+     * Sets the listener notified of the progress
+     *
+     * @param listener the listener or null
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Processes enqueued permutations until the time budget is spent.
+     * Call this once per frame from the render thread.
+     *
+     * @return true if all the enqueued permutations have been processed
+     */
+    public boolean update() {
+        if (isComplete()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        do {
+            process(jobs.get(processed++));
+        } while (processed < jobs.size() && System.nanoTime() - start < timeBudget);
+
+        if (listener != null) {
+            listener.onProgress(this, processed, jobs.size());
+        }
+        if (isComplete()) {
+            techniques.clear();
+            if (listener != null) {
+                listener.onComplete(this, compiled);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Processes all the enqueued permutations at once.
+     */
+    public void warmupAll() {
+        float budget = getTimeBudget();
+        timeBudget = Long.MAX_VALUE;
+        update();
+        setTimeBudget(budget);
+    }
+
+    private void process(Job job) {
+        Renderer renderer = renderManager.getRenderer();
+        Shader shader;
+        try {
+            shader = job.technique.makeCurrent(renderManager, job.worldOverrides, job.variant,
+                    job.lights, renderer.getCaps());
+        } catch (RuntimeException ex) {
+            // A permutation that can't be generated is reported, the rendering
+            // of that permutation would fail the same way.
+            logger.log(Level.WARNING, "Cannot generate shader for technique "
+                    + job.technique.getDef().getName(), ex);
+            return;
+        }
+        if (processedShaders.put(shader, shader) == null) {
+            if (shader.isUpdateNeeded()) {
+                renderer.setShader(shader);
+                compiled++;
+            }
+        }
+    }
+
+    /**
+     * returns true if all the enqueued permutations have been processed
+     *
+     * @return true when done
+     */
+    public boolean isComplete() {
+        return processed >= jobs.size();
+    }
+
+    /**
+     * returns the progress of the warm-up between 0 and 1
+     *
+     * @return the progress
+     */
+    public float getProgress() {
+        return jobs.isEmpty() ? 1f : (float) processed / jobs.size();
+    }
+
+    /**
+     * returns the number of permutations processed so far
+     *
+     * @return the processed count
+     */
+    public int getProcessedCount() {
+        return processed;
+    }
+
+    /**
+     * returns the number of permutations enqueued
+     *
+     * @return the total count
+     */
+    public int getTotalCount() {
+        return jobs.size();
+    }
+
+    /**
+     * returns the number of distinct shaders compiled so far. Permutations
+     * resolving to an already compiled shader are not counted.
+     *
+     * @return the compiled count
+     */
+    public int getCompiledCount() {
+        return compiled;
+    }
+}
@@ -54,6 +54,7 @@ public final class Technique {
     private final Material owner;
     private final DefineList paramDefines;
     private final DefineList dynamicDefines;
+    private final DefineList overrideDefines;
 
     /**
      * Creates a new technique instance that implements the given
@@ -67,6 +68,7 @@ public final class Technique {
         this.def = def;
         this.paramDefines = def.createDefineList();
         this.dynamicDefines = def.createDefineList();
+        this.overrideDefines = def.createDefineList();
     }
 
     /**
@@ -139,14 +141,21 @@ public final class Technique {
         TechniqueDefLogic logic = def.getLogic();
         AssetManager assetManager = owner.getMaterialDef().getAssetManager();
 
-        dynamicDefines.clear();
-        dynamicDefines.setAll(paramDefines);
-
-        if (worldOverrides != null) {
-            applyOverrides(dynamicDefines, worldOverrides);
-        }
-        if (forcedOverrides != null) {
-            applyOverrides(dynamicDefines, forcedOverrides);
+        // Only the parameter defines are copied, and only the ones that
+        // differ, so the dynamic defines keep their version when nothing
+        // changed since the last frame and the last shader is reused.
+        if (worldOverrides != null || forcedOverrides != null) {
+            overrideDefines.clear();
+            overrideDefines.setAll(paramDefines);
+            if (worldOverrides != null) {
+                applyOverrides(overrideDefines, worldOverrides);
+            }
+            if (forcedOverrides != null) {
+                applyOverrides(overrideDefines, forcedOverrides);
+            }
+            dynamicDefines.setAll(overrideDefines, def.getParamDefineMask());
+        } else {
+            dynamicDefines.setAll(paramDefines, def.getParamDefineMask());
         }
 
         return logic.makeCurrent(assetManager, renderManager, rendererCaps, lights, dynamicDefines);
@@ -143,6 +143,7 @@ public class TechniqueDef implements Savable {
     private ArrayList<String> defineNames;
     private ArrayList<VarType> defineTypes;
     private HashMap<String, Integer> paramToDefineId;
+    private long paramDefineMask;
     private final HashMap<DefineList, Shader> definesToShaderMap;
     
     private boolean usesNodes = false;
@@ -420,10 +421,22 @@ public class TechniqueDef implements Savable {
         }
         
         paramToDefineId.put(paramName, defineId);
+        paramDefineMask |= 1L << defineId;
         defineNames.add(defineName);
         defineTypes.add(paramType);
     }
 
+    /**
+     * Returns a bit mask of the ids of the defines mapped to material
+     * parameters, as opposed to the unmapped defines set by the
+     * {@link TechniqueDefLogic}.
+     *
+     * @return the mask of the parameter define ids
+     */
+    public long getParamDefineMask() {
+        return paramDefineMask;
+    }
+
     /**
      * Add an unmapped define which can only be set by define ID.
      * 
@@ -517,11 +530,18 @@ public class TechniqueDef implements Savable {
     }
     
     public Shader getShader(AssetManager assetManager, EnumSet<Caps> rendererCaps, DefineList defines) {
-          Shader shader = definesToShaderMap.get(defines);
+          // the define list of a technique remembers the last shader it
+          // resolved to, unchanged defines skip the map lookup.
+          Shader shader = defines.getCachedShader(this);
+          if (shader != null) {
+              return shader;
+          }
+          shader = definesToShaderMap.get(defines);
           if (shader == null) {
               shader = loadShader(assetManager, rendererCaps, defines);
               definesToShaderMap.put(defines.deepClone(), shader);
           }
+          defines.setCachedShader(this, shader);
           return shader;
      }
     
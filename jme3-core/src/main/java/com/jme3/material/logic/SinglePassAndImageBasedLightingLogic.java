@@ -87,6 +87,10 @@ public final class SinglePassAndImageBasedLightingLogic extends DefaultTechnique
             } else {
                 defines.set(indirectLightingDefineId, true);
             }
+        } else {
+            //the defines are kept from one frame to the next, drop the probe of the last call
+            lightProbe = null;
+            defines.set(indirectLightingDefineId, false);
         }
 
         return super.makeCurrent(assetManager, renderManager, rendererCaps, lights, defines);
@@ -18,16 +18,43 @@ import java.nio.FloatBuffer;
 public class MikkTSpaceImpl implements MikkTSpaceContext {
 
     Mesh mesh;
+    /**
+     * the mesh data read once, the generator queries it for every corner
+     */
+    private final int[] indices;
+    private final float[] positions;
+    private final float[] normals;
+    private final float[] texCoords;
+    private final FloatBuffer tangents;
+    private final VertexBuffer tangentBuffer;
 
     public MikkTSpaceImpl(Mesh mesh) {
         this.mesh = mesh;
         VertexBuffer tangentBuffer = mesh.getBuffer(VertexBuffer.Type.Tangent);
         if(tangentBuffer == null){
             FloatBuffer fb = BufferUtils.createFloatBuffer(mesh.getVertexCount() * 4);
-            mesh.setBuffer(VertexBuffer.Type.Tangent, 4, fb);            
+            mesh.setBuffer(VertexBuffer.Type.Tangent, 4, fb);
+            tangentBuffer = mesh.getBuffer(VertexBuffer.Type.Tangent);
         }
-        
-        //TODO ensure the Tangent buffer exists, else create one.
+        this.tangentBuffer = tangentBuffer;
+        this.tangents = (FloatBuffer) tangentBuffer.getData();
+
+        IndexBuffer index = mesh.getIndicesAsList();
+        indices = new int[mesh.getTriangleCount() * 3];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = index.get(i);
+        }
+        positions = readFloats(VertexBuffer.Type.Position);
+        normals = readFloats(VertexBuffer.Type.Normal);
+        texCoords = readFloats(VertexBuffer.Type.TexCoord);
+    }
+
+    private float[] readFloats(VertexBuffer.Type type) {
+        FloatBuffer buffer = (FloatBuffer) mesh.getBuffer(type).getDataReadOnly();
+        float[] array = new float[buffer.limit()];
+        buffer.rewind();
+        buffer.get(array);
+        return array;
     }
 
     @Override
@@ -42,47 +69,34 @@ public class MikkTSpaceImpl implements MikkTSpaceContext {
 
     @Override
     public void getPosition(float[] posOut, int face, int vert) {
-        int vertIndex = getIndex(face, vert);
-        VertexBuffer position = mesh.getBuffer(VertexBuffer.Type.Position);
-        FloatBuffer pos = (FloatBuffer) position.getData();
-        pos.position(vertIndex * 3);
-        posOut[0] = pos.get();
-        posOut[1] = pos.get();
-        posOut[2] = pos.get();
+        int vertIndex = getIndex(face, vert) * 3;
+        posOut[0] = positions[vertIndex];
+        posOut[1] = positions[vertIndex + 1];
+        posOut[2] = positions[vertIndex + 2];
     }
 
     @Override
     public void getNormal(float[] normOut, int face, int vert) {
-        int vertIndex = getIndex(face, vert);
-        VertexBuffer normal = mesh.getBuffer(VertexBuffer.Type.Normal);
-        FloatBuffer norm = (FloatBuffer) normal.getData();
-        norm.position(vertIndex * 3);
-        normOut[0] = norm.get();
-        normOut[1] = norm.get();
-        normOut[2] = norm.get();
+        int vertIndex = getIndex(face, vert) * 3;
+        normOut[0] = normals[vertIndex];
+        normOut[1] = normals[vertIndex + 1];
+        normOut[2] = normals[vertIndex + 2];
     }
 
     @Override
     public void getTexCoord(float[] texOut, int face, int vert) {
-        int vertIndex = getIndex(face, vert);
-        VertexBuffer texCoord = mesh.getBuffer(VertexBuffer.Type.TexCoord);
-        FloatBuffer tex = (FloatBuffer) texCoord.getData();
-        tex.position(vertIndex * 2);
-        texOut[0] = tex.get();
-        texOut[1] = tex.get();        
+        int vertIndex = getIndex(face, vert) * 2;
+        texOut[0] = texCoords[vertIndex];
+        texOut[1] = texCoords[vertIndex + 1];
     }
 
     @Override
     public void setTSpaceBasic(float[] tangent, float sign, int face, int vert) {
-        int vertIndex = getIndex(face, vert);
-        VertexBuffer tangentBuffer = mesh.getBuffer(VertexBuffer.Type.Tangent);
-        FloatBuffer tan = (FloatBuffer) tangentBuffer.getData();
-        
-        tan.position(vertIndex * 4);
-        tan.put(tangent);
-        tan.put(sign);
-        
-        tan.rewind();
+        int vertIndex = getIndex(face, vert) * 4;
+        tangents.put(vertIndex, tangent[0]);
+        tangents.put(vertIndex + 1, tangent[1]);
+        tangents.put(vertIndex + 2, tangent[2]);
+        tangents.put(vertIndex + 3, sign);
         tangentBuffer.setUpdateNeeded();
     }
 
@@ -92,9 +106,7 @@ public class MikkTSpaceImpl implements MikkTSpaceContext {
     }
 
     private int getIndex(int face, int vert) {
-        IndexBuffer index = mesh.getIndexBuffer();
-        int vertIndex = index.get(face * 3 + vert);
-        return vertIndex;
+        return indices[face * 3 + vert];
     }
 
 }
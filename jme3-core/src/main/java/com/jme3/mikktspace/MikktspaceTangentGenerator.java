@@ -12,7 +12,10 @@ import com.jme3.util.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,6 +90,40 @@ public class MikktspaceTangentGenerator {
             TangentUtils.generateBindPoseTangentsIfNecessary(g.getMesh());
         }
     }
+
+    /**
+     * Generates the tangents of all the meshes of the spatial, each mesh in
+     * its own task. Meshes shared by several geometries are processed once.
+     * The first failure of a task is rethrown once all the tasks are done.
+     *
+     * @param s the spatial to generate the tangents of.
+     * @param executor the executor running the tasks.
+     */
+    public static void generateParallel(Spatial s, ExecutorService executor) {
+        final Map<Mesh, Geometry> meshes = new LinkedHashMap<Mesh, Geometry>();
+        s.breadthFirstTraversal(new SceneGraphVisitor() {
+            @Override
+            public void visit(Spatial spatial) {
+                if (spatial instanceof Geometry && !meshes.containsKey(((Geometry) spatial).getMesh())) {
+                    meshes.put(((Geometry) spatial).getMesh(), (Geometry) spatial);
+                }
+            }
+        });
+        List<Runnable> tasks = new ArrayList<Runnable>(meshes.size());
+        for (final Map.Entry<Mesh, Geometry> entry : meshes.entrySet()) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    MikkTSpaceImpl context = new MikkTSpaceImpl(entry.getKey());
+                    if (!genTangSpaceDefault(context)) {
+                        Logger.getLogger(MikktspaceTangentGenerator.class.getName()).log(Level.SEVERE, "Failed to generate tangents for geometry " + entry.getValue().getName());
+                    }
+                    TangentUtils.generateBindPoseTangentsIfNecessary(entry.getKey());
+                }
+            });
+        }
+        ParallelTasks.runAll(tasks, executor);
+    }
     
     public static boolean genTangSpaceDefault(MikkTSpaceContext mikkTSpace) {
         return genTangSpace(mikkTSpace, 180.0f);
@@ -31,6 +31,7 @@
  */
 package com.jme3.renderer.opengl;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
@@ -49,6 +50,8 @@ public interface GLExt {
 	public static final int GL_COMPRESSED_RGBA_S3TC_DXT3_EXT = 0x83F2;
 	public static final int GL_COMPRESSED_RGBA_S3TC_DXT5_EXT = 0x83F3;
 	public static final int GL_COMPRESSED_RGB_S3TC_DXT1_EXT = 0x83F0;
+	public static final int GL_COMPRESSED_RED_RGTC1 = 0x8DBB;
+	public static final int GL_COMPRESSED_RG_RGTC2 = 0x8DBD;
 	public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT1_EXT = 0x8C4D;
 	public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT3_EXT = 0x8C4E;
 	public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT = 0x8C4F;
@@ -72,6 +75,8 @@ public interface GLExt {
 	public static final int GL_MULTISAMPLE_ARB = 0x809D;
         public static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
         public static final int GL_PIXEL_PACK_BUFFER_ARB = 0x88EB;
+        public static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+        public static final int GL_PROGRAM_BINARY_RETRIEVABLE_HINT = 0x8257;
         public static final int GL_PIXEL_UNPACK_BUFFER_ARB = 0x88EC;
 	public static final int GL_R11F_G11F_B10F_EXT = 0x8C3A;
         public static final int GL_RGBA8 = 0x8058;
@@ -110,6 +115,9 @@ public interface GLExt {
 	public void glDrawElementsInstancedARB(int mode, int indices_count, int type, long indices_buffer_offset, int primcount);
         public Object glFenceSync(int condition, int flags);
 	public void glGetMultisample(int pname, int index, FloatBuffer val);
+        public void glGetProgramBinary(int program, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary);
+        public void glProgramBinary(int program, int binaryFormat, ByteBuffer binary);
+        public void glProgramParameteri(int program, int pname, int value);
 	public void glTexImage2DMultisample(int target, int samples, int internalformat, int width, int height, boolean fixedsamplelocations);
 	public void glVertexAttribDivisorARB(int index, int divisor);
 }
@@ -31,10 +31,12 @@
  */
 package com.jme3.renderer.opengl;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -110,11 +112,14 @@ public final class GLRenderer implements Renderer {
 
     private FrameBuffer mainFbOverride = null;
     private final Statistics statistics = new Statistics();
+    private final ArrayList<Image> pendingMipLevelUpdates = new ArrayList<Image>();
     private int vpX, vpY, vpW, vpH;
     private int clipX, clipY, clipW, clipH;
     private int defaultAnisotropicFilter = 1;
     private boolean linearizeSrgbImages;
     private HashSet<String> extensions;
+    private ProgramBinaryCache programBinaryCache;
+    private String driverId;
 
     private final GL gl;
     private final GL2 gl2;
@@ -372,6 +377,11 @@ public final class GLRenderer implements Renderer {
             caps.add(Caps.TextureCompressionETC1);
         }
 
+        if (hasExtension("GL_ARB_texture_compression_rgtc") || hasExtension("GL_EXT_texture_compression_rgtc")
+                || caps.contains(Caps.OpenGL30)) {
+            caps.add(Caps.TextureCompressionRGTC);
+        }
+
         // == end texture format extensions ==
 
         if (hasExtension("GL_ARB_vertex_array_object") || caps.contains(Caps.OpenGL30)) {
@@ -474,6 +484,14 @@ public final class GLRenderer implements Renderer {
             }
         }
 
+        driverId = gl.glGetString(GLConstants.GL_VENDOR) + "|"
+                + gl.glGetString(GLConstants.GL_RENDERER) + "|"
+                + gl.glGetString(GLConstants.GL_VERSION) + "|"
+                + gl.glGetString(GLConstants.GL_SHADING_LANGUAGE_VERSION);
+        if (programBinaryCache != null) {
+            programBinaryCache.setDriverId(driverId);
+        }
+
         // Print context information
         logger.log(Level.INFO, "OpenGL Renderer Information\n" +
                         " * Vendor: {0}\n" +
@@ -1168,29 +1186,14 @@ public final class GLRenderer implements Renderer {
         }
     }
 
-    public void updateShaderSourceData(ShaderSource source) {
-        int id = source.getId();
-        if (id == -1) {
-            // Create id
-            id = gl.glCreateShader(convertShaderType(source.getType()));
-            if (id <= 0) {
-                throw new RendererException("Invalid ID received when trying to create shader.");
-            }
-
-            source.setId(id);
-        } else {
-            throw new RendererException("Cannot recompile shader source");
-        }
-
+    /**
+     * Generates the source given to the driver for the given shader source:
+     * version header, renderer defines, material defines and source code.
+     */
+    private String generateShaderSource(ShaderSource source) {
         boolean gles2 = caps.contains(Caps.OpenGLES20);
         String language = source.getLanguage();
 
-        if (gles2 && !language.equals("GLSL100")) {
-            throw new RendererException("This shader cannot run in OpenGL ES 2. "
-                    + "Only GLSL 1.00 shaders are supported.");
-        }
-
-        // Upload shader source.
         // Merge the defines and source code.
         stringBuf.setLength(0);
         if (language.startsWith("GLSL")) {
@@ -1227,10 +1230,37 @@ public final class GLRenderer implements Renderer {
 
         stringBuf.append(source.getDefines());
         stringBuf.append(source.getSource());
+        return stringBuf.toString();
+    }
+
+    public void updateShaderSourceData(ShaderSource source) {
+        int id = source.getId();
+        if (id == -1) {
+            // Create id
+            id = gl.glCreateShader(convertShaderType(source.getType()));
+            if (id <= 0) {
+                throw new RendererException("Invalid ID received when trying to create shader.");
+            }
+
+            source.setId(id);
+        } else {
+            throw new RendererException("Cannot recompile shader source");
+        }
+
+        boolean gles2 = caps.contains(Caps.OpenGLES20);
+        String language = source.getLanguage();
+
+        if (gles2 && !language.equals("GLSL100")) {
+            throw new RendererException("This shader cannot run in OpenGL ES 2. "
+                    + "Only GLSL 1.00 shaders are supported.");
+        }
+
+        // Upload shader source.
+        String code = generateShaderSource(source);
 
         intBuf1.clear();
-        intBuf1.put(0, stringBuf.length());
-        gl.glShaderSource(id, new String[]{ stringBuf.toString() }, intBuf1);
+        intBuf1.put(0, code.length());
+        gl.glShaderSource(id, new String[]{ code }, intBuf1);
         gl.glCompileShader(id);
 
         gl.glGetShader(id, GLConstants.GL_COMPILE_STATUS, intBuf1);
@@ -1280,12 +1310,31 @@ public final class GLRenderer implements Renderer {
             needRegister = true;
         }
 
+        // A new program can be loaded from the binary cache instead of
+        // being compiled and linked.
+        String binaryKey = null;
+        if (needRegister && programBinaryCache != null && caps.contains(Caps.BinaryShader)) {
+            List<String> sources = new ArrayList<String>(shader.getSources().size());
+            for (ShaderSource source : shader.getSources()) {
+                sources.add(generateShaderSource(source));
+            }
+            binaryKey = programBinaryCache.computeKey(sources);
+            if (loadProgramBinary(shader, id, binaryKey)) {
+                shader.clearUpdateNeeded();
+                objManager.registerObject(shader);
+                statistics.onNewShader();
+                return;
+            }
+            glext.glProgramParameteri(id, GLExt.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLConstants.GL_TRUE);
+        }
+
         // If using GLSL 1.5, we bind the outputs for the user
         // For versions 3.3 and up, user should use layout qualifiers instead.
         boolean bindFragDataRequired = false;
 
         for (ShaderSource source : shader.getSources()) {
-            if (source.isUpdateNeeded()) {
+            // sources of a program loaded from a binary were never compiled
+            if (source.isUpdateNeeded() || source.getId() == -1) {
                 updateShaderSourceData(source);
             }
             if (source.getType() == ShaderType.Fragment
@@ -1328,6 +1377,9 @@ public final class GLRenderer implements Renderer {
                 logger.fine("Shader linked successfully.");
             }
             shader.clearUpdateNeeded();
+            if (binaryKey != null) {
+                storeProgramBinary(id, binaryKey);
+            }
             if (needRegister) {
                 // Register shader for clean up if it was created in this method.
                 objManager.registerObject(shader);
@@ -1345,6 +1397,62 @@ public final class GLRenderer implements Renderer {
         }
     }
 
+    private boolean loadProgramBinary(Shader shader, int id, String key) {
+        int[] format = new int[1];
+        ByteBuffer binary = programBinaryCache.load(key, format);
+        if (binary == null) {
+            return false;
+        }
+        glext.glProgramBinary(id, format[0], binary);
+        BufferUtils.destroyDirectBuffer(binary);
+
+        gl.glGetProgram(id, GLConstants.GL_LINK_STATUS, intBuf1);
+        if (intBuf1.get(0) != GLConstants.GL_TRUE) {
+            // the driver may reject binaries, e.g. after an update
+            logger.log(Level.FINE, "Program binary {0} rejected by the driver.", key);
+            programBinaryCache.remove(key);
+            return false;
+        }
+        for (ShaderSource source : shader.getSources()) {
+            source.clearUpdateNeeded();
+        }
+        logger.log(Level.FINE, "Shader loaded from program binary {0}.", key);
+        return true;
+    }
+
+    private void storeProgramBinary(int id, String key) {
+        gl.glGetProgram(id, GLExt.GL_PROGRAM_BINARY_LENGTH, intBuf1);
+        int length = intBuf1.get(0);
+        if (length <= 0) {
+            return;
+        }
+        ByteBuffer binary = BufferUtils.createByteBuffer(length);
+        intBuf1.clear();
+        intBuf16.clear();
+        glext.glGetProgramBinary(id, intBuf1, intBuf16, binary);
+        binary.limit(intBuf1.get(0));
+        programBinaryCache.store(key, intBuf16.get(0), binary);
+        BufferUtils.destroyDirectBuffer(binary);
+    }
+
+    /**
+     * Sets the cache used to store the linked shader programs on disk, so that
+     * they don't need to be compiled again on the next launches.
+     * Only used if the renderer supports {@link Caps#BinaryShader}.
+     *
+     * @param programBinaryCache the cache, or null to disable it
+     */
+    public void setProgramBinaryCache(ProgramBinaryCache programBinaryCache) {
+        this.programBinaryCache = programBinaryCache;
+        if (programBinaryCache != null && driverId != null) {
+            programBinaryCache.setDriverId(driverId);
+        }
+    }
+
+    public ProgramBinaryCache getProgramBinaryCache() {
+        return programBinaryCache;
+    }
+
     public void setShader(Shader shader) {
         if (shader == null) {
             throw new IllegalArgumentException("Shader cannot be null");
@@ -1572,12 +1680,12 @@ public final class GLRenderer implements Renderer {
                     convertAttachmentSlot(rb.getSlot()),
                     convertTextureType(tex.getType(), image.getMultiSamples(), rb.getFace()),
                     image.getId(),
-                    0);
+                    rb.getLevel());
         } else {
             gl3.glFramebufferTextureLayer(GLFbo.GL_FRAMEBUFFER_EXT, 
                     convertAttachmentSlot(rb.getSlot()), 
                     image.getId(), 
-                    0,
+                    rb.getLevel(),
                     rb.getLayer());
         }
     }
@@ -2176,6 +2284,12 @@ public final class GLRenderer implements Renderer {
         int target = convertTextureType(type, img.getMultiSamples(), -1);
         bindTextureAndUnit(target, img, unit);
 
+        if (img.isMipStreaming() && (scaleToPot || target != GLConstants.GL_TEXTURE_2D || !img.hasMipmaps())) {
+            // the streamed levels can't be mapped to the rescaled image
+            img.setMipStreaming(false);
+        }
+        int baseLevel = img.getMipBaseLevel();
+
         if (!img.hasMipmaps() && img.isGeneratedMipmapsRequired()) {
             // Image does not have mipmaps, but they are required.
             // Generate from base level.
@@ -2191,6 +2305,11 @@ public final class GLRenderer implements Renderer {
             // Image already has mipmaps, set the max level based on the 
             // number of mipmaps we have.
             gl.glTexParameteri(target, GLConstants.GL_TEXTURE_MAX_LEVEL, img.getMipMapSizes().length - 1);
+            if (baseLevel != img.getLastTextureState().baseLevel) {
+                // streamed image, only the levels from the base level are uploaded
+                gl.glTexParameteri(target, GLConstants.GL_TEXTURE_BASE_LEVEL, baseLevel);
+                img.getLastTextureState().baseLevel = baseLevel;
+            }
         } else {
             // Image does not have mipmaps and they are not required.
             // Specify that that the texture has no mipmaps.
@@ -2266,7 +2385,7 @@ public final class GLRenderer implements Renderer {
                 texUtil.uploadTexture(imageForUpload, target, i, linearizeSrgbImages);
             }
         } else {
-            texUtil.uploadTexture(imageForUpload, target, 0, linearizeSrgbImages);
+            texUtil.uploadTexture(imageForUpload, target, 0, linearizeSrgbImages, baseLevel, Integer.MAX_VALUE);
         }
 
         if (img.getMultiSamples() != imageSamples) {
@@ -2305,6 +2424,8 @@ public final class GLRenderer implements Renderer {
             }
 
             updateTexImageData(image, tex.getType(), unit, scaleToPot);
+        } else if (image.isMipStreaming() && image.getMipBaseLevel() != image.getLastTextureState().baseLevel) {
+            updateTexMipLevels(image, unit);
         }
 
         int texId = image.getId();
@@ -2313,6 +2434,47 @@ public final class GLRenderer implements Renderer {
         setupTextureParams(unit, tex);
     }
 
+    /**
+     * Uploads the mip levels a streamed image now requires, or releases
+     * the ones it no longer needs, and clamps the texture to its new base
+     * level.
+     */
+    private void updateTexMipLevels(Image img, int unit) {
+        int target = GLConstants.GL_TEXTURE_2D;
+        bindTextureAndUnit(target, img, unit);
+
+        LastTextureState state = img.getLastTextureState();
+        int baseLevel = img.getMipBaseLevel();
+        if (baseLevel < state.baseLevel) {
+            texUtil.uploadTexture(img, target, 0, linearizeSrgbImages, baseLevel, state.baseLevel - 1);
+            gl.glTexParameteri(target, GLConstants.GL_TEXTURE_BASE_LEVEL, baseLevel);
+        } else {
+            // clamp first, the released levels must be outside of the range
+            gl.glTexParameteri(target, GLConstants.GL_TEXTURE_BASE_LEVEL, baseLevel);
+            for (int i = state.baseLevel; i < baseLevel; i++) {
+                texUtil.evictTextureLevel(img, target, i, linearizeSrgbImages);
+            }
+        }
+        state.baseLevel = baseLevel;
+    }
+
+    public void requestMipLevelUpdate(Image image) {
+        pendingMipLevelUpdates.add(image);
+    }
+
+    public void updateMipLevels() {
+        for (int i = 0; i < pendingMipLevelUpdates.size(); i++) {
+            Image image = pendingMipLevelUpdates.get(i);
+            // an image that isn't uploaded yet gets its base level with its first upload,
+            // an image queued twice is already up to date the second time
+            if (image.getId() != -1 && !image.isUpdateNeeded() && image.isMipStreaming()
+                    && image.getMipBaseLevel() != image.getLastTextureState().baseLevel) {
+                updateTexMipLevels(image, 0);
+            }
+        }
+        pendingMipLevelUpdates.clear();
+    }
+
     public void modifyTexture(Texture tex, IImage pixels, int x, int y) {
         setTexture(0, tex);
         int target = convertTextureType(tex.getType(), pixels.getMultiSamples(), -1);
@@ -2409,23 +2571,31 @@ public final class GLRenderer implements Renderer {
         }
 
         int usage = convertUsage(vb.getUsage());
-        vb.getData().rewind();
+        // uploading only reads, keep copy-on-write data shared
+        Buffer data = vb.isCopyOnWrite() ? vb.getDataReadOnly() : vb.getData();
+
+        if (!created && vb.hasUpdateRange() && vb.getFormat() != VertexBuffer.Format.Half) {
+            updateBufferRange(vb, target, data);
+            vb.clearUpdateNeeded();
+            return;
+        }
+        data.rewind();
 
         switch (vb.getFormat()) {
             case Byte:
             case UnsignedByte:
-                gl.glBufferData(target, (ByteBuffer) vb.getData(), usage);
+                gl.glBufferData(target, (ByteBuffer) data, usage);
                 break;
             case Short:
             case UnsignedShort:
-                gl.glBufferData(target, (ShortBuffer) vb.getData(), usage);
+                gl.glBufferData(target, (ShortBuffer) data, usage);
                 break;
             case Int:
             case UnsignedInt:
-                glext.glBufferData(target, (IntBuffer) vb.getData(), usage);
+                glext.glBufferData(target, (IntBuffer) data, usage);
                 break;
             case Float:
-                gl.glBufferData(target, (FloatBuffer) vb.getData(), usage);
+                gl.glBufferData(target, (FloatBuffer) data, usage);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown buffer format.");
@@ -2434,6 +2604,42 @@ public final class GLRenderer implements Renderer {
         vb.clearUpdateNeeded();
     }
 
+    /**
+     * Uploads only the modified range of elements of a buffer.
+     */
+    private void updateBufferRange(VertexBuffer vb, int target, Buffer data) {
+        int components = vb.getNumComponents();
+        int limit = data.limit();
+        int start = Math.min(vb.getUpdateRangeStart() * components, limit);
+        int end = Math.min(vb.getUpdateRangeEnd() * components, limit);
+        long offset = (long) start * vb.getFormat().getComponentSize();
+        data.limit(end);
+        data.position(start);
+
+        switch (vb.getFormat()) {
+            case Byte:
+            case UnsignedByte:
+                gl.glBufferSubData(target, offset, (ByteBuffer) data);
+                break;
+            case Short:
+            case UnsignedShort:
+                gl.glBufferSubData(target, offset, (ShortBuffer) data);
+                break;
+            case Int:
+            case UnsignedInt:
+                glext.glBufferSubData(target, offset, (IntBuffer) data);
+                break;
+            case Float:
+                gl.glBufferSubData(target, offset, (FloatBuffer) data);
+                break;
+            default:
+                throw new UnsupportedOperationException("Unknown buffer format.");
+        }
+
+        data.limit(limit);
+        data.rewind();
+    }
+
     public void deleteBuffer(VertexBuffer vb) {
         int bufId = vb.getId();
         if (bufId != -1) {
@@ -2656,7 +2862,7 @@ public final class GLRenderer implements Renderer {
         } else {
             if (useInstancing) {
                 glext.glDrawElementsInstancedARB(convertElementMode(mesh.getMode()),
-                        indexBuf.getData().limit(),
+                        indexBuf.getDataReadOnly().limit(),
                         convertFormat(indexBuf.getFormat()),
                         0,
                         count);
@@ -2664,7 +2870,7 @@ public final class GLRenderer implements Renderer {
                 gl.glDrawRangeElements(convertElementMode(mesh.getMode()),
                         0,
                         vertCount,
-                        indexBuf.getData().limit(),
+                        indexBuf.getDataReadOnly().limit(),
                         convertFormat(indexBuf.getFormat()),
                         0);
             }
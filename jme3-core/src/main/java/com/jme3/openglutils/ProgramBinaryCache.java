@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer.opengl;
+
+import com.jme3.util.BufferUtils;
+import com.jme3.util.DigestUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A disk cache of linked shader program binaries.
+ * <p>
+ * Programs are keyed by a hash of their final sources (defines included) and
+ * of the driver identification, so that a driver update or a different GPU
+ * never reuses a stale binary. On a warm start the {@link GLRenderer} uploads
+ * the cached binary with glProgramBinary instead of compiling and linking the
+ * sources. If the driver rejects the binary, the program is compiled
+ * normally and the cache entry is replaced.
+ * <p>
+ * Requires {@link com.jme3.renderer.Caps#BinaryShader}, the cache is ignored
+ * otherwise.
+ */
+public class ProgramBinaryCache {
+
+    private static final Logger logger = Logger.getLogger(ProgramBinaryCache.class.getName());
+    private static final int MAGIC = 0x4A504243; // JPBC
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".bin";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File folder;
+    private String driverId = "";
+    private int hits;
+    private int misses;
+
+    /**
+     * Creates a program binary cache storing its files in the given folder.
+     * The folder is created if it doesn't exist.
+     *
+     * @param folder the folder of the cache
+     */
+    public ProgramBinaryCache(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Sets the identification of the driver, called by the renderer when
+     * initialized.
+     *
+     * @param driverId a string identifying the GPU and driver version
+     */
+    public void setDriverId(String driverId) {
+        this.driverId = driverId;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    /**
+     * Computes the cache key of a program.
+     *
+     * @param sources the final sources of all the stages of the program,
+     * as given to the driver
+     * @return the key
+     */
+    public String computeKey(List<String> sources) {
+        MessageDigest digest = DigestUtil.createSha1();
+        digest.update(driverId.getBytes(UTF8));
+        for (String source : sources) {
+            digest.update((byte) 0);
+            digest.update(source.getBytes(UTF8));
+        }
+        return DigestUtil.toHex(digest.digest());
+    }
+
+    /**
+     * Loads a program binary.
+     *
+     * @param key the key of the program
+     * @param formatStore receives the binary format at index 0
+     * @return a direct buffer containing the binary, or null if the program
+     * is not in the cache
+     */
+    public ByteBuffer load(String key, int[] formatStore) {
+        File file = new File(folder, key + EXTENSION);
+        if (!file.isFile()) {
+            misses++;
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                misses++;
+                return null;
+            }
+            formatStore[0] = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > file.length()) {
+                misses++;
+                return null;
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            ByteBuffer binary = BufferUtils.createByteBuffer(length);
+            binary.put(data).flip();
+            hits++;
+            return binary;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to read program binary " + file, ex);
+            misses++;
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Stores a program binary, replacing the previous one if any.
+     *
+     * @param key the key of the program
+     * @param format the binary format returned by the driver
+     * @param binary the binary, from its position to its limit
+     */
+    public void store(String key, int format, ByteBuffer binary) {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            logger.log(Level.WARNING, "Cannot create the program binary cache folder {0}", folder);
+            return;
+        }
+        byte[] data = new byte[binary.remaining()];
+        binary.duplicate().get(data);
+
+        //writing to a temporary file first so that a crash never leaves a truncated entry
+        File file = new File(folder, key + EXTENSION);
+        File tmpFile = new File(folder, key + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(format);
+            out.writeInt(data.length);
+            out.write(data);
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete()) {
+                logger.log(Level.WARNING, "Cannot replace program binary {0}", file);
+            } else if (!tmpFile.renameTo(file)) {
+                logger.log(Level.WARNING, "Cannot write program binary {0}", file);
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to write program binary " + file, ex);
+        } finally {
+            close(out);
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes a program from the cache, used when the driver rejects it.
+     *
+     * @param key the key of the program
+     */
+    public void remove(String key) {
+        File file = new File(folder, key + EXTENSION);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Removes all the programs from the cache.
+     */
+    public void clear() {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(EXTENSION)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the number of programs loaded from the cache
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of programs that were not found in the cache
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+}
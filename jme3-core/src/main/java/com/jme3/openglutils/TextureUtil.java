@@ -237,6 +237,19 @@ final class TextureUtil {
                               int target,
                               int index,
                               boolean linearizeSrgb) {
+        uploadTexture(image, target, index, linearizeSrgb, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Uploads the mip levels of the image between firstLevel and lastLevel
+     * (inclusive), used to stream the levels of a texture separately.
+     */
+    public void uploadTexture(IImage image,
+                              int target,
+                              int index,
+                              boolean linearizeSrgb,
+                              int firstLevel,
+                              int lastLevel) {
 
         boolean getSrgbFormat = image.getColorSpace() == ColorSpace.sRGB && linearizeSrgb;
         Format jmeFormat = image.getFormat();
@@ -275,7 +288,11 @@ final class TextureUtil {
             setupTextureSwizzle(target, jmeFormat);
         }
 
-        for (int i = 0; i < mipSizes.length; i++) {
+        for (int i = 0; i < mipSizes.length && i <= lastLevel; i++) {
+            if (i < firstLevel) {
+                pos += mipSizes[i];
+                continue;
+            }
             int mipWidth = Math.max(1, width >> i);
             int mipHeight = Math.max(1, height >> i);
             int mipDepth = Math.max(1, depth >> i);
@@ -291,6 +308,19 @@ final class TextureUtil {
         }
     }
 
+    /**
+     * Releases the storage of a mip level of a 2D texture by redefining it
+     * with an empty size. The level must be outside of the base / max level
+     * range of the texture.
+     */
+    public void evictTextureLevel(IImage image, int target, int level, boolean linearizeSrgb) {
+        boolean getSrgbFormat = image.getColorSpace() == ColorSpace.sRGB && linearizeSrgb;
+        GLImageFormat oglFormat = getImageFormatWithError(image.getFormat(), getSrgbFormat);
+        // compressed formats need a (empty) data buffer to be defined
+        ByteBuffer data = oglFormat.compressed ? ByteBuffer.allocateDirect(0) : null;
+        uploadTextureLevel(oglFormat, target, level, 0, 1, 0, 0, 1, 1, data);
+    }
+
     public void uploadSubTexture(IImage image, int target, int index, int x, int y, boolean linearizeSrgb) {
         if (target != GLConstants.GL_TEXTURE_2D || image.getDepth() > 1) {
             throw new UnsupportedOperationException("Updating non-2D texture is not supported");
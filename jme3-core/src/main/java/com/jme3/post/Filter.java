@@ -85,6 +85,14 @@ public abstract class Filter implements Savable {
         protected Texture2D renderedTexture;
         protected Texture2D depthTexture;
         protected Material passMaterial;
+        protected boolean transientTarget = false;
+        private boolean pooled = false;
+        private RenderTargetPool.RenderTarget pooledTarget;
+        private int width;
+        private int height;
+        private int numSamples;
+        private Format textureFormat;
+        private Format depthBufferFormat;
 
         /**
          * init the pass called internally
@@ -97,7 +105,25 @@ public abstract class Filter implements Savable {
          */
         public void init(Renderer renderer, int width, int height, Format textureFormat, Format depthBufferFormat, int numSamples, boolean renderDepth) {
             Collection<Caps> caps = renderer.getCaps();
-            if (numSamples > 1 && caps.contains(Caps.FrameBufferMultisample) && caps.contains(Caps.OpenGL31)) {
+            boolean multisample = numSamples > 1 && caps.contains(Caps.FrameBufferMultisample) && caps.contains(Caps.OpenGL31);
+            pooled = transientTarget && !renderDepth && processor != null && processor.getRenderTargetPool() != null;
+            if (pooled) {
+                //the frame buffer is borrowed from the processor's pool at render time,
+                //the texture is only a handle whose image is swapped with the pooled one.
+                this.width = width;
+                this.height = height;
+                this.numSamples = multisample ? numSamples : 1;
+                this.textureFormat = textureFormat;
+                this.depthBufferFormat = depthBufferFormat;
+                renderFrameBuffer = null;
+                if (multisample) {
+                    renderedTexture = new Texture2D(width, height, numSamples, textureFormat);
+                } else {
+                    renderedTexture = new Texture2D(width, height, textureFormat);
+                }
+                return;
+            }
+            if (multisample) {
                 renderFrameBuffer = new FrameBuffer(width, height, numSamples);                
                 renderedTexture = new Texture2D(width, height, numSamples, textureFormat);
                 renderFrameBuffer.setDepthBuffer(depthBufferFormat);
@@ -190,7 +216,68 @@ public abstract class Filter implements Savable {
             this.passMaterial = passMaterial;
         }
 
+        /**
+         * Sets this pass as transient: its render target is only needed until
+         * the filter owning it is rendered.
+         * When the {@link FilterPostProcessor} pools its render targets, a
+         * transient pass doesn't allocate its own frame buffer but borrows one
+         * from the pool for the duration of the filter rendering.
+         * Must be called before the pass is initialized, and a pass rendered
+         * outside of the filter chain (in postQueue or preFrame) must not be
+         * transient.
+         *
+         * @param transientTarget true to make this pass transient
+         */
+        public void setTransient(boolean transientTarget) {
+            this.transientTarget = transientTarget;
+        }
+
+        /**
+         * @return true if this pass is transient
+         * @see #setTransient(boolean)
+         */
+        public boolean isTransient() {
+            return transientTarget;
+        }
+
+        /**
+         * @return true if the render target of this pass is borrowed from the
+         * processor's pool
+         */
+        public boolean isPooled() {
+            return pooled;
+        }
+
+        /**
+         * borrows a render target from the pool, called internally
+         */
+        void acquireTarget(RenderTargetPool pool, Renderer renderer) {
+            if (pooledTarget == null) {
+                pooledTarget = pool.acquire(renderer, width, height, textureFormat, depthBufferFormat, numSamples);
+                renderFrameBuffer = pooledTarget.getFrameBuffer();
+                renderedTexture.setImage(pooledTarget.getTexture().getImage());
+            }
+        }
+
+        /**
+         * gives the render target back to the pool, called internally
+         */
+        void releaseTarget(RenderTargetPool pool) {
+            if (pooledTarget != null) {
+                pool.release(pooledTarget);
+                pooledTarget = null;
+                renderFrameBuffer = null;
+            }
+        }
+
         public void cleanup(Renderer r) {
+            if (pooled) {
+                //the pool owns the frame buffer and the image
+                if (pooledTarget != null && processor != null) {
+                    releaseTarget(processor.getRenderTargetPool());
+                }
+                return;
+            }
             renderFrameBuffer.dispose();
             renderedTexture.getImage().dispose();
             if(depthTexture!=null){
@@ -237,6 +324,8 @@ public abstract class Filter implements Savable {
     protected final void init(AssetManager manager, RenderManager renderManager, ViewPort vp, int w, int h) {
         //  cleanup(renderManager.getRenderer());
         defaultPass = new Pass();
+        //the output of a filter is only read by the next filter in the chain
+        defaultPass.setTransient(true);
         defaultPass.init(renderManager.getRenderer(), w, h, getDefaultPassTextureFormat(), getDefaultPassDepthFormat());
         initFilter(manager, renderManager, vp, w, h);
     }
@@ -294,6 +383,14 @@ public abstract class Filter implements Savable {
         getMaterial().setTexture("DepthTexture", depthTexture);
     }
 
+    /**
+     * Override if you want to do something special with the normal texture;
+     * Only called if {@link #isRequiresNormalTexture()} returns true.
+     * @param normalTexture the view space normals of the scene rendered by the processor
+     */
+    protected void setNormalTexture(Texture normalTexture){
+    }
+
     /**
      * Override this method if you want to make a pre pass, before the actual rendering of the frame
      * @param queue
@@ -400,6 +497,19 @@ public abstract class Filter implements Savable {
         return false;
     }
 
+    /**
+     * Override this method and return true if your Filter needs the normals
+     * of the scene.
+     * The processor renders the "PreNormalPass" technique once for all the
+     * filters that require it, instead of each filter rendering its own
+     * normal pre pass, and gives the result to {@link #setNormalTexture(com.jme3.texture.Texture)}.
+     *
+     * @return true if your Filter need the normal texture
+     */
+    protected boolean isRequiresNormalTexture() {
+        return false;
+    }
+
     /**
      * Override this method and return false if your Filter does not need the scene texture
      *
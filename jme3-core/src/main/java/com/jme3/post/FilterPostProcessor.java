@@ -37,8 +37,9 @@ import com.jme3.material.Material;
 import com.jme3.renderer.*;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.texture.FrameBuffer;
-import com.jme3.texture.ITexture;
 import com.jme3.texture.Format;
+import com.jme3.texture.MagFilter;
+import com.jme3.texture.MinFilter;
 import com.jme3.texture.Texture2D;
 import com.jme3.ui.Picture;
 import com.jme3.util.SafeArrayList;
@@ -64,6 +65,8 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
     private FrameBuffer renderFrameBuffer;
     private Texture2D filterTexture;
     private Texture2D depthTexture;
+    private FrameBuffer normalFrameBuffer;
+    private Texture2D normalTexture;
     private SafeArrayList<Filter> filters = new SafeArrayList<Filter>(Filter.class);
     private AssetManager assetManager;        
     private Picture fsQuad;
@@ -82,6 +85,7 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
     private boolean multiView = false;
 
     private Format fbFormat = Format.RGB111110F;
+    private RenderTargetPool renderTargetPool;
     
     /**
      * Create a FilterProcessor 
@@ -225,6 +229,8 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
 
     public void postQueue(RenderQueue rq) {
 
+        renderNormalPass();
+
         for (Filter filter : filters.getArray()) {
             if (filter.isEnabled()) {
                 filter.postQueue(rq);
@@ -233,6 +239,48 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
 
     }   
 
+    /**
+     * renders the normals of the scene once for all the filters requiring them
+     */
+    private void renderNormalPass() {
+        boolean requiresNormals = false;
+        for (Filter filter : filters.getArray()) {
+            if (filter.isEnabled() && filter.isRequiresNormalTexture()) {
+                requiresNormals = true;
+                break;
+            }
+        }
+        if (!requiresNormals) {
+            return;
+        }
+        if (normalFrameBuffer == null) {
+            normalFrameBuffer = new FrameBuffer(width, height, 1);
+            normalTexture = new Texture2D(width, height, Format.RGBA8);
+            normalFrameBuffer.setDepthBuffer(Format.Depth);
+            normalFrameBuffer.setColorTexture(normalTexture);
+        }
+        for (Filter filter : filters.getArray()) {
+            if (filter.isEnabled() && filter.isRequiresNormalTexture()) {
+                filter.setNormalTexture(normalTexture);
+            }
+        }
+        renderer.setFrameBuffer(normalFrameBuffer);
+        renderer.clearBuffers(true, true, true);
+        renderManager.setForcedTechnique("PreNormalPass");
+        renderManager.renderViewPortQueues(viewPort, false);
+        renderManager.setForcedTechnique(null);
+        renderer.setFrameBuffer(viewPort.getOutputFrameBuffer());
+    }
+
+    private void disposeNormalPass() {
+        if (normalFrameBuffer != null) {
+            normalFrameBuffer.dispose();
+            normalTexture.getImage().dispose();
+            normalFrameBuffer = null;
+            normalTexture = null;
+        }
+    }
+
     /**
      * iterate through the filter list and renders filters
      * @param r
@@ -241,6 +289,7 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
     private void renderFilterChain(Renderer r, FrameBuffer sceneFb) {
         Texture2D tex = filterTexture;
         FrameBuffer buff = sceneFb;
+        Filter.Pass inputPass = null;
         boolean msDepth = depthTexture != null && depthTexture.getImage().getMultiSamples() > 1;
         for (int i = 0; i < filters.size(); i++) {
             Filter filter = filters.get(i);
@@ -266,6 +315,9 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
                                 pass.getPassMaterial().clearParam("NumSamplesDepth");
                             }
                         }
+                        if (pass.isPooled()) {
+                            pass.acquireTarget(renderTargetPool, r);
+                        }
                         renderProcessing(r, pass.getRenderFrameBuffer(), pass.getPassMaterial());
                     }
                 }
@@ -286,14 +338,18 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
                     }
                 }
                 
+                Texture2D inputTex = tex;
                 boolean wantsBilinear = filter.isRequiresBilinear();
                 if (wantsBilinear) {
-                    tex.setMagFilter(ITexture.MagFilter.Bilinear);
-                    tex.setMinFilter(ITexture.MinFilter.BilinearNoMipMaps);
+                    inputTex.setMagFilter(MagFilter.Bilinear);
+                    inputTex.setMinFilter(MinFilter.BilinearNoMipMaps);
                 }
 
                 buff = outputBuffer;
                 if (i != lastFilterIndex) {
+                    if (filter.defaultPass.isPooled()) {
+                        filter.defaultPass.acquireTarget(renderTargetPool, r);
+                    }
                     buff = filter.getRenderFrameBuffer();
                     tex = filter.getRenderedTexture();
 
@@ -302,13 +358,31 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
                 filter.postFilter(r, buff);
                 
                 if (wantsBilinear) {
-                    tex.setMagFilter(ITexture.MagFilter.Nearest);
-                    tex.setMinFilter(ITexture.MinFilter.NearestNoMipMaps);
+                    inputTex.setMagFilter(MagFilter.Nearest);
+                    inputTex.setMinFilter(MinFilter.NearestNoMipMaps);
+                }
+
+                if (renderTargetPool != null) {
+                    //the passes of this filter and the output of the previous
+                    //one won't be read anymore, their targets can be reused.
+                    releasePooledTargets(filter, inputPass);
+                    inputPass = i != lastFilterIndex ? filter.defaultPass : null;
                 }
             }
         }
     }
 
+    private void releasePooledTargets(Filter filter, Filter.Pass inputPass) {
+        if (filter.getPostRenderPasses() != null) {
+            for (Filter.Pass pass : filter.getPostRenderPasses()) {
+                pass.releaseTarget(renderTargetPool);
+            }
+        }
+        if (inputPass != null) {
+            inputPass.releaseTarget(renderTargetPool);
+        }
+    }
+
     public void postFrame(FrameBuffer out) {
 
         FrameBuffer sceneBuffer = renderFrameBuffer;
@@ -415,6 +489,10 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
             for (Filter filter : filters.getArray()) {
                 filter.cleanup(renderer);
             }
+            if (renderTargetPool != null) {
+                renderTargetPool.cleanup();
+            }
+            disposeNormalPass();
         }
 
     }
@@ -447,6 +525,7 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
 
         cameraInit = true;
         computeDepth = false;
+        disposeNormalPass();
 
         if (renderFrameBuffer == null && renderFrameBufferMS == null) {
             outputBuffer = viewPort.getOutputFrameBuffer();
@@ -477,6 +556,11 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
             renderFrameBuffer.setColorTexture(filterTexture);
         }
 
+        if (renderTargetPool != null) {
+            //the filters are initialized again with the new dimensions
+            renderTargetPool.cleanup();
+        }
+
         for (Filter filter : filters.getArray()) {
             initFilter(filter, vp);
         }
@@ -524,15 +608,59 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
         this.fbFormat = fbFormat;
     }
 
+    /**
+     * Enables or disables render target pooling.<br>
+     * When enabled, the output of each filter and the transient passes of the
+     * filters (see {@link Filter.Pass#setTransient(boolean)}) don't own a
+     * frame buffer anymore but borrow one from a pool, keyed by size and
+     * formats, for as long as they are read in the filter chain.
+     * Targets are released as soon as they are consumed, so a chain of N
+     * filters only needs 2 full screen targets instead of N, which saves a
+     * lot of video memory with long filter chains.<br>
+     * Must be set before the processor is initialized.
+     * Default is false.
+     *
+     * @param pooling true to enable render target pooling
+     */
+    public void setRenderTargetPooling(boolean pooling) {
+        if (isInitialized()) {
+            throw new IllegalStateException("Render target pooling must be set before the processor is initialized");
+        }
+        if (pooling && renderTargetPool == null) {
+            renderTargetPool = new RenderTargetPool();
+        } else if (!pooling) {
+            renderTargetPool = null;
+        }
+    }
+
+    /**
+     * @return true if render target pooling is enabled
+     * @see #setRenderTargetPooling(boolean)
+     */
+    public boolean isRenderTargetPooling() {
+        return renderTargetPool != null;
+    }
+
+    /**
+     * For internal use only<br>
+     * returns the render target pool, or null if pooling is disabled
+     * @return the render target pool
+     */
+    public RenderTargetPool getRenderTargetPool() {
+        return renderTargetPool;
+    }
+
     public void write(JmeExporter ex) throws IOException {
         OutputCapsule oc = ex.getCapsule(this);
         oc.write(numSamples, "numSamples", 0);
+        oc.write(isRenderTargetPooling(), "renderTargetPooling", false);
         oc.writeSavableArrayList(new ArrayList(filters), "filters", null);
     }
 
     public void read(JmeImporter im) throws IOException {
         InputCapsule ic = im.getCapsule(this);
         numSamples = ic.readInt("numSamples", 0);
+        setRenderTargetPooling(ic.readBoolean("renderTargetPooling", false));
         filters = new SafeArrayList<Filter>(Filter.class, ic.readSavableArrayList("filters", null));
         for (Filter filter : filters.getArray()) {
             filter.setProcessor(this);
@@ -550,6 +678,16 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
         return depthTexture;
     }
 
+    /**
+     * For internal use only<br>
+     * returns the view space normals of the scene, or null if no filter
+     * requires them
+     * @return the normal texture
+     */
+    public Texture2D getNormalTexture() {
+        return normalTexture;
+    }
+
     /**
      * For internal use only<br>
      * returns the rendered texture of the scene
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.post;
+
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.Renderer;
+import com.jme3.texture.Format;
+import com.jme3.texture.FrameBuffer;
+import com.jme3.texture.Texture2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of offscreen render targets (a FrameBuffer with a color texture and
+ * a depth buffer).
+ *
+ * Targets are acquired right before being rendered to, and released as soon as
+ * the last pass reading them has been rendered, so that targets with the same
+ * size and formats can be shared by all the passes whose lifetimes don't
+ * overlap. Used by the {@link FilterPostProcessor} when render target pooling
+ * is enabled.
+ */
+public class RenderTargetPool {
+
+    private final Map<Key, List<RenderTarget>> freeTargets = new HashMap<Key, List<RenderTarget>>();
+    private final List<RenderTarget> allTargets = new ArrayList<RenderTarget>();
+
+    /**
+     * A pooled render target.
+     */
+    public static class RenderTarget {
+
+        private final Key key;
+        private final FrameBuffer frameBuffer;
+        private final Texture2D texture;
+        private boolean inUse;
+
+        private RenderTarget(Key key, FrameBuffer frameBuffer, Texture2D texture) {
+            this.key = key;
+            this.frameBuffer = frameBuffer;
+            this.texture = texture;
+        }
+
+        public FrameBuffer getFrameBuffer() {
+            return frameBuffer;
+        }
+
+        public Texture2D getTexture() {
+            return texture;
+        }
+    }
+
+    private static class Key {
+
+        final int width;
+        final int height;
+        final Format format;
+        final Format depthFormat;
+        final int numSamples;
+
+        Key(int width, int height, Format format, Format depthFormat, int numSamples) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.depthFormat = depthFormat;
+            this.numSamples = numSamples;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return width == other.width && height == other.height
+                    && format == other.format && depthFormat == other.depthFormat
+                    && numSamples == other.numSamples;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 29 * hash + width;
+            hash = 29 * hash + height;
+            hash = 29 * hash + (format != null ? format.hashCode() : 0);
+            hash = 29 * hash + (depthFormat != null ? depthFormat.hashCode() : 0);
+            hash = 29 * hash + numSamples;
+            return hash;
+        }
+    }
+
+    /**
+     * Returns a free render target with the given size and formats, creating
+     * it if none is available.
+     *
+     * @param renderer the renderer
+     * @param width the width of the target
+     * @param height the height of the target
+     * @param format the format of the color texture
+     * @param depthFormat the format of the depth buffer, can be null
+     * @param numSamples the number of samples
+     * @return a render target, to give back with {@link #release(com.jme3.post.RenderTargetPool.RenderTarget)}
+     */
+    public RenderTarget acquire(Renderer renderer, int width, int height, Format format, Format depthFormat, int numSamples) {
+        Collection<Caps> caps = renderer.getCaps();
+        if (numSamples > 1 && !(caps.contains(Caps.FrameBufferMultisample) && caps.contains(Caps.OpenGL31))) {
+            numSamples = 1;
+        }
+        Key key = new Key(width, height, format, depthFormat, numSamples);
+        List<RenderTarget> free = freeTargets.get(key);
+        RenderTarget target;
+        if (free != null && !free.isEmpty()) {
+            target = free.remove(free.size() - 1);
+        } else {
+            FrameBuffer fb = new FrameBuffer(width, height, numSamples);
+            Texture2D tex;
+            if (numSamples > 1) {
+                tex = new Texture2D(width, height, numSamples, format);
+            } else {
+                tex = new Texture2D(width, height, format);
+            }
+            if (depthFormat != null) {
+                fb.setDepthBuffer(depthFormat);
+            }
+            fb.setColorTexture(tex);
+            target = new RenderTarget(key, fb, tex);
+            allTargets.add(target);
+        }
+        target.inUse = true;
+        return target;
+    }
+
+    /**
+     * Gives a render target back to the pool.
+     *
+     * @param target the target to release
+     */
+    public void release(RenderTarget target) {
+        if (!target.inUse) {
+            throw new IllegalStateException("This render target has already been released");
+        }
+        target.inUse = false;
+        List<RenderTarget> free = freeTargets.get(target.key);
+        if (free == null) {
+            free = new ArrayList<RenderTarget>();
+            freeTargets.put(target.key, free);
+        }
+        free.add(target);
+    }
+
+    /**
+     * @return the number of render targets allocated by this pool.
+     */
+    public int getAllocatedCount() {
+        return allTargets.size();
+    }
+
+    /**
+     * Disposes all the render targets of this pool.
+     */
+    public void cleanup() {
+        for (RenderTarget target : allTargets) {
+            target.frameBuffer.dispose();
+            target.texture.getImage().dispose();
+        }
+        allTargets.clear();
+        freeTargets.clear();
+    }
+}
@@ -302,6 +302,12 @@ public enum Caps {
      */
     TextureCompressionETC2,
     
+    /**
+     * Supports {@link Format#RGTC1} and {@link Format#RGTC2} texture
+     * compression.
+     */
+    TextureCompressionRGTC,
+    
     /**
      * Supports OpenGL ES 2
      */
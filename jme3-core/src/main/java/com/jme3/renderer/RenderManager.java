@@ -38,6 +38,7 @@ import com.jme3.material.MatParamOverride;
 import com.jme3.material.Material;
 import com.jme3.material.MaterialDef;
 import com.jme3.material.RenderState;
+import com.jme3.material.ShaderWarmup;
 import com.jme3.material.Technique;
 import com.jme3.material.TechniqueDef;
 import com.jme3.math.*;
@@ -55,6 +56,7 @@ import com.jme3.shader.UniformBinding;
 import com.jme3.shader.UniformBindingManager;
 import com.jme3.system.NullRenderer;
 import com.jme3.system.Timer;
+import com.jme3.texture.TextureStreamer;
 import com.jme3.util.SafeArrayList;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -80,6 +82,7 @@ public class RenderManager {
     private final ArrayList<ViewPort> viewPorts = new ArrayList<>();
     private final ArrayList<ViewPort> postViewPorts = new ArrayList<>();
     private Camera prevCam = null;
+    private TextureStreamer textureStreamer;
     private Material forcedMaterial = null;
     private String forcedTechnique = null;
     private RenderState forcedRenderState = null;
@@ -613,6 +616,9 @@ public class RenderManager {
             // use forced material
             forcedMaterial.render(geom, lightList, this);
         } else {
+            if (textureStreamer != null) {
+                textureStreamer.notifyRendered(geom, prevCam);
+            }
             material.render(geom, lightList, this);
         }
     }
@@ -644,6 +650,10 @@ public class RenderManager {
      * when rendering a scene for the first time. Note that it is not 
      * guaranteed that the underlying renderer will actually choose to upload
      * the data to the GPU so some pause is still to be expected.
+     * <p>
+     * Only the shader of the current technique of each material is compiled,
+     * use {@link #preloadScene(com.jme3.scene.Spatial, boolean) } to also
+     * warm up the other shader permutations the scene can reach.
      * 
      * @param scene The scene to preload
      */
@@ -668,7 +678,7 @@ public class RenderManager {
                     && mesh.getVertexCount() != 0
                     && mesh.getTriangleCount() != 0) {
                 for (VertexBuffer vb : mesh.getBufferList().getArray()) {
-                    if (vb.getData() != null && vb.getUsage() != VertexBuffer.Usage.CpuOnly) {
+                    if (vb.getDataReadOnly() != null && vb.getUsage() != VertexBuffer.Usage.CpuOnly) {
                         renderer.updateBufferData(vb);
                     }
                 }
@@ -676,6 +686,28 @@ public class RenderManager {
         }
     }
 
+    /**
+     * Preloads a scene for rendering and enqueues the shader permutations
+     * its materials can reach in a {@link ShaderWarmup}.
+     * <p>
+     * When <code>immediate</code> is false the returned warm-up must be
+     * updated once per frame until it completes, so that a loading screen
+     * can absorb the compilation cost and report its progress.
+     *
+     * @param scene The scene to preload
+     * @param immediate true to compile all the permutations before returning
+     * @return the warm-up holding the enqueued permutations
+     */
+    public ShaderWarmup preloadScene(Spatial scene, boolean immediate) {
+        preloadScene(scene);
+        ShaderWarmup warmup = new ShaderWarmup(this);
+        warmup.addScene(scene);
+        if (immediate) {
+            warmup.warmupAll();
+        }
+        return warmup;
+    }
+
     /**
      * Flattens the given scene graph into the ViewPort's RenderQueue,
      * checking for culling as the call goes down the graph recursively.
@@ -1162,5 +1194,30 @@ public class RenderManager {
                 renderViewPort(vp, tpf);
             }
         }
+
+        if (textureStreamer != null) {
+            textureStreamer.update(renderer);
+        }
+    }
+
+    /**
+     * Sets the texture streamer that decides which mip levels of the
+     * streamed textures are resident. The geometries rendered with their
+     * own material are reported to it and it is updated at the end of each
+     * frame.
+     *
+     * @param textureStreamer the streamer, or null to disable streaming
+     */
+    public void setTextureStreamer(TextureStreamer textureStreamer) {
+        this.textureStreamer = textureStreamer;
+    }
+
+    /**
+     * returns the texture streamer, or null if streaming is disabled
+     *
+     * @return the texture streamer
+     */
+    public TextureStreamer getTextureStreamer() {
+        return textureStreamer;
     }
 }
@@ -262,6 +262,22 @@ public interface Renderer {
      */
     public void deleteImage(Image image);
 
+    /**
+     * Queues a streamed image whose mip base level changed, see
+     * {@link Image#setMipBaseLevel(int) }. The change is applied by the next
+     * call to {@link #updateMipLevels() }, whether the image is bound or not.
+     *
+     * @param image the streamed image
+     */
+    public void requestMipLevelUpdate(Image image);
+
+    /**
+     * Uploads or releases the mip levels of the images queued with
+     * {@link #requestMipLevelUpdate(com.jme3.texture.Image) } and clamps
+     * them to their new base level.
+     */
+    public void updateMipLevels();
+
     /**
      * Uploads a vertex buffer to the GPU.
      * 
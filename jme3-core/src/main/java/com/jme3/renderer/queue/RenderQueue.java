@@ -275,6 +275,29 @@ public class RenderQueue {
         renderGeometryList(list, rm, cam, clear);
     }
 
+    /**
+     * Returns the list of geometries queued in the given bucket.
+     * 
+     * @param bucket The bucket
+     * @return the geometry list of the bucket
+     */
+    public GeometryList getList(Bucket bucket) {
+        switch (bucket) {
+            case Gui:
+                return guiList;
+            case Opaque:
+                return opaqueList;
+            case Sky:
+                return skyList;
+            case Transparent:
+                return transparentList;
+            case Translucent:
+                return translucentList;
+            default:
+                throw new UnsupportedOperationException("Unsupported bucket type: " + bucket);
+        }
+    }
+
     public boolean isQueueEmpty(Bucket bucket) {
         switch (bucket) {
             case Gui:
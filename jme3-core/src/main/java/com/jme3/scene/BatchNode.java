@@ -34,12 +34,16 @@ package com.jme3.scene;
 import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.jme3.bounding.BoundingBox;
 import com.jme3.collision.Collidable;
 import com.jme3.collision.CollisionResults;
 import com.jme3.material.Material;
@@ -53,15 +57,20 @@ import com.jme3.util.clone.JmeCloneable;
 
 /**
  * BatchNode holds geometries that are a batched version of all the geometries that are in its sub scenegraph.
- * There is one geometry per different material in the sub tree.
+ * There is one geometry per different material in the sub tree, or more if the
+ * geometries of a material have more vertices than {@link #getMaxBatchVertices() }.
  * The geometries are directly attached to the node in the scene graph.
  * Usage is like any other node except you have to call the {@link #batch()} method once all the geometries have been attached to the sub scene graph and their material set
  * (see todo more automagic for further enhancements)
  * All the geometries that have been batched are set to not be rendered - {@link CullHint} is left intact.
- * The sub geometries can be transformed as usual, their transforms are used to update the mesh of the geometryBatch.
- * Sub geoms can be removed but it may be slower than the normal spatial removing
+ * The sub geometries can be transformed as usual, their transforms are used to update their range of the mesh of the geometryBatch,
+ * and only that range is uploaded to the GPU.
+ * Each batched geometry owns a range of vertices and indices in the buffers of its batch.
+ * Sub geoms can be removed, their ranges are freed and their primitives are
+ * made degenerate, the batch is compacted once it has more free vertices than used ones.
  * Sub geoms can be added after the batch() method has been called but won't be batched and will just be rendered as normal geometries.
- * To integrate them in the batch you have to call the batch() method again on the batchNode.
+ * To integrate them in the batch you have to call the batch() method again on the batchNode, they are then
+ * added to the free ranges of the existing batches, growing them if needed, without rebuilding them.
  *
  * TODO normal or tangents or both looks a bit weird
  * TODO more automagic (batch when needed in the updateLogicalState)
@@ -87,6 +96,7 @@ public class BatchNode extends GeometryGroupNode {
     int maxVertCount = 0;
     boolean useTangents = false;
     boolean needsFullRebatch = true;
+    private int maxBatchVertices = 65536;
 
     /**
      * Construct a batchNode
@@ -119,7 +129,35 @@ public class BatchNode extends GeometryGroupNode {
 
     @Override
     public void onGeometryUnassociated(Geometry geom) {
-        setNeedsFullRebatch(true);
+        Batch batch = batchesByGeom.remove(geom);
+        if (batch != null) {
+            removeFromBatch(batch, geom);
+        }
+    }
+
+    /**
+     * Sets the maximum number of vertices of a batch. Geometries of the same
+     * material that don't fit in the existing batches start a new batch.
+     * A single geometry with more vertices gets a batch of its own.
+     * Batches of up to 65536 vertices use 16 bits indices.
+     * Only affects the geometries batched after this call.
+     *
+     * @param maxBatchVertices the maximum number of vertices of a batch,
+     * 65536 by default.
+     */
+    public void setMaxBatchVertices(int maxBatchVertices) {
+        if (maxBatchVertices <= 0) {
+            throw new IllegalArgumentException("maxBatchVertices must be positive");
+        }
+        this.maxBatchVertices = maxBatchVertices;
+    }
+
+    /**
+     * @return the maximum number of vertices of a batch
+     * @see #setMaxBatchVertices(int)
+     */
+    public int getMaxBatchVertices() {
+        return maxBatchVertices;
     }
 
     protected Matrix4f getTransformMatrix(Geometry g){
@@ -131,6 +169,10 @@ public class BatchNode extends GeometryGroupNode {
         if (batch != null) {
             Mesh mesh = batch.geometry.getMesh();
             Mesh origMesh = bg.getMesh();
+            int[] range = batch.ranges.get(bg);
+            int start = range[0];
+            int count = range[1];
+            ensureTempArrays(count);
 
             VertexBuffer pvb = mesh.getBuffer(VertexBuffer.Type.Position);
             FloatBuffer posBuf = (FloatBuffer) pvb.getData();
@@ -138,9 +180,9 @@ public class BatchNode extends GeometryGroupNode {
             FloatBuffer normBuf = (FloatBuffer) nvb.getData();
 
             VertexBuffer opvb = origMesh.getBuffer(VertexBuffer.Type.Position);
-            FloatBuffer oposBuf = (FloatBuffer) opvb.getData();
+            FloatBuffer oposBuf = (FloatBuffer) opvb.getDataReadOnly();
             VertexBuffer onvb = origMesh.getBuffer(VertexBuffer.Type.Normal);
-            FloatBuffer onormBuf = (FloatBuffer) onvb.getData();
+            FloatBuffer onormBuf = (FloatBuffer) onvb.getDataReadOnly();
             Matrix4f transformMat = getTransformMatrix(bg);
 
             if (mesh.getBuffer(VertexBuffer.Type.Tangent) != null) {
@@ -148,17 +190,94 @@ public class BatchNode extends GeometryGroupNode {
                 VertexBuffer tvb = mesh.getBuffer(VertexBuffer.Type.Tangent);
                 FloatBuffer tanBuf = (FloatBuffer) tvb.getData();
                 VertexBuffer otvb = origMesh.getBuffer(VertexBuffer.Type.Tangent);
-                FloatBuffer otanBuf = (FloatBuffer) otvb.getData();
-                doTransformsTangents(oposBuf, onormBuf, otanBuf, posBuf, normBuf, tanBuf, bg.startIndex, bg.startIndex + bg.getVertexCount(), transformMat);
-                tvb.updateData(tanBuf);
+                FloatBuffer otanBuf = (FloatBuffer) otvb.getDataReadOnly();
+                doTransformsTangents(oposBuf, onormBuf, otanBuf, posBuf, normBuf, tanBuf, start, start + count, transformMat);
+                tvb.updateRange(start, count);
             } else {
-                doTransforms(oposBuf, onormBuf, posBuf, normBuf, bg.startIndex, bg.startIndex + bg.getVertexCount(), transformMat);
+                doTransforms(oposBuf, onormBuf, posBuf, normBuf, start, start + count, transformMat);
             }
-            pvb.updateData(posBuf);
-            nvb.updateData(normBuf);
+            //only the range of this geometry is uploaded
+            pvb.updateRange(start, count);
+            nvb.updateRange(start, count);
+
+            updateBatchBound(batch, count);
+        }
+    }
 
+    /**
+     * Grows the bound of a batch with the positions of a geometry that were
+     * just transformed into tmpFloat. The bound only grows, so it is fully
+     * recomputed once as many vertices as the batch holds have been moved.
+     */
+    private void updateBatchBound(Batch batch, int count) {
+        Mesh mesh = batch.geometry.getMesh();
+        batch.movedVertices += count;
+        if (batch.movedVertices >= batch.vertices.getUsedSize() || !(mesh.getBound() instanceof BoundingBox)) {
+            batch.movedVertices = 0;
+            refreshBound(batch);
+            return;
+        }
+        TempVars vars = TempVars.get();
+        Vector3f min = vars.vect1.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        Vector3f max = vars.vect2.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        int length = count * 3;
+        for (int i = 0; i < length; i += 3) {
+            float x = tmpFloat[i], y = tmpFloat[i + 1], z = tmpFloat[i + 2];
+            min.x = Math.min(min.x, x);
+            min.y = Math.min(min.y, y);
+            min.z = Math.min(min.z, z);
+            max.x = Math.max(max.x, x);
+            max.y = Math.max(max.y, y);
+            max.z = Math.max(max.z, z);
+        }
+        if (count > 0) {
+            vars.bbox.setMinMax(min, max);
+            mesh.getBound().mergeLocal(vars.bbox);
+            batch.geometry.setBoundRefresh();
+        }
+        vars.release();
+    }
 
+    /**
+     * Recomputes the bound of a batch from the ranges of its geometries only,
+     * free ranges and unused capacity keep stale or zero positions.
+     */
+    private void refreshBound(Batch batch) {
+        Mesh mesh = batch.geometry.getMesh();
+        if (!(mesh.getBound() instanceof BoundingBox) || batch.ranges.isEmpty()) {
             batch.geometry.updateModelBound();
+            return;
+        }
+        FloatBuffer posBuf = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+        TempVars vars = TempVars.get();
+        Vector3f min = vars.vect1.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        Vector3f max = vars.vect2.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        for (int[] range : batch.ranges.values()) {
+            int end = (range[0] + range[1]) * 3;
+            for (int i = range[0] * 3; i < end; i += 3) {
+                float x = posBuf.get(i), y = posBuf.get(i + 1), z = posBuf.get(i + 2);
+                min.x = Math.min(min.x, x);
+                min.y = Math.min(min.y, y);
+                min.z = Math.min(min.z, z);
+                max.x = Math.max(max.x, x);
+                max.y = Math.max(max.y, y);
+                max.z = Math.max(max.z, z);
+            }
+        }
+        ((BoundingBox) mesh.getBound()).setMinMax(min, max);
+        batch.geometry.setBoundRefresh();
+        vars.release();
+    }
+
+    private void ensureTempArrays(int vertexCount) {
+        if (tmpFloat == null || tmpFloat.length < vertexCount * 3) {
+            maxVertCount = Math.max(maxVertCount, vertexCount);
+            tmpFloat = new float[maxVertCount * 3];
+            tmpFloatN = new float[maxVertCount * 3];
+            tmpFloatT = null;
+        }
+        if (useTangents && (tmpFloatT == null || tmpFloatT.length < maxVertCount * 4)) {
+            tmpFloatT = new float[maxVertCount * 4];
         }
     }
 
@@ -186,45 +305,46 @@ public class BatchNode extends GeometryGroupNode {
             }
             batches.clear();
             batchesByGeom.clear();
-        }
-        //only reset maxVertCount if there is something new to batch
-        if (matMap.size() > 0) {
-            maxVertCount = 0;
+        } else {
+            //batches emptied by removals are kept until now, detaching them
+            //while a child is being detached would break the iteration
+            for (Batch batch : batches.getArray()) {
+                if (batch.ranges.isEmpty()) {
+                    batch.geometry.removeFromParent();
+                    batches.remove(batch);
+                }
+            }
         }
 
         for (Map.Entry<Material, List<Geometry>> entry : matMap.entrySet()) {
-            Mesh m = new Mesh();
             Material material = entry.getKey();
             List<Geometry> list = entry.getValue();
             nbGeoms += list.size();
-            String batchName = name + "-batch" + batches.size();
-            Batch batch;
+            List<Geometry> pending = list;
             if (!needsFullRebatch) {
-                batch = findBatchByMaterial(material);
-                if (batch != null) {
-                    list.add(0, batch.geometry);
-                    batchName = batch.geometry.getName();
-                    batch.geometry.removeFromParent();
-                } else {
-                    batch = new Batch();
+                pending = new ArrayList<Geometry>();
+                for (Geometry geom : list) {
+                    if (!addToExistingBatch(material, geom)) {
+                        pending.add(geom);
+                    }
                 }
-            } else {
-                batch = new Batch();
             }
-            mergeGeometries(m, list);
-            m.setDynamic();
-
-            batch.updateGeomList(list);
 
-            batch.geometry = new Geometry(batchName);
-            batch.geometry.setMaterial(material);
-            this.attachChild(batch.geometry);
-
-
-            batch.geometry.setMesh(m);
-            batch.geometry.getMesh().updateCounts();
-            batch.geometry.updateModelBound();
-            batches.add(batch);
+            //splitting the remaining geometries in batches within the vertex budget
+            int from = 0;
+            int vertices = 0;
+            for (int i = 0; i < pending.size(); i++) {
+                int count = pending.get(i).getVertexCount();
+                if (i > from && vertices + count > maxBatchVertices) {
+                    createBatch(material, pending.subList(from, i));
+                    from = i;
+                    vertices = 0;
+                }
+                vertices += count;
+            }
+            if (from < pending.size()) {
+                createBatch(material, pending.subList(from, pending.size()));
+            }
         }
         if (batches.size() > 0) {
             needsFullRebatch = false;
@@ -235,14 +355,40 @@ public class BatchNode extends GeometryGroupNode {
 
         //init the temp arrays if something has been batched only.
         if(matMap.size()>0){
-            //TODO these arrays should be allocated by chunk instead to avoid recreating them each time the batch is changed.
-            //init temp float arrays
-            tmpFloat = new float[maxVertCount * 3];
-            tmpFloatN = new float[maxVertCount * 3];
-            if (useTangents) {
-                tmpFloatT = new float[maxVertCount * 4];
+            ensureTempArrays(maxVertCount);
+        }
+    }
+
+    private boolean addToExistingBatch(Material material, Geometry geom) {
+        for (Batch batch : batches.getArray()) {
+            Material batchMaterial = batch.geometry.getMaterial();
+            if ((batchMaterial == material || batchMaterial.contentEquals(material))
+                    && addToBatch(batch, geom)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    private Batch createBatch(Material material, List<Geometry> list) {
+        Mesh m = new Mesh();
+        Batch batch = new Batch();
+        mergeGeometries(m, list, batch);
+        m.setDynamic();
+
+        batch.geometry = new Geometry(name + "-batch" + batches.size());
+        batch.geometry.setMaterial(material);
+        this.attachChild(batch.geometry);
+
+
+        batch.geometry.setMesh(m);
+        for (Geometry geom : list) {
+            writeGeometry(batch, geom);
+        }
+        batch.geometry.getMesh().updateCounts();
+        refreshBound(batch);
+        batches.add(batch);
+        return batch;
     }
 
     //in case the detached spatial is a node, we unbatch all geometries in its subegraph
@@ -312,15 +458,6 @@ public class BatchNode extends GeometryGroupNode {
 
     }
 
-    private Batch findBatchByMaterial(Material m) {
-        for (Batch batch : batches.getArray()) {
-            if (batch.geometry.getMaterial().contentEquals(m)) {
-                return batch;
-            }
-        }
-        return null;
-    }
-
     public final boolean isBatch(Spatial s) {
         for (Batch batch : batches.getArray()) {
             if (batch.geometry == s) {
@@ -359,55 +496,31 @@ public class BatchNode extends GeometryGroupNode {
     }
 
     /**
-     * Merges all geometries in the collection into
-     * the output mesh. Does not take into account materials.
+     * Creates the buffers of the output mesh, sized to hold exactly all the
+     * geometries in the collection, and the allocators of the batch.
+     * The geometries are then written by {@link #writeGeometry(com.jme3.scene.BatchNode.Batch, com.jme3.scene.Geometry) }.
+     * Does not take into account materials.
      *
      * @param geometries
      * @param outMesh
      */
-    private void mergeGeometries(Mesh outMesh, List<Geometry> geometries) {
+    private void mergeGeometries(Mesh outMesh, List<Geometry> geometries, Batch batch) {
         int[] compsForBuf = new int[VertexBuffer.Type.values().length];
         VertexBuffer.Format[] formatForBuf = new VertexBuffer.Format[compsForBuf.length];
         boolean[] normForBuf = new boolean[VertexBuffer.Type.values().length];
 
         int totalVerts = 0;
         int totalTris = 0;
-        int totalLodLevels = 0;
         int maxWeights = -1;
 
         Mesh.Mode mode = null;
-        float lineWidth = 1f;
         for (Geometry geom : geometries) {
             totalVerts += geom.getVertexCount();
             totalTris += geom.getTriangleCount();
-            totalLodLevels = Math.min(totalLodLevels, geom.getMesh().getNumLodLevels());
             if (maxVertCount < geom.getVertexCount()) {
                 maxVertCount = geom.getVertexCount();
             }
-            Mesh.Mode listMode;
-            //float listLineWidth = 1f;
-            int components;
-            switch (geom.getMesh().getMode()) {
-                case Points:
-                    listMode = Mesh.Mode.Points;
-                    components = 1;
-                    break;
-                case LineLoop:
-                case LineStrip:
-                case Lines:
-                    listMode = Mesh.Mode.Lines;
-                    //listLineWidth = geom.getMesh().getLineWidth();
-                    components = 2;
-                    break;
-                case TriangleFan:
-                case TriangleStrip:
-                case Triangles:
-                    listMode = Mesh.Mode.Triangles;
-                    components = 3;
-                    break;
-                default:
-                    throw new UnsupportedOperationException();
-            }
+            Mesh.Mode listMode = getListMode(geom.getMesh().getMode());
 
             for (VertexBuffer vb : geom.getMesh().getBufferList().getArray()) {
                 int currentCompsForBuf = compsForBuf[vb.getBufferType().ordinal()];
@@ -419,6 +532,9 @@ public class BatchNode extends GeometryGroupNode {
                 compsForBuf[vb.getBufferType().ordinal()] = vb.getNumComponents();
                 formatForBuf[vb.getBufferType().ordinal()] = vb.getFormat();
                 normForBuf[vb.getBufferType().ordinal()] = vb.isNormalized();
+                if (vb.getBufferType() == VertexBuffer.Type.Tangent) {
+                    useTangents = true;
+                }
             }
 
             maxWeights = Math.max(maxWeights, geom.getMesh().getMaxNumWeights());
@@ -428,26 +544,12 @@ public class BatchNode extends GeometryGroupNode {
                         + " primitive types: " + mode + " != " + listMode);
             }
             mode = listMode;
-            //Not needed anymore as lineWidth is now in RenderState and will be taken into account when merging according to the material
-//            if (mode == Mesh.Mode.Lines) {
-//                if (lineWidth != 1f && listLineWidth != lineWidth) {
-//                    throw new UnsupportedOperationException("When using Mesh Line mode, cannot combine meshes with different line width "
-//                            + lineWidth + " != " + listLineWidth);
-//                }
-//                lineWidth = listLineWidth;
-//            }
-            compsForBuf[VertexBuffer.Type.Index.ordinal()] = components;
+            compsForBuf[VertexBuffer.Type.Index.ordinal()] = getIndexComponents(listMode);
         }
 
         outMesh.setMaxNumWeights(maxWeights);
         outMesh.setMode(mode);
-        //outMesh.setLineWidth(lineWidth);
-        if (totalVerts >= 65536) {
-            // make sure we create an UnsignedInt buffer so we can fit all of the meshes
-            formatForBuf[VertexBuffer.Type.Index.ordinal()] = VertexBuffer.Format.UnsignedInt;
-        } else {
-            formatForBuf[VertexBuffer.Type.Index.ordinal()] = VertexBuffer.Format.UnsignedShort;
-        }
+        formatForBuf[VertexBuffer.Type.Index.ordinal()] = getIndexFormat(totalVerts);
 
         // generate output buffers based on retrieved info
         for (int i = 0; i < compsForBuf.length; i++) {
@@ -468,64 +570,263 @@ public class BatchNode extends GeometryGroupNode {
             outMesh.setBuffer(vb);
         }
 
-        int globalVertIndex = 0;
-        int globalTriIndex = 0;
+        batch.components = compsForBuf[VertexBuffer.Type.Index.ordinal()];
+        batch.vertices = new RangeAllocator(totalVerts);
+        batch.indices = new RangeAllocator(totalTris * batch.components);
+    }
 
-        for (Geometry geom : geometries) {
-            Mesh inMesh = geom.getMesh();
-            if (!isBatch(geom)) {
-                geom.associateWithGroupNode(this, globalVertIndex);
-            }
+    private static Mesh.Mode getListMode(Mesh.Mode mode) {
+        switch (mode) {
+            case Points:
+                return Mesh.Mode.Points;
+            case LineLoop:
+            case LineStrip:
+            case Lines:
+                return Mesh.Mode.Lines;
+            case TriangleFan:
+            case TriangleStrip:
+            case Triangles:
+                return Mesh.Mode.Triangles;
+            default:
+                throw new UnsupportedOperationException();
+        }
+    }
 
-            int geomVertCount = inMesh.getVertexCount();
-            int geomTriCount = inMesh.getTriangleCount();
+    private static int getIndexComponents(Mesh.Mode listMode) {
+        switch (listMode) {
+            case Points:
+                return 1;
+            case Lines:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private static VertexBuffer.Format getIndexFormat(int vertexCapacity) {
+        // 16 bits indices address up to 65536 vertices
+        return vertexCapacity > 65536 ? VertexBuffer.Format.UnsignedInt : VertexBuffer.Format.UnsignedShort;
+    }
 
-            for (int bufType = 0; bufType < compsForBuf.length; bufType++) {
-                VertexBuffer inBuf = inMesh.getBuffer(VertexBuffer.Type.values()[bufType]);
+    /**
+     * Adds a geometry to an existing batch, in a free range or at the end of
+     * the buffers, growing them if needed.
+     *
+     * @return false if the geometry doesn't fit in the vertex budget or its
+     * buffers don't match the ones of the batch
+     */
+    private boolean addToBatch(Batch batch, Geometry geom) {
+        int vertexCount = geom.getVertexCount();
+        int indexCount = geom.getTriangleCount() * batch.components;
+        if (batch.vertices.getUsedSize() + vertexCount > maxBatchVertices || !isCompatible(batch, geom)) {
+            return false;
+        }
+        if (!batch.vertices.canAllocate(vertexCount) || !batch.indices.canAllocate(indexCount)) {
+            if (batch.vertices.getFreeSize() > 0 || batch.indices.getFreeSize() > 0) {
+                compact(batch);
+            }
+            grow(batch, batch.vertices.getEnd() + vertexCount, batch.indices.getEnd() + indexCount);
+        }
+        writeGeometry(batch, geom);
+        if (maxVertCount < vertexCount) {
+            maxVertCount = vertexCount;
+        }
+        return true;
+    }
 
-                VertexBuffer outBuf = outMesh.getBuffer(VertexBuffer.Type.values()[bufType]);
+    private boolean isCompatible(Batch batch, Geometry geom) {
+        Mesh outMesh = batch.geometry.getMesh();
+        Mesh inMesh = geom.getMesh();
+        if (getListMode(inMesh.getMode()) != outMesh.getMode()) {
+            return false;
+        }
+        for (VertexBuffer inBuf : inMesh.getBufferList().getArray()) {
+            if (inBuf.getBufferType() == VertexBuffer.Type.Index) {
+                continue;
+            }
+            VertexBuffer outBuf = outMesh.getBuffer(inBuf.getBufferType());
+            if (outBuf == null || outBuf.getNumComponents() != inBuf.getNumComponents()
+                    || outBuf.getFormat() != inBuf.getFormat()) {
+                return false;
+            }
+        }
+        for (VertexBuffer outBuf : outMesh.getBufferList().getArray()) {
+            if (outBuf.getBufferType() != VertexBuffer.Type.Index && inMesh.getBuffer(outBuf.getBufferType()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                if (outBuf == null) {
-                    continue;
+    /**
+     * Allocates the ranges of a geometry in a batch and copies its buffers
+     * there. The transforms are applied later by {@link #updateSubBatch(com.jme3.scene.Geometry) }.
+     */
+    private void writeGeometry(Batch batch, Geometry geom) {
+        Mesh inMesh = geom.getMesh();
+        Mesh outMesh = batch.geometry.getMesh();
+        int vertexCount = inMesh.getVertexCount();
+        int indexCount = inMesh.getTriangleCount() * batch.components;
+        int vertexStart = batch.vertices.allocate(vertexCount);
+        int indexStart = batch.indices.allocate(indexCount);
+
+        geom.associateWithGroupNode(this, vertexStart);
+
+        for (VertexBuffer outBuf : outMesh.getBufferList().getArray()) {
+            if (outBuf.getBufferType() == VertexBuffer.Type.Index) {
+                IndexBuffer inIdx = inMesh.getIndicesAsList();
+                IndexBuffer outIdx = outMesh.getIndexBuffer();
+                for (int i = 0; i < indexCount; i++) {
+                    outIdx.put(indexStart + i, inIdx.get(i) + vertexStart);
                 }
+                outBuf.updateRange(indexStart / batch.components, indexCount / batch.components);
+            } else {
+                VertexBuffer inBuf = inMesh.getBuffer(outBuf.getBufferType());
+                if (inBuf == null) {
+                    throw new IllegalArgumentException("Geometry " + geom.getName() + " has no " + outBuf.getBufferType() + " buffer whereas other geoms have. all geometries should have the same types of buffers.\n Try to use GeometryBatchFactory.alignBuffer() on the BatchNode before batching");
+                }
+                inBuf.copyElements(0, outBuf, vertexStart, vertexCount);
+                outBuf.updateRange(vertexStart, vertexCount);
+            }
+        }
 
-                if (VertexBuffer.Type.Index.ordinal() == bufType) {
-                    int components = compsForBuf[bufType];
+        batch.ranges.put(geom, new int[]{vertexStart, vertexCount, indexStart, indexCount});
+        batchesByGeom.put(geom, batch);
+    }
 
-                    IndexBuffer inIdx = inMesh.getIndicesAsList();
-                    IndexBuffer outIdx = outMesh.getIndexBuffer();
+    /**
+     * Frees the ranges of a geometry removed from a batch. Its primitives are
+     * made degenerate so that only the index range has to be uploaded.
+     */
+    private void removeFromBatch(Batch batch, Geometry geom) {
+        int[] range = batch.ranges.remove(geom);
+        if (range == null) {
+            return;
+        }
+        Mesh mesh = batch.geometry.getMesh();
+        IndexBuffer idx = mesh.getIndexBuffer();
+        for (int i = 0; i < range[3]; i++) {
+            idx.put(range[2] + i, 0);
+        }
+        mesh.getBuffer(VertexBuffer.Type.Index).updateRange(range[2] / batch.components, range[3] / batch.components);
+        batch.vertices.free(range[0], range[1]);
+        batch.indices.free(range[2], range[3]);
+
+        if (batch.ranges.isEmpty()) {
+            //removed from the scene at the next batch()
+            batch.geometry.setCullHint(CullHint.Always);
+        } else if (batch.vertices.getFreeSize() > batch.vertices.getUsedSize()) {
+            compact(batch);
+        }
+    }
 
-                    for (int tri = 0; tri < geomTriCount; tri++) {
-                        for (int comp = 0; comp < components; comp++) {
-                            int idx = inIdx.get(tri * components + comp) + globalVertIndex;
-                            outIdx.put((globalTriIndex + tri) * components + comp, idx);
-                        }
-                    }
-                } else if (VertexBuffer.Type.Position.ordinal() == bufType) {
-                    FloatBuffer inPos = (FloatBuffer) inBuf.getData();
-                    FloatBuffer outPos = (FloatBuffer) outBuf.getData();
-                    doCopyBuffer(inPos, globalVertIndex, outPos, 3);
-                } else if (VertexBuffer.Type.Normal.ordinal() == bufType || VertexBuffer.Type.Tangent.ordinal() == bufType) {
-                    FloatBuffer inPos = (FloatBuffer) inBuf.getData();
-                    FloatBuffer outPos = (FloatBuffer) outBuf.getData();
-                    doCopyBuffer(inPos, globalVertIndex, outPos, compsForBuf[bufType]);
-                    if (VertexBuffer.Type.Tangent.ordinal() == bufType) {
-                        useTangents = true;
+    /**
+     * Moves the geometries of a batch to the start of its buffers, in their
+     * current order, so that all the free space is at the end.
+     */
+    private void compact(Batch batch) {
+        Mesh mesh = batch.geometry.getMesh();
+        List<Map.Entry<Geometry, int[]>> entries = new ArrayList<Map.Entry<Geometry, int[]>>(batch.ranges.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Geometry, int[]>>() {
+            @Override
+            public int compare(Map.Entry<Geometry, int[]> o1, Map.Entry<Geometry, int[]> o2) {
+                return o1.getValue()[0] < o2.getValue()[0] ? -1 : (o1.getValue()[0] == o2.getValue()[0] ? 0 : 1);
+            }
+        });
+
+        for (VertexBuffer vb : mesh.getBufferList().getArray()) {
+            VertexBuffer moved = createLike(vb, vb.getNumElements(), vb.getFormat());
+            if (vb.getBufferType() == VertexBuffer.Type.Index) {
+                IndexBuffer src = IndexBuffer.wrapIndexBuffer(vb.getData());
+                IndexBuffer dst = IndexBuffer.wrapIndexBuffer(moved.getData());
+                int vertexStart = 0;
+                int indexStart = 0;
+                for (Map.Entry<Geometry, int[]> entry : entries) {
+                    int[] range = entry.getValue();
+                    for (int i = 0; i < range[3]; i++) {
+                        dst.put(indexStart + i, src.get(range[2] + i) - range[0] + vertexStart);
                     }
+                    vertexStart += range[1];
+                    indexStart += range[3];
+                }
+            } else {
+                int vertexStart = 0;
+                for (Map.Entry<Geometry, int[]> entry : entries) {
+                    int[] range = entry.getValue();
+                    vb.copyElements(range[0], moved, vertexStart, range[1]);
+                    vertexStart += range[1];
+                }
+            }
+            vb.updateData(moved.getData());
+        }
+
+        int vertexStart = 0;
+        int indexStart = 0;
+        for (Map.Entry<Geometry, int[]> entry : entries) {
+            int[] range = entry.getValue();
+            range[0] = vertexStart;
+            range[2] = indexStart;
+            setGeometryStartIndex(entry.getKey(), vertexStart);
+            vertexStart += range[1];
+            indexStart += range[3];
+        }
+        batch.vertices.reset(vertexStart);
+        batch.indices.reset(indexStart);
+        logger.log(Level.FINE, "Compacted {0} to {1} vertices.", new Object[]{batch.geometry.getName(), vertexStart});
+    }
+
+    /**
+     * Grows the buffers of a batch to at least the given capacities, at least
+     * doubling them within the vertex budget so that consecutive additions
+     * rarely reallocate.
+     */
+    private void grow(Batch batch, int minVertices, int minIndices) {
+        Mesh mesh = batch.geometry.getMesh();
+        int vertexCapacity = batch.vertices.getCapacity();
+        if (minVertices > vertexCapacity) {
+            vertexCapacity = Math.max(minVertices, Math.min(vertexCapacity * 2, maxBatchVertices));
+        }
+        int indexCapacity = batch.indices.getCapacity();
+        if (minIndices > indexCapacity) {
+            indexCapacity = Math.max(minIndices, indexCapacity * 2);
+        }
+        if (vertexCapacity == batch.vertices.getCapacity() && indexCapacity == batch.indices.getCapacity()) {
+            return;
+        }
+
+        for (VertexBuffer vb : mesh.getBufferList().getArray()) {
+            if (vb.getBufferType() == VertexBuffer.Type.Index) {
+                VertexBuffer.Format format = getIndexFormat(vertexCapacity);
+                VertexBuffer grown = createLike(vb, indexCapacity / batch.components, format);
+                if (format == vb.getFormat()) {
+                    vb.copyElements(0, grown, 0, batch.indices.getEnd() / batch.components);
+                    vb.updateData(grown.getData());
                 } else {
-                    if (inBuf == null) {
-                        throw new IllegalArgumentException("Geometry " + geom.getName() + " has no " + outBuf.getBufferType() + " buffer whereas other geoms have. all geometries should have the same types of buffers.\n Try to use GeometryBatchFactory.alignBuffer() on the BatchNode before batching");
-                    } else if (outBuf == null) {
-                        throw new IllegalArgumentException("Geometry " + geom.getName() + " has a " + outBuf.getBufferType() + " buffer whereas other geoms don't. all geometries should have the same types of buffers.\n Try to use GeometryBatchFactory.alignBuffer() on the BatchNode before batching");
-                    } else {
-                        inBuf.copyElements(0, outBuf, globalVertIndex, geomVertCount);
+                    IndexBuffer src = IndexBuffer.wrapIndexBuffer(vb.getData());
+                    IndexBuffer dst = IndexBuffer.wrapIndexBuffer(grown.getData());
+                    for (int i = 0; i < batch.indices.getEnd(); i++) {
+                        dst.put(i, src.get(i));
                     }
+                    mesh.clearBuffer(VertexBuffer.Type.Index);
+                    mesh.setBuffer(grown);
                 }
+            } else if (vertexCapacity != batch.vertices.getCapacity()) {
+                VertexBuffer grown = createLike(vb, vertexCapacity, vb.getFormat());
+                vb.copyElements(0, grown, 0, batch.vertices.getEnd());
+                vb.updateData(grown.getData());
             }
-
-            globalVertIndex += geomVertCount;
-            globalTriIndex += geomTriCount;
         }
+        batch.vertices.setCapacity(vertexCapacity);
+        batch.indices.setCapacity(indexCapacity);
+        mesh.updateCounts();
+    }
+
+    private static VertexBuffer createLike(VertexBuffer vb, int numElements, VertexBuffer.Format format) {
+        VertexBuffer copy = new VertexBuffer(vb.getBufferType());
+        copy.setupData(vb.getUsage(), vb.getNumComponents(), format,
+                VertexBuffer.createBuffer(format, vb.getNumComponents(), numElements));
+        copy.setNormalized(vb.isNormalized());
+        return copy;
     }
 
     private void doTransforms(FloatBuffer bindBufPos, FloatBuffer bindBufNorm, FloatBuffer bufPos, FloatBuffer bufNorm, int start, int end, Matrix4f transform) {
@@ -644,39 +945,26 @@ public class BatchNode extends GeometryGroupNode {
         bufTangents.put(tmpFloatT, 0, tanLength);
     }
 
-    private void doCopyBuffer(FloatBuffer inBuf, int offset, FloatBuffer outBuf, int componentSize) {
-        TempVars vars = TempVars.get();
-        Vector3f pos = vars.vect1;
-
-        // offset is given in element units
-        // convert to be in component units
-        offset *= componentSize;
-
-        for (int i = 0; i < inBuf.limit() / componentSize; i++) {
-            pos.x = inBuf.get(i * componentSize + 0);
-            pos.y = inBuf.get(i * componentSize + 1);
-            pos.z = inBuf.get(i * componentSize + 2);
-
-            outBuf.put(offset + i * componentSize + 0, pos.x);
-            outBuf.put(offset + i * componentSize + 1, pos.y);
-            outBuf.put(offset + i * componentSize + 2, pos.z);
-        }
-        vars.release();
-    }
-
     protected class Batch implements JmeCloneable {
+        Geometry geometry;
         /**
-         * update the batchesByGeom map for this batch with the given List of geometries
-         * @param list
+         * the vertex and index ranges of the batched geometries, indices are
+         * counted in index units, not in primitives
          */
-        void updateGeomList(List<Geometry> list) {
-            for (Geometry geom : list) {
-                if (!isBatch(geom)) {
-                    batchesByGeom.put(geom, this);
-                }
-            }
-        }
-        Geometry geometry;
+        RangeAllocator vertices;
+        RangeAllocator indices;
+        /**
+         * number of indices per primitive
+         */
+        int components;
+        /**
+         * geometry -> {vertexStart, vertexCount, indexStart, indexCount}
+         */
+        Map<Geometry, int[]> ranges = new HashMap<Geometry, int[]>();
+        /**
+         * number of vertices transformed since the bound was last recomputed
+         */
+        int movedVertices;
 
         public final Geometry getGeometry() {
             return geometry;
@@ -694,8 +982,155 @@ public class BatchNode extends GeometryGroupNode {
         @Override
         public void cloneFields( Cloner cloner, Object original ) {
             this.geometry = cloner.clone(geometry);
+            this.vertices = vertices == null ? null : vertices.copy();
+            this.indices = indices == null ? null : indices.copy();
+            HashMap<Geometry, int[]> newRanges = new HashMap<Geometry, int[]>();
+            for (Map.Entry<Geometry, int[]> e : ranges.entrySet()) {
+                newRanges.put(cloner.clone(e.getKey()), e.getValue().clone());
+            }
+            this.ranges = newRanges;
+        }
+
+    }
+
+    /**
+     * First fit allocator of ranges in a buffer of a given capacity.
+     * The free ranges are kept sorted by start and coalesced, a free range
+     * touching the end of the allocated space is given back to it.
+     */
+    private static final class RangeAllocator {
+
+        private int capacity;
+        private int end;
+        private int freeSize;
+        private int[] starts = new int[8];
+        private int[] sizes = new int[8];
+        private int count;
+
+        RangeAllocator(int capacity) {
+            this.capacity = capacity;
+        }
+
+        int getCapacity() {
+            return capacity;
+        }
+
+        void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        int getEnd() {
+            return end;
+        }
+
+        int getFreeSize() {
+            return freeSize;
+        }
+
+        int getUsedSize() {
+            return end - freeSize;
+        }
+
+        boolean canAllocate(int size) {
+            if (size <= capacity - end) {
+                return true;
+            }
+            for (int i = 0; i < count; i++) {
+                if (sizes[i] >= size) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the start of the allocated range or -1 if there is no room
+         */
+        int allocate(int size) {
+            for (int i = 0; i < count; i++) {
+                if (sizes[i] >= size) {
+                    int start = starts[i];
+                    starts[i] += size;
+                    sizes[i] -= size;
+                    freeSize -= size;
+                    if (sizes[i] == 0) {
+                        remove(i);
+                    }
+                    return start;
+                }
+            }
+            if (size <= capacity - end) {
+                int start = end;
+                end += size;
+                return start;
+            }
+            return -1;
+        }
+
+        void free(int start, int size) {
+            if (size == 0) {
+                return;
+            }
+            int i = 0;
+            while (i < count && starts[i] < start) {
+                i++;
+            }
+            boolean mergePrev = i > 0 && starts[i - 1] + sizes[i - 1] == start;
+            boolean mergeNext = i < count && start + size == starts[i];
+            freeSize += size;
+            if (mergePrev && mergeNext) {
+                sizes[i - 1] += size + sizes[i];
+                remove(i);
+                i--;
+            } else if (mergePrev) {
+                sizes[i - 1] += size;
+                i--;
+            } else if (mergeNext) {
+                starts[i] = start;
+                sizes[i] += size;
+            } else {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    sizes = Arrays.copyOf(sizes, count * 2);
+                }
+                System.arraycopy(starts, i, starts, i + 1, count - i);
+                System.arraycopy(sizes, i, sizes, i + 1, count - i);
+                starts[i] = start;
+                sizes[i] = size;
+                count++;
+            }
+            //a hole at the end of the allocated space goes back to the tail
+            if (i == count - 1 && starts[i] + sizes[i] == end) {
+                end = starts[i];
+                freeSize -= sizes[i];
+                count--;
+            }
         }
 
+        /**
+         * Forgets the free ranges, everything up to end is allocated.
+         */
+        void reset(int end) {
+            this.end = end;
+            freeSize = 0;
+            count = 0;
+        }
+
+        RangeAllocator copy() {
+            RangeAllocator copy = new RangeAllocator(capacity);
+            copy.end = end;
+            copy.freeSize = freeSize;
+            copy.starts = starts.clone();
+            copy.sizes = sizes.clone();
+            copy.count = count;
+            return copy;
+        }
+
+        private void remove(int i) {
+            System.arraycopy(starts, i + 1, starts, i, count - i - 1);
+            System.arraycopy(sizes, i + 1, sizes, i, count - i - 1);
+            count--;
+        }
     }
 
     protected void setNeedsFullRebatch(boolean needsFullRebatch) {
@@ -232,6 +232,22 @@ public class Mesh implements Savable, Cloneable, JmeCloneable {
      * @return a deep clone of this mesh.
      */
     public Mesh deepClone(){
+        return deepClone(false);
+    }
+
+    /**
+     * Creates a clone of this mesh with
+     * {@link VertexBuffer#cloneCopyOnWrite() copy-on-write} vertex buffers.
+     * The clone can be modified independently like a deep clone but the
+     * data of each buffer is only copied when first written.
+     *
+     * @return a copy-on-write clone of this mesh.
+     */
+    public Mesh cloneCopyOnWrite(){
+        return deepClone(true);
+    }
+
+    private Mesh deepClone(boolean copyOnWrite){
         try{
             Mesh clone = (Mesh) super.clone();
             clone.meshBound = meshBound != null ? meshBound.clone() : null;
@@ -243,7 +259,7 @@ public class Mesh implements Savable, Cloneable, JmeCloneable {
             clone.buffers = new IntMap<VertexBuffer>();
             clone.buffersList = new SafeArrayList<VertexBuffer>(VertexBuffer.class);
             for (VertexBuffer vb : buffersList.getArray()){
-                VertexBuffer bufClone = vb.clone();
+                VertexBuffer bufClone = copyOnWrite ? vb.cloneCopyOnWrite() : vb.clone();
                 clone.buffers.put(vb.getBufferType().ordinal(), bufClone);
                 clone.buffersList.add(bufClone);
             }
@@ -270,7 +286,9 @@ public class Mesh implements Savable, Cloneable, JmeCloneable {
      * This creates a shallow clone of the mesh, sharing most
      * of the {@link VertexBuffer vertex buffer} data, however the
      * {@link Type#Position}, {@link Type#Normal}, and {@link Type#Tangent} buffers
-     * are deeply cloned.
+     * are cloned {@link VertexBuffer#cloneCopyOnWrite() copy-on-write}: their
+     * data is only copied when first written, e.g. by software skinning, and
+     * stays shared when the mesh is skinned on the GPU.
      *
      * @return A clone of the mesh for animation use.
      */
@@ -279,20 +297,20 @@ public class Mesh implements Savable, Cloneable, JmeCloneable {
         if (getBuffer(Type.BindPosePosition) != null){
             VertexBuffer oldPos = getBuffer(Type.Position);
 
-            // NOTE: creates deep clone
-            VertexBuffer newPos = oldPos.clone();
+            // NOTE: the data is copied when written
+            VertexBuffer newPos = oldPos.cloneCopyOnWrite();
             clone.clearBuffer(Type.Position);
             clone.setBuffer(newPos);
 
             if (getBuffer(Type.BindPoseNormal) != null){
                 VertexBuffer oldNorm = getBuffer(Type.Normal);
-                VertexBuffer newNorm = oldNorm.clone();
+                VertexBuffer newNorm = oldNorm.cloneCopyOnWrite();
                 clone.clearBuffer(Type.Normal);
                 clone.setBuffer(newNorm);
 
                 if (getBuffer(Type.BindPoseTangent) != null){
                     VertexBuffer oldTang = getBuffer(Type.Tangent);
-                    VertexBuffer newTang = oldTang.clone();
+                    VertexBuffer newTang = oldTang.cloneCopyOnWrite();
                     clone.clearBuffer(Type.Tangent);
                     clone.setBuffer(newTang);
                 }
@@ -1345,7 +1363,7 @@ public class Mesh implements Savable, Cloneable, JmeCloneable {
     public void updateBound(){
         VertexBuffer posBuf = getBuffer(VertexBuffer.Type.Position);
         if (meshBound != null && posBuf != null){
-            meshBound.computeFromPoints((FloatBuffer)posBuf.getData());
+            meshBound.computeFromPoints((FloatBuffer)posBuf.getDataReadOnly());
         }
     }
 
@@ -48,6 +48,7 @@ import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
 import com.jme3.renderer.queue.RenderQueue.ShadowMode;
 import com.jme3.scene.control.Control;
+import com.jme3.util.clone.ClonePlan;
 import com.jme3.util.clone.Cloner;
 import com.jme3.util.clone.IdentityCloneFunction;
 import com.jme3.util.clone.JmeCloneable;
@@ -70,6 +71,7 @@ import java.util.logging.Logger;
 public abstract class Spatial implements Savable, Cloneable, Collidable, CloneableSmartAsset, JmeCloneable {
 
     private static final Logger logger = Logger.getLogger(Spatial.class.getName());
+    private static final ThreadLocal<ClonePlan> pendingClonePlan = new ThreadLocal<ClonePlan>();
 
     /**
      * Specifies how frustum culling should be handled by
@@ -1342,6 +1344,14 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
         // Setup the cloner for the type of cloning we want to do.
         Cloner cloner = new Cloner();
 
+        // Replay the plan given to clone(boolean, ClonePlan) if any, only
+        // for this top level clone
+        ClonePlan plan = pendingClonePlan.get();
+        if( plan != null ) {
+            pendingClonePlan.remove();
+            cloner.setClonePlan(plan);
+        }
+
         // First, we definitely do not want to clone our own parent
         cloner.setClonedValue(parent, null);
 
@@ -1368,6 +1378,28 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
         return clone;
     }
 
+    /**
+     * Clones this Spatial like {@link #clone(boolean) } using a
+     * {@link ClonePlan}. The first clone records the plan, the following
+     * clones of the same Spatial replay it, which is much faster when
+     * spawning many copies of a large prefab. Use one plan per prefab and
+     * per value of <code>cloneMaterial</code>.
+     *
+     * @param cloneMaterial true to clone the materials
+     * @param plan the plan recorded or replayed
+     * @return A clone of this Spatial
+     */
+    public Spatial clone( boolean cloneMaterial, ClonePlan plan ) {
+        // Passed through a thread local so that the subclasses overriding
+        // clone(boolean) still fix up their clones
+        pendingClonePlan.set(plan);
+        try {
+            return clone(cloneMaterial);
+        } finally {
+            pendingClonePlan.remove();
+        }
+    }
+
     /**
      *  The old clone() method that did not use the new Cloner utility.
      */
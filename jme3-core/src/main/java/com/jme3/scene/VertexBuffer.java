@@ -38,6 +38,7 @@ import com.jme3.util.BufferUtils;
 import com.jme3.util.NativeObject;
 import java.io.IOException;
 import java.nio.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A <code>VertexBuffer</code> contains a particular type of geometry
@@ -334,6 +335,10 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
     protected boolean normalized = false;
     protected int instanceSpan = 0;
     protected transient boolean dataSizeChanged = false;
+    protected transient boolean copyOnWrite = false;
+    protected transient AtomicInteger dataShares;
+    protected transient int updateRangeStart = 0;
+    protected transient int updateRangeEnd = -1;
 
     /**
      * Creates an empty, uninitialized buffer.
@@ -455,11 +460,45 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
      * the more convenient getDataReadOnly() if the buffer may be accessed 
      * from multiple threads.
      * 
+     * If the data is shared copy-on-write with another buffer, this
+     * allocates a new native buffer and copies the data into it first,
+     * since the caller may write to it. The copy is skipped if the other
+     * buffers sharing it released it already. Callers that only read the
+     * data should use {@link #getDataReadOnly() } to keep sharing it.
+     * 
      * @return A native buffer, in the specified {@link Format format}.
      */
     public Buffer getData(){
+        if (copyOnWrite && !releaseShare()) {
+            // the caller may write to it, copy unless nobody else uses it
+            data = BufferUtils.clone(getDataReadOnly());
+        }
         return data;
     }
+
+    /**
+     * Stops sharing the data copy-on-write.
+     * 
+     * @return true if no other buffer uses the data anymore
+     */
+    private boolean releaseShare() {
+        AtomicInteger shares = dataShares;
+        copyOnWrite = false;
+        dataShares = null;
+        return shares == null || shares.decrementAndGet() == 0;
+    }
+
+    /**
+     * Returns true if the data of this buffer is still shared with the buffer
+     * it was cloned from by {@link #cloneCopyOnWrite() }. Readers that never
+     * write should then use {@link #getDataReadOnly() } so that the data
+     * stays shared.
+     * 
+     * @return true if the data is shared copy-on-write
+     */
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
     
     /** 
      * Returns a safe read-only version of this VertexBuffer's data.  The
@@ -655,6 +694,7 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         }
         
         this.data = data;
+        releaseShare();
         this.components = components;
         this.usage = usage;
         this.format = format;
@@ -695,6 +735,7 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         }
         
         this.data = data;
+        releaseShare();
         setUpdateNeeded();
     }
 
@@ -707,10 +748,66 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         return dataSizeChanged;
     }
 
+    @Override
+    public void setUpdateNeeded(){
+        super.setUpdateNeeded();
+        updateRangeEnd = -1;
+    }
+
     @Override
     public void clearUpdateNeeded(){
         super.clearUpdateNeeded();
         dataSizeChanged = false;
+        updateRangeEnd = -1;
+    }
+
+    /**
+     * Marks a range of elements as modified. As long as nothing else changed
+     * since the last upload, the renderer only uploads the modified ranges,
+     * merged into a single one, instead of the whole buffer. Any other update,
+     * like {@link #updateData(java.nio.Buffer) }, uploads the whole buffer.
+     * 
+     * @param startElement the first modified element
+     * @param numElements the number of modified elements
+     */
+    public void updateRange(int startElement, int numElements){
+        if (numElements <= 0){
+            return;
+        }
+        int end = startElement + numElements;
+        if (!updateNeeded){
+            updateNeeded = true;
+            updateRangeStart = startElement;
+            updateRangeEnd = end;
+        } else if (updateRangeEnd != -1){
+            updateRangeStart = Math.min(updateRangeStart, startElement);
+            updateRangeEnd = Math.max(updateRangeEnd, end);
+        }
+    }
+
+    /**
+     * Internal use only. Returns true if only the range given by
+     * {@link #getUpdateRangeStart() } and {@link #getUpdateRangeEnd() }
+     * needs to be uploaded.
+     * 
+     * @return true if the update is limited to a range of elements
+     */
+    public boolean hasUpdateRange(){
+        return updateNeeded && updateRangeEnd != -1 && !dataSizeChanged;
+    }
+
+    /**
+     * @return the first element of the range to upload
+     */
+    public int getUpdateRangeStart(){
+        return updateRangeStart;
+    }
+
+    /**
+     * @return the end of the range to upload, exclusive
+     */
+    public int getUpdateRangeEnd(){
+        return updateRangeEnd;
     }
 
     /**
@@ -739,6 +836,7 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
             halfData.putShort(half);
         }
         this.data = halfData;
+        releaseShare();
         setUpdateNeeded();
         dataSizeChanged = true;
     }
@@ -790,6 +888,7 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
                 throw new UnsupportedOperationException("Unrecognized buffer format: "+format);
         }
         data.clear();
+        releaseShare();
         setUpdateNeeded();
         dataSizeChanged = true;
     }
@@ -813,6 +912,7 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
             elementPos *= 2;
         }
 
+        Buffer data = getData();
         data.clear();
 
         switch (format){
@@ -927,6 +1027,7 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         // thread is also accessing the buffer and messing with its
         // position()
         Buffer srcData = getDataReadOnly();
+        outVb.getData();
         outVb.data.clear();
 
         switch (format){
@@ -1016,6 +1117,8 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         VertexBuffer vb = (VertexBuffer) super.clone();
         vb.handleRef = new Object();
         vb.id = -1;
+        vb.copyOnWrite = false;
+        vb.dataShares = null;
         if (data != null) {
             // Make sure to pass a read-only buffer to clone so that
             // the position information doesn't get clobbered by another
@@ -1027,6 +1130,52 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         return vb;
     }
 
+    /**
+     * Creates a clone of the {@link VertexBuffer} sharing its data
+     * copy-on-write: neither buffer copies the data until it is written
+     * through {@link #getData() }. Useful for buffers that are rarely
+     * modified, like the vertices of animated meshes skinned on the GPU.
+     * 
+     * @return A clone of this buffer
+     */
+    public VertexBuffer cloneCopyOnWrite(){
+        VertexBuffer vb = (VertexBuffer) super.clone();
+        vb.handleRef = new Object();
+        vb.id = -1;
+        if (data != null) {
+            // own view of the data, the position state is not shared
+            vb.data = duplicate(data);
+            if (dataShares == null) {
+                dataShares = new AtomicInteger(1);
+            }
+            dataShares.incrementAndGet();
+            vb.dataShares = dataShares;
+            vb.copyOnWrite = true;
+            copyOnWrite = true;
+            vb.setUpdateNeeded();
+        } else {
+            vb.dataShares = null;
+            vb.copyOnWrite = false;
+        }
+        return vb;
+    }
+
+    private static Buffer duplicate(Buffer buffer) {
+        if (buffer instanceof ByteBuffer) {
+            return ((ByteBuffer) buffer).duplicate();
+        } else if (buffer instanceof FloatBuffer) {
+            return ((FloatBuffer) buffer).duplicate();
+        } else if (buffer instanceof ShortBuffer) {
+            return ((ShortBuffer) buffer).duplicate();
+        } else if (buffer instanceof IntBuffer) {
+            return ((IntBuffer) buffer).duplicate();
+        } else if (buffer instanceof DoubleBuffer) {
+            return ((DoubleBuffer) buffer).duplicate();
+        } else {
+            throw new UnsupportedOperationException("Cannot share buffer type:" + buffer);
+        }
+    }
+
     /**
      * Creates a deep clone of this VertexBuffer but overrides the
      * {@link Type}.
@@ -1082,7 +1231,8 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
     
     @Override
     protected void deleteNativeBuffers() {
-        if (data != null) {
+        // shared data is destroyed by the last buffer using it
+        if (data != null && releaseShare()) {
             BufferUtils.destroyDirectBuffer(data);
         }
     }
@@ -36,6 +36,10 @@ import java.util.List;
 
 /**
  * The new define list.
+ * <p>
+ * The hash of the list is maintained incrementally as defines are set, and
+ * a version number is incremented each time a define actually changes, so
+ * an unchanged list can be recognized without comparing its values.
  *
  * @author Kirill Vainer
  */
@@ -45,6 +49,12 @@ public final class DefineList {
 
     private long isSet;
     private final int[] values;
+    private int hash;
+    private int version;
+
+    private Object cachedShaderOwner;
+    private Shader cachedShader;
+    private int cachedShaderVersion;
 
     public DefineList(int numValues) {
         if (numValues < 0 || numValues > MAX_DEFINES) {
@@ -55,6 +65,7 @@ public final class DefineList {
 
     private DefineList(DefineList original) {
         this.isSet = original.isSet;
+        this.hash = original.hash;
         this.values = new int[original.values.length];
         System.arraycopy(original.values, 0, values, 0, values.length);
     }
@@ -68,16 +79,35 @@ public final class DefineList {
         return (isSet & (1L << id)) != 0;
     }
 
+    private static int hashEntry(int id, int val) {
+        int h = (val ^ ((id + 1) * 0x9E3779B9)) * 0x85EBCA6B;
+        return h ^ (h >>> 16);
+    }
+
     public void unset(int id) {
         rangeCheck(id);
-        isSet &= ~(1L << id);
-        values[id] = 0;
+        long mask = 1L << id;
+        if ((isSet & mask) != 0) {
+            hash -= hashEntry(id, values[id]);
+            isSet &= ~mask;
+            values[id] = 0;
+            version++;
+        }
     }
 
     public void set(int id, int val) {
         rangeCheck(id);
-        isSet |= (1L << id);
+        long mask = 1L << id;
+        if ((isSet & mask) != 0) {
+            if (values[id] == val) {
+                return;
+            }
+            hash -= hashEntry(id, values[id]);
+        }
+        isSet |= mask;
         values[id] = val;
+        hash += hashEntry(id, val);
+        version++;
     }
 
     public void set(int id, float val) {
@@ -123,9 +153,70 @@ public final class DefineList {
         }
     }
 
+    /**
+     * Makes the defines selected by the given mask equal to the ones of
+     * the other list, leaving the others untouched. Only the defines that
+     * differ are modified.
+     *
+     * @param other the list to copy from
+     * @param mask a bit mask of the define ids to copy
+     */
+    public void setAll(DefineList other, long mask) {
+        long diff = mask & (isSet | other.isSet);
+        while (diff != 0) {
+            int id = Long.numberOfTrailingZeros(diff);
+            diff &= diff - 1;
+            if (other.isSet(id)) {
+                set(id, other.values[id]);
+            } else {
+                unset(id);
+            }
+        }
+    }
+
     public void clear() {
-        isSet = 0;
-        Arrays.fill(values, 0);
+        if (isSet != 0) {
+            isSet = 0;
+            hash = 0;
+            Arrays.fill(values, 0);
+            version++;
+        }
+    }
+
+    /**
+     * Returns a number that changes every time a define of this list changes.
+     *
+     * @return the version of the list
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the shader previously associated to this list by the given
+     * owner, if none of the defines changed since.
+     *
+     * @param owner the object that associated the shader
+     * @return the shader or null
+     */
+    public Shader getCachedShader(Object owner) {
+        if (cachedShaderOwner == owner && cachedShaderVersion == version) {
+            return cachedShader;
+        }
+        return null;
+    }
+
+    /**
+     * Associates a shader to the current state of this list. A list only
+     * remembers one shader, the last one set.
+     *
+     * @param owner the object associating the shader
+     * @param shader the shader
+     */
+    public void setCachedShader(Object owner, Shader shader) {
+        cachedShaderOwner = owner;
+        cachedShader = shader;
+        cachedShaderVersion = version;
     }
 
     public boolean getBoolean(int id) {
@@ -142,13 +233,13 @@ public final class DefineList {
 
     @Override
     public int hashCode() {
-        return (int) ((isSet >> 32) ^ isSet);
+        return hash;
     }
 
     @Override
     public boolean equals(Object other) {
         DefineList o = (DefineList) other;
-        if (isSet == o.isSet) {
+        if (isSet == o.isSet && hash == o.hash) {
             for (int i = 0; i < values.length; i++) {
                 if (values[i] != o.values[i]) {
                     return false;
@@ -165,6 +165,12 @@ public class NullRenderer implements Renderer {
     public void deleteImage(Image image) {
     }
 
+    public void requestMipLevelUpdate(Image image) {
+    }
+
+    public void updateMipLevels() {
+    }
+
     public void setAlphaToCoverage(boolean value) {
     }
 
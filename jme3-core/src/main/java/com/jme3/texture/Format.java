@@ -265,7 +265,22 @@ public enum Format {
         RGBA16I(64),	 
         RGBA16UI(64),  
         RGBA32I(128),  
-        RGBA32UI(128) 
+        RGBA32UI(128),
+
+        /**
+         * RGTC compression of a single channel, also known as BC4.
+         * 
+         * Requires {@link Caps#TextureCompressionRGTC}.
+         */
+        RGTC1(4, false, true, false),
+
+        /**
+         * RGTC compression of two channels, also known as BC5.
+         * Typically used for tangent space normal maps.
+         * 
+         * Requires {@link Caps#TextureCompressionRGTC}.
+         */
+        RGTC2(8, false, true, false)
         ;
 
         private int bpp;
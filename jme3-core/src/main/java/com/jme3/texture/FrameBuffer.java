@@ -98,6 +98,7 @@ public class FrameBuffer extends NativeObject {
         int slot = SLOT_UNDEF;
         int face = -1;
         int layer = -1;
+        int level = 0;
         
         /**
          * @return The image format of the render buffer.
@@ -165,6 +166,13 @@ public class FrameBuffer extends NativeObject {
         public int getLayer() {
             return this.layer;
         }
+
+        /**
+         * @return the mip level of the texture to render to.
+         */
+        public int getLevel() {
+            return this.level;
+        }
     }
 
     /**
@@ -356,6 +364,22 @@ public class FrameBuffer extends NativeObject {
         addColorTexture(tex, face);
     }
 
+    /**
+     * Set the color texture to use for this framebuffer.
+     * This automatically clears all existing textures added previously
+     * with {@link FrameBuffer#addColorTexture } and adds this texture as the
+     * only target.
+     *
+     * @param tex The cube-map texture to set.
+     * @param face The face of the cube-map to render to.
+     * @param level The mip level of the face to render to. The size of this
+     * framebuffer must match the size of the mip level.
+     */
+    public void setColorTexture(TextureCubeMap tex, TextureCubeMap.Face face, int level) {
+        clearColorTargets();
+        addColorTexture(tex, face, level);
+    }
+
     /**
      * Clears all color targets that were set or added previously.
      */
@@ -448,6 +472,19 @@ public class FrameBuffer extends NativeObject {
      * @param face The face of the cube-map to render to.
      */
     public void addColorTexture(TextureCubeMap tex, TextureCubeMap.Face face) {
+        addColorTexture(tex, face, 0);
+    }
+
+     /**
+     * Add a mip level of a cube-map face as a color target of this framebuffer.
+     *
+     * @param tex The cube-map texture to add.
+     * @param face The face of the cube-map to render to.
+     * @param level The mip level of the face to render to. The size of this
+     * framebuffer must match the size of the mip level.
+     * @see #addColorTexture(com.jme3.texture.TextureCubeMap, com.jme3.texture.TextureCubeMap.Face) 
+     */
+    public void addColorTexture(TextureCubeMap tex, TextureCubeMap.Face face, int level) {
         if (id != -1)
             throw new UnsupportedOperationException("FrameBuffer already initialized.");
 
@@ -459,6 +496,7 @@ public class FrameBuffer extends NativeObject {
         colorBuf.tex = tex;
         colorBuf.format = img.getFormat();
         colorBuf.face = face.ordinal();
+        colorBuf.level = level;
 
         colorBufs.add(colorBuf);
     }
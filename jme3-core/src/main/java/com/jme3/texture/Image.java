@@ -75,13 +75,17 @@ public class Image extends NativeObject /* , Cloneable */ implements IImage {
 	protected boolean needGeneratedMips = false;
 	protected LastTextureState lastTextureState = new LastTextureState();
 
+	// attributes relating to mip streaming
+	protected boolean mipStreaming = false;
+	protected int mipBaseLevel = 0;
+
 	/**
 	 * Internal use only. The renderer stores the texture state set from the last
 	 * texture so it doesn't have to change it unless necessary.
 	 * 
 	 * @return The image parameter state.
 	 */
-	private LastTextureState getLastTextureState() {
+	public LastTextureState getLastTextureState() {
 		return lastTextureState;
 	}
 
@@ -520,6 +524,77 @@ public class Image extends NativeObject /* , Cloneable */ implements IImage {
 		return mipMapSizes;
 	}
 
+	/**
+	 * Enables mip streaming for this image. The renderer then only keeps the
+	 * mip levels from {@link #getMipBaseLevel() } down to the smallest one in
+	 * video memory, and clamps the texture to these levels with
+	 * GL_TEXTURE_BASE_LEVEL.
+	 * Only two dimensional images with a full mip chain are streamed.
+	 * 
+	 * @param mipStreaming true to enable mip streaming
+	 * @see com.jme3.texture.TextureStreamer
+	 */
+	public void setMipStreaming(boolean mipStreaming) {
+		this.mipStreaming = mipStreaming;
+		if (!mipStreaming) {
+			mipBaseLevel = 0;
+		}
+	}
+
+	/**
+	 * @return true if mip streaming is enabled for this image
+	 */
+	public boolean isMipStreaming() {
+		return mipStreaming;
+	}
+
+	/**
+	 * Sets the finest mip level that must be resident in video memory.
+	 * Lowering it uploads the missing levels the next time the image is bound,
+	 * raising it releases the finer levels. Use
+	 * {@link com.jme3.renderer.Renderer#requestMipLevelUpdate(com.jme3.texture.Image) }
+	 * to apply the change without binding the image.
+	 * The level is clamped to the available mip levels.
+	 * 
+	 * @param level the base level, 0 being the full resolution image
+	 */
+	public void setMipBaseLevel(int level) {
+		this.mipBaseLevel = Math.max(0, Math.min(level, getMipLevelCount() - 1));
+	}
+
+	/**
+	 * @return the finest mip level that must be resident in video memory
+	 */
+	public int getMipBaseLevel() {
+		return mipBaseLevel;
+	}
+
+	/**
+	 * @return the number of mip levels of this image, 1 if it has no mipmaps
+	 */
+	public int getMipLevelCount() {
+		return mipMapSizes != null ? mipMapSizes.length : 1;
+	}
+
+	/**
+	 * Returns the size in bytes the levels from the given base level down to
+	 * the smallest one take, for all the slices of the image.
+	 * 
+	 * @param baseLevel the finest level to account for
+	 * @return the size in bytes
+	 */
+	public int getMipLevelsSize(int baseLevel) {
+		int size = 0;
+		if (mipMapSizes == null) {
+			size = width * height * Math.max(1, depth) * format.getBitsPerPixel() / 8;
+			return baseLevel == 0 ? size : 0;
+		}
+		for (int i = baseLevel; i < mipMapSizes.length; i++) {
+			size += mipMapSizes[i];
+		}
+		return size * (data != null ? Math.max(1, data.size()) : 1);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.jme3.texture.IImage#setColorSpace(com.jme3.texture.image.ColorSpace)
 	 */
@@ -34,10 +34,60 @@ package com.jme3.texture;
 import com.jme3.asset.AssetKey;
 import com.jme3.asset.AssetProcessor;
 import com.jme3.asset.TextureKey;
+import com.jme3.texture.image.TextureCompressor;
+import com.jme3.util.MipMapGenerator;
 import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class TextureProcessor implements AssetProcessor {
 
+    private static final Logger logger = Logger.getLogger(TextureProcessor.class.getName());
+    private static TextureCompressor compressor;
+
+    /**
+     * Sets the compressor used for the textures loaded with a
+     * {@link TextureKey#setCompressFormat(com.jme3.texture.Format) compress format}.
+     * Set a compressor with a {@link com.jme3.texture.image.CompressedImageCache}
+     * to keep the compressed textures on disk between runs.
+     * 
+     * @param compressor the compressor
+     */
+    public static synchronized void setCompressor(TextureCompressor compressor) {
+        TextureProcessor.compressor = compressor;
+    }
+
+    /**
+     * @return the compressor used for the textures compressed on load,
+     * created on first use if none is set
+     */
+    public static synchronized TextureCompressor getCompressor() {
+        if (compressor == null) {
+            compressor = new TextureCompressor();
+        }
+        return compressor;
+    }
+
+    private static Image compress(TextureKey key, Image img) {
+        Format format = key.getCompressFormat();
+        if (img.getFormat().isCompressed() || key.getTextureTypeHint() == Type.ThreeDimensional) {
+            return img;
+        }
+        if (!TextureCompressor.isSupported(format) || !TextureCompressor.canCompress(img)) {
+            logger.log(Level.WARNING, "Cannot compress {0} from {1} to {2}",
+                    new Object[]{key, img.getFormat(), format});
+            return img;
+        }
+        if (key.isGenerateMips() && !img.hasMipmaps()) {
+            if (img.getData().size() > 1) {
+                logger.log(Level.WARNING, "Cannot generate the mipmaps of {0} before compressing it", key);
+                return img;
+            }
+            MipMapGenerator.generateMipMaps(img);
+        }
+        return getCompressor().compress(img, format, key.getCompressQuality());
+    }
+
     @Override
     public Object postProcess(AssetKey key, Object obj) {
         TextureKey texKey = (TextureKey) key;
@@ -61,12 +111,21 @@ public class TextureProcessor implements AssetProcessor {
             tex = new Texture2D();
         }
 
+        if (texKey.getCompressFormat() != null) {
+            img = compress(texKey, img);
+        }
+
         // enable mipmaps if image has them
         // or generate them if requested by user
         if (img.hasMipmaps() || texKey.isGenerateMips()) {
             tex.setMinFilter(MinFilter.Trilinear);
         }
 
+        if (texKey.isMipStreaming() && img.hasMipmaps()
+                && tex.getType() == Type.TwoDimensional) {
+            img.setMipStreaming(true);
+        }
+
         tex.setAnisotropicFilter(texKey.getAnisotropy());
         tex.setName(texKey.getName());
         tex.setImage(img);
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.material.MatParam;
+import com.jme3.material.Material;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.Renderer;
+import com.jme3.scene.Geometry;
+import com.jme3.util.ListMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * <code>TextureStreamer</code> decides which mip levels of the streamed
+ * textures are resident in video memory.
+ * <p>
+ * Images with {@link Image#setMipStreaming(boolean) mip streaming} enabled
+ * (see {@link com.jme3.asset.TextureKey#setMipStreaming(boolean) }) start with
+ * only their small mip levels resident, so they can be displayed right away.
+ * While rendering, the {@link RenderManager} reports each drawn geometry to
+ * the streamer, which estimates the screen-space size of the geometry and
+ * deduces the finest level its textures need. Once per frame
+ * {@link #update() } moves the base level of each image toward that level :
+ * finer levels are uploaded a few at a time within an upload budget, levels
+ * that are no longer needed are released, and when the resident levels
+ * exceed the memory budget the textures that were drawn the least recently
+ * are clamped to coarser levels first.
+ * <p>
+ * The changed base levels are queued in the renderer and applied at the end
+ * of the update, whether the textures are bound or not, the renderer clamps
+ * them with GL_TEXTURE_BASE_LEVEL while the finer levels are missing.
+ * Only streamed images are accounted for in the memory budget, with the
+ * levels the renderer actually keeps resident.
+ *
+ * @see RenderManager#setTextureStreamer(com.jme3.texture.TextureStreamer)
+ */
+public class TextureStreamer {
+
+    private static class Entry {
+
+        final Image image;
+        int requestedLevel;
+        int desiredLevel;
+        long lastSeenFrame;
+
+        Entry(Image image) {
+            this.image = image;
+        }
+    }
+
+    private final IdentityHashMap<Image, Entry> entries = new IdentityHashMap<>();
+    private final ArrayList<Entry> entryList = new ArrayList<>();
+    private final Comparator<Entry> leastRecentlySeen = new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) {
+            return e1.lastSeenFrame < e2.lastSeenFrame ? -1 : (e1.lastSeenFrame > e2.lastSeenFrame ? 1 : 0);
+        }
+    };
+    private long memoryBudget;
+    private int uploadBudget = 4 * 1024 * 1024;
+    private int minResidentSize = 64;
+    private float texelDensityScale = 1f;
+    private int evictionDelay = 300;
+    private long frame = 0;
+    private long residentSize = 0;
+
+    /**
+     * Creates a texture streamer
+     *
+     * @param memoryBudget the video memory the resident levels of the
+     * streamed images may use, in bytes
+     */
+    public TextureStreamer(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Called by the render manager for each geometry it renders with its
+     * own material. Records the finest mip level the streamed textures of
+     * the material need for this geometry.
+     *
+     * @param geom the rendered geometry
+     * @param cam the camera it's rendered with
+     */
+    public void notifyRendered(Geometry geom, Camera cam) {
+        Material material = geom.getMaterial();
+        ListMap<String, MatParam> params = material.getParamsMap();
+        float screenSize = -1;
+        for (int i = 0; i < params.size(); i++) {
+            MatParam param = params.getValue(i);
+            if (!param.getVarType().isTextureType()) {
+                continue;
+            }
+            Texture texture = (Texture) param.getValue();
+            Image image = texture != null ? texture.getImage() : null;
+            if (image == null || !image.isMipStreaming()) {
+                continue;
+            }
+            if (screenSize < 0) {
+                screenSize = computeScreenSize(geom, cam);
+            }
+            Entry entry = getEntry(image);
+            int level = computeLevel(image, screenSize);
+            if (entry.lastSeenFrame != frame) {
+                entry.lastSeenFrame = frame;
+                entry.requestedLevel = level;
+            } else {
+                entry.requestedLevel = Math.min(entry.requestedLevel, level);
+            }
+        }
+    }
+
+    private Entry getEntry(Image image) {
+        Entry entry = entries.get(image);
+        if (entry == null) {
+            entry = new Entry(image);
+            entries.put(image, entry);
+            entryList.add(entry);
+            // only the small levels are uploaded at first
+            image.setMipBaseLevel(Math.max(image.getMipBaseLevel(), getCoarseLevel(image)));
+        }
+        return entry;
+    }
+
+    /**
+     * Estimates the diameter in pixels the geometry covers on screen.
+     */
+    private float computeScreenSize(Geometry geom, Camera cam) {
+        BoundingVolume bound = geom.getWorldBound();
+        float radius;
+        if (bound instanceof BoundingSphere) {
+            radius = ((BoundingSphere) bound).getRadius();
+        } else if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            radius = (float) Math.sqrt(box.getXExtent() * box.getXExtent()
+                    + box.getYExtent() * box.getYExtent()
+                    + box.getZExtent() * box.getZExtent());
+        } else {
+            return cam.getHeight();
+        }
+        if (cam.isParallelProjection()) {
+            return 2f * radius / (cam.getFrustumTop() - cam.getFrustumBottom()) * cam.getHeight();
+        }
+        float distance = cam.getLocation().distance(bound.getCenter()) - radius;
+        if (distance <= cam.getFrustumNear()) {
+            return Float.MAX_VALUE;
+        }
+        return radius / distance * cam.getFrustumNear() / cam.getFrustumTop() * cam.getHeight();
+    }
+
+    private int computeLevel(Image image, float screenSize) {
+        float needed = screenSize * texelDensityScale;
+        int texels = Math.max(image.getWidth(), image.getHeight());
+        int level = 0;
+        int maxLevel = image.getMipLevelCount() - 1;
+        while (level < maxLevel && (texels >> (level + 1)) >= needed) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * returns the finest level that is at most minResidentSize, the level
+     * kept resident for every streamed image.
+     */
+    private int getCoarseLevel(Image image) {
+        int texels = Math.max(image.getWidth(), image.getHeight());
+        int level = 0;
+        int maxLevel = image.getMipLevelCount() - 1;
+        while (level < maxLevel && (texels >> level) > minResidentSize) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Updates the base level of the streamed images from the levels
+     * requested during the frame and applies them. Called by the render
+     * manager at the end of each frame.
+     *
+     * @param renderer the renderer the images are uploaded with
+     */
+    public void update(Renderer renderer) {
+        long total = 0;
+        for (int i = entryList.size() - 1; i >= 0; i--) {
+            Entry entry = entryList.get(i);
+            Image image = entry.image;
+            int coarse = getCoarseLevel(image);
+            if (frame - entry.lastSeenFrame > evictionDelay) {
+                setBaseLevel(renderer, image, coarse);
+                // forget it, it's registered again if rendered
+                entries.remove(image);
+                entryList.remove(i);
+                continue;
+            }
+            entry.desiredLevel = Math.min(entry.requestedLevel, coarse);
+            total += image.getMipLevelsSize(entry.desiredLevel);
+        }
+
+        if (total > memoryBudget) {
+            total = fitInBudget(total);
+        }
+
+        int uploaded = 0;
+        for (Entry entry : entryList) {
+            Image image = entry.image;
+            int current = image.getMipBaseLevel();
+            if (entry.desiredLevel > current) {
+                // released right away
+                setBaseLevel(renderer, image, entry.desiredLevel);
+            } else if (entry.desiredLevel < current) {
+                // one level per frame, within the upload budget
+                int size = image.getMipLevelsSize(current - 1) - image.getMipLevelsSize(current);
+                if (uploaded == 0 || uploaded + size <= uploadBudget) {
+                    setBaseLevel(renderer, image, current - 1);
+                    uploaded += size;
+                }
+            }
+        }
+        renderer.updateMipLevels();
+
+        residentSize = 0;
+        for (Entry entry : entryList) {
+            residentSize += getResidentSize(entry.image);
+        }
+        frame++;
+    }
+
+    private void setBaseLevel(Renderer renderer, Image image, int level) {
+        image.setMipBaseLevel(level);
+        renderer.requestMipLevelUpdate(image);
+    }
+
+    /**
+     * returns the size of the levels the renderer keeps resident for the
+     * image, nothing until it's uploaded.
+     */
+    private long getResidentSize(Image image) {
+        if (image.getId() == -1) {
+            return 0;
+        }
+        return image.getMipLevelsSize(image.getLastTextureState().baseLevel);
+    }
+
+    /**
+     * Clamps the least recently seen images to coarser levels until the
+     * desired levels fit in the memory budget.
+     */
+    private long fitInBudget(long total) {
+        Collections.sort(entryList, leastRecentlySeen);
+        boolean progress = true;
+        while (total > memoryBudget && progress) {
+            progress = false;
+            for (Entry entry : entryList) {
+                Image image = entry.image;
+                if (entry.desiredLevel < getCoarseLevel(image)) {
+                    total -= image.getMipLevelsSize(entry.desiredLevel) - image.getMipLevelsSize(entry.desiredLevel + 1);
+                    entry.desiredLevel++;
+                    progress = true;
+                    if (total <= memoryBudget) {
+                        break;
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Releases the finer levels of all the streamed images and forgets them.
+     *
+     * @param renderer the renderer the images are uploaded with
+     */
+    public void cleanup(Renderer renderer) {
+        for (Entry entry : entryList) {
+            setBaseLevel(renderer, entry.image, getCoarseLevel(entry.image));
+        }
+        renderer.updateMipLevels();
+        entries.clear();
+        entryList.clear();
+        residentSize = 0;
+    }
+
+    /**
+     * Sets the video memory the resident levels of the streamed images may
+     * use, in bytes.
+     *
+     * @param memoryBudget the budget in bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * returns the memory budget in bytes
+     *
+     * @return the budget
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the amount of mip data that may be uploaded per frame, in bytes.
+     * At least one level is uploaded per frame whatever its size.
+     * default is 4 MB.
+     *
+     * @param uploadBudget the budget in bytes
+     */
+    public void setUploadBudget(int uploadBudget) {
+        this.uploadBudget = uploadBudget;
+    }
+
+    /**
+     * returns the amount of mip data that may be uploaded per frame
+     *
+     * @return the budget in bytes
+     */
+    public int getUploadBudget() {
+        return uploadBudget;
+    }
+
+    /**
+     * Sets the size in texels of the mip level that is always kept
+     * resident, and uploaded as soon as the texture is first drawn.
+     * default is 64.
+     *
+     * @param minResidentSize the size in texels
+     */
+    public void setMinResidentSize(int minResidentSize) {
+        this.minResidentSize = minResidentSize;
+    }
+
+    /**
+     * returns the size in texels of the mip level that is always resident
+     *
+     * @return the size
+     */
+    public int getMinResidentSize() {
+        return minResidentSize;
+    }
+
+    /**
+     * Sets the number of texels wanted per screen pixel across a geometry.
+     * The estimate assumes the texture covers the geometry once, increase
+     * this for tiled textures, decrease it to save memory.
+     * default is 1.
+     *
+     * @param texelDensityScale the scale
+     */
+    public void setTexelDensityScale(float texelDensityScale) {
+        this.texelDensityScale = texelDensityScale;
+    }
+
+    /**
+     * returns the number of texels wanted per screen pixel
+     *
+     * @return the scale
+     */
+    public float getTexelDensityScale() {
+        return texelDensityScale;
+    }
+
+    /**
+     * Sets the number of frames after which an image that wasn't drawn is
+     * reduced to its coarse levels.
+     * default is 300.
+     *
+     * @param evictionDelay the delay in frames
+     */
+    public void setEvictionDelay(int evictionDelay) {
+        this.evictionDelay = evictionDelay;
+    }
+
+    /**
+     * returns the number of frames after which an image that wasn't drawn
+     * is reduced to its coarse levels
+     *
+     * @return the delay in frames
+     */
+    public int getEvictionDelay() {
+        return evictionDelay;
+    }
+
+    /**
+     * returns the size in bytes of the levels the renderer keeps resident
+     * for the streamed images, as of the last update
+     *
+     * @return the resident size
+     */
+    public long getResidentSize() {
+        return residentSize;
+    }
+
+    /**
+     * returns the number of streamed images currently tracked
+     *
+     * @return the image count
+     */
+    public int getStreamedImageCount() {
+        return entryList.size();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.image;
+
+import com.jme3.texture.Format;
+import com.jme3.texture.Image;
+import com.jme3.util.BufferUtils;
+import com.jme3.util.DigestUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A disk cache of the images compressed by a {@link TextureCompressor}.
+ * <p>
+ * Entries are keyed by a hash of the pixels and dimensions of the source
+ * image, of the target format and of the quality, so that an edited texture
+ * is never replaced by a stale entry.
+ */
+public class CompressedImageCache {
+
+    private static final Logger logger = Logger.getLogger(CompressedImageCache.class.getName());
+    private static final int MAGIC = 0x4A434943; // JCIC
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".img";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File folder;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache storing its files in the given folder. The folder is
+     * created if it doesn't exist.
+     *
+     * @param folder the folder of the cache
+     */
+    public CompressedImageCache(File folder) {
+        this.folder = folder;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * Computes the cache key of a compressed image.
+     *
+     * @param source the image to compress
+     * @param format the compressed format
+     * @param quality the quality of the encoding
+     * @return the key
+     */
+    public String computeKey(Image source, Format format, TextureCompressor.Quality quality) {
+        MessageDigest digest = DigestUtil.createSha1();
+        digest.update((format.name() + "/" + quality.name() + "/" + source.getFormat().name()
+                + "/" + source.getWidth() + "x" + source.getHeight() + "x" + source.getDepth()).getBytes(UTF8));
+        int[] mipSizes = source.getMipMapSizes();
+        if (mipSizes != null) {
+            for (int size : mipSizes) {
+                digest.update((byte) (size >> 24));
+                digest.update((byte) (size >> 16));
+                digest.update((byte) (size >> 8));
+                digest.update((byte) size);
+            }
+        }
+        for (ByteBuffer data : source.getData()) {
+            digest.update((byte) 0);
+            ByteBuffer view = data.duplicate();
+            view.clear();
+            digest.update(view);
+        }
+        return DigestUtil.toHex(digest.digest());
+    }
+
+    /**
+     * Loads a compressed image.
+     *
+     * @param key the key of the image
+     * @return the image, or null if it is not in the cache
+     */
+    public Image load(String key) {
+        File file = new File(folder, key + EXTENSION);
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                misses.incrementAndGet();
+                return null;
+            }
+            Format format = Format.valueOf(in.readUTF());
+            String colorSpaceName = in.readUTF();
+            ColorSpace colorSpace = colorSpaceName.isEmpty() ? null : ColorSpace.valueOf(colorSpaceName);
+            int width = in.readInt();
+            int height = in.readInt();
+            int depth = in.readInt();
+            int[] mipSizes = null;
+            int levels = in.readInt();
+            int size = 0;
+            if (levels > 0) {
+                mipSizes = new int[levels];
+                for (int i = 0; i < levels; i++) {
+                    mipSizes[i] = in.readInt();
+                    size += mipSizes[i];
+                }
+            }
+            int slices = in.readInt();
+            if (levels == 0) {
+                size = in.readInt();
+            }
+            if (size <= 0 || (long) size * slices > file.length()) {
+                misses.incrementAndGet();
+                return null;
+            }
+            byte[] bytes = new byte[size];
+            ArrayList<ByteBuffer> data = new ArrayList<ByteBuffer>(slices);
+            for (int i = 0; i < slices; i++) {
+                in.readFully(bytes);
+                ByteBuffer buffer = BufferUtils.createByteBuffer(size);
+                buffer.put(bytes).flip();
+                data.add(buffer);
+            }
+            hits.incrementAndGet();
+            return new Image(format, width, height, depth, data, mipSizes, colorSpace);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to read compressed image " + file, ex);
+            misses.incrementAndGet();
+            return null;
+        } catch (IllegalArgumentException ex) {
+            logger.log(Level.WARNING, "Invalid compressed image " + file, ex);
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Stores a compressed image, replacing the previous one if any.
+     *
+     * @param key the key of the image
+     * @param image the compressed image
+     */
+    public void store(String key, Image image) {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            logger.log(Level.WARNING, "Cannot create the compressed image cache folder {0}", folder);
+            return;
+        }
+
+        //writing to a temporary file first so that a crash never leaves a truncated entry
+        File file = new File(folder, key + EXTENSION);
+        File tmpFile = new File(folder, key + "." + Thread.currentThread().getId() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(image.getFormat().name());
+            out.writeUTF(image.getColorSpace() != null ? image.getColorSpace().name() : "");
+            out.writeInt(image.getWidth());
+            out.writeInt(image.getHeight());
+            out.writeInt(image.getDepth());
+            int[] mipSizes = image.getMipMapSizes();
+            out.writeInt(mipSizes != null ? mipSizes.length : 0);
+            if (mipSizes != null) {
+                for (int size : mipSizes) {
+                    out.writeInt(size);
+                }
+            }
+            out.writeInt(image.getData().size());
+            if (mipSizes == null) {
+                out.writeInt(image.getData(0).capacity());
+            }
+            byte[] bytes = null;
+            for (ByteBuffer data : image.getData()) {
+                ByteBuffer view = data.duplicate();
+                view.clear();
+                if (bytes == null) {
+                    bytes = new byte[view.remaining()];
+                }
+                view.get(bytes);
+                out.write(bytes);
+            }
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete()) {
+                logger.log(Level.WARNING, "Cannot replace compressed image {0}", file);
+            } else if (!tmpFile.renameTo(file)) {
+                logger.log(Level.WARNING, "Cannot write compressed image {0}", file);
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to write compressed image " + file, ex);
+        } finally {
+            close(out);
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes all the images from the cache.
+     */
+    public void clear() {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(EXTENSION)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the number of images loaded from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of images that were not found in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+}
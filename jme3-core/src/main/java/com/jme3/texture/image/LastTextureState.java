@@ -51,6 +51,7 @@ public final class LastTextureState {
     public MinFilter minFilter;
     public int anisoFilter;
     public ShadowCompareMode shadowCompareMode;
+    public int baseLevel;
     
     public LastTextureState() {
         reset();
@@ -63,6 +64,7 @@ public final class LastTextureState {
         magFilter = null;
         minFilter = null;
         anisoFilter = 1;
+        baseLevel = 0;
         
         // The default in OpenGL is OFF, so we avoid setting this per texture
         // if its not used.
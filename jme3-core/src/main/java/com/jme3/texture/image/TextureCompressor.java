@@ -0,0 +1,804 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.image;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.texture.Format;
+import com.jme3.texture.Image;
+import com.jme3.util.BufferUtils;
+import com.jme3.util.ParallelTasks;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Compresses uncompressed images to a block compressed format at runtime:
+ * {@link Format#DXT1} (BC1), {@link Format#DXT5} (BC3), {@link Format#RGTC1}
+ * (BC4) and {@link Format#RGTC2} (BC5).
+ * <p>
+ * The image is split in tiles of block rows that are encoded in parallel on
+ * the executor of the compressor, the calling thread takes part in the work.
+ * All the slices and mip levels of the image are compressed, the result has
+ * the same dimensions and color space as the source.
+ * <p>
+ * RGTC1 stores the red (or luminance) channel of the source and RGTC2 its
+ * red and green channels, the other formats store the color and DXT5 the
+ * alpha channel as well.
+ * <p>
+ * If a {@link CompressedImageCache} is set, the results are stored on disk,
+ * keyed by the content of the source image, and loaded back instead of
+ * being compressed again.
+ */
+public class TextureCompressor {
+
+    /**
+     * The trade off between the speed of the encoder and the quality of the
+     * result.
+     */
+    public enum Quality {
+
+        /**
+         * Uses the bounding box of the colors of each block, suited to
+         * images generated every frame or at load time.
+         */
+        Fast,
+        /**
+         * Uses the principal axis of the colors of each block, refined by
+         * least squares, and tries both interpolation modes of the alpha
+         * blocks. About 4 times slower than {@link #Fast}.
+         */
+        High
+    }
+
+    /**
+     * The number of block rows encoded by a task.
+     */
+    private static final int TILE_ROWS = 8;
+
+    private Executor executor;
+    private CompressedImageCache cache;
+
+    /**
+     * Creates a compressor running on a shared pool of daemon threads, one
+     * per available processor.
+     */
+    public TextureCompressor() {
+        this(ParallelTasks.getSharedExecutor());
+    }
+
+    /**
+     * Creates a compressor running on the given executor.
+     *
+     * @param executor the executor, or null to compress on the calling
+     * thread only
+     */
+    public TextureCompressor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the disk cache of the compressed images.
+     *
+     * @param cache the cache, or null to always compress
+     */
+    public void setCache(CompressedImageCache cache) {
+        this.cache = cache;
+    }
+
+    public CompressedImageCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param format a format
+     * @return true if images can be compressed to the format
+     */
+    public static boolean isSupported(Format format) {
+        switch (format) {
+            case DXT1:
+            case DXT5:
+            case RGTC1:
+            case RGTC2:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param image an image
+     * @return true if the format of the image can be read by the compressor
+     */
+    public static boolean canCompress(Image image) {
+        Format format = image.getFormat();
+        if (format.isCompressed() || format.isDepthFormat() || image.getData().isEmpty()) {
+            return false;
+        }
+        if (Layout.of(format) != null) {
+            return true;
+        }
+        try {
+            ImageCodec.lookup(format);
+            return true;
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Compresses an image, or loads the result from the cache.
+     *
+     * @param source the image to compress
+     * @param format the compressed format
+     * @param quality the quality of the encoding
+     * @return a new image with the compressed data
+     * @throws IllegalArgumentException if the format isn't supported or the
+     * image can't be read
+     */
+    public Image compress(Image source, Format format, Quality quality) {
+        if (!isSupported(format)) {
+            throw new IllegalArgumentException("Cannot compress to " + format);
+        }
+        if (!canCompress(source)) {
+            throw new IllegalArgumentException("Cannot compress an image of format " + source.getFormat());
+        }
+
+        String key = null;
+        if (cache != null) {
+            key = cache.computeKey(source, format, quality);
+            Image cached = cache.load(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Image result = encode(source, format, quality);
+
+        if (cache != null) {
+            cache.store(key, result);
+        }
+        return result;
+    }
+
+    private Image encode(Image source, Format format, Quality quality) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int bpp = source.getFormat().getBitsPerPixel();
+        int[] sourceMipSizes = source.getMipMapSizes();
+        int levels = sourceMipSizes != null ? sourceMipSizes.length : 1;
+        int blockSize = format == Format.DXT1 || format == Format.RGTC1 ? 8 : 16;
+
+        int[] mipSizes = new int[levels];
+        int[] mipOffsets = new int[levels];
+        int[] sourceOffsets = new int[levels];
+        int size = 0;
+        int sourceOffset = 0;
+        for (int level = 0; level < levels; level++) {
+            int w = Math.max(1, width >> level);
+            int h = Math.max(1, height >> level);
+            mipOffsets[level] = size;
+            mipSizes[level] = ((w + 3) / 4) * ((h + 3) / 4) * blockSize;
+            size += mipSizes[level];
+            sourceOffsets[level] = sourceOffset;
+            sourceOffset += sourceMipSizes != null ? sourceMipSizes[level] : w * h * bpp / 8;
+        }
+
+        int slices = source.getData().size();
+        ArrayList<ByteBuffer> data = new ArrayList<ByteBuffer>(slices);
+        List<Tile> tiles = new ArrayList<Tile>();
+        for (int slice = 0; slice < slices; slice++) {
+            ByteBuffer dest = BufferUtils.createByteBuffer(size);
+            data.add(dest);
+            for (int level = 0; level < levels; level++) {
+                int blocksY = (Math.max(1, height >> level) + 3) / 4;
+                for (int row = 0; row < blocksY; row += TILE_ROWS) {
+                    tiles.add(new Tile(source, slice, level, sourceOffsets[level], dest, mipOffsets[level],
+                            row, Math.min(blocksY, row + TILE_ROWS)));
+                }
+            }
+        }
+
+        run(tiles, format, quality);
+
+        // RGTC stores data like normals or masks, never colors to linearize
+        boolean rgtc = format == Format.RGTC1 || format == Format.RGTC2;
+        return new Image(format, width, height, source.getDepth(), data,
+                sourceMipSizes != null ? mipSizes : null, rgtc ? ColorSpace.Linear : source.getColorSpace());
+    }
+
+    private void run(List<Tile> tiles, final Format format, final Quality quality) {
+        List<Runnable> tasks = new ArrayList<Runnable>(tiles.size());
+        for (final Tile tile : tiles) {
+            tasks.add(new Runnable() {
+                public void run() {
+                    tile.encode(new Encoder(format, quality == Quality.High));
+                }
+            });
+        }
+        //the calling thread works too, so the compression completes even
+        //when the executor is busy
+        ParallelTasks.runAll(tasks, executor);
+    }
+
+    /**
+     * The byte offsets of the channels of common uncompressed formats,
+     * read directly instead of through an {@link ImageRaster}.
+     */
+    private static final class Layout {
+
+        final int bpp, r, g, b, a;
+
+        Layout(int bpp, int r, int g, int b, int a) {
+            this.bpp = bpp;
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.a = a;
+        }
+
+        static Layout of(Format format) {
+            switch (format) {
+                case RGBA8:
+                    return new Layout(4, 0, 1, 2, 3);
+                case BGRA8:
+                    return new Layout(4, 2, 1, 0, 3);
+                case ABGR8:
+                    return new Layout(4, 3, 2, 1, 0);
+                case ARGB8:
+                    return new Layout(4, 1, 2, 3, 0);
+                case RGB8:
+                    return new Layout(3, 0, 1, 2, -1);
+                case BGR8:
+                    return new Layout(3, 2, 1, 0, -1);
+                case Luminance8:
+                    return new Layout(1, 0, 0, 0, -1);
+                case Luminance8Alpha8:
+                    return new Layout(2, 0, 0, 0, 1);
+                case Alpha8:
+                    return new Layout(1, -1, -1, -1, 0);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * A range of block rows of a mip level.
+     */
+    private static final class Tile {
+
+        final Image source;
+        final int slice, level, sourceOffset;
+        final ByteBuffer dest;
+        final int destOffset, firstRow, lastRow;
+
+        Tile(Image source, int slice, int level, int sourceOffset, ByteBuffer dest, int destOffset,
+                int firstRow, int lastRow) {
+            this.source = source;
+            this.slice = slice;
+            this.level = level;
+            this.sourceOffset = sourceOffset;
+            this.dest = dest;
+            this.destOffset = destOffset;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+        }
+
+        void encode(Encoder encoder) {
+            int width = Math.max(1, source.getWidth() >> level);
+            int height = Math.max(1, source.getHeight() >> level);
+            int blocksX = (width + 3) / 4;
+            Layout layout = Layout.of(source.getFormat());
+            ByteBuffer data = source.getData(slice);
+            ImageRaster raster = layout == null ? ImageRaster.create(source, slice, level, false) : null;
+            ColorRGBA color = new ColorRGBA();
+            int[] block = encoder.block;
+
+            ByteBuffer out = dest.duplicate();
+            out.position(destOffset + firstRow * blocksX * encoder.blockSize);
+            for (int by = firstRow; by < lastRow; by++) {
+                for (int bx = 0; bx < blocksX; bx++) {
+                    //texels outside of the image repeat the last row and column
+                    for (int i = 0; i < 16; i++) {
+                        int x = Math.min(bx * 4 + (i & 3), width - 1);
+                        int y = Math.min(by * 4 + (i >> 2), height - 1);
+                        if (layout != null) {
+                            int index = sourceOffset + (y * width + x) * layout.bpp;
+                            block[i * 4] = layout.r < 0 ? 0 : data.get(index + layout.r) & 0xFF;
+                            block[i * 4 + 1] = layout.g < 0 ? 0 : data.get(index + layout.g) & 0xFF;
+                            block[i * 4 + 2] = layout.b < 0 ? 0 : data.get(index + layout.b) & 0xFF;
+                            block[i * 4 + 3] = layout.a < 0 ? 255 : data.get(index + layout.a) & 0xFF;
+                        } else {
+                            raster.getPixel(x, y, color);
+                            block[i * 4] = toByte(color.r);
+                            block[i * 4 + 1] = toByte(color.g);
+                            block[i * 4 + 2] = toByte(color.b);
+                            block[i * 4 + 3] = toByte(color.a);
+                        }
+                    }
+                    encoder.encode(out);
+                }
+            }
+        }
+
+        private static int toByte(float value) {
+            return Math.max(0, Math.min(255, (int) (value * 255f + 0.5f)));
+        }
+    }
+
+    /**
+     * Encodes blocks of 4x4 texels, one instance per thread.
+     */
+    private static final class Encoder {
+
+        final Format format;
+        final boolean high;
+        final int blockSize;
+        /**
+         * The RGBA values of the 16 texels of the block, in row order.
+         */
+        final int[] block = new int[64];
+        private final byte[] bytes = new byte[16];
+        private final int[] values = new int[16];
+        private final int[] indices = new int[16];
+        private final int[] bestIndices = new int[16];
+        private final int[] palette = new int[12];
+        private final int[] endpoints = new int[2];
+
+        Encoder(Format format, boolean high) {
+            this.format = format;
+            this.high = high;
+            this.blockSize = format == Format.DXT1 || format == Format.RGTC1 ? 8 : 16;
+        }
+
+        void encode(ByteBuffer out) {
+            switch (format) {
+                case DXT1:
+                    encodeColor(0);
+                    break;
+                case DXT5:
+                    encodeChannel(3, 0);
+                    encodeColor(8);
+                    break;
+                case RGTC1:
+                    encodeChannel(0, 0);
+                    break;
+                case RGTC2:
+                    encodeChannel(0, 0);
+                    encodeChannel(1, 8);
+                    break;
+                default:
+                    throw new UnsupportedOperationException();
+            }
+            out.put(bytes, 0, blockSize);
+        }
+
+        // == single channel blocks (BC4, and the alpha of BC3) ==
+
+        private void encodeChannel(int channel, int offset) {
+            int min = 255;
+            int max = 0;
+            for (int i = 0; i < 16; i++) {
+                int v = block[i * 4 + channel];
+                values[i] = v;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+
+            if (min == max) {
+                writeChannel(offset, max, min, null);
+                return;
+            }
+
+            //8 interpolated values between max and min
+            int e0 = max;
+            int e1 = min;
+            int best = fitChannel(e0, e1, indices);
+            System.arraycopy(indices, 0, bestIndices, 0, 16);
+
+            if (high) {
+                //refines the endpoints by least squares on the chosen indices
+                if (refineChannel(indices)) {
+                    int r0 = endpoints[0];
+                    int r1 = endpoints[1];
+                    if (r0 != r1) {
+                        if (r0 < r1) {
+                            r0 = endpoints[1];
+                            r1 = endpoints[0];
+                        }
+                        int error = fitChannel(r0, r1, indices);
+                        if (error < best) {
+                            best = error;
+                            e0 = r0;
+                            e1 = r1;
+                            System.arraycopy(indices, 0, bestIndices, 0, 16);
+                        }
+                    }
+                }
+
+                //6 interpolated values plus exact 0 and 255, better when
+                //the block mixes extremes with a narrow range
+                int innerMin = 255;
+                int innerMax = 0;
+                for (int i = 0; i < 16; i++) {
+                    int v = values[i];
+                    if (v != 0 && v != 255) {
+                        innerMin = Math.min(innerMin, v);
+                        innerMax = Math.max(innerMax, v);
+                    }
+                }
+                if (innerMin <= innerMax && (min == 0 || max == 255)) {
+                    int error = fitChannel(innerMin, innerMax, indices);
+                    if (error < best) {
+                        e0 = innerMin;
+                        e1 = innerMax;
+                        System.arraycopy(indices, 0, bestIndices, 0, 16);
+                    }
+                }
+            }
+            writeChannel(offset, e0, e1, bestIndices);
+        }
+
+        /**
+         * Builds the palette of a channel block and picks the nearest entry
+         * for each texel.
+         *
+         * @return the squared error of the block
+         */
+        private int fitChannel(int e0, int e1, int[] store) {
+            int[] p = palette;
+            p[0] = e0;
+            p[1] = e1;
+            if (e0 > e1) {
+                for (int i = 1; i < 7; i++) {
+                    p[i + 1] = ((7 - i) * e0 + i * e1 + 3) / 7;
+                }
+            } else {
+                for (int i = 1; i < 5; i++) {
+                    p[i + 1] = ((5 - i) * e0 + i * e1 + 2) / 5;
+                }
+                p[6] = 0;
+                p[7] = 255;
+            }
+            int error = 0;
+            for (int i = 0; i < 16; i++) {
+                int v = values[i];
+                int bestIndex = 0;
+                int bestError = Integer.MAX_VALUE;
+                for (int j = 0; j < 8; j++) {
+                    int d = v - p[j];
+                    d *= d;
+                    if (d < bestError) {
+                        bestError = d;
+                        bestIndex = j;
+                    }
+                }
+                store[i] = bestIndex;
+                error += bestError;
+            }
+            return error;
+        }
+
+        private boolean refineChannel(int[] idx) {
+            float aa = 0, ab = 0, bb = 0, ax = 0, bx = 0;
+            for (int i = 0; i < 16; i++) {
+                //weight of the first endpoint for the 8 value mode
+                float w;
+                switch (idx[i]) {
+                    case 0:
+                        w = 1f;
+                        break;
+                    case 1:
+                        w = 0f;
+                        break;
+                    default:
+                        w = (8 - idx[i]) / 7f;
+                        break;
+                }
+                float v = 1f - w;
+                aa += w * w;
+                ab += w * v;
+                bb += v * v;
+                ax += w * values[i];
+                bx += v * values[i];
+            }
+            float det = aa * bb - ab * ab;
+            if (Math.abs(det) < 1e-6f) {
+                return false;
+            }
+            endpoints[0] = clamp(Math.round((ax * bb - bx * ab) / det));
+            endpoints[1] = clamp(Math.round((bx * aa - ax * ab) / det));
+            return true;
+        }
+
+        private void writeChannel(int offset, int e0, int e1, int[] idx) {
+            bytes[offset] = (byte) e0;
+            bytes[offset + 1] = (byte) e1;
+            long bits = 0;
+            if (idx != null) {
+                for (int i = 0; i < 16; i++) {
+                    bits |= ((long) idx[i]) << (i * 3);
+                }
+            }
+            for (int i = 0; i < 6; i++) {
+                bytes[offset + 2 + i] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+        // == color blocks (BC1, and the color of BC3) ==
+
+        private void encodeColor(int offset) {
+            int minR = 255, minG = 255, minB = 255;
+            int maxR = 0, maxG = 0, maxB = 0;
+            for (int i = 0; i < 16; i++) {
+                int r = block[i * 4], g = block[i * 4 + 1], b = block[i * 4 + 2];
+                minR = Math.min(minR, r);
+                minG = Math.min(minG, g);
+                minB = Math.min(minB, b);
+                maxR = Math.max(maxR, r);
+                maxG = Math.max(maxG, g);
+                maxB = Math.max(maxB, b);
+            }
+
+            //insets the bounding box by 1/16 of its size, the extremes
+            //are then closer to the interpolated colors
+            int insetR = (maxR - minR) >> 4;
+            int insetG = (maxG - minG) >> 4;
+            int insetB = (maxB - minB) >> 4;
+            int c0 = to565(maxR - insetR, maxG - insetG, maxB - insetB);
+            int c1 = to565(minR + insetR, minG + insetG, minB + insetB);
+            int best = fitColor(c0, c1, bestIndices);
+
+            if (high && best > 0) {
+                principalEndpoints(minR, minG, minB, maxR, maxG, maxB);
+                int error = fitColor(endpoints[0], endpoints[1], indices);
+                if (error < best) {
+                    best = error;
+                    c0 = endpoints[0];
+                    c1 = endpoints[1];
+                    System.arraycopy(indices, 0, bestIndices, 0, 16);
+                }
+                for (int iteration = 0; iteration < 2 && best > 0; iteration++) {
+                    if (!refineColor(bestIndices)) {
+                        break;
+                    }
+                    error = fitColor(endpoints[0], endpoints[1], indices);
+                    if (error >= best) {
+                        break;
+                    }
+                    best = error;
+                    c0 = endpoints[0];
+                    c1 = endpoints[1];
+                    System.arraycopy(indices, 0, bestIndices, 0, 16);
+                }
+            }
+            writeColor(offset, c0, c1, bestIndices);
+        }
+
+        /**
+         * Finds the texels at the extremes of the principal axis of the
+         * colors of the block.
+         */
+        private void principalEndpoints(int minR, int minG, int minB, int maxR, int maxG, int maxB) {
+            float meanR = 0, meanG = 0, meanB = 0;
+            for (int i = 0; i < 16; i++) {
+                meanR += block[i * 4];
+                meanG += block[i * 4 + 1];
+                meanB += block[i * 4 + 2];
+            }
+            meanR /= 16f;
+            meanG /= 16f;
+            meanB /= 16f;
+
+            float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+            for (int i = 0; i < 16; i++) {
+                float r = block[i * 4] - meanR;
+                float g = block[i * 4 + 1] - meanG;
+                float b = block[i * 4 + 2] - meanB;
+                rr += r * r;
+                rg += r * g;
+                rb += r * b;
+                gg += g * g;
+                gb += g * b;
+                bb += b * b;
+            }
+
+            //power iteration, starting from the diagonal of the bounding box
+            float axisR = maxR - minR;
+            float axisG = maxG - minG;
+            float axisB = maxB - minB;
+            for (int i = 0; i < 8; i++) {
+                float r = rr * axisR + rg * axisG + rb * axisB;
+                float g = rg * axisR + gg * axisG + gb * axisB;
+                float b = rb * axisR + gb * axisG + bb * axisB;
+                float length = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+                if (length < 1e-6f) {
+                    break;
+                }
+                axisR = r / length;
+                axisG = g / length;
+                axisB = b / length;
+            }
+
+            int minIndex = 0, maxIndex = 0;
+            float minDot = Float.MAX_VALUE, maxDot = -Float.MAX_VALUE;
+            for (int i = 0; i < 16; i++) {
+                float dot = block[i * 4] * axisR + block[i * 4 + 1] * axisG + block[i * 4 + 2] * axisB;
+                if (dot < minDot) {
+                    minDot = dot;
+                    minIndex = i;
+                }
+                if (dot > maxDot) {
+                    maxDot = dot;
+                    maxIndex = i;
+                }
+            }
+            endpoints[0] = to565(block[maxIndex * 4], block[maxIndex * 4 + 1], block[maxIndex * 4 + 2]);
+            endpoints[1] = to565(block[minIndex * 4], block[minIndex * 4 + 1], block[minIndex * 4 + 2]);
+        }
+
+        /**
+         * Builds the 4 color palette of the endpoints and picks the nearest
+         * entry for each texel.
+         *
+         * @return the squared error of the block
+         */
+        private int fitColor(int c0, int c1, int[] store) {
+            int[] p = palette;
+            p[0] = expand5(c0 >> 11);
+            p[1] = expand6((c0 >> 5) & 0x3F);
+            p[2] = expand5(c0 & 0x1F);
+            p[3] = expand5(c1 >> 11);
+            p[4] = expand6((c1 >> 5) & 0x3F);
+            p[5] = expand5(c1 & 0x1F);
+            for (int c = 0; c < 3; c++) {
+                p[6 + c] = (2 * p[c] + p[3 + c] + 1) / 3;
+                p[9 + c] = (p[c] + 2 * p[3 + c] + 1) / 3;
+            }
+            int error = 0;
+            for (int i = 0; i < 16; i++) {
+                int r = block[i * 4], g = block[i * 4 + 1], b = block[i * 4 + 2];
+                int bestIndex = 0;
+                int bestError = Integer.MAX_VALUE;
+                for (int j = 0; j < 4; j++) {
+                    int dr = r - p[j * 3];
+                    int dg = g - p[j * 3 + 1];
+                    int db = b - p[j * 3 + 2];
+                    int d = dr * dr + dg * dg + db * db;
+                    if (d < bestError) {
+                        bestError = d;
+                        bestIndex = j;
+                    }
+                }
+                //palette entries are ordered c0, c1, 2/3 c0, 1/3 c0
+                store[i] = bestIndex;
+                error += bestError;
+            }
+            return error;
+        }
+
+        private boolean refineColor(int[] idx) {
+            float aa = 0, ab = 0, bb = 0;
+            float axR = 0, axG = 0, axB = 0, bxR = 0, bxG = 0, bxB = 0;
+            for (int i = 0; i < 16; i++) {
+                float w;
+                switch (idx[i]) {
+                    case 0:
+                        w = 1f;
+                        break;
+                    case 1:
+                        w = 0f;
+                        break;
+                    case 2:
+                        w = 2f / 3f;
+                        break;
+                    default:
+                        w = 1f / 3f;
+                        break;
+                }
+                float v = 1f - w;
+                aa += w * w;
+                ab += w * v;
+                bb += v * v;
+                axR += w * block[i * 4];
+                axG += w * block[i * 4 + 1];
+                axB += w * block[i * 4 + 2];
+                bxR += v * block[i * 4];
+                bxG += v * block[i * 4 + 1];
+                bxB += v * block[i * 4 + 2];
+            }
+            float det = aa * bb - ab * ab;
+            if (Math.abs(det) < 1e-6f) {
+                return false;
+            }
+            float invDet = 1f / det;
+            endpoints[0] = to565(clamp(Math.round((axR * bb - bxR * ab) * invDet)),
+                    clamp(Math.round((axG * bb - bxG * ab) * invDet)),
+                    clamp(Math.round((axB * bb - bxB * ab) * invDet)));
+            endpoints[1] = to565(clamp(Math.round((bxR * aa - axR * ab) * invDet)),
+                    clamp(Math.round((bxG * aa - axG * ab) * invDet)),
+                    clamp(Math.round((bxB * aa - axB * ab) * invDet)));
+            return true;
+        }
+
+        private void writeColor(int offset, int c0, int c1, int[] idx) {
+            int swap = 0;
+            if (c0 < c1) {
+                //the 4 color mode requires c0 > c1, swapping the endpoints
+                //swaps the indices 0 and 1, and 2 and 3
+                int tmp = c0;
+                c0 = c1;
+                c1 = tmp;
+                swap = 1;
+            }
+            bytes[offset] = (byte) c0;
+            bytes[offset + 1] = (byte) (c0 >> 8);
+            bytes[offset + 2] = (byte) c1;
+            bytes[offset + 3] = (byte) (c1 >> 8);
+            int bits = 0;
+            if (c0 != c1) {
+                for (int i = 0; i < 16; i++) {
+                    bits |= (idx[i] ^ swap) << (i * 2);
+                }
+            }
+            bytes[offset + 4] = (byte) bits;
+            bytes[offset + 5] = (byte) (bits >> 8);
+            bytes[offset + 6] = (byte) (bits >> 16);
+            bytes[offset + 7] = (byte) (bits >> 24);
+        }
+
+        private static int to565(int r, int g, int b) {
+            return ((r * 31 + 127) / 255) << 11 | ((g * 63 + 127) / 255) << 5 | ((b * 31 + 127) / 255);
+        }
+
+        private static int expand5(int v) {
+            return (v << 3) | (v >> 2);
+        }
+
+        private static int expand6(int v) {
+            return (v << 2) | (v >> 4);
+        }
+
+        private static int clamp(int v) {
+            return Math.max(0, Math.min(255, v));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.util;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs CPU bound work, like texture compression, asset decoding or scene
+ * optimization, in parallel on a pool of daemon threads shared by the
+ * whole engine.
+ */
+public final class ParallelTasks {
+
+    private static final ExecutorService sharedExecutor =
+            newDaemonThreadPool("jME3 Worker", Runtime.getRuntime().availableProcessors());
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Returns the pool shared by the engine, one daemon thread per
+     * available processor. The threads are only started once tasks are
+     * submitted to it.
+     *
+     * @return the shared executor
+     */
+    public static ExecutorService getSharedExecutor() {
+        return sharedExecutor;
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads, for work that must not hold
+     * up the shared pool, like blocking reads.
+     *
+     * @param name the prefix of the names of the threads
+     * @param threads the number of threads
+     * @return the new executor
+     */
+    public static ExecutorService newDaemonThreadPool(final String name, int threads) {
+        final AtomicInteger threadId = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + threadId.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Runs the tasks on the executor and waits for all of them. The tasks
+     * are claimed in order by the calling thread and by up to one helper per
+     * other available processor, so the tasks complete even when the
+     * executor is busy and the caller never waits for a task that hasn't
+     * started. An interrupt while waiting doesn't stop the wait, the
+     * interrupt status is restored once all the tasks are done. Once a task
+     * failed, the tasks not started yet are skipped.
+     *
+     * @param tasks the tasks to run
+     * @param executor the executor, or null to run all the tasks on the
+     * calling thread
+     * @throws RuntimeException the first failure of a task
+     * @throws Error the first failure of a task
+     */
+    public static void runAll(final List<? extends Runnable> tasks, Executor executor) {
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(tasks.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Runnable worker = new Runnable() {
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < tasks.size()) {
+                    try {
+                        if (failure.get() == null) {
+                            tasks.get(index).run();
+                        }
+                    } catch (RuntimeException ex) {
+                        failure.compareAndSet(null, ex);
+                    } catch (Error ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        if (executor != null) {
+            int helpers = Math.min(tasks.size() - 1, Runtime.getRuntime().availableProcessors() - 1);
+            try {
+                for (int i = 0; i < helpers; i++) {
+                    executor.execute(worker);
+                }
+            } catch (RejectedExecutionException ex) {
+                // the calling thread runs the remaining tasks
+            }
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error != null) {
+            throw (Error) error;
+        }
+    }
+}
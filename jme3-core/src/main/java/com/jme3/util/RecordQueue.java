@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock free queue of preallocated records, accepting several
+ * producers and a single consumer (D. Vyukov's bounded queue).
+ * <p>
+ * A producer claims a record, fills it and then publishes it, so nothing is
+ * allocated per message. The consumer reads the published records in order,
+ * either one at a time with {@link #peek() } or by batches with
+ * {@link #published() } and {@link #get(int) }, and releases them to the
+ * producers once it's done with them.
+ *
+ * @param <R> the type of the records
+ */
+public class RecordQueue<R extends RecordQueue.Record> {
+
+    /**
+     * A preallocated message of the queue.
+     */
+    public static abstract class Record {
+
+        long position;
+
+        /**
+         * Called when the record is released, to drop the references it
+         * holds.
+         */
+        protected void clear() {
+        }
+    }
+
+    private final R[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final int mask;
+    private long head;
+
+    /**
+     * Creates a queue over the given records.
+     *
+     * @param records the records, a power of two of distinct instances
+     */
+    public RecordQueue(R[] records) {
+        int capacity = records.length;
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        slots = records;
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Claims a record to fill, may be called from any thread.
+     *
+     * @return a record to fill and publish, or null if the queue is full
+     */
+    public R claim() {
+        return claim(0);
+    }
+
+    /**
+     * Claims a record to fill only if some records stay free for other
+     * producers, may be called from any thread.
+     *
+     * @param reserve the number of records that must stay free, less than
+     * the capacity
+     * @return a record to fill and publish, or null if fewer than reserve
+     * records would stay free
+     */
+    public R claim(int reserve) {
+        while (true) {
+            long pos = tail.get();
+            // records are released in order, if this one is free the ones
+            // before it are too
+            if (reserve > 0 && sequences.get((int) (pos + reserve) & mask) < pos + reserve) {
+                return null;
+            }
+            int index = (int) pos & mask;
+            long seq = sequences.get(index);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    R record = slots[index];
+                    record.position = pos;
+                    return record;
+                }
+            } else if (seq < pos) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Hands a filled record to the consumer.
+     *
+     * @param record a record returned by {@link #claim() }
+     */
+    public void publish(R record) {
+        sequences.set((int) record.position & mask, record.position + 1);
+    }
+
+    /**
+     * Returns the oldest record if it is published. Consumer only.
+     *
+     * @return the oldest record, or null if there is none or it's still
+     * being filled
+     */
+    public R peek() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        return slots[index];
+    }
+
+    /**
+     * Counts the records published in order since the last release.
+     * Records published after the first one still being filled are left for
+     * the next call. Consumer only.
+     *
+     * @return the number of records that can be read with {@link #get(int) }
+     */
+    public int published() {
+        int count = 0;
+        while (count < slots.length) {
+            long pos = head + count;
+            if (sequences.get((int) pos & mask) != pos + 1) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @param index the index of a published record, from the oldest
+     * @return the record
+     */
+    public R get(int index) {
+        return slots[(int) (head + index) & mask];
+    }
+
+    /**
+     * Releases the oldest record to the producers. Consumer only.
+     */
+    public void release() {
+        release(1);
+    }
+
+    /**
+     * Releases the oldest records to the producers. Consumer only.
+     *
+     * @param count the number of records to release
+     */
+    public void release(int count) {
+        for (int i = 0; i < count; i++) {
+            int index = (int) head & mask;
+            slots[index].clear();
+            sequences.set(index, head + slots.length);
+            head++;
+        }
+    }
+}
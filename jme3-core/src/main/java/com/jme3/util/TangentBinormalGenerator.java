@@ -50,63 +50,56 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * 
+ * Generates the tangents of a mesh from its positions, normals and texture
+ * coordinates.
+ * The mesh data is read once into primitive arrays and the tangent spaces of
+ * the triangles and of the vertices are computed in ranges, that can be run
+ * in parallel by an ExecutorService for large meshes.
+ *
  * @author Lex (Aleksey Nikiforov)
   */
 public class TangentBinormalGenerator {
-    
+
     private static final float ZERO_TOLERANCE = 0.0000001f;
     private static final Logger log = Logger.getLogger(
             TangentBinormalGenerator.class.getName());
     private static float toleranceDot;
     public static boolean debug = false;
-    
+    /**
+     * number of triangles or vertices processed by a task
+     */
+    private static final int TASK_SIZE = 8192;
+    /**
+     * meshes with more vertices are split in ranges by generateParallel
+     */
+    private static final int PARALLEL_VERTICES = 4 * TASK_SIZE;
+    /**
+     * tolerance used to identify the vertices sharing a tangent space
+     */
+    private static final float LINK_TOLERANCE = 1E-4f;
+
     static {
         setToleranceAngle(45);
     }
 
-    
-    private static class VertexInfo {
-        public final Vector3f position;
-        public final Vector3f normal;
-        public final Vector2f texCoord;
-        public final ArrayList<Integer> indices = new ArrayList<Integer>();
-        
-        public VertexInfo(Vector3f position, Vector3f normal, Vector2f texCoord) {
-            this.position = position;
-            this.normal = normal;
-            this.texCoord = texCoord;
-        }
-    }
-    
-    /** Collects all the triangle data for one vertex.
-     */
-    private static class VertexData {
-        public final ArrayList<TriangleData> triangles = new ArrayList<TriangleData>();
-        
-        public VertexData() { }
-    }
-    
     /** Keeps track of tangent, binormal, and normal for one triangle.
      */
     public static class TriangleData {
         public final Vector3f tangent;
         public final Vector3f binormal;
-        public final Vector3f normal;        
+        public final Vector3f normal;
         public int[] index = new int[3];
         public int triangleOffset;
-        
+
         public TriangleData(Vector3f tangent, Vector3f binormal, Vector3f normal) {
             this.tangent = tangent;
             this.binormal = binormal;
@@ -118,19 +111,54 @@ public class TangentBinormalGenerator {
             }
         }
     }
-    
-    private static List<VertexData> initVertexData(int size) {
-        List<VertexData> vertices = new ArrayList<VertexData>(size);        
-        for (int i = 0; i < size; i++) {
-            vertices.add(new VertexData());
-        }
-        return vertices;
+
+    /**
+     * A task processing a range of triangles or vertices.
+     */
+    private static abstract class RangeTask {
+
+        abstract void run(int start, int end);
     }
-    
+
+    /**
+     * The mesh data as primitive arrays, the tangent spaces of the triangles,
+     * the triangles of each vertex and the groups of vertices sharing a
+     * tangent space.
+     */
+    private static class TangentData {
+
+        float[] positions;
+        float[] normals;
+        float[] texCoords;
+        int vertexCount;
+        /**
+         * 3 vertex indices per triangle
+         */
+        int[] triangles;
+        int triangleCount;
+        float[] triTangents;
+        float[] triBinormals;
+        float[] triNormals;
+        /**
+         * the triangles of vertex v are vertexTriangles[vertexTriangleStart[v]]
+         * to vertexTriangles[vertexTriangleStart[v + 1] - 1]
+         */
+        int[] vertexTriangleStart;
+        int[] vertexTriangles;
+        /**
+         * the vertices of group g are groupVertices[groupStart[g]] to
+         * groupVertices[groupStart[g + 1] - 1], in increasing order
+         */
+        int[] groupStart;
+        int[] groupVertices;
+        int groupCount;
+        float[] tangents;
+    }
+
     public static void generate(Mesh mesh) {
         generate(mesh, true, false);
     }
-    
+
     public static void generate(Spatial scene, boolean splitMirrored) {
         if (scene instanceof Node) {
             Node node = (Node) scene;
@@ -140,21 +168,31 @@ public class TangentBinormalGenerator {
         } else {
             Geometry geom = (Geometry) scene;
             Mesh mesh = geom.getMesh();
-            
+
             // Check to ensure mesh has texcoords and normals before generating
-            if (mesh.getBuffer(Type.TexCoord) != null 
+            if (mesh.getBuffer(Type.TexCoord) != null
              && mesh.getBuffer(Type.Normal) != null){
                 generate(geom.getMesh(),true, splitMirrored);
             }
         }
     }
-    
+
     public static void generate(Spatial scene) {
         generate(scene, false);
     }
-    
+
+    /**
+     * Generates the tangents of all the meshes of the scene using the given
+     * executor. Small meshes are processed in parallel, one per task, the
+     * large ones are then processed one after the other, each split in
+     * ranges of triangles and vertices. The first failure of a task is
+     * rethrown once the running tasks are done.
+     *
+     * @param scene the scene to generate the tangents of.
+     * @param executor the executor running the tasks.
+     */
     public static void generateParallel(Spatial scene, ExecutorService executor) {
-        final Set<Mesh> meshes = new HashSet<Mesh>();
+        final Set<Mesh> meshes = new LinkedHashSet<Mesh>();
         scene.breadthFirstTraversal(new SceneGraphVisitor() {
             @Override
             public void visit(Spatial spatial) {
@@ -170,212 +208,402 @@ public class TangentBinormalGenerator {
                 }
             }
         });
-        List<Future<?>> futures = new ArrayList<Future<?>>();
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        List<Mesh> largeMeshes = new ArrayList<Mesh>();
         for (final Mesh m : meshes) {
-            futures.add(executor.submit(new Runnable() {
+            if (m.getVertexCount() > PARALLEL_VERTICES) {
+                largeMeshes.add(m);
+                continue;
+            }
+            tasks.add(new Runnable() {
                 @Override
                 public void run() {
                     generate(m, true, false);
                 }
-            }));
+            });
         }
-        for (Future<?> f : futures) {
-            try {
-                f.get();
-            } catch (Exception exc) {
-                log.log(Level.WARNING, "Error while computing tangents", exc);
-            }
+        ParallelTasks.runAll(tasks, executor);
+        for (Mesh m : largeMeshes) {
+            generate(m, true, false, executor);
         }
+    }
 
-    }    
-    
-    
-    
-    public static void generate(Mesh mesh, boolean approxTangents, boolean splitMirrored) {        
-        int[] index = new int[3];
-        Vector3f[] v = new Vector3f[3];
-        Vector2f[] t = new Vector2f[3];
-        for (int i = 0; i < 3; i++) {
-            v[i] = new Vector3f();
-            t[i] = new Vector2f();
-        }
-        
+
+
+    public static void generate(Mesh mesh, boolean approxTangents, boolean splitMirrored) {
+        generate(mesh, approxTangents, splitMirrored, null);
+    }
+
+    /**
+     * Generates the tangents of a mesh, splitting the work in ranges of
+     * triangles and vertices run by the given executor.
+     *
+     * @param mesh the mesh to generate the tangents of.
+     * @param approxTangents true to orthogonalize the tangents with the normals.
+     * @param splitMirrored true to split the vertices shared by triangles
+     * with opposite tangent space orientations.
+     * @param executor the executor running the ranges, null to process the
+     * whole mesh on the calling thread.
+     */
+    public static void generate(Mesh mesh, boolean approxTangents, boolean splitMirrored, ExecutorService executor) {
         if (mesh.getBuffer(Type.Normal) == null) {
             throw new IllegalArgumentException("The given mesh has no normal data!");
         }
-        
-         List<VertexData> vertices;
+        if (mesh.getBuffer(Type.TexCoord) == null) {
+            throw new IllegalArgumentException("Can only generate tangents for "
+                    + "meshes with texture coordinates");
+        }
+
+        TangentData data = new TangentData();
+        data.positions = readFloats(mesh, Type.Position);
+        data.normals = readFloats(mesh, Type.Normal);
+        data.texCoords = readFloats(mesh, Type.TexCoord);
+        data.vertexCount = data.positions.length / 3;
         switch (mesh.getMode()) {
             case Triangles:
-                vertices = processTriangles(mesh, index, v, t, splitMirrored);
-                if(splitMirrored){
-                    splitVertices(mesh, vertices, splitMirrored);
-                }
+                readTriangles(mesh, data);
                 break;
             case TriangleStrip:
-                vertices = processTriangleStrip(mesh, index, v, t);
+                readTriangleStrip(mesh, data);
                 break;
             case TriangleFan:
-                vertices = processTriangleFan(mesh, index, v, t);
+                readTriangleFan(mesh, data);
                 break;
             default:
                 throw new UnsupportedOperationException(
                         mesh.getMode() + " is not supported.");
         }
-        
-        processTriangleData(mesh, vertices, approxTangents,splitMirrored);
+
+        processTriangles(data, executor);
+        linkTriangles(data);
+        if (splitMirrored && mesh.getMode() == Mesh.Mode.Triangles) {
+            if (splitVertices(mesh, data)) {
+                linkTriangles(data);
+            }
+        }
+        linkVertices(data, splitMirrored);
+        processTriangleData(mesh, data, approxTangents, executor);
 
         //if the mesh has a bind pose, we need to generate the bind pose for the tangent buffer
         TangentUtils.generateBindPoseTangentsIfNecessary(mesh);
     }
-    
+
     public static void generate(Mesh mesh, boolean approxTangents) {
         generate(mesh, approxTangents, false);
     }
 
-    private static  List<VertexData> processTriangles(Mesh mesh,
-            int[] index, Vector3f[] v, Vector2f[] t, boolean splitMirrored) {
+    private static float[] readFloats(Mesh mesh, Type type) {
+        FloatBuffer buffer = (FloatBuffer) mesh.getBuffer(type).getDataReadOnly();
+        float[] array = new float[buffer.limit()];
+        buffer.rewind();
+        buffer.get(array);
+        return array;
+    }
+
+    private static void readTriangles(Mesh mesh, TangentData data) {
         IndexBuffer indexBuffer = mesh.getIndexBuffer();
-        FloatBuffer vertexBuffer = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
-        if (mesh.getBuffer(Type.TexCoord) == null) {
-            throw new IllegalArgumentException("Can only generate tangents for "
-                    + "meshes with texture coordinates");
+        int count = indexBuffer.size() / 3;
+        int[] triangles = new int[count * 3];
+        for (int i = 0; i < triangles.length; i++) {
+            triangles[i] = indexBuffer.get(i);
         }
-        
-        FloatBuffer textureBuffer = (FloatBuffer) mesh.getBuffer(Type.TexCoord).getData();
-        
-        List<VertexData> vertices = initVertexData(vertexBuffer.limit() / 3);
-        
-        for (int i = 0; i < indexBuffer.size() / 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                index[j] = indexBuffer.get(i * 3 + j);
-                populateFromBuffer(v[j], vertexBuffer, index[j]);
-                populateFromBuffer(t[j], textureBuffer, index[j]);
+        data.triangles = triangles;
+        data.triangleCount = count;
+    }
+
+    private static void readTriangleStrip(Mesh mesh, TangentData data) {
+        IndexBuffer indexBuffer = mesh.getIndexBuffer();
+        int[] triangles = new int[Math.max(indexBuffer.size() - 2, 0) * 3];
+        int count = 0;
+        for (int i = 2; i < indexBuffer.size(); i++) {
+            int i0 = indexBuffer.get(i - 2);
+            int i1 = indexBuffer.get(i - 1);
+            int i2 = indexBuffer.get(i);
+            if (!isDegenerateTriangle(data.positions, i0, i1, i2)) {
+                triangles[count * 3] = i0;
+                triangles[count * 3 + 1] = i1;
+                triangles[count * 3 + 2] = i2;
+                count++;
             }
-            
-            TriangleData triData = processTriangle(index, v, t);
-            if(splitMirrored){
-                triData.setIndex(index);
-                triData.triangleOffset = i * 3 ;
+        }
+        data.triangles = triangles;
+        data.triangleCount = count;
+    }
+
+    private static void readTriangleFan(Mesh mesh, TangentData data) {
+        IndexBuffer indexBuffer = mesh.getIndexBuffer();
+        int size = data.vertexCount;
+        int[] triangles = new int[Math.max(size - 2, 0) * 3];
+        int i0 = indexBuffer.get(0);
+        for (int i = 2; i < size; i++) {
+            triangles[(i - 2) * 3] = i0;
+            triangles[(i - 2) * 3 + 1] = indexBuffer.get(i - 1);
+            triangles[(i - 2) * 3 + 2] = indexBuffer.get(i);
+        }
+        data.triangles = triangles;
+        data.triangleCount = Math.max(size - 2, 0);
+    }
+
+    // check if the area is greater than zero
+    private static boolean isDegenerateTriangle(float[] positions, int i0, int i1, int i2) {
+        float ax = positions[i0 * 3] - positions[i1 * 3];
+        float ay = positions[i0 * 3 + 1] - positions[i1 * 3 + 1];
+        float az = positions[i0 * 3 + 2] - positions[i1 * 3 + 2];
+        float cx = positions[i2 * 3] - positions[i1 * 3];
+        float cy = positions[i2 * 3 + 1] - positions[i1 * 3 + 1];
+        float cz = positions[i2 * 3 + 2] - positions[i1 * 3 + 2];
+        float x = ay * cz - az * cy;
+        float y = az * cx - ax * cz;
+        float z = ax * cy - ay * cx;
+        return x * x + y * y + z * z == 0;
+    }
+
+    /**
+     * Runs the task over [0, count) in ranges of TASK_SIZE. The calling
+     * thread runs the first range and then waits for the others.
+     */
+    private static void runRanges(int count, ExecutorService executor, final RangeTask task) {
+        if (executor == null || count <= TASK_SIZE) {
+            task.run(0, count);
+            return;
+        }
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int start = 0; start < count; start += TASK_SIZE) {
+            final int from = start;
+            final int to = Math.min(start + TASK_SIZE, count);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(from, to);
+                }
+            });
+        }
+        ParallelTasks.runAll(tasks, executor);
+    }
+
+    /**
+     * Computes the tangent, binormal and normal of each triangle.
+     */
+    private static void processTriangles(final TangentData data, ExecutorService executor) {
+        data.triTangents = new float[data.triangleCount * 3];
+        data.triBinormals = new float[data.triangleCount * 3];
+        data.triNormals = new float[data.triangleCount * 3];
+        runRanges(data.triangleCount, executor, new RangeTask() {
+            @Override
+            void run(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    processTriangle(data, i);
+                }
             }
-            vertices.get(index[0]).triangles.add(triData);
-            vertices.get(index[1]).triangles.add(triData);
-            vertices.get(index[2]).triangles.add(triData);
+        });
+    }
+
+    private static void processTriangle(TangentData data, int triangle) {
+        float[] v = data.positions;
+        float[] t = data.texCoords;
+        int i0 = data.triangles[triangle * 3];
+        int i1 = data.triangles[triangle * 3 + 1];
+        int i2 = data.triangles[triangle * 3 + 2];
+
+        float edge1u = t[i1 * 2] - t[i0 * 2];
+        float edge1v = t[i1 * 2 + 1] - t[i0 * 2 + 1];
+        float edge2u = t[i2 * 2] - t[i0 * 2];
+        float edge2v = t[i2 * 2 + 1] - t[i0 * 2 + 1];
+        float det = edge1u * edge2v - edge1v * edge2u;
+
+        boolean normalize = false;
+        if (Math.abs(det) < ZERO_TOLERANCE) {
+            log.log(Level.WARNING, "Colinear uv coordinates for triangle "
+                    + "[{0}, {1}, {2}]; tex0 = [{3}, {4}], "
+                    + "tex1 = [{5}, {6}], tex2 = [{7}, {8}]",
+                    new Object[]{i0, i1, i2,
+                        t[i0 * 2], t[i0 * 2 + 1], t[i1 * 2], t[i1 * 2 + 1], t[i2 * 2], t[i2 * 2 + 1]});
+            det = 1;
+            normalize = true;
         }
-        
-        return vertices;
+
+        float edge1x = v[i1 * 3] - v[i0 * 3];
+        float edge1y = v[i1 * 3 + 1] - v[i0 * 3 + 1];
+        float edge1z = v[i1 * 3 + 2] - v[i0 * 3 + 2];
+        float edge2x = v[i2 * 3] - v[i0 * 3];
+        float edge2y = v[i2 * 3 + 1] - v[i0 * 3 + 1];
+        float edge2z = v[i2 * 3 + 2] - v[i0 * 3 + 2];
+
+        float length1 = FastMath.sqrt(edge1x * edge1x + edge1y * edge1y + edge1z * edge1z);
+        float length2 = FastMath.sqrt(edge2x * edge2x + edge2y * edge2y + edge2z * edge2z);
+        if (length1 != 0 && length2 != 0) {
+            float dot = (edge1x * edge2x + edge1y * edge2y + edge1z * edge2z) / (length1 * length2);
+            if (Math.abs(Math.abs(dot) - 1) < ZERO_TOLERANCE) {
+                log.log(Level.WARNING, "Vertices are on the same line "
+                        + "for triangle [{0}, {1}, {2}].",
+                        new Object[]{i0, i1, i2});
+            }
+        }
+
+        float factor = 1 / det;
+        int o = triangle * 3;
+        float[] tangent = data.triTangents;
+        tangent[o] = (edge2v * edge1x - edge1v * edge2x) * factor;
+        tangent[o + 1] = (edge2v * edge1y - edge1v * edge2y) * factor;
+        tangent[o + 2] = (edge2v * edge1z - edge1v * edge2z) * factor;
+        if (normalize) {
+            normalize(tangent, o);
+        }
+
+        float[] binormal = data.triBinormals;
+        binormal[o] = (edge1u * edge2x - edge2u * edge1x) * factor;
+        binormal[o + 1] = (edge1u * edge2y - edge2u * edge1y) * factor;
+        binormal[o + 2] = (edge1u * edge2z - edge2u * edge1z) * factor;
+        if (normalize) {
+            normalize(binormal, o);
+        }
+
+        float[] normal = data.triNormals;
+        normal[o] = tangent[o + 1] * binormal[o + 2] - tangent[o + 2] * binormal[o + 1];
+        normal[o + 1] = tangent[o + 2] * binormal[o] - tangent[o] * binormal[o + 2];
+        normal[o + 2] = tangent[o] * binormal[o + 1] - tangent[o + 1] * binormal[o];
+        normalize(normal, o);
     }
-    
+
+    private static void normalize(float[] array, int offset) {
+        float length = array[offset] * array[offset] + array[offset + 1] * array[offset + 1] + array[offset + 2] * array[offset + 2];
+        if (length != 1f && length != 0f) {
+            length = 1.0f / FastMath.sqrt(length);
+            array[offset] *= length;
+            array[offset + 1] *= length;
+            array[offset + 2] *= length;
+        }
+    }
+
+    /**
+     * Builds the list of triangles of each vertex, in triangle order.
+     */
+    private static void linkTriangles(TangentData data) {
+        int[] start = new int[data.vertexCount + 1];
+        int corners = data.triangleCount * 3;
+        for (int i = 0; i < corners; i++) {
+            start[data.triangles[i] + 1]++;
+        }
+        for (int v = 0; v < data.vertexCount; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] fill = Arrays.copyOf(start, data.vertexCount);
+        int[] vertexTriangles = new int[corners];
+        for (int i = 0; i < corners; i++) {
+            vertexTriangles[fill[data.triangles[i]]++] = i / 3;
+        }
+        data.vertexTriangleStart = start;
+        data.vertexTriangles = vertexTriangles;
+    }
+
     //Don't remove splitmirorred boolean,It's not used right now, but i intend to
     //make this method also split vertice with rotated tangent space and I'll
-    //add another splitRotated boolean 
-    private static List<VertexData> splitVertices(Mesh mesh, List<VertexData> vertexData, boolean splitMirorred) {
-        int nbVertices = mesh.getBuffer(Type.Position).getNumElements();
-        List<VertexData> newVertices = new ArrayList<VertexData>();
-        Map<Integer, Integer> indiceMap = new HashMap<Integer, Integer>();
-        FloatBuffer normalBuffer = mesh.getFloatBuffer(Type.Normal);
-
-        for (int i = 0; i < vertexData.size(); i++) {
-            ArrayList<TriangleData> triangles = vertexData.get(i).triangles;
-            Vector3f givenNormal = new Vector3f();
-            populateFromBuffer(givenNormal, normalBuffer, i);
-          
-            ArrayList<TriangleData> trianglesUp = new ArrayList<TriangleData>();
-            ArrayList<TriangleData> trianglesDown = new ArrayList<TriangleData>();  
-            for (int j = 0; j < triangles.size(); j++) {
-                TriangleData triangleData = triangles.get(j);
-                if(parity(givenNormal, triangleData.normal) > 0){
-                    trianglesUp.add(triangleData);
-                }else{
-                    trianglesDown.add(triangleData);
+    //add another splitRotated boolean
+    /**
+     * Splits the vertices shared by triangles whose normals point in opposite
+     * directions relative to the vertex normal, the new vertices are appended
+     * to the buffers of the mesh.
+     *
+     * @return true if vertices were split.
+     */
+    private static boolean splitVertices(Mesh mesh, TangentData data) {
+        int vertexCount = data.vertexCount;
+        int nbVertices = vertexCount;
+        int[] splitSources = new int[16];
+        boolean[] changed = new boolean[data.triangleCount];
+        float[] normals = data.normals;
+        float[] triNormals = data.triNormals;
+
+        for (int i = 0; i < vertexCount; i++) {
+            int up = 0;
+            int down = 0;
+            for (int k = data.vertexTriangleStart[i]; k < data.vertexTriangleStart[i + 1]; k++) {
+                if (parity(normals, i, triNormals, data.vertexTriangles[k]) > 0) {
+                    up++;
+                } else {
+                    down++;
                 }
             }
-            
+
             //if the vertex has triangles with opposite parity it has to be split
-            if(!trianglesUp.isEmpty() && !trianglesDown.isEmpty()){
+            if (up > 0 && down > 0) {
                 log.log(Level.FINE, "Splitting vertex {0}", i);
-                //assigning triangle with the same parity to the original vertex
-                vertexData.get(i).triangles.clear();
-                vertexData.get(i).triangles.addAll(trianglesUp);
-                
-                //creating a new vertex
-                VertexData newVert = new VertexData();
-                //assigning triangles with opposite parity to it
-                newVert.triangles.addAll(trianglesDown);
-                
-                newVertices.add(newVert);
-                //keep vertex index to fix the index buffers later
-                indiceMap.put(nbVertices, i);
-                for (TriangleData tri : newVert.triangles) {
-                    for (int j = 0; j < tri.index.length; j++) {
-                        if(tri.index[j] == i){
-                            tri.index[j] = nbVertices;                            
+                //assigning triangles with opposite parity to a new vertex
+                for (int k = data.vertexTriangleStart[i]; k < data.vertexTriangleStart[i + 1]; k++) {
+                    int triangle = data.vertexTriangles[k];
+                    if (parity(normals, i, triNormals, triangle) < 0) {
+                        for (int j = triangle * 3; j < triangle * 3 + 3; j++) {
+                            if (data.triangles[j] == i) {
+                                data.triangles[j] = nbVertices;
+                            }
                         }
+                        changed[triangle] = true;
                     }
                 }
+                //keep vertex index to copy its data later
+                int index = nbVertices - vertexCount;
+                if (index == splitSources.length) {
+                    splitSources = Arrays.copyOf(splitSources, index * 2);
+                }
+                splitSources[index] = i;
                 nbVertices++;
-                
-            }            
-
+            }
+        }
 
+        if (nbVertices == vertexCount) {
+            return false;
         }
 
-        if(!newVertices.isEmpty()){
-            
-            //we have new vertices, we need to update the mesh's buffers.
-            for (Type type : VertexBuffer.Type.values()) {
-                //skip tangent buffer as we're gonna overwrite it later
-                if(type == Type.Tangent || type == Type.BindPoseTangent) continue;
-                VertexBuffer vb = mesh.getBuffer(type);
-                //Some buffer (hardware skinning ones) can be there but not 
-                //initialized, they must be skipped. 
-                //They'll be initialized when Hardware Skinning is engaged
-                if(vb==null || vb.getNumComponents() == 0) continue;
-                
-                Buffer buffer = vb.getData();   
-                //IndexBuffer has special treatement, only swapping the vertex indices is needed                
-                if(type == Type.Index){
-                    boolean isShortBuffer = vb.getFormat() == VertexBuffer.Format.UnsignedShort;                     
-                    for (VertexData vertex : newVertices) {
-                        for (TriangleData tri : vertex.triangles) {
-                            for (int i = 0; i < tri.index.length; i++) {
-                                if (isShortBuffer) {
-                                    ((ShortBuffer) buffer).put(tri.triangleOffset + i, (short) tri.index[i]);
-                                } else {
-                                    ((IntBuffer) buffer).put(tri.triangleOffset + i, tri.index[i]);
-                                }
-                            }
+        //we have new vertices, we need to update the mesh's buffers.
+        for (Type type : VertexBuffer.Type.values()) {
+            //skip tangent buffer as we're gonna overwrite it later
+            if(type == Type.Tangent || type == Type.BindPoseTangent) continue;
+            VertexBuffer vb = mesh.getBuffer(type);
+            //Some buffer (hardware skinning ones) can be there but not
+            //initialized, they must be skipped.
+            //They'll be initialized when Hardware Skinning is engaged
+            if(vb==null || vb.getNumComponents() == 0) continue;
+
+            Buffer buffer = vb.getData();
+            //IndexBuffer has special treatement, only swapping the vertex indices is needed
+            if(type == Type.Index){
+                IndexBuffer indexBuffer = IndexBuffer.wrapIndexBuffer(buffer);
+                for (int triangle = 0; triangle < data.triangleCount; triangle++) {
+                    if (changed[triangle]) {
+                        for (int j = triangle * 3; j < triangle * 3 + 3; j++) {
+                            indexBuffer.put(j, data.triangles[j]);
+                        }
+                    }
+                }
+                vb.setUpdateNeeded();
+            }else{
+                //copy the buffer in a bigger one and append nex vertices to the end
+                Buffer newVerts = VertexBuffer.createBuffer(vb.getFormat(), vb.getNumComponents(), nbVertices);
+                if (buffer != null) {
+                    buffer.rewind();
+                    bulkPut(vb.getFormat(), newVerts,buffer);
+
+                    newVerts.position(vertexCount * vb.getNumComponents());
+                    for (int j = 0; j < nbVertices - vertexCount; j++) {
+                        int oldInd = splitSources[j];
+                        for (int i = 0; i < vb.getNumComponents(); i++) {
+                                putValue(vb.getFormat(), newVerts, buffer, oldInd* vb.getNumComponents() + i);
                         }
                     }
-                    vb.setUpdateNeeded();
-                }else{
-                    //copy the buffer in a bigger one and append nex vertices to the end
-                    Buffer newVerts = VertexBuffer.createBuffer(vb.getFormat(), vb.getNumComponents(), nbVertices);                   
-                    if (buffer != null) {
-                        buffer.rewind();
-                        bulkPut(vb.getFormat(), newVerts,buffer);  
-                        
-                        int index = vertexData.size();                      
-                        newVerts.position(vertexData.size() * vb.getNumComponents());
-                        for (int j = 0; j < newVertices.size(); j++) {
-                            int oldInd = indiceMap.get(index) ;
-                            for (int i = 0; i < vb.getNumComponents(); i++) {                                
-                                    putValue(vb.getFormat(), newVerts, buffer, oldInd* vb.getNumComponents() + i);
-                            }                            
-                            index++;
-                        }                        
-                        vb.updateData(newVerts);    
-                        //destroy previous buffer as it's no longer needed
-                        destroyDirectBuffer(buffer);
-                    }             
-                }                
+                    vb.updateData(newVerts);
+                    //destroy previous buffer as it's no longer needed
+                    destroyDirectBuffer(buffer);
+                }
             }
-            vertexData.addAll(newVertices);
-            
-            mesh.updateCounts();
         }
 
-        return vertexData;
+        data.normals = Arrays.copyOf(normals, nbVertices * 3);
+        for (int j = 0; j < nbVertices - vertexCount; j++) {
+            System.arraycopy(normals, splitSources[j] * 3, data.normals, (vertexCount + j) * 3, 3);
+        }
+        data.vertexCount = nbVertices;
+        mesh.updateCounts();
+        return true;
     }
     
     private static void bulkPut(VertexBuffer.Format format, Buffer buf1, Buffer buf2) {
@@ -440,100 +668,6 @@ public class TangentBinormalGenerator {
         }
     }
     
-    private static List<VertexData> processTriangleStrip(Mesh mesh,
-            int[] index, Vector3f[] v, Vector2f[] t) {
-        IndexBuffer indexBuffer = mesh.getIndexBuffer();
-        FloatBuffer vertexBuffer = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
-        FloatBuffer textureBuffer = (FloatBuffer) mesh.getBuffer(Type.TexCoord).getData();
-        
-        List<VertexData> vertices = initVertexData(vertexBuffer.limit() / 3);
-        
-        index[0] = indexBuffer.get(0);
-        index[1] = indexBuffer.get(1);
-        
-        populateFromBuffer(v[0], vertexBuffer, index[0]);
-        populateFromBuffer(v[1], vertexBuffer, index[1]);
-        
-        populateFromBuffer(t[0], textureBuffer, index[0]);
-        populateFromBuffer(t[1], textureBuffer, index[1]);
-        
-        for (int i = 2; i < indexBuffer.size(); i++) {
-            index[2] = indexBuffer.get(i);
-            BufferUtils.populateFromBuffer(v[2], vertexBuffer, index[2]);
-            BufferUtils.populateFromBuffer(t[2], textureBuffer, index[2]);
-            
-            boolean isDegenerate = isDegenerateTriangle(v[0], v[1], v[2]);
-            TriangleData triData = processTriangle(index, v, t);
-            
-            if (!isDegenerate) {
-                vertices.get(index[0]).triangles.add(triData);
-                vertices.get(index[1]).triangles.add(triData);
-                vertices.get(index[2]).triangles.add(triData);
-            }
-            
-            Vector3f vTemp = v[0];
-            v[0] = v[1];
-            v[1] = v[2];
-            v[2] = vTemp;
-            
-            Vector2f tTemp = t[0];
-            t[0] = t[1];
-            t[1] = t[2];
-            t[2] = tTemp;
-            
-            index[0] = index[1];
-            index[1] = index[2];
-        }
-        
-        return vertices;
-    }
-    
-    private static List<VertexData> processTriangleFan(Mesh mesh,
-            int[] index, Vector3f[] v, Vector2f[] t) {
-        IndexBuffer indexBuffer = mesh.getIndexBuffer();
-        FloatBuffer vertexBuffer = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
-        FloatBuffer textureBuffer = (FloatBuffer) mesh.getBuffer(Type.TexCoord).getData();
-        
-        List<VertexData> vertices = initVertexData(vertexBuffer.limit() / 3);
-        
-        index[0] = indexBuffer.get(0);
-        index[1] = indexBuffer.get(1);
-        
-        populateFromBuffer(v[0], vertexBuffer, index[0]);
-        populateFromBuffer(v[1], vertexBuffer, index[1]);
-        
-        populateFromBuffer(t[0], textureBuffer, index[0]);
-        populateFromBuffer(t[1], textureBuffer, index[1]);
-        
-        for (int i = 2; i < vertexBuffer.limit() / 3; i++) {
-            index[2] = indexBuffer.get(i);
-            populateFromBuffer(v[2], vertexBuffer, index[2]);
-            populateFromBuffer(t[2], textureBuffer, index[2]);
-            
-            TriangleData triData = processTriangle(index, v, t);
-            vertices.get(index[0]).triangles.add(triData);
-            vertices.get(index[1]).triangles.add(triData);
-            vertices.get(index[2]).triangles.add(triData);
-            
-            Vector3f vTemp = v[1];
-            v[1] = v[2];
-            v[2] = vTemp;
-            
-            Vector2f tTemp = t[1];
-            t[1] = t[2];
-            t[2] = tTemp;
-            
-            index[1] = index[2];
-        }
-        
-        return vertices;
-    }
-
-    // check if the area is greater than zero
-    private static boolean isDegenerateTriangle(Vector3f a, Vector3f b, Vector3f c) {
-        return (a.subtract(b).cross(c.subtract(b))).lengthSquared() == 0;
-    }
-    
     public static TriangleData processTriangle(int[] index,
             Vector3f[] v, Vector2f[] t) {
         TempVars tmp = TempVars.get();
@@ -612,107 +746,217 @@ public class TangentBinormalGenerator {
         toleranceDot = FastMath.cos(angle * FastMath.DEG_TO_RAD);
     }
     
-    
-    private static boolean approxEqual(Vector3f u, Vector3f v) {
-        float tolerance = 1E-4f;
-        return (FastMath.abs(u.x - v.x) < tolerance) &&
-               (FastMath.abs(u.y - v.y) < tolerance) &&
-               (FastMath.abs(u.z - v.z) < tolerance);
+
+    private static boolean approxEqual(float[] array, int i, int j, int components) {
+        for (int c = 0; c < components; c++) {
+            if (FastMath.abs(array[i * components + c] - array[j * components + c]) >= LINK_TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
     }
-    
-    private static boolean approxEqual(Vector2f u, Vector2f v) {
-        float tolerance = 1E-4f;
-        return (FastMath.abs(u.x - v.x) < tolerance) &&
-               (FastMath.abs(u.y - v.y) < tolerance);
+
+    private static long cellKey(long x, long y, long z) {
+        return (x * 73856093L) ^ (y * 19349663L) ^ (z * 83492791L);
     }
-    
-    private static ArrayList<VertexInfo> linkVertices(Mesh mesh, boolean splitMirrored) {
-        ArrayList<VertexInfo> vertexMap = new ArrayList<VertexInfo>();
-        
-        FloatBuffer vertexBuffer = mesh.getFloatBuffer(Type.Position);
-        FloatBuffer normalBuffer = mesh.getFloatBuffer(Type.Normal);
-        FloatBuffer texcoordBuffer = mesh.getFloatBuffer(Type.TexCoord);
-        
-        Vector3f position = new Vector3f();
-        Vector3f normal = new Vector3f();
-        Vector2f texCoord = new Vector2f();
-        
-        final int size = vertexBuffer.limit() / 3;
-        for (int i = 0; i < size; i++) {
-            
-            populateFromBuffer(position, vertexBuffer, i);
-            populateFromBuffer(normal, normalBuffer, i);
-            populateFromBuffer(texCoord, texcoordBuffer, i);
-            
-            boolean found = false;
-            //Nehon 07/07/2013
-            //Removed this part, joining splitted vertice to compute tangent space makes no sense to me
-            //separate vertice should have separate tangent space   
-            if(!splitMirrored){
-                for (int j = 0; j < vertexMap.size(); j++) {
-                    VertexInfo vertexInfo = vertexMap.get(j);
-                    if (approxEqual(vertexInfo.position, position) &&
-                        approxEqual(vertexInfo.normal, normal) &&
-                        approxEqual(vertexInfo.texCoord, texCoord))
-                    {
-                        vertexInfo.indices.add(i);
-                        found = true;
-                        break;  
+
+    private static int hashSlot(long key, int mask) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * Groups the vertices that share a tangent space: the ones with
+     * approximately equal position, normal and texture coordinate.
+     * A vertex joins the first created group whose first vertex matches it.
+     * The candidate groups are found by hashing the positions in cells the
+     * size of the tolerance and looking in the neighbouring cells.
+     */
+    private static void linkVertices(TangentData data, boolean splitMirrored) {
+        int vertexCount = data.vertexCount;
+        int[] vertexGroup = new int[vertexCount];
+        int[] groupFirst = new int[vertexCount];
+        int groupCount = 0;
+
+        //Nehon 07/07/2013
+        //Removed this part, joining splitted vertice to compute tangent space makes no sense to me
+        //separate vertice should have separate tangent space
+        if (splitMirrored) {
+            for (int i = 0; i < vertexCount; i++) {
+                vertexGroup[i] = i;
+                groupFirst[i] = i;
+            }
+            groupCount = vertexCount;
+        } else {
+            float[] positions = data.positions;
+            int capacity = Integer.highestOneBit(Math.max(vertexCount, 1) * 2) * 2;
+            int mask = capacity - 1;
+            long[] keys = new long[capacity];
+            int[] heads = new int[capacity];
+            Arrays.fill(heads, -1);
+            //groups of the same cell are chained
+            int[] nextInCell = new int[vertexCount];
+            long[] cellX = new long[vertexCount];
+            long[] cellY = new long[vertexCount];
+            long[] cellZ = new long[vertexCount];
+
+            for (int i = 0; i < vertexCount; i++) {
+                long x = (long) Math.floor(positions[i * 3] / LINK_TOLERANCE);
+                long y = (long) Math.floor(positions[i * 3 + 1] / LINK_TOLERANCE);
+                long z = (long) Math.floor(positions[i * 3 + 2] / LINK_TOLERANCE);
+
+                int found = -1;
+                for (long dx = -1; dx <= 1; dx++) {
+                    for (long dy = -1; dy <= 1; dy++) {
+                        for (long dz = -1; dz <= 1; dz++) {
+                            long key = cellKey(x + dx, y + dy, z + dz);
+                            int slot = hashSlot(key, mask);
+                            while (heads[slot] != -1 && keys[slot] != key) {
+                                slot = (slot + 1) & mask;
+                            }
+                            //different cells can share a key, only the groups
+                            //of this cell created before the found one are checked
+                            for (int g = heads[slot]; g != -1; g = nextInCell[g]) {
+                                if ((found == -1 || g < found)
+                                        && cellX[g] == x + dx && cellY[g] == y + dy && cellZ[g] == z + dz) {
+                                    int first = groupFirst[g];
+                                    if (approxEqual(positions, first, i, 3)
+                                            && approxEqual(data.normals, first, i, 3)
+                                            && approxEqual(data.texCoords, first, i, 2)) {
+                                        found = g;
+                                    }
+                                }
+                            }
+                        }
                     }
                 }
-            }
-            if (!found) {
-                VertexInfo vertexInfo = new VertexInfo(position.clone(), normal.clone(), texCoord.clone());
-                vertexInfo.indices.add(i);
-                vertexMap.add(vertexInfo);
+
+                if (found == -1) {
+                    found = groupCount++;
+                    groupFirst[found] = i;
+                    cellX[found] = x;
+                    cellY[found] = y;
+                    cellZ[found] = z;
+                    long key = cellKey(x, y, z);
+                    int slot = hashSlot(key, mask);
+                    while (heads[slot] != -1 && keys[slot] != key) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                    nextInCell[found] = heads[slot];
+                    heads[slot] = found;
+                }
+                vertexGroup[i] = found;
             }
         }
-        
-        return vertexMap;
+
+        int[] start = new int[groupCount + 1];
+        for (int i = 0; i < vertexCount; i++) {
+            start[vertexGroup[i] + 1]++;
+        }
+        for (int g = 0; g < groupCount; g++) {
+            start[g + 1] += start[g];
+        }
+        int[] fill = Arrays.copyOf(start, groupCount);
+        int[] groupVertices = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            groupVertices[fill[vertexGroup[i]]++] = i;
+        }
+        data.groupStart = start;
+        data.groupVertices = groupVertices;
+        data.groupCount = groupCount;
     }
-    
-    private static void processTriangleData(Mesh mesh, List<VertexData> vertices,
-            boolean approxTangent, boolean splitMirrored) {
-        ArrayList<VertexInfo> vertexMap = linkVertices(mesh,splitMirrored);
 
-        FloatBuffer tangents = BufferUtils.createFloatBuffer(vertices.size() * 4);
+    private static void processTriangleData(Mesh mesh, final TangentData data,
+            final boolean approxTangent, ExecutorService executor) {
+        data.tangents = new float[data.vertexCount * 4];
+        runRanges(data.groupCount, executor, new RangeTask() {
+            @Override
+            void run(int start, int end) {
+                processGroups(data, approxTangent, start, end);
+            }
+        });
+
+        FloatBuffer tangents = BufferUtils.createFloatBuffer(data.tangents);
+        tangents.limit(tangents.capacity());
+        // If the model already had a tangent buffer, replace it with the regenerated one
+        mesh.clearBuffer(Type.Tangent);
+        mesh.setBuffer(Type.Tangent, 4, tangents);
+
+
+
+        if(mesh.isAnimated()){
+            mesh.clearBuffer(Type.BindPoseNormal);
+            mesh.clearBuffer(Type.BindPosePosition);
+            mesh.clearBuffer(Type.BindPoseTangent);
+            mesh.generateBindPose(true);
+        }
 
-        ColorRGBA[] cols = null;
         if (debug) {
-            cols = new ColorRGBA[vertices.size()];
+            writeColorBuffer(data.vertexCount, mesh);
         }
+        mesh.updateBound();
+        mesh.updateCounts();
+    }
 
+    /**
+     * Computes the tangents of the vertices of the groups in [start, end),
+     * the groups don't share vertices so ranges can be processed concurrently.
+     */
+    private static void processGroups(TangentData data, boolean approxTangent, int start, int end) {
         Vector3f tangent = new Vector3f();
         Vector3f binormal = new Vector3f();
-        //Vector3f normal = new Vector3f();
         Vector3f givenNormal = new Vector3f();
 
         Vector3f tangentUnit = new Vector3f();
         Vector3f binormalUnit = new Vector3f();
+        Vector3f finalTangent = new Vector3f();
+        Vector3f tmp = new Vector3f();
 
-        for (int k = 0; k < vertexMap.size(); k++) {
+        float[] triTangents = data.triTangents;
+        float[] triBinormals = data.triBinormals;
+        int[] triangleStart = data.vertexTriangleStart;
+        int[] vertexTriangles = data.vertexTriangles;
+        float[] tangents = data.tangents;
+
+        for (int k = start; k < end; k++) {
             float wCoord = -1;
 
-            VertexInfo vertexInfo = vertexMap.get(k);
+            int groupStart = data.groupStart[k];
+            int groupEnd = data.groupStart[k + 1];
+            int blameVertex = data.groupVertices[groupStart];
 
-            givenNormal.set(vertexInfo.normal);
-            givenNormal.normalizeLocal();
+            // take the first triangle of the group, vertices without any are skipped
+            int firstTriangle = -1;
+            for (int v = groupStart; v < groupEnd; v++) {
+                int i = data.groupVertices[v];
+                if (triangleStart[i] != triangleStart[i + 1]) {
+                    firstTriangle = vertexTriangles[triangleStart[i]] * 3;
+                    break;
+                }
+            }
+            if (firstTriangle == -1) {
+                log.log(Level.FINE, "Vertex {0} is not used by any triangle.", blameVertex);
+                continue;
+            }
 
-            TriangleData firstTriangle = vertices.get(vertexInfo.indices.get(0)).triangles.get(0);
+            givenNormal.set(data.normals[blameVertex * 3], data.normals[blameVertex * 3 + 1], data.normals[blameVertex * 3 + 2]);
+            givenNormal.normalizeLocal();
 
             // check tangent and binormal consistency
-            tangent.set(firstTriangle.tangent);
+            tangent.set(triTangents[firstTriangle], triTangents[firstTriangle + 1], triTangents[firstTriangle + 2]);
             tangent.normalizeLocal();
-            binormal.set(firstTriangle.binormal);
+            binormal.set(triBinormals[firstTriangle], triBinormals[firstTriangle + 1], triBinormals[firstTriangle + 2]);
             binormal.normalizeLocal();
 
-            for (int i : vertexInfo.indices) {
-                ArrayList<TriangleData> triangles = vertices.get(i).triangles;
+            for (int v = groupStart; v < groupEnd; v++) {
+                int i = data.groupVertices[v];
+                for (int j = triangleStart[i]; j < triangleStart[i + 1]; j++) {
+                    int t = vertexTriangles[j] * 3;
 
-                for (int j = 0; j < triangles.size(); j++) {
-                    TriangleData triangleData = triangles.get(j);
-
-                    tangentUnit.set(triangleData.tangent);
+                    tangentUnit.set(triTangents[t], triTangents[t + 1], triTangents[t + 2]);
                     tangentUnit.normalizeLocal();
                     if (tangent.dot(tangentUnit) < toleranceDot) {
                         log.log(Level.WARNING,
@@ -722,7 +966,7 @@ public class TangentBinormalGenerator {
                     }
 
                     if (!approxTangent) {
-                        binormalUnit.set(triangleData.binormal);
+                        binormalUnit.set(triBinormals[t], triBinormals[t + 1], triBinormals[t + 2]);
                         binormalUnit.normalizeLocal();
                         if (binormal.dot(binormalUnit) < toleranceDot) {
                             log.log(Level.WARNING,
@@ -740,24 +984,18 @@ public class TangentBinormalGenerator {
             binormal.set(0, 0, 0);
 
             int triangleCount = 0;
-            for (int i : vertexInfo.indices) {
-                ArrayList<TriangleData> triangles = vertices.get(i).triangles;
-                triangleCount += triangles.size();
-                if (debug) {
-                    cols[i] = ColorRGBA.White;
-                }
-
-                for (int j = 0; j < triangles.size(); j++) {
-                    TriangleData triangleData = triangles.get(j);
-                    tangent.addLocal(triangleData.tangent);
-                    binormal.addLocal(triangleData.binormal);
+            for (int v = groupStart; v < groupEnd; v++) {
+                int i = data.groupVertices[v];
+                triangleCount += triangleStart[i + 1] - triangleStart[i];
 
+                for (int j = triangleStart[i]; j < triangleStart[i + 1]; j++) {
+                    int t = vertexTriangles[j] * 3;
+                    tangent.addLocal(triTangents[t], triTangents[t + 1], triTangents[t + 2]);
+                    binormal.addLocal(triBinormals[t], triBinormals[t + 1], triBinormals[t + 2]);
                 }
             }
 
 
-            int blameVertex = vertexInfo.indices.get(0);
-
             if (tangent.length() < ZERO_TOLERANCE) {
                 log.log(Level.WARNING,
                         "Shared tangent is zero for vertex {0}.", blameVertex);
@@ -767,7 +1005,7 @@ public class TangentBinormalGenerator {
                     tangent.normalizeLocal();
                 } // if all fails use the tangent from the first triangle
                 else {
-                    tangent.set(firstTriangle.tangent);
+                    tangent.set(triTangents[firstTriangle], triTangents[firstTriangle + 1], triTangents[firstTriangle + 2]);
                 }
             } else {
                 tangent.divideLocal(triangleCount);
@@ -792,7 +1030,7 @@ public class TangentBinormalGenerator {
                         binormal.normalizeLocal();
                     } // if all fails use the binormal from the first triangle
                     else {
-                        binormal.set(firstTriangle.binormal);
+                        binormal.set(triBinormals[firstTriangle], triBinormals[firstTriangle + 1], triBinormals[firstTriangle + 2]);
                     }
                 } else {
                     binormal.divideLocal(triangleCount);
@@ -813,9 +1051,8 @@ public class TangentBinormalGenerator {
                 }
             }
 
-            Vector3f finalTangent = new Vector3f();
-            Vector3f tmp = new Vector3f();
-            for (int i : vertexInfo.indices) {
+            for (int v = groupStart; v < groupEnd; v++) {
+                int i = data.groupVertices[v];
                 if (approxTangent) {
                     // Gram-Schmidt orthogonalize
                     finalTangent.set(tangent).subtractLocal(tmp.set(givenNormal).multLocal(givenNormal.dot(tangent)));
@@ -823,61 +1060,42 @@ public class TangentBinormalGenerator {
 
                     wCoord = tmp.set(givenNormal).crossLocal(tangent).dot(binormal) < 0f ? -1f : 1f;
 
-                    tangents.put((i * 4), finalTangent.x);
-                    tangents.put((i * 4) + 1, finalTangent.y);
-                    tangents.put((i * 4) + 2, finalTangent.z);
-                    tangents.put((i * 4) + 3, wCoord);
+                    tangents[(i * 4)] = finalTangent.x;
+                    tangents[(i * 4) + 1] = finalTangent.y;
+                    tangents[(i * 4) + 2] = finalTangent.z;
+                    tangents[(i * 4) + 3] = wCoord;
                 } else {
-                    tangents.put((i * 4), tangent.x);
-                    tangents.put((i * 4) + 1, tangent.y);
-                    tangents.put((i * 4) + 2, tangent.z);
-                    tangents.put((i * 4) + 3, wCoord);
-
-                    //setInBuffer(binormal, binormals, i);
+                    tangents[(i * 4)] = tangent.x;
+                    tangents[(i * 4) + 1] = tangent.y;
+                    tangents[(i * 4) + 2] = tangent.z;
+                    tangents[(i * 4) + 3] = wCoord;
                 }
             }
         }
-        tangents.limit(tangents.capacity());
-        // If the model already had a tangent buffer, replace it with the regenerated one
-        mesh.clearBuffer(Type.Tangent);
-        mesh.setBuffer(Type.Tangent, 4, tangents);
-        
-        
-        
-        if(mesh.isAnimated()){
-            mesh.clearBuffer(Type.BindPoseNormal);
-            mesh.clearBuffer(Type.BindPosePosition);
-            mesh.clearBuffer(Type.BindPoseTangent);
-            mesh.generateBindPose(true);
-        }
+    }
 
-        if (debug) {
-            writeColorBuffer( vertices, cols, mesh);
-        }
-        mesh.updateBound();
-        mesh.updateCounts();
-    }    
-    
-    private static void writeColorBuffer(List<VertexData> vertices, ColorRGBA[] cols, Mesh mesh) {
-        FloatBuffer colors = BufferUtils.createFloatBuffer(vertices.size() * 4);
+    private static void writeColorBuffer(int vertexCount, Mesh mesh) {
+        FloatBuffer colors = BufferUtils.createFloatBuffer(vertexCount * 4);
         colors.rewind();
-        for (ColorRGBA color : cols) {
-            colors.put(color.r);
-            colors.put(color.g);
-            colors.put(color.b);
-            colors.put(color.a);
+        for (int i = 0; i < vertexCount; i++) {
+            colors.put(ColorRGBA.White.r);
+            colors.put(ColorRGBA.White.g);
+            colors.put(ColorRGBA.White.b);
+            colors.put(ColorRGBA.White.a);
         }
         mesh.clearBuffer(Type.Color);
         mesh.setBuffer(Type.Color, 4, colors);
     }
 
-    private static int parity(Vector3f n1, Vector3f n) {
-        if (n1.dot(n) < 0) {
+    private static int parity(float[] normals, int vertex, float[] triNormals, int triangle) {
+        float dot = normals[vertex * 3] * triNormals[triangle * 3]
+                + normals[vertex * 3 + 1] * triNormals[triangle * 3 + 1]
+                + normals[vertex * 3 + 2] * triNormals[triangle * 3 + 2];
+        if (dot < 0) {
             return -1;
         } else {
             return 1;
         }
-
     }
 
     public static Mesh genTbnLines(Mesh mesh, float scale) {
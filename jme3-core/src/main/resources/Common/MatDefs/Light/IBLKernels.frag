@@ -0,0 +1,102 @@
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+
+// GPU version of the generation code of EnvMapUtils, IrradianceMapGenerator
+// and PrefilteredEnvMapFaceGenerator. Renders one face (and one mip level) of
+// the irradiance map or of the prefiltered env map.
+
+#ifndef PI
+    #define PI 3.14159265358979323846264
+#endif
+
+// loop bounds must be constant in GLSL100
+#define MAX_SAMPLES 8192
+
+uniform samplerCube m_EnvMap;
+uniform int m_FaceId;
+uniform int m_NbSamples;
+uniform float m_Roughness;
+
+varying vec2 texCoord;
+
+// same as EnvMapUtils.getVectorFromCubemapFaceTexCoord
+vec3 getVectorFromCubemapFaceTexCoord(vec2 uv, int face){
+    vec3 dir;
+    if (face == 0) {
+        dir = vec3(1.0, -uv.y, -uv.x);
+    } else if (face == 1) {
+        dir = vec3(-1.0, -uv.y, uv.x);
+    } else if (face == 2) {
+        dir = vec3(uv.x, 1.0, uv.y);
+    } else if (face == 3) {
+        dir = vec3(uv.x, -1.0, -uv.y);
+    } else if (face == 4) {
+        dir = vec3(uv.x, -uv.y, 1.0);
+    } else {
+        dir = vec3(-uv.x, -uv.y, -1.0);
+    }
+    return normalize(dir);
+}
+
+// Van der Corput radical inverse, without bit operations.
+float radicalInverse(int i){
+    float n = float(i);
+    float inv = 0.5;
+    float result = 0.0;
+    for (int b = 0; b < 32; b++) {
+        if (n < 1.0) {
+            break;
+        }
+        result += mod(n, 2.0) * inv;
+        n = floor(n * 0.5);
+        inv *= 0.5;
+    }
+    return result;
+}
+
+void main(){
+    vec3 N = getVectorFromCubemapFaceTexCoord(texCoord * 2.0 - 1.0, m_FaceId);
+
+    vec3 up = abs(N.z) < 0.999 ? vec3(0.0, 1.0, 0.0) : vec3(1.0, 0.0, 0.0);
+    vec3 tangentX = normalize(cross(up, N));
+    vec3 tangentY = cross(N, tangentX);
+
+    #ifndef IRRADIANCE
+        // a = roughness² and a2 = a²
+        float a2 = m_Roughness * m_Roughness;
+        a2 *= a2;
+        a2 *= 10.0;
+    #endif
+
+    vec3 color = vec3(0.0);
+    float totalWeight = 0.0;
+    float invNbSamples = 1.0 / float(m_NbSamples);
+    for (int i = 0; i < MAX_SAMPLES; i++) {
+        if (i >= m_NbSamples) {
+            break;
+        }
+        float xiX = float(i) * invNbSamples;
+        float phi = 2.0 * PI * radicalInverse(i);
+
+        #ifdef IRRADIANCE
+            // cosine weighted hemisphere sampling, the cosine and the pdf cancel out.
+            float cosTheta = sqrt(1.0 - xiX);
+            float sinTheta = sqrt(xiX);
+            vec3 L = tangentX * (sinTheta * cos(phi)) + tangentY * (sinTheta * sin(phi)) + N * cosTheta;
+            color += textureCube(m_EnvMap, L).rgb;
+            totalWeight += 1.0;
+        #else
+            // GGX importance sampling
+            float cosTheta = sqrt((1.0 - xiX) / (1.0 + (a2 - 1.0) * xiX));
+            float sinTheta = sqrt(1.0 - cosTheta * cosTheta);
+            vec3 H = tangentX * (sinTheta * cos(phi)) + tangentY * (sinTheta * sin(phi)) + N * cosTheta;
+            vec3 L = 2.0 * cosTheta * H - N;
+            float NoL = clamp(dot(N, L), 0.0, 1.0);
+            if (NoL > 0.0) {
+                color += textureCube(m_EnvMap, L).rgb * NoL;
+                totalWeight += NoL;
+            }
+        #endif
+    }
+
+    gl_FragColor = vec4(max(color / max(totalWeight, 0.0001), vec3(0.0001)), 1.0);
+}
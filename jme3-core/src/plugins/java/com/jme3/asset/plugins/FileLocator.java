@@ -33,6 +33,8 @@ package com.jme3.asset.plugins;
 
 import com.jme3.asset.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * <code>FileLocator</code> allows you to specify a folder where to
@@ -77,6 +79,18 @@ public class FileLocator implements AssetLocator {
                 throw new AssetLoadException("Failed to open file: " + file, ex);
             }
         }
+
+        @Override
+        public ByteBuffer mapContent() throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                // the mapping stays valid once the channel is closed
+                FileChannel channel = raf.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        }
     }
 
     public AssetInfo locate(AssetManager manager, AssetKey key) {
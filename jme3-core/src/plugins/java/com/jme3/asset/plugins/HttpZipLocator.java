@@ -48,8 +48,6 @@ import java.nio.charset.CoderResult;
 import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
 
 /**
@@ -326,7 +324,7 @@ public class HttpZipLocator implements AssetLocator {
     private InputStream openStream(ZipEntry2 entry) throws IOException{
         InputStream in = readData(entry.offset, entry.compSize);
         if (entry.deflate){
-            return new InflaterInputStream(in, new Inflater(true));
+            return InflaterPool.openStream(in, entry.length);
         }
         return in;
     }
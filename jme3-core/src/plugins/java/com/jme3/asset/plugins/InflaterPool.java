@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.plugins;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A pool of raw (nowrap) {@link Inflater}s shared by the zip locators.
+ * <p>
+ * Creating an Inflater allocates native zlib memory that is only freed by
+ * {@link Inflater#end() } or finalization, so inflating many small entries
+ * from several loading threads is much cheaper with recycled instances.
+ * The pool is lock free, each stream takes its own inflater so entries are
+ * inflated concurrently.
+ */
+final class InflaterPool {
+
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final ConcurrentLinkedQueue<Inflater> pool = new ConcurrentLinkedQueue<Inflater>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private InflaterPool() {
+    }
+
+    static Inflater obtain() {
+        Inflater inflater = pool.poll();
+        if (inflater == null) {
+            return new Inflater(true);
+        }
+        pooled.decrementAndGet();
+        return inflater;
+    }
+
+    static void release(Inflater inflater) {
+        if (pooled.incrementAndGet() > MAX_POOLED) {
+            pooled.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        pool.offer(inflater);
+    }
+
+    /**
+     * Opens a stream inflating the given deflated data with a pooled
+     * inflater, which is given back when the stream is closed.
+     *
+     * @param in the raw deflated data
+     * @param size the inflated size, used to size the input buffer
+     * @return the inflating stream
+     */
+    static InputStream openStream(InputStream in, long size) {
+        int bufferSize = (int) Math.max(512, Math.min(size, 8192));
+        return new PooledInflaterInputStream(in, obtain(), bufferSize);
+    }
+
+    private static final class PooledInflaterInputStream extends InflaterInputStream {
+
+        private boolean closed;
+        private boolean eof;
+
+        PooledInflaterInputStream(InputStream in, Inflater inflater, int bufferSize) {
+            super(in, inflater, bufferSize);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // nowrap inflaters may need an extra dummy byte to finish
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                super.close();
+                release(inf);
+            }
+        }
+    }
+}
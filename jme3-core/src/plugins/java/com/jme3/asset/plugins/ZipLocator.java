@@ -32,9 +32,17 @@
 package com.jme3.asset.plugins;
 
 import com.jme3.asset.*;
+import com.jme3.util.BufferUtils;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -46,14 +54,92 @@ import java.util.zip.ZipFile;
  * The root path must be a valid ZIP or ZIP-like {@link File file}, 
  * for example, <br>
  * <code>C:\My App\data.zip</code>
+ * <p>
+ * The central directory is read once into a hash index, so lookups and
+ * reads never lock and assets can be loaded concurrently by the
+ * {@link ThreadingManager}. Each entry is read on its own: small entries are
+ * read into the heap, larger ones are memory mapped and the mapping is
+ * released when the stream is closed. Stored entries are mapped alone by
+ * {@link AssetInfo#mapContent() }, so the mapping belongs to the loader.
+ * Deflated entries are inflated with pooled inflaters.
+ * Zip64 archives, which the index doesn't support, are read through a
+ * {@link ZipFile}.
  * 
  * @author Kirill Vainer
  */
 public class ZipLocator implements AssetLocator {
 
-    private ZipFile zipfile;
     private static final Logger logger = Logger.getLogger(ZipLocator.class.getName());
 
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+    /**
+     * Entries from this size are mapped rather than read, mapping costs
+     * more than reading for small entries.
+     */
+    private static final int MAP_THRESHOLD = 64 * 1024;
+
+    private File file;
+    private Map<String, Entry> entries;
+    private ZipFile zipfile;
+
+    private static final class Entry {
+
+        final String name;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long headerOffset;
+        /**
+         * Offset of the data in the archive, read from the local header
+         * the first time it is needed.
+         */
+        volatile long dataOffset = -1;
+
+        Entry(String name, int method, long compressedSize, long size, long headerOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.headerOffset = headerOffset;
+        }
+    }
+
+    private class IndexedAssetInfo extends AssetInfo {
+
+        private final Entry entry;
+
+        public IndexedAssetInfo(AssetManager manager, AssetKey key, Entry entry){
+            super(manager, key);
+            this.entry = entry;
+        }
+
+        public InputStream openStream(){
+            try{
+                InputStream in = new ByteBufferInputStream(readData(entry));
+                if (entry.method == ZipEntry.DEFLATED) {
+                    return InflaterPool.openStream(in, entry.size);
+                }
+                return in;
+            }catch (IOException ex){
+                throw new AssetLoadException("Failed to load zip entry: "+entry.name, ex);
+            }
+        }
+
+        @Override
+        public ByteBuffer mapContent() throws IOException {
+            if (entry.method != ZipEntry.STORED) {
+                // deflated entries have to be inflated through the stream
+                return null;
+            }
+            return mapData(entry);
+        }
+    }
+
     private class JarAssetInfo extends AssetInfo {
 
         private final ZipEntry entry;
@@ -72,9 +158,215 @@ public class ZipLocator implements AssetLocator {
         }
     }
 
+    /**
+     * Reads an input stream from a buffer, without copying it. A direct
+     * buffer is a mapping owned by the stream, released when it's closed.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private ByteBuffer buffer() throws IOException {
+            if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+            return buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer buffer = buffer();
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = buffer();
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            ByteBuffer buffer = buffer();
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer().remaining();
+        }
+
+        @Override
+        public void close() {
+            if (buffer != null && buffer.isDirect()) {
+                BufferUtils.destroyDirectBuffer(buffer);
+            }
+            buffer = null;
+        }
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        long offset = entry.dataOffset;
+        if (offset < 0) {
+            offset = readDataOffset(entry);
+            entry.dataOffset = offset;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the raw data of an entry, mapped on its own.
+     */
+    private ByteBuffer mapData(Entry entry) throws IOException {
+        long offset = getDataOffset(entry);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid once the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, entry.compressedSize);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the raw data of an entry, read into a heap buffer if it is
+     * small, mapped otherwise.
+     */
+    private ByteBuffer readData(Entry entry) throws IOException {
+        if (entry.compressedSize >= MAP_THRESHOLD) {
+            return mapData(entry);
+        }
+        long offset = getDataOffset(entry);
+        ByteBuffer data = ByteBuffer.allocate((int) entry.compressedSize);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            while (data.hasRemaining()) {
+                if (channel.read(data, offset + data.position()) < 0) {
+                    throw new IOException("Truncated zip entry: " + entry.name);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Returns the offset in the archive of the data of an entry, that
+     * follows its local header. ZipEntry doesn't expose it.
+     */
+    private long readDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCHDR).order(ByteOrder.LITTLE_ENDIAN);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.getChannel().read(header, entry.headerOffset);
+        } finally {
+            raf.close();
+        }
+        if (header.getInt(0) != LOCSIG) {
+            throw new IOException("Invalid local header for zip entry: " + entry.name);
+        }
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        return entry.headerOffset + LOCHDR + nameLength + extraLength;
+    }
+
+    /**
+     * Reads the central directory of the archive into the index.
+     *
+     * @return false if the archive can't be indexed, e.g. if it is a Zip64
+     * archive
+     */
+    private boolean readCentralDirectory(FileChannel channel) throws IOException {
+        // the end of central directory record is in the last 64k + 22 bytes
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, 0xFFFF + ENDHDR);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(tail, fileSize - tailSize);
+        int end = -1;
+        for (int i = tailSize - ENDHDR; i >= 0; i--) {
+            if (tail.getInt(i) == ENDSIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return false;
+        }
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long cdSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > fileSize) {
+            return false;
+        }
+
+        ByteBuffer cd = ByteBuffer.allocate((int) cdSize).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(cd, cdOffset);
+        Map<String, Entry> index = new HashMap<String, Entry>(count * 4 / 3 + 1);
+        byte[] nameBytes = new byte[256];
+        int pos = 0;
+        while (pos + CENHDR <= cdSize && cd.getInt(pos) == CENSIG) {
+            int method = cd.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+            long headerOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || headerOffset == 0xFFFFFFFFL) {
+                return false;
+            }
+            if (nameBytes.length < nameLength) {
+                nameBytes = new byte[nameLength];
+            }
+            cd.position(pos + CENHDR);
+            cd.get(nameBytes, 0, nameLength);
+            String name = new String(nameBytes, 0, nameLength, "UTF-8");
+            if (!name.endsWith("/")) {
+                if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                    logger.log(Level.WARNING, "Unsupported compression method {0} for zip entry {1}",
+                               new Object[]{method, name});
+                } else {
+                    index.put(name, new Entry(name, method, compressedSize, size, headerOffset));
+                }
+            }
+            pos += CENHDR + nameLength + extraLength + commentLength;
+        }
+        entries = index;
+        return true;
+    }
+
     public void setRootPath(String rootPath) {
+        file = new File(rootPath);
+        entries = null;
+        zipfile = null;
         try{
-            zipfile = new ZipFile(new File(rootPath), ZipFile.OPEN_READ);
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (readCentralDirectory(channel)) {
+                    return;
+                }
+            } finally {
+                raf.close();
+            }
+            zipfile = new ZipFile(file, ZipFile.OPEN_READ);
         }catch (IOException ex){
             throw new AssetLoadException("Failed to open zip file: " + rootPath, ex);
         }
@@ -83,6 +375,13 @@ public class ZipLocator implements AssetLocator {
     public AssetInfo locate(AssetManager manager, AssetKey key) {
         String name = key.getName();
         if(name.startsWith("/"))name=name.substring(1);
+        if (entries != null) {
+            Entry entry = entries.get(name);
+            if (entry == null)
+                return null;
+
+            return new IndexedAssetInfo(manager, key, entry);
+        }
         ZipEntry entry = zipfile.getEntry(name);
         if (entry == null)
             return null;
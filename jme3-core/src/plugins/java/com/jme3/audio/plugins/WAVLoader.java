@@ -37,6 +37,7 @@ import com.jme3.audio.AudioBuffer;
 import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioKey;
 import com.jme3.audio.AudioStream;
+import com.jme3.audio.PrefetchInputStream;
 import com.jme3.audio.SeekableStream;
 import com.jme3.util.BufferUtils;
 import com.jme3.util.LittleEndien;
@@ -63,8 +64,10 @@ public class WAVLoader implements AssetLoader {
     private AudioStream audioStream;
     private AudioData audioData;
     private int bytesPerSec;
+    private int bytesPerSample;
     private float duration;
 
+    private AssetInfo info;
     private ResettableInputStream in;
     private int inOffset = 0;
     
@@ -72,6 +75,8 @@ public class WAVLoader implements AssetLoader {
         
         private AssetInfo info;
         private int resetOffset = 0;
+        private int bytesPerSec;
+        private int bytesPerSample;
         
         public ResettableInputStream(AssetInfo info, InputStream in) {
             super(in);
@@ -82,14 +87,23 @@ public class WAVLoader implements AssetLoader {
             this.resetOffset = resetOffset;
         }
 
+        public void setFormat(int bytesPerSec, int bytesPerSample) {
+            this.bytesPerSec = bytesPerSec;
+            this.bytesPerSample = bytesPerSample;
+        }
+
         public void setTime(float time) {
-            if (time != 0f) {
-                throw new UnsupportedOperationException("Seeking WAV files not supported");
+            long offset = resetOffset;
+            if (time > 0f && bytesPerSample > 0) {
+                long frames = (long) (time * bytesPerSec) / bytesPerSample;
+                offset += frames * bytesPerSample;
             }
             InputStream newStream = info.openStream();
             try {
-                newStream.skip(resetOffset);
+                skipFully(newStream, offset);
+                InputStream old = this.in;
                 this.in = new BufferedInputStream(newStream);
+                old.close();
             } catch (IOException ex) {
                 // Resource could have gotten lost, etc.
                 try {
@@ -101,6 +115,20 @@ public class WAVLoader implements AssetLoader {
         }
     }
 
+    private static void skipFully(InputStream stream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = stream.skip(count);
+            if (skipped <= 0) {
+                if (stream.read() < 0) {
+                    // past the end, reads return eof
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
     private void readFormatChunk(int size) throws IOException{
         // if other compressions are supported, size doesn't have to be 16
 //        if (size != 16)
@@ -116,7 +144,7 @@ public class WAVLoader implements AssetLoader {
 
         bytesPerSec = in.readInt(); // used to calculate duration
 
-        int bytesPerSample = in.readShort();
+        bytesPerSample = in.readShort();
         int bitsPerSample = in.readShort();
 
         int expectedBytesPerSec = (bitsPerSample * channels * sampleRate) / 8;
@@ -142,7 +170,20 @@ public class WAVLoader implements AssetLoader {
         }
     }
 
-    private void readDataChunkForBuffer(int len) throws IOException {
+    private void readDataChunkForBuffer(int offset, int len) throws IOException {
+        ByteBuffer mapped = info.mapContent();
+        if (mapped != null && (long) offset + len <= mapped.limit()) {
+            // the buffer destroys its data when deleted, it gets its own copy
+            // of the samples, read from the mapping at once
+            ByteBuffer samples = mapped.duplicate();
+            samples.position(offset).limit(offset + len);
+            ByteBuffer data = BufferUtils.createByteBuffer(len);
+            data.put(samples).flip();
+            audioBuffer.updateData(data);
+            in.close();
+            return;
+        }
+
         ByteBuffer data = BufferUtils.createByteBuffer(len);
         byte[] buf = new byte[512];
         int read = 0;
@@ -155,11 +196,25 @@ public class WAVLoader implements AssetLoader {
     }
 
     private void readDataChunkForStream(int offset, int len) throws IOException {
+        ByteBuffer mapped = info.mapContent();
+        if (mapped != null && (long) offset + len <= mapped.limit()) {
+            // stream straight from the mapping, seeking is then free
+            ByteBuffer data = mapped.duplicate();
+            data.position(offset).limit(offset + len);
+            audioStream.updateData(data.slice(), duration);
+            in.close();
+            return;
+        }
+
         in.setResetOffset(offset);
-        audioStream.updateData(in, duration);
+        in.setFormat(bytesPerSec, bytesPerSample);
+        // read ahead so that the audio decoder thread never waits for the
+        // locator, the file might come from a compressed archive or the network
+        audioStream.updateData(new PrefetchInputStream(in), duration);
     }
 
     private AudioData load(AssetInfo info, InputStream inputStream, boolean stream) throws IOException{
+        this.info = info;
         this.in = new ResettableInputStream(info, inputStream);
         inOffset = 0;
         
@@ -196,12 +251,12 @@ public class WAVLoader implements AssetLoader {
                     break;
                 case i_data:
                     // Compute duration based on data chunk size
-                    duration = (float)(len / bytesPerSec);
+                    duration = len / (float) bytesPerSec;
 
                     if (readStream) {
                         readDataChunkForStream(inOffset, len);
                     } else {
-                        readDataChunkForBuffer(len);
+                        readDataChunkForBuffer(inOffset, len);
                     }
                     return audioData;
                 default:
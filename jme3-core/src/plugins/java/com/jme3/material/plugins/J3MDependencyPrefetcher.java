@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.material.plugins;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.ShaderNodeDefinitionKey;
+import com.jme3.shader.ShaderNodeDefinition;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fetches the dependencies of a material or material definition concurrently
+ * while the {@link J3MLoader} reads the statements that use them.
+ * <p>
+ * Dependencies are loaded through the asset manager on the given executor,
+ * the loader then waits for the ones it needs, in its own order.
+ * A dependency whose task hasn't started yet when it's needed is loaded in
+ * the loader thread, so loading a material from a task of the same executor
+ * can't dead lock.
+ * Failures are not reported by the prefetcher, the loader loads the
+ * dependency again and reports the error as it would without prefetching.
+ */
+class J3MDependencyPrefetcher {
+
+    private static final Logger logger = Logger.getLogger(J3MDependencyPrefetcher.class.getName());
+
+    private final AssetManager assetManager;
+    private final Executor executor;
+    private final Map<AssetKey<?>, FutureTask<?>> tasks = new HashMap<>();
+
+    J3MDependencyPrefetcher(AssetManager assetManager, Executor executor) {
+        this.assetManager = assetManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts loading the asset with the given key.
+     *
+     * @param key the key of the asset
+     */
+    <T> void prefetch(final AssetKey<T> key) {
+        submit(key, new Callable<T>() {
+            public T call() throws Exception {
+                return assetManager.loadAsset(key);
+            }
+        });
+    }
+
+    /**
+     * Starts loading the shader node definitions at the given path, and the
+     * shader sources they use.
+     *
+     * @param path the path of the j3sn file
+     */
+    void prefetchNodeDefinitions(String path) {
+        final ShaderNodeDefinitionKey key = new ShaderNodeDefinitionKey(path);
+        submit(key, new Callable<List<ShaderNodeDefinition>>() {
+            public List<ShaderNodeDefinition> call() throws Exception {
+                List<ShaderNodeDefinition> defs = assetManager.loadAsset(key);
+                for (ShaderNodeDefinition def : defs) {
+                    for (String shaderPath : def.getShadersPath()) {
+                        assetManager.loadAsset(new AssetKey<String>(shaderPath));
+                    }
+                }
+                return defs;
+            }
+        });
+    }
+
+    private <T> void submit(AssetKey<T> key, Callable<T> callable) {
+        if (tasks.containsKey(key)) {
+            return;
+        }
+        FutureTask<T> task = new FutureTask<>(callable);
+        tasks.put(key, task);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // will be run by await
+        }
+    }
+
+    /**
+     * Waits for the asset with the given key to be loaded.
+     *
+     * @param key the key of the asset
+     * @return the loaded asset, or null if it was not prefetched or failed to
+     * load
+     */
+    <T> T await(AssetKey<T> key) {
+        // submit only maps a key to a task computing the key's asset type
+        @SuppressWarnings("unchecked")
+        FutureTask<T> task = (FutureTask<T>) tasks.get(key);
+        if (task == null) {
+            return null;
+        }
+        // runs the task here if no worker picked it up yet
+        task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            logger.log(Level.FINE, "Failed to prefetch " + key, ex.getCause());
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Releases the references to the prefetched assets. Tasks still running
+     * complete in the background and leave their result in the asset cache.
+     */
+    void release() {
+        tasks.clear();
+    }
+}
@@ -60,6 +60,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -68,12 +69,14 @@ import java.util.regex.Pattern;
 public class J3MLoader implements AssetLoader {
 
     private static final Logger logger = Logger.getLogger(J3MLoader.class.getName());
+    private static volatile Executor dependencyExecutor;
    // private ErrorLogger errors;
     private ShaderNodeLoaderDelegate nodesLoaderDelegate;
     boolean isUseNodes = false;
 
     private AssetManager assetManager;
     private AssetKey key;
+    private J3MDependencyPrefetcher prefetcher;
 
     private MaterialDef materialDef;
     private Material material;
@@ -91,6 +94,32 @@ public class J3MLoader implements AssetLoader {
         shaderNames = new EnumMap<>(Shader.ShaderType.class);
     }
 
+    /**
+     * Sets the executor used to load the dependencies of materials
+     * concurrently.
+     * <p>
+     * When set, the dependencies of a material definition (shader sources,
+     * shader node definitions) or of a material (textures) are discovered
+     * right after parsing and fetched in parallel on this executor, instead
+     * of one after the other as the statements are read.
+     * default is null, dependencies are loaded synchronously.
+     *
+     * @param executor the executor, or null to disable concurrent loading
+     */
+    public static void setDependencyExecutor(Executor executor) {
+        dependencyExecutor = executor;
+    }
+
+    /**
+     * returns the executor used to load the dependencies of materials
+     * concurrently, or null if they are loaded synchronously.
+     *
+     * @return the executor
+     */
+    public static Executor getDependencyExecutor() {
+        return dependencyExecutor;
+    }
+
 
     // <TYPE> <LANG> : <SOURCE>
     private void readShaderStatement(String statement) throws IOException {
@@ -207,10 +236,8 @@ public class J3MLoader implements AssetLoader {
         return false;
     }
 
-    private Texture parseTextureType(final VarType type, final String value) {
-        final List<String> textureValues = tokenizeTextureValue(value);
-        final List<TextureOptionValue> textureOptionValues = parseTextureOptions(textureValues);
-
+    private TextureKey createTextureKey(final VarType type, final String value, final List<String> textureValues,
+                                        final List<TextureOptionValue> textureOptionValues) {
         TextureKey textureKey = null;
 
         // If there is only one token on the value, it must be the path to the texture.
@@ -272,9 +299,21 @@ public class J3MLoader implements AssetLoader {
 
         textureKey.setGenerateMips(true);
 
+        return textureKey;
+    }
+
+    private Texture parseTextureType(final VarType type, final String value) {
+        final List<String> textureValues = tokenizeTextureValue(value);
+        final List<TextureOptionValue> textureOptionValues = parseTextureOptions(textureValues);
+
+        TextureKey textureKey = createTextureKey(type, value, textureValues, textureOptionValues);
+
         Texture texture;
 
         try {
+            if (prefetcher != null) {
+                prefetcher.await(textureKey);
+            }
             texture = assetManager.loadTexture(textureKey);
         } catch (AssetNotFoundException ex){
             logger.log(Level.WARNING, "Cannot locate {0} for material {1}", new Object[]{textureKey, key});
@@ -726,6 +765,9 @@ public class J3MLoader implements AssetLoader {
             material.setKey(key);
             material.setName(split[0].trim());
 //            material.setAssetName(fileName);
+            if (prefetcher != null) {
+                prefetchTextures(materialStat);
+            }
         }else if (split.length == 1){
             if (extending){
                 throw new MatParseException("Expected ':', got '{'", materialStat);
@@ -733,6 +775,9 @@ public class J3MLoader implements AssetLoader {
             materialDef = new MaterialDef(assetManager, materialName);
             // NOTE: pass file name for defs so they can be loaded later
             materialDef.setAssetName(key.getName());
+            if (prefetcher != null) {
+                prefetchShaders(materialStat);
+            }
         }else{
             throw new MatParseException("Cannot use colon in material name/path", materialStat);
         }
@@ -760,6 +805,61 @@ public class J3MLoader implements AssetLoader {
         }
     }
 
+    /**
+     * Starts loading the textures referenced by the parameters of a material.
+     */
+    private void prefetchTextures(Statement materialStat) {
+        for (Statement statement : materialStat.getContents()) {
+            if (!statement.getLine().startsWith("MaterialParameters")) {
+                continue;
+            }
+            for (Statement paramStat : statement.getContents()) {
+                String[] split = paramStat.getLine().split(":", 2);
+                if (split.length != 2) {
+                    continue;
+                }
+                MatParam p = material.getMaterialDef().getMaterialParam(split[0].trim());
+                if (p != null && p.getVarType().isTextureType()) {
+                    List<String> textureValues = tokenizeTextureValue(split[1]);
+                    List<TextureOptionValue> textureOptionValues = parseTextureOptions(textureValues);
+                    prefetcher.prefetch(createTextureKey(p.getVarType(), split[1], textureValues, textureOptionValues));
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts loading the shader sources and shader node definitions used by
+     * the techniques of a material definition.
+     * The sources are only needed when the shaders are generated, fetching
+     * them now puts them in the asset cache.
+     */
+    private void prefetchShaders(Statement materialStat) {
+        for (Statement techStat : materialStat.getContents()) {
+            if (!techStat.getLine().startsWith("Technique")) {
+                continue;
+            }
+            for (Statement statement : techStat.getContents()) {
+                String line = statement.getLine();
+                if (line.startsWith("VertexShaderNodes") || line.startsWith("FragmentShaderNodes")) {
+                    for (Statement nodeStat : statement.getContents()) {
+                        for (Statement nodeContent : nodeStat.getContents()) {
+                            String[] split = nodeContent.getLine().split(":");
+                            if (split.length == 3 && split[0].trim().equals("Definition")) {
+                                prefetcher.prefetchNodeDefinitions(split[2].trim());
+                            }
+                        }
+                    }
+                } else if (line.split(whitespacePattern)[0].endsWith("Shader")) {
+                    String[] split = line.split(":");
+                    if (split.length == 2) {
+                        prefetcher.prefetch(new AssetKey<String>(split[1].trim()));
+                    }
+                }
+            }
+        }
+    }
+
     public Object load(AssetInfo info) throws IOException {
         this.assetManager = info.getManager();
 
@@ -771,11 +871,19 @@ public class J3MLoader implements AssetLoader {
             } else if (key.getExtension().equals("j3md") && key instanceof MaterialKey) {
                 throw new IOException("Material definitions must be loaded via AssetKey");
             }
-            loadFromRoot(BlockLanguageParser.parse(in));
+            Executor executor = dependencyExecutor;
+            if (executor != null) {
+                prefetcher = new J3MDependencyPrefetcher(assetManager, executor);
+            }
+            loadFromRoot(BlockLanguageParser.parseCached(in));
         } finally {
             if (in != null){
                 in.close();
             }
+            if (prefetcher != null) {
+                prefetcher.release();
+                prefetcher = null;
+            }
         }
 
         if (material != null){
@@ -806,6 +914,7 @@ public class J3MLoader implements AssetLoader {
                 nodesLoaderDelegate.setTechniqueDef(technique);
                 nodesLoaderDelegate.setMaterialDef(materialDef);
                 nodesLoaderDelegate.setAssetManager(assetManager);
+                nodesLoaderDelegate.setPrefetcher(prefetcher);
             }
         }
     }
@@ -65,7 +65,7 @@ public class ShaderNodeDefinitionLoader implements AssetLoader {
         loaderDelegate = new ShaderNodeLoaderDelegate();
 
         InputStream in = assetInfo.openStream();
-        List<Statement> roots = BlockLanguageParser.parse(in);
+        List<Statement> roots = BlockLanguageParser.parseCached(in);
 
         if (roots.size() == 2) {
             Statement exception = roots.get(0);
@@ -75,6 +75,7 @@ public class ShaderNodeLoaderDelegate {
     protected Map<String, DeclaredVariable> fragmentDeclaredUniforms = new HashMap<String, DeclaredVariable>();
     protected Map<String, DeclaredVariable> varyings = new HashMap<String, DeclaredVariable>();
     protected MaterialDef materialDef;
+    protected J3MDependencyPrefetcher prefetcher;
     protected String shaderLanguage;
     protected String shaderName;
     protected String varNames = "";
@@ -920,6 +921,16 @@ public class ShaderNodeLoaderDelegate {
         this.assetManager = assetManager;
     }
 
+    /**
+     * sets the prefetcher holding the shader node definitions fetched
+     * concurrently by the J3MLoader
+     *
+     * @param prefetcher the prefetcher or null
+     */
+    void setPrefetcher(J3MDependencyPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
     /**
      * find the definition from this statement (loads it if necessary)
      *
@@ -935,8 +946,14 @@ public class ShaderNodeLoaderDelegate {
         if (def == null) {
             if (defLine.length == 3) {
                 List<ShaderNodeDefinition> defs = null;
+                ShaderNodeDefinitionKey defKey = new ShaderNodeDefinitionKey(defLine[2].trim());
+                if (prefetcher != null) {
+                    defs = prefetcher.await(defKey);
+                }
                 try {
-                    defs = assetManager.loadAsset(new ShaderNodeDefinitionKey(defLine[2].trim()));
+                    if (defs == null) {
+                        defs = assetManager.loadAsset(defKey);
+                    }
                 } catch (AssetNotFoundException e) {
                     throw new MatParseException("Couldn't find " + defLine[2].trim(), statement, e);
                 }
@@ -34,295 +34,692 @@ package com.jme3.scene.plugins;
 import com.jme3.asset.*;
 import com.jme3.material.Material;
 import com.jme3.material.MaterialList;
-import com.jme3.math.Vector2f;
-import com.jme3.math.Vector3f;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
 import com.jme3.scene.*;
 import com.jme3.scene.Mesh.Mode;
 import com.jme3.scene.VertexBuffer.Type;
-import com.jme3.scene.mesh.IndexBuffer;
-import com.jme3.scene.mesh.IndexIntBuffer;
-import com.jme3.scene.mesh.IndexShortBuffer;
 import com.jme3.util.BufferUtils;
-import com.jme3.util.IntMap;
+import com.jme3.util.ParallelTasks;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Reads OBJ format models.
+ * <p>
+ * The file is tokenized as bytes, from a memory mapping when the locator
+ * supports it. Large files are split in chunks at line boundaries that are
+ * parsed in parallel: a first pass counts the vertex attributes of each
+ * chunk so that the second pass can resolve relative indices and write the
+ * attributes straight to their place in the shared arrays. Faces are kept
+ * as primitive arrays per material and the vertices are deduplicated with
+ * an open addressing table when the meshes are built.
  */
 public final class OBJLoader implements AssetLoader {
 
     private static final Logger logger = Logger.getLogger(OBJLoader.class.getName());
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The size of the chunks of the file parsed in parallel.
+     */
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int STATEMENT_EMPTY = 0;
+    private static final int STATEMENT_COMMENT = 1;
+    private static final int STATEMENT_VERTEX = 2;
+    private static final int STATEMENT_TEXCOORD = 3;
+    private static final int STATEMENT_NORMAL = 4;
+    private static final int STATEMENT_FACE = 5;
+    private static final int STATEMENT_USEMTL = 6;
+    private static final int STATEMENT_MTLLIB = 7;
+    private static final int STATEMENT_IGNORED = 8;
+    private static final int STATEMENT_UNKNOWN = 9;
+
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private static volatile Executor parseExecutor = ParallelTasks.getSharedExecutor();
 
-    protected final ArrayList<Vector3f> verts = new ArrayList<Vector3f>();
-    protected final ArrayList<Vector2f> texCoords = new ArrayList<Vector2f>();
-    protected final ArrayList<Vector3f> norms = new ArrayList<Vector3f>();
-    
-    protected final ArrayList<Face> faces = new ArrayList<Face>();
-    protected final HashMap<String, ArrayList<Face>> matFaces = new HashMap<String, ArrayList<Face>>();
-    
-    protected String currentMatName;
-    protected String currentObjectName;
-
-    protected final HashMap<Vertex, Integer> vertIndexMap = new HashMap<Vertex, Integer>(100);
-    protected final IntMap<Vertex> indexVertMap = new IntMap<Vertex>(100);
-    protected int curIndex    = 0;
-    protected int objectIndex = 0;
-    protected int geomIndex   = 0;
-
-    protected Scanner scan;
     protected ModelKey key;
     protected AssetManager assetManager;
     protected MaterialList matList;
+    protected int geomIndex = 0;
 
     protected String objName;
     protected Node objNode;
 
-    protected static class Vertex {
+    /**
+     * Sets the executor on which large OBJ files are parsed in parallel.
+     * The loading thread parses chunks as well.
+     * By default a shared pool of daemon threads is used, one per
+     * available processor.
+     *
+     * @param executor the executor, or null to parse on the loading thread
+     * only
+     */
+    public static void setParseExecutor(Executor executor) {
+        parseExecutor = executor;
+    }
 
-        Vector3f v;
-        Vector2f vt;
-        Vector3f vn;
-        int index;
+    /**
+     * @return the executor on which OBJ files are parsed, or null if they
+     * are parsed on the loading thread only
+     */
+    public static Executor getParseExecutor() {
+        return parseExecutor;
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            final Vertex other = (Vertex) obj;
-            if (this.v != other.v && (this.v == null || !this.v.equals(other.v))) {
-                return false;
-            }
-            if (this.vt != other.vt && (this.vt == null || !this.vt.equals(other.vt))) {
-                return false;
-            }
-            if (this.vn != other.vn && (this.vn == null || !this.vn.equals(other.vn))) {
-                return false;
-            }
-            return true;
+    public void reset(){
+        key = null;
+        assetManager = null;
+        matList = null;
+        geomIndex = 0;
+        objName = null;
+        objNode = null;
+    }
+
+    /**
+     * A growable array of ints.
+     */
+    private static final class IntArray {
+
+        int[] array;
+        int size;
+
+        IntArray(int capacity) {
+            array = new int[Math.max(capacity, 16)];
         }
 
-        @Override
-        public int hashCode() {
-            int hash = 5;
-            hash = 53 * hash + (this.v != null ? this.v.hashCode() : 0);
-            hash = 53 * hash + (this.vt != null ? this.vt.hashCode() : 0);
-            hash = 53 * hash + (this.vn != null ? this.vn.hashCode() : 0);
-            return hash;
+        void add(int value) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+            }
+            array[size++] = value;
         }
     }
-    
-    protected static class Face {
-        Vertex[] verticies;
+
+    /**
+     * The attributes of all the vertices of the file, in file order.
+     */
+    private static final class Attributes {
+
+        final float[] positions;
+        final float[] texCoords;
+        final float[] normals;
+
+        Attributes(int positionCount, int texCoordCount, int normalCount) {
+            positions = new float[positionCount * 3];
+            texCoords = new float[texCoordCount * 2];
+            normals = new float[normalCount * 3];
+        }
     }
-    
-    protected class ObjectGroup {
-        
-        final String objectName;
-        
-        public ObjectGroup(String objectName){
-            this.objectName = objectName;
+
+    /**
+     * A range of lines of the file. The first pass counts its statements,
+     * the second one parses them.
+     */
+    private static final class Chunk {
+
+        final ByteBuffer data;
+        final int start;
+        final int end;
+        int pos;
+
+        // first pass
+        int positionCount, texCoordCount, normalCount;
+        String lastMaterial;
+        boolean hasMaterial;
+        final List<String> mtlLibs = new ArrayList<String>(1);
+
+        // second pass
+        int positionBase, texCoordBase, normalBase;
+        String material;
+        /**
+         * Faces per material, each face is stored as its number of corners
+         * followed by the position, texcoord and normal indices of the
+         * corners, -1 when missing.
+         */
+        final LinkedHashMap<String, IntArray> faces = new LinkedHashMap<String, IntArray>();
+        final Set<String> unknownStatements = new HashSet<String>();
+        int ignoredPolygons;
+        private final int[] corners = new int[12];
+
+        Chunk(ByteBuffer data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
         }
-        
-        public Spatial createGeometry(){
-            Node groupNode = new Node(objectName);
-            if (objectName == null) {
-                groupNode.setName("Model");
-            }
-//            if (matFaces.size() > 0){
-//                for (Entry<String, ArrayList<Face>> entry : matFaces.entrySet()){
-//                    ArrayList<Face> materialFaces = entry.getValue();
-//                    if (materialFaces.size() > 0){
-//                        Geometry geom = createGeometry(materialFaces, entry.getKey());
-//                        objNode.attachChild(geom);
-//                    }
-//                }
-//            }else if (faces.size() > 0){
-//                // generate final geometry
-//                Geometry geom = createGeometry(faces, null);
-//                objNode.attachChild(geom);
-//            }
-            
-            return groupNode;
+
+        private boolean isBlank(int c) {
+            return c == ' ' || c == '\t' || c == '\r';
         }
-    }
 
-    public void reset(){
-        verts.clear();
-        texCoords.clear();
-        norms.clear();
-        faces.clear();
-        matFaces.clear();
+        private void skipBlanks() {
+            while (pos < end && isBlank(data.get(pos))) {
+                pos++;
+            }
+        }
 
-        vertIndexMap.clear();
-        indexVertMap.clear();
+        private boolean atEndOfLine() {
+            return pos >= end || data.get(pos) == '\n';
+        }
 
-        currentMatName = null;
-        matList = null;
-        curIndex = 0;
-        geomIndex = 0;
-        scan = null;
-    }
+        private void nextLine() {
+            while (pos < end && data.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
 
-    protected void findVertexIndex(Vertex vert){
-        Integer index = vertIndexMap.get(vert);
-        if (index != null){
-            vert.index = index.intValue();
-        }else{
-            vert.index = curIndex++;
-            vertIndexMap.put(vert, vert.index);
-            indexVertMap.put(vert.index, vert);
+        private int tokenEnd() {
+            int p = pos;
+            while (p < end) {
+                byte c = data.get(p);
+                if (isBlank(c) || c == '\n') {
+                    break;
+                }
+                p++;
+            }
+            return p;
         }
-    }
 
-    protected Face[] quadToTriangle(Face f){
-        assert f.verticies.length == 4;
-
-        Face[] t = new Face[]{ new Face(), new Face() };
-        t[0].verticies = new Vertex[3];
-        t[1].verticies = new Vertex[3];
-
-        Vertex v0 = f.verticies[0];
-        Vertex v1 = f.verticies[1];
-        Vertex v2 = f.verticies[2];
-        Vertex v3 = f.verticies[3];
-
-        // find the pair of verticies that is closest to each over
-        // v0 and v2
-        // OR
-        // v1 and v3
-        float d1 = v0.v.distanceSquared(v2.v);
-        float d2 = v1.v.distanceSquared(v3.v);
-        if (d1 < d2){
-            // put an edge in v0, v2
-            t[0].verticies[0] = v0;
-            t[0].verticies[1] = v1;
-            t[0].verticies[2] = v3;
-
-            t[1].verticies[0] = v1;
-            t[1].verticies[1] = v2;
-            t[1].verticies[2] = v3;
-        }else{
-            // put an edge in v1, v3
-            t[0].verticies[0] = v0;
-            t[0].verticies[1] = v1;
-            t[0].verticies[2] = v2;
+        private boolean keywordEquals(int from, int to, String keyword) {
+            if (to - from != keyword.length()) {
+                return false;
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                if (data.get(from + i) != keyword.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-            t[1].verticies[0] = v0;
-            t[1].verticies[1] = v2;
-            t[1].verticies[2] = v3;
+        private String string(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = data.get(from + i);
+            }
+            return new String(bytes, UTF8);
         }
 
-        return t;
-    }
+        /**
+         * Reads the next token of the line.
+         */
+        private String token() {
+            skipBlanks();
+            int from = pos;
+            pos = tokenEnd();
+            return string(from, pos);
+        }
 
-    private ArrayList<Vertex> vertList = new ArrayList<Vertex>();
+        /**
+         * Reads the rest of the line, trimmed.
+         */
+        private String restOfLine() {
+            skipBlanks();
+            int from = pos;
+            int to = from;
+            while (pos < end && data.get(pos) != '\n') {
+                if (!isBlank(data.get(pos))) {
+                    to = pos + 1;
+                }
+                pos++;
+            }
+            return string(from, to);
+        }
 
-    protected void readFace(){
-        Face f = new Face();
-        vertList.clear();
+        /**
+         * Reads the keyword at the start of the line at pos and leaves pos
+         * after it.
+         */
+        private int statement() {
+            skipBlanks();
+            if (atEndOfLine()) {
+                return STATEMENT_EMPTY;
+            }
+            if (data.get(pos) == '#') {
+                return STATEMENT_COMMENT;
+            }
+            int from = pos;
+            int to = tokenEnd();
+            pos = to;
+            int length = to - from;
+            byte c0 = data.get(from);
+            if (length == 1) {
+                switch (c0) {
+                    case 'v':
+                        return STATEMENT_VERTEX;
+                    case 'f':
+                        return STATEMENT_FACE;
+                    case 's':
+                    case 'g':
+                    case 'o':
+                        return STATEMENT_IGNORED;
+                    default:
+                        return STATEMENT_UNKNOWN;
+                }
+            } else if (length == 2 && c0 == 'v') {
+                byte c1 = data.get(from + 1);
+                if (c1 == 't') {
+                    return STATEMENT_TEXCOORD;
+                } else if (c1 == 'n') {
+                    return STATEMENT_NORMAL;
+                }
+            } else if (keywordEquals(from, to, "usemtl")) {
+                return STATEMENT_USEMTL;
+            } else if (keywordEquals(from, to, "mtllib")) {
+                return STATEMENT_MTLLIB;
+            }
+            return STATEMENT_UNKNOWN;
+        }
 
-        String line = scan.nextLine().trim();
-        String[] verticies = line.split("\\s+");
-        for (String vertex : verticies){
-            int v = 0;
-            int vt = 0;
-            int vn = 0;
+        /**
+         * First pass, counts the vertex attributes and finds the material
+         * statements.
+         */
+        void count() {
+            pos = start;
+            while (pos < end) {
+                switch (statement()) {
+                    case STATEMENT_VERTEX:
+                        positionCount++;
+                        break;
+                    case STATEMENT_TEXCOORD:
+                        texCoordCount++;
+                        break;
+                    case STATEMENT_NORMAL:
+                        normalCount++;
+                        break;
+                    case STATEMENT_USEMTL:
+                        lastMaterial = token();
+                        hasMaterial = true;
+                        break;
+                    case STATEMENT_MTLLIB:
+                        mtlLibs.add(restOfLine());
+                        break;
+                    default:
+                        break;
+                }
+                nextLine();
+            }
+        }
 
-            String[] split = vertex.split("/");
-            if (split.length == 1){
-                v = Integer.parseInt(split[0].trim());
-            }else if (split.length == 2){
-                v = Integer.parseInt(split[0].trim());
-                vt = Integer.parseInt(split[1].trim());
-            }else if (split.length == 3 && !split[1].equals("")){
-                v = Integer.parseInt(split[0].trim());
-                vt = Integer.parseInt(split[1].trim());
-                vn = Integer.parseInt(split[2].trim());
-            }else if (split.length == 3){
-                v = Integer.parseInt(split[0].trim());
-                vn = Integer.parseInt(split[2].trim());
+        /**
+         * Second pass, parses the statements.
+         */
+        void parse(Attributes attributes) throws IOException {
+            pos = start;
+            int positionIndex = positionBase;
+            int texCoordIndex = texCoordBase;
+            int normalIndex = normalBase;
+            IntArray materialFaces = null;
+
+            while (pos < end) {
+                int lineStart = pos;
+                int statement = statement();
+                switch (statement) {
+                    case STATEMENT_VERTEX:
+                        // vertex position
+                        attributes.positions[positionIndex * 3] = parseFloat();
+                        attributes.positions[positionIndex * 3 + 1] = parseFloat();
+                        attributes.positions[positionIndex * 3 + 2] = parseFloat();
+                        positionIndex++;
+                        break;
+                    case STATEMENT_TEXCOORD:
+                        // texture coordinate
+                        attributes.texCoords[texCoordIndex * 2] = parseFloat();
+                        skipBlanks();
+                        if (!atEndOfLine()) {
+                            attributes.texCoords[texCoordIndex * 2 + 1] = parseFloat();
+                        }
+                        texCoordIndex++;
+                        break;
+                    case STATEMENT_NORMAL:
+                        // vertex normal
+                        attributes.normals[normalIndex * 3] = parseFloat();
+                        attributes.normals[normalIndex * 3 + 1] = parseFloat();
+                        attributes.normals[normalIndex * 3 + 2] = parseFloat();
+                        normalIndex++;
+                        break;
+                    case STATEMENT_FACE:
+                        // face, can be triangle, quad, or polygon (unsupported)
+                        if (materialFaces == null) {
+                            materialFaces = faces.get(material);
+                            if (materialFaces == null) {
+                                materialFaces = new IntArray(1024);
+                                faces.put(material, materialFaces);
+                            }
+                        }
+                        parseFace(materialFaces, positionIndex, texCoordIndex, normalIndex);
+                        break;
+                    case STATEMENT_USEMTL:
+                        // use material from MTL lib for the following faces
+                        material = token();
+                        materialFaces = null;
+                        break;
+                    case STATEMENT_UNKNOWN:
+                        pos = lineStart;
+                        skipBlanks();
+                        unknownStatements.add(string(pos, tokenEnd()));
+                        break;
+                    default:
+                        break;
+                }
+                nextLine();
             }
-            
-            if (v < 0) {
-                v = verts.size() + v + 1;
+        }
+
+        private void parseFace(IntArray store, int positionCount, int texCoordCount, int normalCount)
+                throws IOException {
+            int count = 0;
+            while (true) {
+                skipBlanks();
+                if (atEndOfLine()) {
+                    break;
+                }
+                if (count == 4) {
+                    count++;
+                    break;
+                }
+                int v = parseIndex(positionCount);
+                int vt = -1;
+                int vn = -1;
+                if (pos < end && data.get(pos) == '/') {
+                    pos++;
+                    if (pos < end && data.get(pos) != '/') {
+                        vt = parseIndex(texCoordCount);
+                    }
+                    if (pos < end && data.get(pos) == '/') {
+                        pos++;
+                        vn = parseIndex(normalCount);
+                    }
+                }
+                corners[count * 3] = v;
+                corners[count * 3 + 1] = vt;
+                corners[count * 3 + 2] = vn;
+                count++;
             }
-            if (vt < 0) {
-                vt = texCoords.size() + vt + 1;
+
+            if (count > 4 || count <= 2) {
+                ignoredPolygons++;
+                return;
             }
-            if (vn < 0) {
-                vn = norms.size() + vn + 1;
+            store.add(count);
+            for (int i = 0; i < count * 3; i++) {
+                store.add(corners[i]);
             }
+        }
 
-            Vertex vx = new Vertex();
-            vx.v = verts.get(v - 1);
+        /**
+         * Parses a 1-based index, negative indices being relative to the
+         * given count.
+         *
+         * @return the 0-based index
+         */
+        private int parseIndex(int count) throws IOException {
+            boolean negative = false;
+            if (pos < end && data.get(pos) == '-') {
+                negative = true;
+                pos++;
+            }
+            int value = 0;
+            int from = pos;
+            byte c;
+            while (pos < end && (c = data.get(pos)) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                pos++;
+            }
+            if (pos == from) {
+                throw new IOException("Invalid index in OBJ face: " + string(from, tokenEnd()));
+            }
+            return negative ? count - value : value - 1;
+        }
 
-            if (vt > 0)
-                vx.vt = texCoords.get(vt - 1);
+        private float parseFloat() throws IOException {
+            skipBlanks();
+            int from = pos;
+            boolean negative = false;
+            byte c = pos < end ? data.get(pos) : 0;
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                pos++;
+            }
 
-            if (vn > 0)
-                vx.vn = norms.get(vn - 1);
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean any = false;
+            while (pos < end && (c = data.get(pos)) >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    exponent++;
+                }
+                any = true;
+                pos++;
+            }
+            if (pos < end && data.get(pos) == '.') {
+                pos++;
+                while (pos < end && (c = data.get(pos)) >= '0' && c <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        exponent--;
+                    }
+                    any = true;
+                    pos++;
+                }
+            }
+            if (any && pos < end && ((c = data.get(pos)) == 'e' || c == 'E')) {
+                pos++;
+                boolean negativeExponent = false;
+                c = pos < end ? data.get(pos) : 0;
+                if (c == '-' || c == '+') {
+                    negativeExponent = c == '-';
+                    pos++;
+                }
+                int value = 0;
+                int exponentFrom = pos;
+                while (pos < end && (c = data.get(pos)) >= '0' && c <= '9') {
+                    value = Math.min(value * 10 + (c - '0'), 1000);
+                    pos++;
+                }
+                if (pos == exponentFrom) {
+                    any = false;
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            if (!any || (pos < end && !isBlank(data.get(pos)) && data.get(pos) != '\n')) {
+                // anything unusual, such as nan or inf, goes through the JDK
+                pos = from;
+                int to = tokenEnd();
+                pos = to;
+                try {
+                    return Float.parseFloat(string(from, to));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid number in OBJ: " + string(from, to), ex);
+                }
+            }
 
-            vertList.add(vx);
+            double value = mantissa;
+            if (exponent < 0) {
+                value = -exponent < POW10.length ? value / POW10[-exponent] : value * Math.pow(10, exponent);
+            } else if (exponent > 0) {
+                value = exponent < POW10.length ? value * POW10[exponent] : value * Math.pow(10, exponent);
+            }
+            return (float) (negative ? -value : value);
         }
+    }
 
-        if (vertList.size() > 4 || vertList.size() <= 2) {
-            logger.warning("Edge or polygon detected in OBJ. Ignored.");
-            return;
+    /**
+     * An open addressing table from the position, texcoord and normal
+     * indices of a corner to the index of the vertex in the mesh.
+     */
+    private static final class VertexTable {
+
+        private int[] slots;
+        private int mask;
+        final IntArray vertices;
+
+        VertexTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            slots = new int[capacity];
+            mask = capacity - 1;
+            vertices = new IntArray(expected * 3);
         }
 
-        f.verticies = new Vertex[vertList.size()];
-        for (int i = 0; i < vertList.size(); i++){
-            f.verticies[i] = vertList.get(i);
+        private static int hash(int v, int vt, int vn) {
+            int h = v * 0x9E3779B1 ^ vt * 0x85EBCA6B ^ vn * 0xC2B2AE35;
+            return h ^ (h >>> 16);
         }
 
-        if (matList != null && matFaces.containsKey(currentMatName)){
-            matFaces.get(currentMatName).add(f);
-        }else{
-            faces.add(f); // faces that belong to the default material
+        int indexOf(int v, int vt, int vn) {
+            int[] verts = vertices.array;
+            int slot = hash(v, vt, vn) & mask;
+            while (true) {
+                int entry = slots[slot];
+                if (entry == 0) {
+                    break;
+                }
+                int index = entry - 1;
+                if (verts[index * 3] == v && verts[index * 3 + 1] == vt && verts[index * 3 + 2] == vn) {
+                    return index;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            int index = vertices.size / 3;
+            vertices.add(v);
+            vertices.add(vt);
+            vertices.add(vn);
+            slots[slot] = index + 1;
+            if ((index + 1) * 2 > slots.length) {
+                grow();
+            }
+            return index;
+        }
+
+        private void grow() {
+            int[] verts = vertices.array;
+            int count = vertices.size / 3;
+            slots = new int[slots.length * 2];
+            mask = slots.length - 1;
+            for (int index = 0; index < count; index++) {
+                int slot = hash(verts[index * 3], verts[index * 3 + 1], verts[index * 3 + 2]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = index + 1;
+            }
         }
     }
 
-    protected Vector3f readVector3(){
-        Vector3f v = new Vector3f();
+    private interface Task {
 
-        v.set(Float.parseFloat(scan.next()),
-              Float.parseFloat(scan.next()),
-              Float.parseFloat(scan.next()));
+        void run() throws IOException;
+    }
 
-        return v;
+    /**
+     * Runs the tasks on the parse executor and on the calling thread.
+     */
+    private static void runTasks(List<? extends Task> tasks) throws IOException {
+        List<Runnable> runnables = new ArrayList<Runnable>(tasks.size());
+        for (final Task task : tasks) {
+            runnables.add(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (IOException ex) {
+                        throw new TaskException(ex);
+                    }
+                }
+            });
+        }
+        try {
+            ParallelTasks.runAll(runnables, getParseExecutor());
+        } catch (TaskException ex) {
+            throw (IOException) ex.getCause();
+        } catch (RuntimeException ex) {
+            throw new IOException("Failed to load OBJ", ex);
+        }
     }
 
-    protected Vector2f readVector2(){
-        Vector2f v = new Vector2f();
+    /**
+     * Carries the IOException of a task out of {@link ParallelTasks#runAll }.
+     */
+    private static class TaskException extends RuntimeException {
 
-        String line = scan.nextLine().trim();
-        String[] split = line.split("\\s+");
-        v.setX( Float.parseFloat(split[0].trim()) );
-        v.setY( Float.parseFloat(split[1].trim()) );
+        TaskException(IOException cause) {
+            super(cause);
+        }
+    }
 
-//        v.setX(scan.nextFloat());
-//        if (scan.hasNextFloat()){
-//            v.setY(scan.nextFloat());
-//            if (scan.hasNextFloat()){
-//                scan.nextFloat(); // ignore
-//            }
-//        }
+    private static ByteBuffer readContent(AssetInfo info) throws IOException {
+        ByteBuffer mapped = info.mapContent();
+        if (mapped != null) {
+            return mapped;
+        }
 
-        return v;
+        InputStream in = null;
+        try {
+            in = info.openStream();
+            byte[] data = new byte[64 * 1024];
+            int length = 0;
+            while (true) {
+                if (length == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                int read = in.read(data, length, data.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            return ByteBuffer.wrap(data, 0, length);
+        } finally {
+            if (in != null){
+                in.close();
+            }
+        }
+    }
+
+    private static List<Chunk> split(ByteBuffer data) {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        int length = data.limit();
+        int start = 0;
+        while (start < length) {
+            int end = (int) Math.min((long) start + CHUNK_SIZE, length);
+            // chunks end after a new line
+            while (end < length && data.get(end - 1) != '\n') {
+                end++;
+            }
+            chunks.add(new Chunk(data, start, end));
+            start = end;
+        }
+        return chunks;
     }
 
     protected void loadMtlLib(String name) throws IOException{
@@ -332,79 +729,22 @@ public final class OBJLoader implements AssetLoader {
         // NOTE: Cut off any relative/absolute paths
         name = new File(name).getName();
         AssetKey mtlKey = new AssetKey(key.getFolder() + name);
+        MaterialList list = null;
         try {
-            matList = (MaterialList) assetManager.loadAsset(mtlKey);
+            list = (MaterialList) assetManager.loadAsset(mtlKey);
         } catch (AssetNotFoundException ex){
             logger.log(Level.WARNING, "Cannot locate {0} for model {1}", new Object[]{name, key});
         }
 
-        if (matList != null){
-            // create face lists for every material
-            for (String matName : matList.keySet()){
-                matFaces.put(matName, new ArrayList<Face>());
+        if (list != null){
+            if (matList == null) {
+                matList = new MaterialList();
             }
+            matList.putAll(list);
         }
     }
 
-    protected boolean nextStatement(){
-        try {
-            scan.skip(".*\r{0,1}\n");
-            return true;
-        } catch (NoSuchElementException ex){
-            // EOF
-            return false;
-        }
-    }
-
-    protected boolean readLine() throws IOException{
-        if (!scan.hasNext()){
-            return false;
-        }
-
-        String cmd = scan.next();
-        if (cmd.startsWith("#")){
-            // skip entire comment until next line
-            return nextStatement();
-        }else if (cmd.equals("v")){
-            // vertex position
-            verts.add(readVector3());
-        }else if (cmd.equals("vn")){
-            // vertex normal
-            norms.add(readVector3());
-        }else if (cmd.equals("vt")){
-            // texture coordinate
-            texCoords.add(readVector2());
-        }else if (cmd.equals("f")){
-            // face, can be triangle, quad, or polygon (unsupported)
-            readFace();
-        }else if (cmd.equals("usemtl")){
-            // use material from MTL lib for the following faces
-            currentMatName = scan.next();
-//            if (!matList.containsKey(currentMatName))
-//                throw new IOException("Cannot locate material " + currentMatName + " in MTL file!");
-            
-        }else if (cmd.equals("mtllib")){
-            // specify MTL lib to use for this OBJ file
-            String mtllib = scan.nextLine().trim();
-            loadMtlLib(mtllib);
-        }else if (cmd.equals("s") || cmd.equals("g")){
-            return nextStatement();
-        }else{
-            // skip entire command until next line
-            logger.log(Level.WARNING, "Unknown statement in OBJ! {0}", cmd);
-            return nextStatement();
-        }     
-
-        return true;
-    }
-
-    protected Geometry createGeometry(ArrayList<Face> faceList, String matName) throws IOException{
-        if (faceList.isEmpty())
-            throw new IOException("No geometry data to generate mesh");
-
-        // Create mesh from the faces
-        Mesh mesh = constructMesh(faceList);
-        
+    protected Geometry createGeometry(Mesh mesh, String matName) throws IOException{
         Geometry geom = new Geometry(objName + "-geom-" + (geomIndex++), mesh);
         
         Material material = null;
@@ -432,126 +772,169 @@ public final class OBJLoader implements AssetLoader {
         return geom;
     }
 
-    protected Mesh constructMesh(ArrayList<Face> faceList){
-        Mesh m = new Mesh();
-        m.setMode(Mode.Triangles);
+    private static void checkIndex(int index, int count, String what) throws IOException {
+        if (index < -1 || index >= count) {
+            throw new IOException("Invalid " + what + " index in OBJ face: " + (index + 1));
+        }
+    }
 
+    /**
+     * Builds a mesh from the faces of a material, possibly spread over
+     * several chunks.
+     */
+    private static Mesh constructMesh(List<IntArray> faceLists, Attributes attributes) throws IOException {
+        int positionCount = attributes.positions.length / 3;
+        int texCoordCount = attributes.texCoords.length / 2;
+        int normalCount = attributes.normals.length / 3;
+
+        int triangles = 0;
+        for (IntArray faces : faceLists) {
+            for (int i = 0; i < faces.size; i += faces.array[i] * 3 + 1) {
+                triangles += faces.array[i] - 2;
+            }
+        }
+
+        VertexTable table = new VertexTable(Math.min(triangles * 3, positionCount + 16));
+        int[] indices = new int[triangles * 3];
+        int[] corner = new int[4];
+        int index = 0;
         boolean hasTexCoord = false;
         boolean hasNormals  = false;
+        float[] pos = attributes.positions;
+
+        for (IntArray faces : faceLists) {
+            int[] array = faces.array;
+            for (int i = 0; i < faces.size; i += array[i] * 3 + 1) {
+                int count = array[i];
+                for (int c = 0; c < count; c++) {
+                    int v = array[i + 1 + c * 3];
+                    int vt = array[i + 2 + c * 3];
+                    int vn = array[i + 3 + c * 3];
+                    if (v < 0) {
+                        throw new IOException("Invalid vertex index in OBJ face: " + (v + 1));
+                    }
+                    checkIndex(v, positionCount, "vertex");
+                    checkIndex(vt, texCoordCount, "texture coordinate");
+                    checkIndex(vn, normalCount, "normal");
+                    hasTexCoord |= vt >= 0;
+                    hasNormals |= vn >= 0;
+                    corner[c] = table.indexOf(v, vt, vn);
+                }
 
-        ArrayList<Face> newFaces = new ArrayList<Face>(faceList.size());
-        for (int i = 0; i < faceList.size(); i++){
-            Face f = faceList.get(i);
-
-            for (Vertex v : f.verticies){
-                findVertexIndex(v);
-
-                if (!hasTexCoord && v.vt != null)
-                    hasTexCoord = true;
-                if (!hasNormals && v.vn != null)
-                    hasNormals = true;
-            }
+                if (count == 3) {
+                    indices[index++] = corner[0];
+                    indices[index++] = corner[1];
+                    indices[index++] = corner[2];
+                    continue;
+                }
 
-            if (f.verticies.length == 4){
-                Face[] t = quadToTriangle(f);
-                newFaces.add(t[0]);
-                newFaces.add(t[1]);
-            }else{
-                newFaces.add(f);
+                // split along the shorter diagonal
+                // v0 and v2
+                // OR
+                // v1 and v3
+                int p0 = array[i + 1] * 3, p1 = array[i + 4] * 3, p2 = array[i + 7] * 3, p3 = array[i + 10] * 3;
+                float d1 = distanceSquared(pos, p0, p2);
+                float d2 = distanceSquared(pos, p1, p3);
+                if (d1 < d2){
+                    // put an edge in v0, v2
+                    indices[index++] = corner[0];
+                    indices[index++] = corner[1];
+                    indices[index++] = corner[2];
+
+                    indices[index++] = corner[0];
+                    indices[index++] = corner[2];
+                    indices[index++] = corner[3];
+                }else{
+                    // put an edge in v1, v3
+                    indices[index++] = corner[0];
+                    indices[index++] = corner[1];
+                    indices[index++] = corner[3];
+
+                    indices[index++] = corner[1];
+                    indices[index++] = corner[2];
+                    indices[index++] = corner[3];
+                }
             }
         }
 
-        FloatBuffer posBuf  = BufferUtils.createFloatBuffer(vertIndexMap.size() * 3);
-        FloatBuffer normBuf = null;
-        FloatBuffer tcBuf   = null;
+        Mesh m = new Mesh();
+        m.setMode(Mode.Triangles);
+
+        int[] verts = table.vertices.array;
+        int vertexCount = table.vertices.size / 3;
+        FloatBuffer posBuf  = BufferUtils.createFloatBuffer(vertexCount * 3);
+        for (int i = 0; i < vertexCount; i++) {
+            int v = verts[i * 3] * 3;
+            posBuf.put(pos[v]).put(pos[v + 1]).put(pos[v + 2]);
+        }
+        posBuf.flip();
 
         if (hasNormals){
-            normBuf = BufferUtils.createFloatBuffer(vertIndexMap.size() * 3);
+            FloatBuffer normBuf = BufferUtils.createFloatBuffer(vertexCount * 3);
+            float[] normals = attributes.normals;
+            for (int i = 0; i < vertexCount; i++) {
+                int vn = verts[i * 3 + 2] * 3;
+                if (vn >= 0) {
+                    normBuf.put(normals[vn]).put(normals[vn + 1]).put(normals[vn + 2]);
+                } else {
+                    normBuf.put(0).put(0).put(0);
+                }
+            }
+            normBuf.flip();
             m.setBuffer(VertexBuffer.Type.Normal, 3, normBuf);
         }
         if (hasTexCoord){
-            tcBuf = BufferUtils.createFloatBuffer(vertIndexMap.size() * 2);
+            FloatBuffer tcBuf = BufferUtils.createFloatBuffer(vertexCount * 2);
+            float[] texCoords = attributes.texCoords;
+            for (int i = 0; i < vertexCount; i++) {
+                int vt = verts[i * 3 + 1] * 2;
+                if (vt >= 0) {
+                    tcBuf.put(texCoords[vt]).put(texCoords[vt + 1]);
+                } else {
+                    tcBuf.put(0).put(0);
+                }
+            }
+            tcBuf.flip();
             m.setBuffer(VertexBuffer.Type.TexCoord, 2, tcBuf);
         }
 
-        IndexBuffer indexBuf = null;
-        if (vertIndexMap.size() >= 65536){
+        if (vertexCount >= 65536){
             // too many verticies: use intbuffer instead of shortbuffer
-            IntBuffer ib = BufferUtils.createIntBuffer(newFaces.size() * 3);
+            IntBuffer ib = BufferUtils.createIntBuffer(indices.length);
+            ib.put(indices).flip();
             m.setBuffer(VertexBuffer.Type.Index, 3, ib);
-            indexBuf = new IndexIntBuffer(ib);
         }else{
-            ShortBuffer sb = BufferUtils.createShortBuffer(newFaces.size() * 3);
-            m.setBuffer(VertexBuffer.Type.Index, 3, sb);
-            indexBuf = new IndexShortBuffer(sb);
-        }
-
-        int numFaces = newFaces.size();
-        for (int i = 0; i < numFaces; i++){
-            Face f = newFaces.get(i);
-            if (f.verticies.length != 3)
-                continue;
-
-            Vertex v0 = f.verticies[0];
-            Vertex v1 = f.verticies[1];
-            Vertex v2 = f.verticies[2];
-
-            posBuf.position(v0.index * 3);
-            posBuf.put(v0.v.x).put(v0.v.y).put(v0.v.z);
-            posBuf.position(v1.index * 3);
-            posBuf.put(v1.v.x).put(v1.v.y).put(v1.v.z);
-            posBuf.position(v2.index * 3);
-            posBuf.put(v2.v.x).put(v2.v.y).put(v2.v.z);
-
-            if (normBuf != null){
-                if (v0.vn != null){
-                    normBuf.position(v0.index * 3);
-                    normBuf.put(v0.vn.x).put(v0.vn.y).put(v0.vn.z);
-                    normBuf.position(v1.index * 3);
-                    normBuf.put(v1.vn.x).put(v1.vn.y).put(v1.vn.z);
-                    normBuf.position(v2.index * 3);
-                    normBuf.put(v2.vn.x).put(v2.vn.y).put(v2.vn.z);
-                }
-            }
-
-            if (tcBuf != null){
-                if (v0.vt != null){
-                    tcBuf.position(v0.index * 2);
-                    tcBuf.put(v0.vt.x).put(v0.vt.y);
-                    tcBuf.position(v1.index * 2);
-                    tcBuf.put(v1.vt.x).put(v1.vt.y);
-                    tcBuf.position(v2.index * 2);
-                    tcBuf.put(v2.vt.x).put(v2.vt.y);
-                }
+            ShortBuffer sb = BufferUtils.createShortBuffer(indices.length);
+            for (int i = 0; i < indices.length; i++) {
+                sb.put((short) indices[i]);
             }
-
-            int index = i * 3; // current face * 3 = current index
-            indexBuf.put(index,   v0.index);
-            indexBuf.put(index+1, v1.index);
-            indexBuf.put(index+2, v2.index);
+            sb.flip();
+            m.setBuffer(VertexBuffer.Type.Index, 3, sb);
         }
 
         m.setBuffer(VertexBuffer.Type.Position, 3, posBuf);
-        // index buffer and others were set on creation
 
         m.setStatic();
         m.updateBound();
         m.updateCounts();
         //m.setInterleaved();
 
-        // clear data generated face statements
-        // to prepare for next mesh
-        vertIndexMap.clear();
-        indexVertMap.clear();
-        curIndex = 0;
-
         return m;
     }
 
-    @SuppressWarnings("empty-statement")
+    private static float distanceSquared(float[] pos, int a, int b) {
+        float dx = pos[a] - pos[b];
+        float dy = pos[a + 1] - pos[b + 1];
+        float dz = pos[a + 2] - pos[b + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
     public Object load(AssetInfo info) throws IOException{
         reset();
-        
+
+        if (!(info.getKey() instanceof ModelKey))
+            throw new IllegalArgumentException("Model assets must be loaded using a ModelKey");
+
         key = (ModelKey) info.getKey();
         assetManager = info.getManager();
         objName    = key.getName();
@@ -565,35 +948,91 @@ public final class OBJLoader implements AssetLoader {
 
         objNode = new Node(objName + "-objnode");
 
-        if (!(info.getKey() instanceof ModelKey))
-            throw new IllegalArgumentException("Model assets must be loaded using a ModelKey");
-
-        InputStream in = null; 
-        try {
-            in = info.openStream();
-            
-            scan = new Scanner(in);
-            scan.useLocale(Locale.US);
+        ByteBuffer data = readContent(info);
+        final List<Chunk> chunks = split(data);
 
-            while (readLine());
-        } finally {
-            if (in != null){
-                in.close();
+        // first pass: count the attributes of each chunk
+        List<Task> tasks = new ArrayList<Task>(chunks.size());
+        for (final Chunk chunk : chunks) {
+            tasks.add(new Task() {
+                public void run() {
+                    chunk.count();
+                }
+            });
+        }
+        runTasks(tasks);
+
+        int positionCount = 0, texCoordCount = 0, normalCount = 0;
+        String material = null;
+        for (Chunk chunk : chunks) {
+            chunk.positionBase = positionCount;
+            chunk.texCoordBase = texCoordCount;
+            chunk.normalBase = normalCount;
+            chunk.material = material;
+            positionCount += chunk.positionCount;
+            texCoordCount += chunk.texCoordCount;
+            normalCount += chunk.normalCount;
+            if (chunk.hasMaterial) {
+                material = chunk.lastMaterial;
+            }
+            for (String mtlLib : chunk.mtlLibs) {
+                // specify MTL lib to use for this OBJ file
+                loadMtlLib(mtlLib);
             }
         }
-        
-        if (matFaces.size() > 0){
-            for (Entry<String, ArrayList<Face>> entry : matFaces.entrySet()){
-                ArrayList<Face> materialFaces = entry.getValue();
-                if (materialFaces.size() > 0){
-                    Geometry geom = createGeometry(materialFaces, entry.getKey());
-                    objNode.attachChild(geom);
+
+        // second pass: parse the attributes in place and the faces
+        final Attributes attributes = new Attributes(positionCount, texCoordCount, normalCount);
+        tasks.clear();
+        for (final Chunk chunk : chunks) {
+            tasks.add(new Task() {
+                public void run() throws IOException {
+                    chunk.parse(attributes);
                 }
+            });
+        }
+        runTasks(tasks);
+
+        final LinkedHashMap<String, List<IntArray>> matFaces = new LinkedHashMap<String, List<IntArray>>();
+        Set<String> unknownStatements = new LinkedHashSet<String>();
+        int ignoredPolygons = 0;
+        for (Chunk chunk : chunks) {
+            for (Entry<String, IntArray> entry : chunk.faces.entrySet()) {
+                // faces of unknown materials use the default material
+                String matName = matList != null && matList.containsKey(entry.getKey()) ? entry.getKey() : null;
+                List<IntArray> faceLists = matFaces.get(matName);
+                if (faceLists == null) {
+                    faceLists = new ArrayList<IntArray>();
+                    matFaces.put(matName, faceLists);
+                }
+                faceLists.add(entry.getValue());
             }
-        }else if (faces.size() > 0){
-            // generate final geometry
-            Geometry geom = createGeometry(faces, null);
-            objNode.attachChild(geom);
+            unknownStatements.addAll(chunk.unknownStatements);
+            ignoredPolygons += chunk.ignoredPolygons;
+        }
+        for (String statement : unknownStatements) {
+            logger.log(Level.WARNING, "Unknown statement in OBJ! {0}", statement);
+        }
+        if (ignoredPolygons > 0) {
+            logger.log(Level.WARNING, "{0} edges or polygons detected in OBJ. Ignored.", ignoredPolygons);
+        }
+
+        // the meshes of the materials are built in parallel
+        final List<String> matNames = new ArrayList<String>(matFaces.keySet());
+        final Mesh[] meshes = new Mesh[matNames.size()];
+        tasks.clear();
+        for (int i = 0; i < meshes.length; i++) {
+            final int index = i;
+            tasks.add(new Task() {
+                public void run() throws IOException {
+                    meshes[index] = constructMesh(matFaces.get(matNames.get(index)), attributes);
+                }
+            });
+        }
+        runTasks(tasks);
+
+        for (int i = 0; i < meshes.length; i++) {
+            objNode.attachChild(createGeometry(meshes[i], matNames.get(i)));
         }
 
         if (objNode.getQuantity() == 1)
@@ -133,7 +133,17 @@ public class DDSLoader implements AssetLoader {
             } else if (depth > 1) {
                 ((TextureKey) info.getKey()).setTextureTypeHint(ITexture.Type.CubeMap);
             }
-            ArrayList<ByteBuffer> data = readData(((TextureKey) info.getKey()).isFlipY());
+            boolean flip = ((TextureKey) info.getKey()).isFlipY();
+            ArrayList<ByteBuffer> data = null;
+            if (!texture3D && (compressed || grayscaleOrAlpha)) {
+                ByteBuffer mapped = info.mapContent();
+                if (mapped != null) {
+                    data = mapData(mapped, flip);
+                }
+            }
+            if (data == null) {
+                data = readData(flip);
+            }
             return new Image(pixelFormat, width, height, depth, data, sizes, ColorSpace.sRGB);
         } finally {
             if (stream != null){
@@ -436,6 +446,22 @@ public class DDSLoader implements AssetLoader {
         return newData;
     }
 
+    /**
+     * Reads a mip level of an uncompressed image through a scratch array,
+     * flipping its scanlines as they are copied to the buffer if needed.
+     */
+    private void readMip(ByteBuffer buffer, byte[] data, int size, boolean flip, int scanlineSize, int height)
+            throws IOException {
+        in.readFully(data, 0, size);
+        if (flip) {
+            for (int y = height - 1; y >= 0; y--) {
+                buffer.put(data, y * scanlineSize, scanlineSize);
+            }
+        } else {
+            buffer.put(data, 0, size);
+        }
+    }
+
     /**
      * Reads a grayscale image with mipmaps from the InputStream
      * @param flip Flip the loaded image by Y axis
@@ -455,17 +481,14 @@ public class DDSLoader implements AssetLoader {
         int mipWidth = width;
         int mipHeight = height;
 
+        byte[] data = DecodeBufferPool.acquireArray(sizes[0]);
         for (int mip = 0; mip < mipMapCount; mip++) {
-            byte[] data = new byte[sizes[mip]];
-            in.readFully(data);
-            if (flip) {
-                data = flipData(data, mipWidth * bpp / 8, mipHeight);
-            }
-            buffer.put(data);
+            readMip(buffer, data, sizes[mip], flip, mipWidth * bpp / 8, mipHeight);
 
             mipWidth = Math.max(mipWidth / 2, 1);
             mipHeight = Math.max(mipHeight / 2, 1);
         }
+        DecodeBufferPool.release(data);
 
         return buffer;
     }
@@ -552,23 +575,21 @@ public class DDSLoader implements AssetLoader {
         int mipWidth = width;
         int mipHeight = height;
 
+        byte[] data = DecodeBufferPool.acquireArray(sizes[0]);
         for (int mip = 0; mip < mipMapCount; mip++) {
+            in.readFully(data, 0, sizes[mip]);
             if (flip) {
-                byte[] data = new byte[sizes[mip]];
-                in.readFully(data);
-                ByteBuffer wrapped = ByteBuffer.wrap(data);
-                wrapped.rewind();
+                ByteBuffer wrapped = ByteBuffer.wrap(data, 0, sizes[mip]);
                 ByteBuffer flipped = DXTFlipper.flipDXT(wrapped, mipWidth, mipHeight, pixelFormat);
                 buffer.put(flipped);
             } else {
-                byte[] data = new byte[sizes[mip]];
-                in.readFully(data);
-                buffer.put(data);
+                buffer.put(data, 0, sizes[mip]);
             }
 
             mipWidth = Math.max(mipWidth / 2, 1);
             mipHeight = Math.max(mipHeight / 2, 1);
         }
+        DecodeBufferPool.release(data);
         buffer.rewind();
 
         return buffer;
@@ -591,22 +612,19 @@ public class DDSLoader implements AssetLoader {
         assert bpp == pixelFormat.getBitsPerPixel();
 
 
+        byte[] data = DecodeBufferPool.acquireArray(sizes[0]);
         for (int i = 0; i < depth; i++) {
             int mipWidth = width;
             int mipHeight = height;
 
             for (int mip = 0; mip < mipMapCount; mip++) {
-                byte[] data = new byte[sizes[mip]];
-                in.readFully(data);
-                if (flip) {
-                    data = flipData(data, mipWidth * bpp / 8, mipHeight);
-                }
-                buffer.put(data);
+                readMip(buffer, data, sizes[mip], flip, mipWidth * bpp / 8, mipHeight);
 
                 mipWidth = Math.max(mipWidth / 2, 1);
                 mipHeight = Math.max(mipHeight / 2, 1);
             }
         }
+        DecodeBufferPool.release(data);
         buffer.rewind();
         return buffer;
     }
@@ -692,23 +710,20 @@ public class DDSLoader implements AssetLoader {
 
         ByteBuffer bufferAll = BufferUtils.createByteBuffer(totalSize * depth);
 
+        byte[] data = DecodeBufferPool.acquireArray(sizes[0]);
         for (int i = 0; i < depth; i++) {
             ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize);
             int mipWidth = width;
             int mipHeight = height;
             for (int mip = 0; mip < mipMapCount; mip++) {
+                in.readFully(data, 0, sizes[mip]);
                 if (flip) {
-                    byte[] data = new byte[sizes[mip]];
-                    in.readFully(data);
-                    ByteBuffer wrapped = ByteBuffer.wrap(data);
-                    wrapped.rewind();
+                    ByteBuffer wrapped = ByteBuffer.wrap(data, 0, sizes[mip]);
                     ByteBuffer flipped = DXTFlipper.flipDXT(wrapped, mipWidth, mipHeight, pixelFormat);
                     flipped.rewind();
                     buffer.put(flipped);
                 } else {
-                    byte[] data = new byte[sizes[mip]];
-                    in.readFully(data);
-                    buffer.put(data);
+                    buffer.put(data, 0, sizes[mip]);
                 }
 
                 mipWidth = Math.max(mipWidth / 2, 1);
@@ -717,10 +732,76 @@ public class DDSLoader implements AssetLoader {
             buffer.rewind();
             bufferAll.put(buffer);
         }
+        DecodeBufferPool.release(data);
 
         return bufferAll;
     }
 
+    /**
+     * Fast path for 2D and cube map DXT or grayscale images, when the locator
+     * can map the file in memory. The data is stored in the file exactly as
+     * the renderer expects it, so without flipping each face is copied at
+     * once from the mapped file. When flipping, each mip is flipped in a
+     * single pass from the mapped file into the image buffer.
+     * The image owns its buffers, they are writable and may be destroyed
+     * with the image, so it never keeps slices of the mapping.
+     * 
+     * @param mapped The mapped file
+     * @param flip Flip the image on the Y axis
+     * @return The data of each face, or null if the file is truncated
+     */
+    private ArrayList<ByteBuffer> mapData(ByteBuffer mapped, boolean flip) {
+        int totalSize = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            totalSize += sizes[i];
+        }
+        int headerSize = 4 + 124 + (directx10 ? 20 : 0);
+        int faces = depth > 1 ? depth : 1;
+        if (mapped.capacity() < headerSize + totalSize * faces) {
+            return null;
+        }
+
+        ArrayList<ByteBuffer> allMaps = new ArrayList<ByteBuffer>(faces);
+        for (int face = 0; face < faces; face++) {
+            ByteBuffer source = mapped.duplicate();
+            source.position(headerSize + totalSize * face);
+            source.limit(headerSize + totalSize * (face + 1));
+            source = source.slice();
+            ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize);
+            if (!flip) {
+                buffer.put(source);
+                buffer.rewind();
+                allMaps.add(buffer);
+                continue;
+            }
+
+            int mipWidth = width;
+            int mipHeight = height;
+            int offset = 0;
+            for (int mip = 0; mip < mipMapCount; mip++) {
+                source.limit(offset + sizes[mip]);
+                source.position(offset);
+                if (compressed) {
+                    buffer.put(DXTFlipper.flipDXT(source.slice(), mipWidth, mipHeight, pixelFormat));
+                } else {
+                    int scanlineSize = mipWidth * bpp / 8;
+                    for (int y = 0; y < mipHeight; y++) {
+                        source.limit(offset + (mipHeight - y) * scanlineSize);
+                        source.position(offset + (mipHeight - y - 1) * scanlineSize);
+                        buffer.put(source);
+                    }
+                }
+                offset += sizes[mip];
+                buffer.position(offset);
+                mipWidth = Math.max(mipWidth / 2, 1);
+                mipHeight = Math.max(mipHeight / 2, 1);
+            }
+            buffer.rewind();
+            allMaps.add(buffer);
+        }
+        return allMaps;
+    }
+
     /**
      * Reads the image data from the InputStream in the required format.
      * If the file contains a cubemap image, it is loaded as 6 ByteBuffers
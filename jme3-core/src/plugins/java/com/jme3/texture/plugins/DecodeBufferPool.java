@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.plugins;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of the temporary arrays used by the image loaders while decoding,
+ * shared by all the loaders and threads.
+ * <p>
+ * Sizes are rounded up to a power of two so that images of similar sizes
+ * reuse the same scratch memory. The pool keeps at most
+ * {@link #setMaxPooledBytes(int) a given amount} of memory, further released
+ * arrays are left to the garbage collector.
+ */
+public final class DecodeBufferPool {
+
+    private static final int MIN_SIZE_BITS = 10;
+    private static final int MAX_SIZE_BITS = 30;
+
+    private static final ArrayDeque<byte[]>[] arrays = newBuckets();
+    private static int maxPooledBytes = 32 * 1024 * 1024;
+    private static int pooledBytes;
+
+    private DecodeBufferPool() {
+    }
+
+    private static ArrayDeque<byte[]>[] newBuckets() {
+        @SuppressWarnings("unchecked")
+        ArrayDeque<byte[]>[] buckets = new ArrayDeque[MAX_SIZE_BITS + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ArrayDeque<byte[]>();
+        }
+        return buckets;
+    }
+
+    private static int bucket(int size) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(bits, MIN_SIZE_BITS);
+    }
+
+    /**
+     * Sets the maximum amount of memory kept by the pool, 32 MB by default.
+     *
+     * @param bytes the maximum amount of memory in bytes, 0 to disable
+     * pooling
+     */
+    public static synchronized void setMaxPooledBytes(int bytes) {
+        maxPooledBytes = bytes;
+        if (pooledBytes > bytes) {
+            clear();
+        }
+    }
+
+    public static synchronized int getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * @return the amount of memory currently kept by the pool, in bytes
+     */
+    public static synchronized int getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Releases all the pooled memory.
+     */
+    public static synchronized void clear() {
+        for (int i = 0; i <= MAX_SIZE_BITS; i++) {
+            arrays[i].clear();
+        }
+        pooledBytes = 0;
+    }
+
+    /**
+     * Returns an array of at least the given length. Its content is
+     * undefined.
+     *
+     * @param length the minimum length
+     * @return the array
+     */
+    public static byte[] acquireArray(int length) {
+        int bucket = bucket(length);
+        if (bucket > MAX_SIZE_BITS) {
+            return new byte[length];
+        }
+        synchronized (DecodeBufferPool.class) {
+            byte[] array = arrays[bucket].poll();
+            if (array != null) {
+                pooledBytes -= array.length;
+                return array;
+            }
+        }
+        return new byte[1 << bucket];
+    }
+
+    /**
+     * Gives an array back to the pool.
+     *
+     * @param array an array returned by {@link #acquireArray(int)}
+     */
+    public static void release(byte[] array) {
+        int bucket = bucket(array.length);
+        if (array.length != 1 << bucket || bucket > MAX_SIZE_BITS) {
+            return;
+        }
+        synchronized (DecodeBufferPool.class) {
+            if (pooledBytes + array.length <= maxPooledBytes) {
+                arrays[bucket].push(array);
+                pooledBytes += array.length;
+            }
+        }
+    }
+}
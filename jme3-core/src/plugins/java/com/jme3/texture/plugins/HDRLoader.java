@@ -40,9 +40,13 @@ import com.jme3.texture.Format;
 import com.jme3.texture.IImage;
 import com.jme3.texture.image.ColorSpace;
 import com.jme3.util.BufferUtils;
+import com.jme3.util.ParallelTasks;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,10 +54,23 @@ public class HDRLoader implements AssetLoader {
 
     private static final Logger logger = Logger.getLogger(HDRLoader.class.getName());
 
+    /**
+     * The number of scanlines decoded by a task.
+     */
+    private static final int SCANLINES_PER_TASK = 16;
+    /**
+     * The scale of the mantissas for each exponent of a RGBE pixel.
+     */
+    private static final float[] EXPONENTS = new float[256];
+    private static volatile Executor decodeExecutor = ParallelTasks.getSharedExecutor();
+
+    static {
+        for (int i = 0; i < EXPONENTS.length; i++) {
+            EXPONENTS[i] = (float) Math.pow(2f, i - (128 + 8));
+        }
+    }
+
     private boolean writeRGBE = false;
-    private ByteBuffer rleTempBuffer;
-    private ByteBuffer dataStore;
-    private final float[] tempF = new float[3];
 
     public HDRLoader(boolean writeRGBE){
         this.writeRGBE = writeRGBE;
@@ -114,21 +131,6 @@ public class HDRLoader implements AssetLoader {
         rgbf[2] = B * e;
     }
 
-    private short flip(int in){
-        return (short) ((in << 8 & 0xFF00) | (in >> 8));
-    }
-    
-    private void writeRGBE(byte[] rgbe){
-        if (writeRGBE){
-            dataStore.put(rgbe);
-        }else{
-            convertRGBEtoFloat(rgbe, tempF);
-            dataStore.putShort(FastMath.convertFloatToHalf(tempF[0]))
-                     .putShort(FastMath.convertFloatToHalf(tempF[1])).
-                      putShort(FastMath.convertFloatToHalf(tempF[2]));
-        }
-    }
-    
     private String readString(InputStream is) throws IOException{
         StringBuilder sb = new StringBuilder();
         while (true){
@@ -139,84 +141,176 @@ public class HDRLoader implements AssetLoader {
             sb.append((char)i);
         }
     }
-    
-    private boolean decodeScanlineRLE(InputStream in, int width) throws IOException{
-        // must deocde RLE data into temp buffer before converting to float
-        if (rleTempBuffer == null){
-            rleTempBuffer = BufferUtils.createByteBuffer(width * 4);
-        }else{
-            rleTempBuffer.clear();
-            if (rleTempBuffer.remaining() < width * 4)
-                rleTempBuffer = BufferUtils.createByteBuffer(width * 4);
+
+    /**
+     * Sets the executor on which the scanlines of HDR images are decoded
+     * in parallel. The loading thread decodes scanlines as well.
+     * By default a shared pool of daemon threads is used, one per
+     * available processor.
+     *
+     * @param executor the executor, or null to decode on the loading
+     * thread only
+     */
+    public static void setDecodeExecutor(Executor executor) {
+        decodeExecutor = executor;
+    }
+
+    /**
+     * @return the executor on which scanlines are decoded, or null if
+     * they are decoded on the loading thread only
+     */
+    public static Executor getDecodeExecutor() {
+        return decodeExecutor;
+    }
+
+    /**
+     * Reads the rest of the stream into a pooled array.
+     */
+    private static byte[] readAll(InputStream in, int sizeHint, int[] lengthStore) throws IOException {
+        byte[] data = DecodeBufferPool.acquireArray(sizeHint);
+        int length = 0;
+        while (true) {
+            if (length == data.length) {
+                byte[] larger = DecodeBufferPool.acquireArray(data.length * 2);
+                System.arraycopy(data, 0, larger, 0, length);
+                DecodeBufferPool.release(data);
+                data = larger;
+            }
+            int read = in.read(data, length, data.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
         }
-        
-	// read each component seperately
-        for (int i = 0; i < 4; i++) {
-            // read WIDTH bytes for the channel
-            for (int j = 0; j < width;) {
-                int code = in.read();
-                if (code > 128) { // run
-                    code -= 128;
-                    int val = in.read();
-                    while ((code--) != 0) {
-                        rleTempBuffer.put( (j++) * 4 + i , (byte)val);
-                        //scanline[j++][i] = val;
-                    }
-                } else {	// non-run
-                    while ((code--) != 0) {
-                        int val = in.read();
-                        rleTempBuffer.put( (j++) * 4 + i, (byte)val);
-                        //scanline[j++][i] = in.read();
+        lengthStore[0] = length;
+        return data;
+    }
+
+    private static boolean isScanlineRLE(byte[] data, int offset, int width) {
+        return width >= 8 && width <= 0x7fff
+                && data[offset] == 0x02 && data[offset + 1] == 0x02 && (data[offset + 2] & 0x80) == 0;
+    }
+
+    /**
+     * Finds where each scanline starts, so that they can be decoded
+     * independently.
+     *
+     * @return the offsets of the scanlines, plus the end of the last one
+     */
+    private static int[] indexScanlines(byte[] data, int length, int width, int height) throws IOException {
+        int[] offsets = new int[height + 1];
+        int pos = 0;
+        for (int y = 0; y < height; y++) {
+            offsets[y] = pos;
+            if (pos + 4 <= length && isScanlineRLE(data, pos, width)) {
+                // check scanline width
+                int readWidth = (data[pos + 2] & 0xFF) << 8 | (data[pos + 3] & 0xFF);
+                if (readWidth != width)
+                    throw new IOException("Illegal scanline width in HDR file: "+width+" != "+readWidth);
+
+                pos += 4;
+                // each component is encoded seperately
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < width;) {
+                        if (pos >= length)
+                            throw new IOException("Unexpected end of HDR file");
+
+                        int code = data[pos++] & 0xFF;
+                        if (code > 128) { // run
+                            j += code - 128;
+                            pos++;
+                        } else if (code > 0) { // non-run
+                            j += code;
+                            pos += code;
+                        } else {
+                            throw new IOException("Invalid run length in HDR file");
+                        }
+                        if (j > width)
+                            throw new IOException("Run length overflows the scanline in HDR file");
                     }
                 }
+            } else {
+                // not RLE data
+                pos += width * 4;
             }
+            if (pos > length)
+                throw new IOException("Unexpected end of HDR file");
         }
-        
-        rleTempBuffer.rewind();
-        byte[] rgbe = new byte[4];
-//        float[] temp = new float[3];
-            
-        // decode temp buffer into float data
-        for (int i = 0; i < width; i++){
-            rleTempBuffer.get(rgbe);
-            writeRGBE(rgbe);
-        }
-        
-        return true;
+        offsets[height] = pos;
+        return offsets;
     }
-    
-    private boolean decodeScanlineUncompressed(InputStream in, int width) throws IOException{
-        byte[] rgbe = new byte[4];
-        
-        for (int i = 0; i < width; i+=3){
-            if (in.read(rgbe) < 1)
-                return false;
 
-            writeRGBE(rgbe);
+    private void decodeScanline(byte[] data, int offset, int width, byte[] rgbe, ByteBuffer dest, int destOffset) {
+        if (isScanlineRLE(data, offset, width)) {
+            // must decode RLE data into temp array before converting to float
+            int pos = offset + 4;
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < width;) {
+                    int code = data[pos++] & 0xFF;
+                    if (code > 128) { // run
+                        code -= 128;
+                        byte val = data[pos++];
+                        while ((code--) != 0) {
+                            rgbe[(j++) * 4 + i] = val;
+                        }
+                    } else { // non-run
+                        while ((code--) != 0) {
+                            rgbe[(j++) * 4 + i] = data[pos++];
+                        }
+                    }
+                }
+            }
+        } else {
+            System.arraycopy(data, offset, rgbe, 0, width * 4);
+        }
+
+        if (writeRGBE) {
+            ByteBuffer out = dest.duplicate();
+            out.position(destOffset);
+            out.put(rgbe, 0, width * 4);
+        } else {
+            for (int i = 0; i < width; i++) {
+                float e = EXPONENTS[rgbe[i * 4 + 3] & 0xFF];
+                int index = destOffset + i * 6;
+                dest.putShort(index, FastMath.convertFloatToHalf((rgbe[i * 4] & 0xFF) * e));
+                dest.putShort(index + 2, FastMath.convertFloatToHalf((rgbe[i * 4 + 1] & 0xFF) * e));
+                dest.putShort(index + 4, FastMath.convertFloatToHalf((rgbe[i * 4 + 2] & 0xFF) * e));
+            }
         }
-        return true;
     }
-    
-    private void decodeScanline(InputStream in, int width) throws IOException{
-        if (width < 8 || width > 0x7fff){
-            // too short/long for RLE compression
-            decodeScanlineUncompressed(in, width);
+
+    /**
+     * Decodes the scanlines in bands, on the decode executor and on the
+     * calling thread.
+     */
+    private void decodeScanlines(final byte[] data, final int[] offsets, final int width, final int height,
+            final boolean flipY, final ByteBuffer dest, final int scanLineBytes) throws IOException {
+        int bands = (height + SCANLINES_PER_TASK - 1) / SCANLINES_PER_TASK;
+        List<Runnable> tasks = new ArrayList<Runnable>(bands);
+        for (int band = 0; band < bands; band++) {
+            final int first = band * SCANLINES_PER_TASK;
+            final int last = Math.min(height, first + SCANLINES_PER_TASK);
+            tasks.add(new Runnable() {
+                public void run() {
+                    byte[] rgbe = DecodeBufferPool.acquireArray(width * 4);
+                    try {
+                        for (int y = first; y < last; y++) {
+                            // scanlines are stored top to bottom
+                            int destY = flipY ? height - 1 - y : y;
+                            decodeScanline(data, offsets[y], width, rgbe, dest, destY * scanLineBytes);
+                        }
+                    } finally {
+                        DecodeBufferPool.release(rgbe);
+                    }
+                }
+            });
         }
-        
-        // check format
-        byte[] data = new byte[4];
-        in.read(data);
-        if (data[0] != 0x02 || data[1] != 0x02 || (data[2] & 0x80) != 0){
-            // not RLE data
-            decodeScanlineUncompressed(in, width-1);
-        }else{
-            // check scanline width
-            int readWidth = (data[2] & 0xFF) << 8 | (data[3] & 0xFF);
-            if (readWidth != width)
-                throw new IOException("Illegal scanline width in HDR file: "+width+" != "+readWidth);
-            
-            // RLE data
-            decodeScanlineRLE(in, width);
+
+        // returns once every band is done, data is then safe to release
+        try {
+            ParallelTasks.runAll(tasks, getDecodeExecutor());
+        } catch (RuntimeException ex) {
+            throw new IOException("Failed to decode HDR image", ex);
         }
     }
 
@@ -286,9 +380,6 @@ public class HDRLoader implements AssetLoader {
         if (!verifiedFormat)
             logger.warning("Unsure if specified image is Radiance HDR");
 
-        // some HDR images can get pretty big
-        System.gc();
-
         // each pixel times size of component times # of components
         Format pixelFormat;
         if (writeRGBE){
@@ -297,15 +388,19 @@ public class HDRLoader implements AssetLoader {
             pixelFormat = Format.RGB16F;
         }
 
-        dataStore = BufferUtils.createByteBuffer(width * height * pixelFormat.getBitsPerPixel());
-
         int bytesPerPixel = pixelFormat.getBitsPerPixel() / 8;
         int scanLineBytes = bytesPerPixel * width;
-        for (int y = height - 1; y >= 0; y--) {
-            if (flipY)
-                dataStore.position(scanLineBytes * y);
+        ByteBuffer dataStore = BufferUtils.createByteBuffer(scanLineBytes * height);
 
-            decodeScanline(in, width);
+        // the compressed data is read at once, then indexed so that the
+        // scanlines can be decoded in parallel
+        int[] length = new int[1];
+        byte[] data = readAll(in, width * height * 2, length);
+        try {
+            int[] offsets = indexScanlines(data, length[0], width, height);
+            decodeScanlines(data, offsets, width, height, flipY, dataStore, scanLineBytes);
+        } finally {
+            DecodeBufferPool.release(data);
         }
         in.close();
 
@@ -41,6 +41,7 @@ import com.jme3.texture.IImage;
 import com.jme3.util.BufferUtils;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -106,7 +107,6 @@ public final class TGALoader implements AssetLoader {
      */
     public static IImage load(InputStream in, boolean flip) throws IOException {
         TGAHeader tgaHeader = new TGAHeader(in, flip);
-    	boolean flipH = false;
 
         // Skip image ID
         if (tgaHeader.getIdLength() > 0) {
@@ -116,313 +116,265 @@ public final class TGALoader implements AssetLoader {
         ColorMapEntry[] cMapEntries = null;
         cMapEntries = constructColorMapType(tgaHeader, cMapEntries);
 
-        // Allocate image data array
-        byte[] rawData = null;
-        int dl;
-        if (tgaHeader.getPixelDepth() == 32) {
-            rawData = new byte[tgaHeader.getWidth() * tgaHeader.getHeight() * 4];
-            dl = 4;
-        } else {
-            rawData = new byte[tgaHeader.getWidth() * tgaHeader.getHeight() * 3];
-            dl = 3;
+        // Allocate image data, scanlines are decoded in a pooled array
+        // then copied to their place in the image
+        int dl = tgaHeader.getPixelDepth() == 32 ? 4 : 3;
+        ByteBuffer scratch = BufferUtils.createByteBuffer(tgaHeader.getWidth() * tgaHeader.getHeight() * dl);
+        ByteSource source = new ByteSource(tgaHeader.getDis());
+        byte[] scanline = DecodeBufferPool.acquireArray(tgaHeader.getWidth() * dl);
+        Format format;
+        try {
+            format = formatImageDataArray(tgaHeader, cMapEntries, source, scanline, dl, scratch);
+        } finally {
+            source.release();
+            DecodeBufferPool.release(scanline);
         }
-        
-        Format format = formatImageDataArray(tgaHeader, cMapEntries, rawData, dl);
 
         in.close();
-        // Get a pointer to the image memory
-        ByteBuffer scratch = imageMemoryPointer(rawData);
+        scratch.rewind();
         // Create the Image object
         return createTextureImageObject(tgaHeader, format, scratch);
     }
 
-	private static Format formatImageDataArray(TGAHeader tgaHeader, ColorMapEntry[] cMapEntries,
-			byte[] rawData, int dl) throws IOException {
-        int rawDataIndex = 0;
-		
-		if (tgaHeader.getImageType() == TYPE_TRUECOLOR) {
-            // Faster than doing a 16-or-24-or-32 check on each individual pixel,
-            // just make a seperate loop for each.
-            return determineTrueColorFormatBasedOnPixelDepth(tgaHeader, rawData, dl, rawDataIndex);
+    private static Format formatImageDataArray(TGAHeader tgaHeader, ColorMapEntry[] cMapEntries,
+            ByteSource source, byte[] scanline, int dl, ByteBuffer scratch) throws IOException {
+        Format format;
+        int width = tgaHeader.getWidth();
+        int height = tgaHeader.getHeight();
+        int pixelDepth = tgaHeader.getPixelDepth();
+        RunLength rle = null;
+
+        if (tgaHeader.getImageType() == TYPE_TRUECOLOR) {
+            if (pixelDepth == 16) {
+                format = Format.RGB8;
+            } else if (pixelDepth == 24) {
+                format = Format.BGR8;
+            } else if (pixelDepth == 32) {
+                format = Format.RGBA8;
+            } else {
+                throw new IOException("Unsupported TGA true color depth: " + pixelDepth);
+            }
         } else if (tgaHeader.getImageType() == TYPE_TRUECOLOR_RLE) {
-            // Faster than doing a 16-or-24-or-32 check on each individual pixel,
-            // just make a seperate loop for each.
-            return determineTrueColorRleBasedOnPixelDepth(tgaHeader, rawData, dl, rawDataIndex);
+            if (pixelDepth == 16 || pixelDepth == 24) {
+                format = Format.RGB8;
+            } else if (pixelDepth == 32) {
+                format = Format.RGBA8;
+            } else {
+                throw new IOException("Unsupported TGA true color depth: " + pixelDepth);
+            }
+            rle = new RunLength(pixelDepth / 8);
         } else if (tgaHeader.getImageType() == TYPE_COLORMAPPED) {
-            return determineColorMappedFormatBasedOnBytesPerIndex(tgaHeader, cMapEntries, rawData, dl, rawDataIndex);
+            int bytesPerIndex = pixelDepth / 8;
+            if (bytesPerIndex != 1 && bytesPerIndex != 2) {
+                throw new IOException("TGA: unknown colormap indexing size used: " + bytesPerIndex);
+            }
+            format = dl == 4 ? Format.RGBA8 : Format.RGB8;
         } else {
             throw new IOException("Monochrome and RLE colormapped images are not supported");
         }
-	}
 
-	private static ByteBuffer imageMemoryPointer(byte[] rawData) {
-		ByteBuffer scratch = BufferUtils.createByteBuffer(rawData.length);
-        scratch.clear();
-        scratch.put(rawData);
-        scratch.rewind();
-		return scratch;
-	}
+        int scanlineBytes = width * dl;
+        for (int i = 0; i < height; i++) {
+            if (tgaHeader.getImageType() == TYPE_TRUECOLOR) {
+                decodeTrueColorScanline(source, pixelDepth, width, scanline);
+            } else if (rle != null) {
+                rle.decodeScanline(source, width, scanline);
+            } else {
+                decodeColorMappedScanline(source, cMapEntries, pixelDepth / 8, width, dl, scanline);
+            }
 
-	private static IImage createTextureImageObject(TGAHeader tgaHeader, Format format, ByteBuffer scratch) {
-		IImage textureImage = new Image();
+            int row = tgaHeader.isFlip() ? i : height - 1 - i;
+            scratch.position(row * scanlineBytes);
+            scratch.put(scanline, 0, scanlineBytes);
+        }
+        return format;
+    }
+
+    private static void decodeTrueColorScanline(ByteSource source, int pixelDepth, int width, byte[] scanline)
+            throws IOException {
+        if (pixelDepth == 24) {
+            // BGR8 is uploaded as is
+            source.read(scanline, 0, width * 3);
+        } else if (pixelDepth == 32) {
+            source.read(scanline, 0, width * 4);
+            swapRedBlue(scanline, 0, width, 4);
+        } else {
+            for (int j = 0; j < width; j++) {
+                decode16(source.read() | source.read() << 8, scanline, j * 3);
+            }
+        }
+    }
+
+    private static void decodeColorMappedScanline(ByteSource source, ColorMapEntry[] cMapEntries,
+            int bytesPerIndex, int width, int dl, byte[] scanline) throws IOException {
+        int rawDataIndex = 0;
+        for (int j = 0; j < width; j++) {
+            int index = source.read();
+            if (bytesPerIndex == 2) {
+                index |= source.read() << 8;
+            }
+            if (index >= cMapEntries.length || index < 0) {
+                throw new IOException("TGA: Invalid color map entry referenced: " + index);
+            }
+
+            ColorMapEntry entry = cMapEntries[index];
+            scanline[rawDataIndex++] = entry.blue;
+            scanline[rawDataIndex++] = entry.green;
+            scanline[rawDataIndex++] = entry.red;
+            if (dl == 4) {
+                scanline[rawDataIndex++] = entry.alpha;
+            }
+        }
+    }
+
+    /**
+     * Swaps the first and third byte of each pixel, BGR(A) to RGB(A).
+     */
+    private static void swapRedBlue(byte[] data, int offset, int pixels, int bytesPerPixel) {
+        int end = offset + pixels * bytesPerPixel;
+        for (int i = offset; i < end; i += bytesPerPixel) {
+            byte b = data[i];
+            data[i] = data[i + 2];
+            data[i + 2] = b;
+        }
+    }
+
+    /**
+     * Decodes a little endian ARGB1555 pixel to RGB8.
+     */
+    private static void decode16(int pixel, byte[] dest, int offset) {
+        dest[offset] = FIVE_TO_EIGHT_BITS[(pixel >> 10) & 0x1F];
+        dest[offset + 1] = FIVE_TO_EIGHT_BITS[(pixel >> 5) & 0x1F];
+        dest[offset + 2] = FIVE_TO_EIGHT_BITS[pixel & 0x1F];
+    }
+
+    private static final byte[] FIVE_TO_EIGHT_BITS = new byte[32];
+
+    static {
+        float scalar = 255f / 31f;
+        for (int i = 0; i < FIVE_TO_EIGHT_BITS.length; i++) {
+            FIVE_TO_EIGHT_BITS[i] = (byte) (int) (i * scalar);
+        }
+    }
+
+    private static IImage createTextureImageObject(TGAHeader tgaHeader, Format format, ByteBuffer scratch) {
+        IImage textureImage = new Image();
         textureImage.setFormat(format);
         textureImage.setWidth(tgaHeader.getWidth());
         textureImage.setHeight(tgaHeader.getHeight());
         textureImage.setData(scratch);
-		return textureImage;
-	}
+        return textureImage;
+    }
 
-	private static Format determineColorMappedFormatBasedOnBytesPerIndex(TGAHeader tgaHeader, ColorMapEntry[] cMapEntries, byte[] rawData, int dl, int rawDataIndex)
-			throws IOException {
-		Format format;
-		int bytesPerIndex = tgaHeader.getPixelDepth() / 8;
-		if (bytesPerIndex == 1) {
-		    for (int i = 0; i <= (tgaHeader.getHeight() - 1); i++) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - i) * tgaHeader.getWidth() * dl;
-		        }
-		        for (int j = 0; j < tgaHeader.getWidth(); j++) {
-		            int index = tgaHeader.getDis().readUnsignedByte();
-		            if (index >= cMapEntries.length || index < 0) {
-		                throw new IOException("TGA: Invalid color map entry referenced: " + index);
-		            }
-
-		            ColorMapEntry entry = cMapEntries[index];
-		            rawData[rawDataIndex++] = entry.blue;
-		            rawData[rawDataIndex++] = entry.green;
-		            rawData[rawDataIndex++] = entry.red;
-		            if (dl == 4) {
-		                rawData[rawDataIndex++] = entry.alpha;
-		            }
-
-		        }
-		    }
-		} else if (bytesPerIndex == 2) {
-		    for (int i = 0; i <= (tgaHeader.getHeight() - 1); i++) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - i) * tgaHeader.getWidth() * dl;
-		        }
-		        for (int j = 0; j < tgaHeader.getWidth(); j++) {
-		            int index = TGAHeader.flipEndian(tgaHeader.getDis().readShort());
-		            if (index >= cMapEntries.length || index < 0) {
-		                throw new IOException("TGA: Invalid color map entry referenced: " + index);
-		            }
-
-		            ColorMapEntry entry = cMapEntries[index];
-		            rawData[rawDataIndex++] = entry.blue;
-		            rawData[rawDataIndex++] = entry.green;
-		            rawData[rawDataIndex++] = entry.red;
-		            if (dl == 4) {
-		                rawData[rawDataIndex++] = entry.alpha;
-		            }
-		        }
-		    }
-		} else {
-		    throw new IOException("TGA: unknown colormap indexing size used: " + bytesPerIndex);
-		}
+    /**
+     * Reads the image data through a pooled array instead of a byte at a
+     * time from the stream.
+     */
+    private static final class ByteSource {
 
-		format = dl == 4 ? Format.RGBA8 : Format.RGB8;
-		return format;
-	}
+        private final InputStream in;
+        private byte[] buffer = DecodeBufferPool.acquireArray(64 * 1024);
+        private int position;
+        private int limit;
 
-	private static Format determineTrueColorRleBasedOnPixelDepth(TGAHeader tgaHeader, byte[] rawData, int dl, int rawDataIndex) throws IOException {
-		byte red;
-		byte green;
-		byte blue;
-		byte alpha;
-		if (tgaHeader.getPixelDepth() == 32) {
-		    for (int i = 0; i <= (tgaHeader.getHeight() - 1); ++i) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - i) * tgaHeader.getWidth() * dl;
-		        }
-
-		        for (int j = 0; j < tgaHeader.getWidth(); ++j) {
-		            // Get the number of pixels the next chunk covers (either packed or unpacked)
-		            int count = tgaHeader.getDis().readByte();
-		            if ((count & 0x80) != 0) {
-		                // Its an RLE packed block - use the following 1 pixel for the next <count> pixels
-		                count &= 0x07f;
-		                j += count;
-		                blue = tgaHeader.getDis().readByte();
-		                green = tgaHeader.getDis().readByte();
-		                red = tgaHeader.getDis().readByte();
-		                alpha = tgaHeader.getDis().readByte();
-		                while (count-- >= 0) {
-		                    rawData[rawDataIndex++] = red;
-		                    rawData[rawDataIndex++] = green;
-		                    rawData[rawDataIndex++] = blue;
-		                    rawData[rawDataIndex++] = alpha;
-		                }
-		            } else {
-		                // Its not RLE packed, but the next <count> pixels are raw.
-		                j += count;
-		                while (count-- >= 0) {
-		                    blue = tgaHeader.getDis().readByte();
-		                    green = tgaHeader.getDis().readByte();
-		                    red = tgaHeader.getDis().readByte();
-		                    alpha = tgaHeader.getDis().readByte();
-		                    rawData[rawDataIndex++] = red;
-		                    rawData[rawDataIndex++] = green;
-		                    rawData[rawDataIndex++] = blue;
-		                    rawData[rawDataIndex++] = alpha;
-		                }
-		            }
-		        }
-		    }
-		    return Format.RGBA8;
-		} else if (tgaHeader.getPixelDepth() == 24) {
-		    for (int i = 0; i <= (tgaHeader.getHeight() - 1); i++) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - i) * tgaHeader.getWidth() * dl;
-		        }
-		        for (int j = 0; j < tgaHeader.getWidth(); ++j) {
-		            // Get the number of pixels the next chunk covers (either packed or unpacked)
-		            int count = tgaHeader.getDis().readByte();
-		            if ((count & 0x80) != 0) {
-		                // Its an RLE packed block - use the following 1 pixel for the next <count> pixels
-		                count &= 0x07f;
-		                j += count;
-		                blue = tgaHeader.getDis().readByte();
-		                green = tgaHeader.getDis().readByte();
-		                red = tgaHeader.getDis().readByte();
-		                while (count-- >= 0) {
-		                    rawData[rawDataIndex++] = red;
-		                    rawData[rawDataIndex++] = green;
-		                    rawData[rawDataIndex++] = blue;
-		                }
-		            } else {
-		                // Its not RLE packed, but the next <count> pixels are raw.
-		                j += count;
-		                while (count-- >= 0) {
-		                    blue = tgaHeader.getDis().readByte();
-		                    green = tgaHeader.getDis().readByte();
-		                    red = tgaHeader.getDis().readByte();
-		                    rawData[rawDataIndex++] = red;
-		                    rawData[rawDataIndex++] = green;
-		                    rawData[rawDataIndex++] = blue;
-		                }
-		            }
-		        }
-		    }
-		    return Format.RGB8;
-		} else if (tgaHeader.getPixelDepth() == 16) {
-		    byte[] data = new byte[2];
-		    float scalar = 255f / 31f;
-		    for (int i = 0; i <= (tgaHeader.getHeight() - 1); i++) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - i) * tgaHeader.getWidth() * dl;
-		        }
-		        for (int j = 0; j < tgaHeader.getWidth(); j++) {
-		            // Get the number of pixels the next chunk covers (either packed or unpacked)
-		            int count = tgaHeader.getDis().readByte();
-		            if ((count & 0x80) != 0) {
-		                // Its an RLE packed block - use the following 1 pixel for the next <count> pixels
-		                count &= 0x07f;
-		                j += count;
-		                data[1] = tgaHeader.getDis().readByte();
-		                data[0] = tgaHeader.getDis().readByte();
-		                blue = (byte) (int) (getBitsAsByte(data, 1, 5) * scalar);
-		                green = (byte) (int) (getBitsAsByte(data, 6, 5) * scalar);
-		                red = (byte) (int) (getBitsAsByte(data, 11, 5) * scalar);
-		                while (count-- >= 0) {
-		                    rawData[rawDataIndex++] = red;
-		                    rawData[rawDataIndex++] = green;
-		                    rawData[rawDataIndex++] = blue;
-		                }
-		            } else {
-		                // Its not RLE packed, but the next <count> pixels are raw.
-		                j += count;
-		                while (count-- >= 0) {
-		                    data[1] = tgaHeader.getDis().readByte();
-		                    data[0] = tgaHeader.getDis().readByte();
-		                    blue = (byte) (int) (getBitsAsByte(data, 1, 5) * scalar);
-		                    green = (byte) (int) (getBitsAsByte(data, 6, 5) * scalar);
-		                    red = (byte) (int) (getBitsAsByte(data, 11, 5) * scalar);
-		                    rawData[rawDataIndex++] = red;
-		                    rawData[rawDataIndex++] = green;
-		                    rawData[rawDataIndex++] = blue;
-		                }
-		            }
-		        }
-		    }
-		    return Format.RGB8;
-		} else {
-		    throw new IOException("Unsupported TGA true color depth: " + tgaHeader.getPixelDepth());
-		}
-	}
+        ByteSource(InputStream in) {
+            this.in = in;
+        }
 
-	private static Format determineTrueColorFormatBasedOnPixelDepth(TGAHeader tgaHeader, byte[] rawData, int dl, int rawDataIndex) throws IOException {
-		byte red;
-		byte green;
-		byte blue;
-		byte alpha;
-		if (tgaHeader.getPixelDepth() == 16) {
-		    byte[] data = new byte[2];
-		    float scalar = 255f / 31f;
-		    for (int i = 0; i <= (tgaHeader.getHeight() - 1); i++) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - i) * tgaHeader.getWidth() * dl;
-		        }
-		        for (int j = 0; j < tgaHeader.getWidth(); j++) {
-		            data[1] = tgaHeader.getDis().readByte();
-		            data[0] = tgaHeader.getDis().readByte();
-		            rawData[rawDataIndex++] = (byte) (int) (getBitsAsByte(data, 1, 5) * scalar);
-		            rawData[rawDataIndex++] = (byte) (int) (getBitsAsByte(data, 6, 5) * scalar);
-		            rawData[rawDataIndex++] = (byte) (int) (getBitsAsByte(data, 11, 5) * scalar);
-		            if (dl == 4) {
-		                // create an alpha channel
-		                alpha = getBitsAsByte(data, 0, 1);
-		                if (alpha == 1) {
-		                    alpha = (byte) 255;
-		                }
-		                rawData[rawDataIndex++] = alpha;
-		            }
-		        }
-		    }
+        private void fill() throws IOException {
+            position = 0;
+            limit = in.read(buffer, 0, buffer.length);
+            if (limit <= 0) {
+                limit = 0;
+                throw new EOFException("Unexpected end of TGA file");
+            }
+        }
 
-		    return dl == 4 ? Format.RGBA8 : Format.RGB8;
-		} else if (tgaHeader.getPixelDepth() == 24) {
-		    for (int y = 0; y < tgaHeader.getHeight(); y++) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - y) * tgaHeader.getWidth() * dl;
-		        } else {
-		            rawDataIndex = y * tgaHeader.getWidth() * dl;
-		        }
-
-		        tgaHeader.getDis().readFully(rawData, rawDataIndex, tgaHeader.getWidth() * dl);
-//                    for (int x = 0; x < width; x++) {
-		        //read scanline
-//                        blue = dis.readByte();
-//                        green = dis.readByte();
-//                        red = dis.readByte();
-//                        rawData[rawDataIndex++] = red;
-//                        rawData[rawDataIndex++] = green;
-//                        rawData[rawDataIndex++] = blue;
-//                    }
-		    }
-		    return Format.BGR8;
-		} else if (tgaHeader.getPixelDepth() == 32) {
-		    for (int i = 0; i <= (tgaHeader.getHeight() - 1); i++) {
-		        if (!tgaHeader.isFlip()) {
-		            rawDataIndex = (tgaHeader.getHeight() - 1 - i) * tgaHeader.getWidth() * dl;
-		        }
-
-		        for (int j = 0; j < tgaHeader.getWidth(); j++) {
-		            blue = tgaHeader.getDis().readByte();
-		            green = tgaHeader.getDis().readByte();
-		            red = tgaHeader.getDis().readByte();
-		            alpha = tgaHeader.getDis().readByte();
-		            rawData[rawDataIndex++] = red;
-		            rawData[rawDataIndex++] = green;
-		            rawData[rawDataIndex++] = blue;
-		            rawData[rawDataIndex++] = alpha;
-		        }
-		    }
-		    return Format.RGBA8;
-		} else {
-		    throw new IOException("Unsupported TGA true color depth: " + tgaHeader.getPixelDepth());
-		}
-	}
+        int read() throws IOException {
+            if (position == limit) {
+                fill();
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        void read(byte[] dest, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (position == limit) {
+                    fill();
+                }
+                int count = Math.min(length, limit - position);
+                System.arraycopy(buffer, position, dest, offset, count);
+                position += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        void release() {
+            DecodeBufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Decodes run length encoded true color pixels. Packets may span
+     * several scanlines, so the state of the current packet is kept
+     * between them.
+     */
+    private static final class RunLength {
+
+        private final int bytesPerPixel;
+        private final byte[] pixel = new byte[4];
+        private int remaining;
+        private boolean repeat;
+
+        RunLength(int bytesPerPixel) {
+            this.bytesPerPixel = bytesPerPixel;
+        }
+
+        void decodeScanline(ByteSource source, int width, byte[] scanline) throws IOException {
+            int outBytes = bytesPerPixel == 2 ? 3 : bytesPerPixel;
+            int x = 0;
+            while (x < width) {
+                if (remaining == 0) {
+                    // Get the number of pixels the next chunk covers (either packed or unpacked)
+                    int count = source.read();
+                    repeat = (count & 0x80) != 0;
+                    remaining = (count & 0x7f) + 1;
+                    if (repeat) {
+                        // Its an RLE packed block - use the following 1 pixel for the next <count> pixels
+                        readPixel(source, pixel, 0);
+                    }
+                }
+                int count = Math.min(remaining, width - x);
+                int offset = x * outBytes;
+                if (repeat) {
+                    for (int i = 0; i < count; i++) {
+                        System.arraycopy(pixel, 0, scanline, offset + i * outBytes, outBytes);
+                    }
+                } else if (bytesPerPixel == 2) {
+                    for (int i = 0; i < count; i++) {
+                        readPixel(source, scanline, offset + i * outBytes);
+                    }
+                } else {
+                    // Its not RLE packed, but the next <count> pixels are raw.
+                    source.read(scanline, offset, count * outBytes);
+                    swapRedBlue(scanline, offset, count, outBytes);
+                }
+                remaining -= count;
+                x += count;
+            }
+        }
+
+        private void readPixel(ByteSource source, byte[] dest, int offset) throws IOException {
+            if (bytesPerPixel == 2) {
+                decode16(source.read() | source.read() << 8, dest, offset);
+            } else {
+                source.read(dest, offset, bytesPerPixel);
+                swapRedBlue(dest, offset, 1, bytesPerPixel);
+            }
+        }
+    }
 
 	private static ColorMapEntry[] constructColorMapType(TGAHeader tgaHeader, ColorMapEntry[] cMapEntries) throws IOException {
 		if (tgaHeader.getColorMapType() != 0) {
@@ -48,6 +48,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -82,7 +83,7 @@ public class KTXLoader implements AssetLoader {
         InputStream in = null;
         try {
             in = info.openStream();
-            IImage img = load(in);
+            IImage img = load(in, info.mapContent());
             return img;
         } finally {
             if (in != null) {
@@ -91,7 +92,12 @@ public class KTXLoader implements AssetLoader {
         }
     }
 
-    private IImage load(InputStream stream) {
+    /**
+     * Loads the image from the stream. When the file is also mapped in memory,
+     * and the pixel reader supports it, only the header is read from the
+     * stream and the pixels are copied row by row from the mapped file.
+     */
+    private IImage load(InputStream stream, ByteBuffer mapped) {
 
         byte[] fileId = new byte[12];
 
@@ -151,6 +157,16 @@ public class KTXLoader implements AssetLoader {
             
             int nbSlices = Math.max(numberOfFaces,numberOfArrayElements);
 
+            ByteBuffer source = null;
+            MappedPixelReader mappedReader = null;
+            if (mapped != null && pixelReader instanceof MappedPixelReader) {
+                mappedReader = (MappedPixelReader) pixelReader;
+                source = mapped.duplicate();
+                source.order(endianness == 0x01020304 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                // identifier, 13 header fields, key value data
+                source.position(12 + 13 * 4 + bytesOfKeyValueData);
+            }
+
             Format imgFormat = getImageFormat(glFormat, glInternalFormat, glType);
             log.log(Level.FINE, "img format {0}", imgFormat.toString());
             
@@ -171,7 +187,7 @@ public class KTXLoader implements AssetLoader {
                 //size of the image in byte.
                 //this value is bogus in many example, when using mipmaps.
                 //instead we compute the theorical size and display a warning when it does not match.
-                int fileImageSize = in.readInt();
+                int fileImageSize = source != null ? source.getInt() : in.readInt();
                 
                 int width = Math.max(1, pixelWidth >> mipLevel);
                 int height = Math.max(1, pixelHeight >> mipLevel);
@@ -191,17 +207,21 @@ public class KTXLoader implements AssetLoader {
 
                             log.log(Level.FINE, "position {0}", byteBuffer.position());
                             byteBuffer.position(offset);                                                        
-                            nbPixelRead = pixelReader.readPixels(width, height, pixelData, byteBuffer, in);
+                            if (source != null) {
+                                nbPixelRead = mappedReader.readPixels(width, height, bytePerPixel, source, byteBuffer);
+                            } else {
+                                nbPixelRead = pixelReader.readPixels(width, height, pixelData, byteBuffer, in);
+                            }
                         }
                         //cube padding
                         if (numberOfFaces == 6 && numberOfArrayElements == 0) {
-                            in.skipBytes(3 - ((nbPixelRead + 3) % 4));
+                            skip(in, source, 3 - ((nbPixelRead + 3) % 4));
                         }
                     }
                 }
                 //mip padding
                 log.log(Level.FINE, "skipping {0}", (3 - ((imageSize + 3) % 4)));
-                in.skipBytes(3 - ((imageSize + 3) % 4));
+                skip(in, source, 3 - ((imageSize + 3) % 4));
                 offset+=imageSize;
             }
             //there are loaded mip maps we set the sizes
@@ -220,6 +240,14 @@ public class KTXLoader implements AssetLoader {
         return null;
     }
 
+    private static void skip(DataInput in, ByteBuffer source, int bytes) throws IOException {
+        if (source != null) {
+            source.position(source.position() + bytes);
+        } else {
+            in.skipBytes(bytes);
+        }
+    }
+
     /**
      * returns the slice from the face and the array index
      * @param face the face
@@ -40,7 +40,7 @@ import java.nio.ByteBuffer;
  *
  * @author Nehon
  */
-public class SrTdRiPixelReader implements PixelReader {
+public class SrTdRiPixelReader implements MappedPixelReader {
 
     @Override
     public int readPixels(int pixelWidth, int pixelHeight, byte[] pixelData, ByteBuffer buffer, DataInput in) throws IOException {
@@ -57,4 +57,20 @@ public class SrTdRiPixelReader implements PixelReader {
         return pixelRead;
     }
 
+    @Override
+    public int readPixels(int pixelWidth, int pixelHeight, int bytePerPixel, ByteBuffer source, ByteBuffer buffer) {
+        // rows are stored top down, each one is copied to its flipped place
+        int scanlineSize = pixelWidth * bytePerPixel;
+        int start = buffer.position();
+        int limit = source.limit();
+        for (int row = pixelHeight - 1; row >= 0; row--) {
+            source.limit(source.position() + scanlineSize);
+            buffer.position(start + row * scanlineSize);
+            buffer.put(source);
+        }
+        source.limit(limit);
+        buffer.position(start + pixelHeight * scanlineSize);
+        return pixelHeight * scanlineSize;
+    }
+
 }
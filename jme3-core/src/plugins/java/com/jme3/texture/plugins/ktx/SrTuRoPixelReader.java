@@ -40,7 +40,7 @@ import java.nio.ByteBuffer;
  *
  * @author Nehon
  */
-public class SrTuRoPixelReader implements PixelReader {
+public class SrTuRoPixelReader implements MappedPixelReader {
 
     @Override
     public int readPixels(int pixelWidth, int pixelHeight, byte[] pixelData, ByteBuffer buffer, DataInput in) throws IOException {
@@ -55,4 +55,15 @@ public class SrTuRoPixelReader implements PixelReader {
         return pixelRead;
     }
 
+    @Override
+    public int readPixels(int pixelWidth, int pixelHeight, int bytePerPixel, ByteBuffer source, ByteBuffer buffer) {
+        // same orientation as GL, the pixels are copied as is
+        int size = pixelWidth * pixelHeight * bytePerPixel;
+        int limit = source.limit();
+        source.limit(source.position() + size);
+        buffer.put(source);
+        source.limit(limit);
+        return size;
+    }
+
 }
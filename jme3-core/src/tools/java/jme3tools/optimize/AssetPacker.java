@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3tools.optimize;
+
+import com.jme3.asset.AssetEventListener;
+import com.jme3.asset.AssetKey;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs an asset folder into a zip archive optimized for the
+ * {@link com.jme3.asset.plugins.ZipLocator}.
+ * <p>
+ * Entries are written in the expected load order, so that loading the
+ * game reads the archive mostly sequentially. The order can be recorded
+ * while running the game with a {@link LoadOrderRecorder}; the assets that
+ * aren't part of it follow, sorted by name.
+ * Already compressed formats and the formats that loaders can read from a
+ * memory mapping (DDS, KTX, WAV) are stored uncompressed, with their data
+ * aligned, so that the locator can map each of them on its own straight
+ * from the archive file instead of inflating a copy.
+ * <p>
+ * Usage: <code>AssetPacker &lt;asset folder&gt; &lt;output zip&gt; [load order file]</code>
+ */
+public class AssetPacker {
+
+    private static final Logger logger = Logger.getLogger(AssetPacker.class.getName());
+
+    /**
+     * Id of the extra field used to pad local headers, the same as the
+     * Android zipalign tool.
+     */
+    private static final int PADDING_EXTRA_ID = 0xD935;
+
+    private final File root;
+    private final List<String> loadOrder = new ArrayList<String>();
+    private final Set<String> storedExtensions = new HashSet<String>();
+    private int alignment = 4;
+    private int level = 9;
+
+    /**
+     * Creates a packer for the given asset folder.
+     *
+     * @param root the asset folder
+     */
+    public AssetPacker(File root) {
+        this.root = root;
+        Collections.addAll(storedExtensions, "png", "jpg", "jpeg", "ogg", "zip", "gz",
+                                             "dds", "ktx", "wav");
+    }
+
+    /**
+     * Sets the expected load order of the assets.
+     *
+     * @param names the asset names, in the order they are loaded
+     */
+    public void setLoadOrder(List<String> names) {
+        loadOrder.clear();
+        loadOrder.addAll(names);
+    }
+
+    /**
+     * Reads the expected load order of the assets from a file, one asset
+     * name per line, as written by {@link LoadOrderRecorder#write(java.io.File) }.
+     *
+     * @param file the load order file
+     * @throws IOException if the file can't be read
+     */
+    public void readLoadOrder(File file) throws IOException {
+        List<String> names = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    names.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        setLoadOrder(names);
+    }
+
+    /**
+     * Adds a file extension, without the dot, of assets to store
+     * uncompressed.
+     *
+     * @param extension the extension
+     */
+    public void addStoredExtension(String extension) {
+        storedExtensions.add(extension.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Sets the alignment in bytes of the data of stored entries, 4 by
+     * default.
+     *
+     * @param alignment the alignment, a power of two
+     */
+    public void setAlignment(int alignment) {
+        if (alignment <= 0 || (alignment & (alignment - 1)) != 0) {
+            throw new IllegalArgumentException("Alignment must be a power of two");
+        }
+        this.alignment = alignment;
+    }
+
+    /**
+     * Sets the compression level of deflated entries, 9 by default.
+     *
+     * @param level the level, from 0 to 9
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Writes the archive.
+     *
+     * @param output the archive file
+     * @throws IOException if an asset can't be read or the archive can't be
+     * written
+     */
+    public void pack(File output) throws IOException {
+        List<String> names = new ArrayList<String>();
+        listFiles(root, "", names);
+        Collections.sort(names);
+
+        // the recorded assets first, then the others
+        Set<String> ordered = new LinkedHashSet<String>();
+        Set<String> available = new HashSet<String>(names);
+        for (String name : loadOrder) {
+            if (name.startsWith("/")) {
+                name = name.substring(1);
+            }
+            if (available.contains(name)) {
+                ordered.add(name);
+            }
+        }
+        ordered.addAll(names);
+
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+        ZipOutputStream zip = new ZipOutputStream(counter);
+        zip.setLevel(level);
+        try {
+            byte[] data = new byte[0];
+            for (String name : ordered) {
+                File file = new File(root, name);
+                int length = (int) file.length();
+                if (data.length < length) {
+                    data = new byte[length];
+                }
+                readFully(file, data, length);
+
+                ZipEntry entry = new ZipEntry(name);
+                entry.setTime(file.lastModified());
+                if (isStored(name)) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data, 0, length);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(length);
+                    entry.setCompressedSize(length);
+                    entry.setCrc(crc.getValue());
+                    entry.setExtra(padding(counter.count, name));
+                } else {
+                    entry.setMethod(ZipEntry.DEFLATED);
+                }
+                zip.putNextEntry(entry);
+                zip.write(data, 0, length);
+                zip.closeEntry();
+            }
+        } finally {
+            zip.close();
+        }
+        logger.log(Level.INFO, "Packed {0} assets into {1}", new Object[]{ordered.size(), output});
+    }
+
+    private boolean isStored(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Creates the extra field padding the local header of an entry written
+     * at the given offset, so that its data is aligned.
+     */
+    private byte[] padding(long offset, String name) throws IOException {
+        long dataOffset = offset + 30 + name.getBytes("UTF-8").length + 4;
+        int pad = (int) ((alignment - dataOffset % alignment) % alignment);
+        byte[] extra = new byte[4 + pad];
+        extra[0] = (byte) PADDING_EXTRA_ID;
+        extra[1] = (byte) (PADDING_EXTRA_ID >> 8);
+        extra[2] = (byte) pad;
+        extra[3] = (byte) (pad >> 8);
+        return extra;
+    }
+
+    private static void listFiles(File folder, String prefix, List<String> store) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, prefix + file.getName() + "/", store);
+            } else {
+                store.add(prefix + file.getName());
+            }
+        }
+    }
+
+    private static void readFully(File file, byte[] data, int length) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < length) {
+                int count = in.read(data, read, length - read);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of file " + file);
+                }
+                read += count;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Records the order in which assets are requested, to be registered
+     * with {@link com.jme3.asset.AssetManager#addAssetEventListener(com.jme3.asset.AssetEventListener) }
+     * while playing through the game.
+     */
+    public static class LoadOrderRecorder implements AssetEventListener {
+
+        private final Set<String> names = new LinkedHashSet<String>();
+
+        public synchronized void assetRequested(AssetKey key) {
+            names.add(key.getName());
+        }
+
+        public void assetLoaded(AssetKey key) {
+        }
+
+        public void assetDependencyNotFound(AssetKey parentKey, AssetKey dependentAssetKey) {
+        }
+
+        /**
+         * @return the names of the requested assets, in request order
+         */
+        public synchronized List<String> getLoadOrder() {
+            return new ArrayList<String>(names);
+        }
+
+        /**
+         * Writes the recorded order, one asset name per line.
+         *
+         * @param file the load order file
+         * @throws IOException if the file can't be written
+         */
+        public synchronized void write(File file) throws IOException {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                for (String name : names) {
+                    writer.write(name);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: AssetPacker <asset folder> <output zip> [load order file]");
+            return;
+        }
+        AssetPacker packer = new AssetPacker(new File(args[0]));
+        if (args.length > 2) {
+            packer.readLoadOrder(new File(args[2]));
+        }
+        packer.pack(new File(args[1]));
+    }
+}
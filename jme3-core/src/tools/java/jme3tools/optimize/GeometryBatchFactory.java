@@ -3,7 +3,6 @@ package jme3tools.optimize;
 import com.jme3.material.Material;
 import com.jme3.math.Matrix4f;
 import com.jme3.math.Transform;
-import com.jme3.math.Vector3f;
 import com.jme3.scene.*;
 import com.jme3.scene.Mesh.Mode;
 import com.jme3.scene.VertexBuffer.Format;
@@ -11,11 +10,14 @@ import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.util.BufferUtils;
+import com.jme3.util.ParallelTasks;
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,81 +25,290 @@ public class GeometryBatchFactory {
 
     private static final Logger logger = Logger.getLogger(GeometryBatchFactory.class.getName());
 
-    private static void doTransformVerts(FloatBuffer inBuf, int offset, FloatBuffer outBuf, Matrix4f transform) {
-        Vector3f pos = new Vector3f();
-
-        // offset is given in element units
-        // convert to be in component units
-        offset *= 3;
+    /**
+     * Consecutive geometries are merged by the same task until they reach
+     * this number of vertices, so that small geometries don't flood the
+     * executor with tiny tasks.
+     */
+    private static final int TASK_VERTICES = 16384;
+    /**
+     * Number of vertices transformed per bulk get and put.
+     */
+    private static final int CHUNK_VERTICES = 1024;
 
-        for (int i = 0; i < inBuf.limit() / 3; i++) {
-            pos.x = inBuf.get(i * 3 + 0);
-            pos.y = inBuf.get(i * 3 + 1);
-            pos.z = inBuf.get(i * 3 + 2);
+    /**
+     * A merge of geometries into a mesh, prepared on the calling thread: the
+     * output buffers are allocated and the offset of each geometry in them is
+     * known, so that ranges of geometries can then be merged concurrently,
+     * each one writing to its own part of the output buffers.
+     */
+    private static class MergeJob {
+
+        private final Geometry[] geometries;
+        private final Matrix4f[] worldMatrices;
+        private final int[] vertexOffsets;
+        private final int[] primitiveOffsets;
+        private final int[] compsForBuf;
+        private final Format[] formatForBuf;
+        private final Buffer[] outData;
+
+        private MergeJob(Geometry[] geometries, int[] compsForBuf, Format[] formatForBuf) {
+            this.geometries = geometries;
+            this.compsForBuf = compsForBuf;
+            this.formatForBuf = formatForBuf;
+            worldMatrices = new Matrix4f[geometries.length];
+            vertexOffsets = new int[geometries.length];
+            primitiveOffsets = new int[geometries.length];
+            outData = new Buffer[compsForBuf.length];
+        }
 
-            transform.mult(pos, pos);
+        private Runnable task(final int from, final int to) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    merge(from, to);
+                }
+            };
+        }
 
-            outBuf.put(offset + i * 3 + 0, pos.x);
-            outBuf.put(offset + i * 3 + 1, pos.y);
-            outBuf.put(offset + i * 3 + 2, pos.z);
+        private void merge(int from, int to) {
+            float[] floats = new float[CHUNK_VERTICES * 4];
+            int[] indices = new int[CHUNK_VERTICES * 3];
+            Type[] types = Type.values();
+            for (int g = from; g < to; g++) {
+                Mesh inMesh = geometries[g].getMesh();
+                int vertexOffset = vertexOffsets[g];
+                for (int bufType = 0; bufType < compsForBuf.length; bufType++) {
+                    VertexBuffer inBuf = inMesh.getBuffer(types[bufType]);
+                    Buffer out = outData[bufType];
+                    if (inBuf == null || out == null) {
+                        continue;
+                    }
+                    int components = compsForBuf[bufType];
+                    if (Type.Index.ordinal() == bufType) {
+                        mergeIndices(inMesh, primitiveOffsets[g] * components,
+                                inMesh.getTriangleCount() * components, vertexOffset, out, indices);
+                    } else if (Type.Position.ordinal() == bufType) {
+                        doTransformVerts((FloatBuffer) inBuf.getDataReadOnly(), vertexOffset,
+                                (FloatBuffer) out, worldMatrices[g], floats);
+                    } else if (Type.Normal.ordinal() == bufType) {
+                        doTransformNorms((FloatBuffer) inBuf.getDataReadOnly(), vertexOffset, 3,
+                                (FloatBuffer) out, worldMatrices[g], floats);
+                    } else if (Type.Tangent.ordinal() == bufType) {
+                        doTransformNorms((FloatBuffer) inBuf.getDataReadOnly(), vertexOffset, components,
+                                (FloatBuffer) out, worldMatrices[g], floats);
+                    } else {
+                        if (inBuf.getFormat() != formatForBuf[bufType] || inBuf.getNumComponents() != components) {
+                            throw new IllegalArgumentException("Buffer format mismatch. Cannot copy");
+                        }
+                        copyElements(inBuf, vertexOffset, inMesh.getVertexCount(), out);
+                    }
+                }
+            }
         }
     }
 
-    private static void doTransformNorms(FloatBuffer inBuf, int offset, FloatBuffer outBuf, Matrix4f transform) {
-        Vector3f norm = new Vector3f();
-
+    private static void doTransformVerts(FloatBuffer inBuf, int offset, FloatBuffer outBuf, Matrix4f transform, float[] chunk) {
+        FloatBuffer in = inBuf.duplicate();
+        in.rewind();
+        in.limit(inBuf.limit() / 3 * 3);
         // offset is given in element units
         // convert to be in component units
-        offset *= 3;
-
-        for (int i = 0; i < inBuf.limit() / 3; i++) {
-            norm.x = inBuf.get(i * 3 + 0);
-            norm.y = inBuf.get(i * 3 + 1);
-            norm.z = inBuf.get(i * 3 + 2);
-
-            transform.multNormal(norm, norm);
-
-            outBuf.put(offset + i * 3 + 0, norm.x);
-            outBuf.put(offset + i * 3 + 1, norm.y);
-            outBuf.put(offset + i * 3 + 2, norm.z);
+        FloatBuffer out = outBuf.duplicate();
+        out.clear();
+        out.position(offset * 3);
+
+        Matrix4f m = transform;
+        int chunkSize = CHUNK_VERTICES * 3;
+        while (in.hasRemaining()) {
+            int count = Math.min(chunkSize, in.remaining());
+            in.get(chunk, 0, count);
+            for (int i = 0; i < count; i += 3) {
+                float x = chunk[i], y = chunk[i + 1], z = chunk[i + 2];
+                chunk[i] = m.m00 * x + m.m01 * y + m.m02 * z + m.m03;
+                chunk[i + 1] = m.m10 * x + m.m11 * y + m.m12 * z + m.m13;
+                chunk[i + 2] = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+            }
+            out.put(chunk, 0, count);
         }
     }
 
-    private static void doTransformTangents(FloatBuffer inBuf, int offset, int components, FloatBuffer outBuf, Matrix4f transform) {
-        Vector3f tan = new Vector3f();
-
+    /**
+     * Transforms normals, or tangents with 3 or 4 components. The fourth
+     * component of the tangents is copied as is.
+     */
+    private static void doTransformNorms(FloatBuffer inBuf, int offset, int components, FloatBuffer outBuf, Matrix4f transform, float[] chunk) {
+        FloatBuffer in = inBuf.duplicate();
+        in.rewind();
+        in.limit(inBuf.limit() / components * components);
         // offset is given in element units
         // convert to be in component units
-        offset *= components;
-
-        for (int i = 0; i < inBuf.limit() / components; i++) {
-            tan.x = inBuf.get(i * components + 0);
-            tan.y = inBuf.get(i * components + 1);
-            tan.z = inBuf.get(i * components + 2);
-
-            transform.multNormal(tan, tan);
+        FloatBuffer out = outBuf.duplicate();
+        out.clear();
+        out.position(offset * components);
+
+        Matrix4f m = transform;
+        int chunkSize = CHUNK_VERTICES * components;
+        while (in.hasRemaining()) {
+            int count = Math.min(chunkSize, in.remaining());
+            in.get(chunk, 0, count);
+            for (int i = 0; i < count; i += components) {
+                float x = chunk[i], y = chunk[i + 1], z = chunk[i + 2];
+                chunk[i] = m.m00 * x + m.m01 * y + m.m02 * z;
+                chunk[i + 1] = m.m10 * x + m.m11 * y + m.m12 * z;
+                chunk[i + 2] = m.m20 * x + m.m21 * y + m.m22 * z;
+            }
+            out.put(chunk, 0, count);
+        }
+    }
 
-            outBuf.put(offset + i * components + 0, tan.x);
-            outBuf.put(offset + i * components + 1, tan.y);
-            outBuf.put(offset + i * components + 2, tan.z);
+    /**
+     * Copies the indices of a mesh as a list of primitives, shifted by the
+     * offset of its vertices in the merged mesh.
+     */
+    private static void mergeIndices(Mesh inMesh, int outPos, int count, int vertexOffset, Buffer outBuf, int[] chunk) {
+        VertexBuffer inIdxBuf = inMesh.getBuffer(Type.Index);
+        Mode mode = inMesh.getMode();
+        Buffer inData = null;
+        IndexBuffer inIdx = null;
+        if (inIdxBuf != null && (mode == Mode.Triangles || mode == Mode.Lines || mode == Mode.Points)) {
+            // already a list, reading the buffer directly
+            inData = inIdxBuf.getDataReadOnly();
+        } else {
+            inIdx = inMesh.getIndicesAsList();
+        }
+        IntBuffer outInts = null;
+        ShortBuffer outShorts = null;
+        short[] shorts = null;
+        if (outBuf instanceof IntBuffer) {
+            outInts = ((IntBuffer) outBuf).duplicate();
+            outInts.clear();
+            outInts.position(outPos);
+        } else {
+            outShorts = ((ShortBuffer) outBuf).duplicate();
+            outShorts.clear();
+            outShorts.position(outPos);
+            shorts = new short[chunk.length];
+        }
 
-            if (components == 4) {
-                outBuf.put(offset + i * components + 3, inBuf.get(i * components + 3));
+        for (int start = 0; start < count; start += chunk.length) {
+            int length = Math.min(chunk.length, count - start);
+            if (inData instanceof IntBuffer) {
+                IntBuffer ib = (IntBuffer) inData;
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = ib.get(start + i);
+                }
+            } else if (inData instanceof ShortBuffer) {
+                ShortBuffer sb = (ShortBuffer) inData;
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = sb.get(start + i) & 0xffff;
+                }
+            } else if (inData instanceof ByteBuffer) {
+                ByteBuffer bb = (ByteBuffer) inData;
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = bb.get(start + i) & 0xff;
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = inIdx.get(start + i);
+                }
+            }
+            if (outInts != null) {
+                for (int i = 0; i < length; i++) {
+                    chunk[i] += vertexOffset;
+                }
+                outInts.put(chunk, 0, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    shorts[i] = (short) (chunk[i] + vertexOffset);
+                }
+                outShorts.put(shorts, 0, length);
             }
         }
     }
 
+    /**
+     * Bulk copy of the elements of a buffer, through duplicates so that
+     * concurrent copies into the same output buffer don't interfere.
+     */
+    private static void copyElements(VertexBuffer inBuf, int outIndex, int len, Buffer outData) {
+        int components = inBuf.getNumComponents();
+        int inPos = 0;
+        int outPos = outIndex * components;
+        int size = len * components;
+        if (inBuf.getFormat() == Format.Half) {
+            // because half is stored as bytebuf but its 2 bytes long
+            outPos *= 2;
+            size *= 2;
+        }
+        Buffer srcData = inBuf.getDataReadOnly();
+        if (srcData instanceof FloatBuffer) {
+            FloatBuffer in = (FloatBuffer) srcData;
+            FloatBuffer out = ((FloatBuffer) outData).duplicate();
+            in.limit(inPos + size).position(inPos);
+            out.clear();
+            out.position(outPos);
+            out.put(in);
+        } else if (srcData instanceof ShortBuffer) {
+            ShortBuffer in = (ShortBuffer) srcData;
+            ShortBuffer out = ((ShortBuffer) outData).duplicate();
+            in.limit(inPos + size).position(inPos);
+            out.clear();
+            out.position(outPos);
+            out.put(in);
+        } else if (srcData instanceof IntBuffer) {
+            IntBuffer in = (IntBuffer) srcData;
+            IntBuffer out = ((IntBuffer) outData).duplicate();
+            in.limit(inPos + size).position(inPos);
+            out.clear();
+            out.position(outPos);
+            out.put(in);
+        } else if (srcData instanceof ByteBuffer) {
+            ByteBuffer in = (ByteBuffer) srcData;
+            ByteBuffer out = ((ByteBuffer) outData).duplicate();
+            in.limit(inPos + size).position(inPos);
+            out.clear();
+            out.position(outPos);
+            out.put(in);
+        } else {
+            throw new UnsupportedOperationException("Unrecognized buffer format: " + inBuf.getFormat());
+        }
+    }
+
     /**
      * Merges all geometries in the collection into
      * the output mesh. Creates a new material using the TextureAtlas.
-     * 
+     * The buffers are merged in parallel on a shared pool of daemon threads.
+     *
      * @param geometries
      * @param outMesh
      */
     public static void mergeGeometries(Collection<Geometry> geometries, Mesh outMesh) {
+        mergeGeometries(geometries, outMesh, ParallelTasks.getSharedExecutor());
+    }
+
+    /**
+     * Merges all geometries in the collection into the output mesh.
+     * <p>
+     * The output buffers are allocated first, with the offset of every
+     * geometry in them. The geometries are then transformed and copied by
+     * ranges of roughly {@value #TASK_VERTICES} vertices, each range on its own
+     * task, writing directly into the output buffers.
+     *
+     * @param geometries the geometries to merge
+     * @param outMesh the output mesh
+     * @param executor the executor merging the ranges, or null to merge on
+     * the calling thread only
+     */
+    public static void mergeGeometries(Collection<Geometry> geometries, Mesh outMesh, ExecutorService executor) {
+        runMerges(Collections.singletonList(prepareMerge(geometries, outMesh)), executor);
+    }
+
+    private static MergeJob prepareMerge(Collection<Geometry> geometries, Mesh outMesh) {
         int[] compsForBuf = new int[VertexBuffer.Type.values().length];
         Format[] formatForBuf = new Format[compsForBuf.length];
          boolean[] normForBuf = new boolean[VertexBuffer.Type.values().length];
+        MergeJob job = new MergeJob(geometries.toArray(new Geometry[geometries.size()]), compsForBuf, formatForBuf);
 
         int totalVerts = 0;
         int totalTris = 0;
@@ -105,7 +316,13 @@ public class GeometryBatchFactory {
         int maxWeights = -1;
 
         Mode mode = null;
-        for (Geometry geom : geometries) {
+        int g = 0;
+        for (Geometry geom : job.geometries) {
+            job.vertexOffsets[g] = totalVerts;
+            job.primitiveOffsets[g] = totalTris;
+            geom.computeWorldMatrix();
+            job.worldMatrices[g++] = geom.getWorldMatrix();
+
             totalVerts += geom.getVertexCount();
             totalTris += geom.getTriangleCount();
             totalLodLevels = Math.min(totalLodLevels, geom.getMesh().getNumLodLevels());
@@ -144,7 +361,7 @@ public class GeometryBatchFactory {
                 formatForBuf[vb.getBufferType().ordinal()] = vb.getFormat();
                 normForBuf[vb.getBufferType().ordinal()] = vb.isNormalized();
             }
-            
+
             maxWeights = Math.max(maxWeights, geom.getMesh().getMaxNumWeights());
 
             if (mode != null && mode != listMode) {
@@ -182,60 +399,31 @@ public class GeometryBatchFactory {
             vb.setupData(Usage.Static, compsForBuf[i], formatForBuf[i], data);
             vb.setNormalized(normForBuf[i]);
             outMesh.setBuffer(vb);
+            job.outData[i] = data;
         }
+        return job;
+    }
 
-        int globalVertIndex = 0;
-        int globalTriIndex = 0;
-
-        for (Geometry geom : geometries) {
-            Mesh inMesh = geom.getMesh();
-            geom.computeWorldMatrix();
-            Matrix4f worldMatrix = geom.getWorldMatrix();
-
-            int geomVertCount = inMesh.getVertexCount();
-            int geomTriCount = inMesh.getTriangleCount();
-
-            for (int bufType = 0; bufType < compsForBuf.length; bufType++) {
-                VertexBuffer inBuf = inMesh.getBuffer(Type.values()[bufType]);
-                VertexBuffer outBuf = outMesh.getBuffer(Type.values()[bufType]);
-
-                if (inBuf == null || outBuf == null) {
-                    continue;
-                }
-
-                if (Type.Index.ordinal() == bufType) {
-                    int components = compsForBuf[bufType];
-
-                    IndexBuffer inIdx = inMesh.getIndicesAsList();
-                    IndexBuffer outIdx = outMesh.getIndexBuffer();
-
-                    for (int tri = 0; tri < geomTriCount; tri++) {
-                        for (int comp = 0; comp < components; comp++) {
-                            int idx = inIdx.get(tri * components + comp) + globalVertIndex;
-                            outIdx.put((globalTriIndex + tri) * components + comp, idx);
-                        }
-                    }
-                } else if (Type.Position.ordinal() == bufType) {
-                    FloatBuffer inPos = (FloatBuffer) inBuf.getDataReadOnly();
-                    FloatBuffer outPos = (FloatBuffer) outBuf.getData();
-                    doTransformVerts(inPos, globalVertIndex, outPos, worldMatrix);
-                } else if (Type.Normal.ordinal() == bufType) {
-                    FloatBuffer inPos = (FloatBuffer) inBuf.getDataReadOnly();
-                    FloatBuffer outPos = (FloatBuffer) outBuf.getData();
-                    doTransformNorms(inPos, globalVertIndex, outPos, worldMatrix);
-                } else if (Type.Tangent.ordinal() == bufType) {
-                    FloatBuffer inPos = (FloatBuffer) inBuf.getDataReadOnly();
-                    FloatBuffer outPos = (FloatBuffer) outBuf.getData();
-                    int components = inBuf.getNumComponents();
-                    doTransformTangents(inPos, globalVertIndex, components, outPos, worldMatrix);
-                } else {
-                    inBuf.copyElements(0, outBuf, globalVertIndex, geomVertCount);
+    /**
+     * Splits the merges in ranges of geometries and runs them. The calling
+     * thread runs the first range itself and then waits for the others, so
+     * that all the buffers are complete when this method returns.
+     */
+    private static void runMerges(List<MergeJob> jobs, ExecutorService executor) {
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (MergeJob job : jobs) {
+            int from = 0;
+            int vertices = 0;
+            for (int g = 0; g < job.geometries.length; g++) {
+                vertices += job.geometries[g].getVertexCount();
+                if (vertices >= TASK_VERTICES || g == job.geometries.length - 1) {
+                    tasks.add(job.task(from, g + 1));
+                    from = g + 1;
+                    vertices = 0;
                 }
             }
-
-            globalVertIndex += geomVertCount;
-            globalTriIndex += geomTriCount;
         }
+        ParallelTasks.runAll(tasks, executor);
     }
 
     public static void makeLods(Collection<Geometry> geometries, Mesh outMesh) {
@@ -259,7 +447,7 @@ public class GeometryBatchFactory {
                 lodSize = new int[lodLevels];
             }
             for (int i = 0; i < lodLevels; i++) {
-                 lodSize[i] += g.getMesh().getLodLevel(i).getData().limit();
+                 lodSize[i] += g.getMesh().getLodLevel(i).getDataReadOnly().limit();
             }
         }
 
@@ -312,6 +500,20 @@ public class GeometryBatchFactory {
      * @return A List of newly created Geometries, each with a  distinct material
      */
     public static List<Geometry> makeBatches(Collection<Geometry> geometries, boolean useLods) {
+        return makeBatches(geometries, useLods, ParallelTasks.getSharedExecutor());
+    }
+
+    /**
+     * Batches a collection of Geometries so that all with the same material get combined.
+     * The merges of all the batches are prepared first and then run together
+     * on the executor.
+     * @param geometries The Geometries to combine
+     * @param useLods true if you want the resulting geometry to keep lod information
+     * @param executor the executor merging the buffers, or null to merge on
+     * the calling thread only
+     * @return A List of newly created Geometries, each with a  distinct material
+     */
+    public static List<Geometry> makeBatches(Collection<Geometry> geometries, boolean useLods, ExecutorService executor) {
         ArrayList<Geometry> retVal = new ArrayList<Geometry>();
         HashMap<Material, List<Geometry>> matToGeom = new HashMap<Material, List<Geometry>>();
 
@@ -322,6 +524,7 @@ public class GeometryBatchFactory {
                 for (Material mat : matToGeom.keySet()) {
                     if (geom.getMaterial().contentEquals(mat)){
                         outList = matToGeom.get(mat);
+                        break;
                     }
                 }
             }
@@ -332,12 +535,20 @@ public class GeometryBatchFactory {
             outList.add(geom);
         }
 
+        List<Mesh> meshes = new ArrayList<Mesh>(matToGeom.size());
+        List<MergeJob> jobs = new ArrayList<MergeJob>(matToGeom.size());
+        for (List<Geometry> geomsForMat : matToGeom.values()) {
+            Mesh mesh = new Mesh();
+            jobs.add(prepareMerge(geomsForMat, mesh));
+            meshes.add(mesh);
+        }
+        runMerges(jobs, executor);
+
         int batchNum = 0;
         for (Map.Entry<Material, List<Geometry>> entry : matToGeom.entrySet()) {
             Material mat = entry.getKey();
             List<Geometry> geomsForMat = entry.getValue();
-            Mesh mesh = new Mesh();
-            mergeGeometries(geomsForMat, mesh);
+            Mesh mesh = meshes.get(batchNum);
             // lods
             if (useLods) {
                 makeLods(geomsForMat, mesh);
@@ -384,11 +595,25 @@ public class GeometryBatchFactory {
      * @return The newly created optimized geometries attached to a node
      */
     public static Node optimize(Node scene, boolean useLods) {
+        return optimize(scene, useLods, ParallelTasks.getSharedExecutor());
+    }
+
+    /**
+     * Optimizes a scene by combining Geometry with the same material.
+     * All Geometries found in the scene are detached from their parent and
+     * a new Node containing the optimized Geometries is attached.
+     * @param scene The scene to optimize
+     * @param useLods true if you want the resulting geometry to keep lod information
+     * @param executor the executor merging the buffers, or null to merge on
+     * the calling thread only
+     * @return The newly created optimized geometries attached to a node
+     */
+    public static Node optimize(Node scene, boolean useLods, ExecutorService executor) {
         ArrayList<Geometry> geoms = new ArrayList<Geometry>();
 
         gatherGeoms(scene, geoms);
 
-        List<Geometry> batchedGeoms = makeBatches(geoms, useLods);
+        List<Geometry> batchedGeoms = makeBatches(geoms, useLods, executor);
         for (Geometry geom : batchedGeoms) {
             scene.attachChild(geom);
         }
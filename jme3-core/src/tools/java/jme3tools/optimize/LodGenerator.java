@@ -47,42 +47,45 @@
  */
 package jme3tools.optimize;
 
-import com.jme3.bounding.BoundingSphere;
-import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.util.BufferUtils;
+import com.jme3.util.ParallelTasks;
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This is an utility class that allows to generated the lod levels for an
- * arbitrary mesh. It computes a collapse cost for each vertex and each edges.
- * The higher the cost the most likely collapsing the edge or the vertex will
- * produce artifacts on the mesh. <p>This class is the java implementation of
- * the enhanced version of Ogre engine Lod generator, by Péter Szücs, originally
- * based on Stan Melax "easy mesh simplification". The MIT licenced C++ source
- * code can be found here
- * https://github.com/worldforge/ember/tree/master/src/components/ogre/lod more
- * informations can be found here http://www.melax.com/polychop
- * http://sajty.elementfx.com/progressivemesh/GSoC2012.pdf </p>
+ * arbitrary mesh. It computes a collapse cost for each vertex using quadric
+ * error metrics: every vertex accumulates the planes of the triangles around
+ * it, and the cost of collapsing it onto a neighbor is the sum of the squared
+ * distances of the neighbor to those planes. Borders and texture or normal
+ * seams add constraint planes, and a vertex split by a seam can only be
+ * collapsed along that seam, so seams are never ripped. <p>The original
+ * collapse rules come from the Ogre engine Lod generator, by Péter Szücs,
+ * originally based on Stan Melax "easy mesh simplification". The quadric
+ * error metrics are described in Garland and Heckbert "Surface
+ * Simplification Using Quadric Error Metrics". </p>
  *
- * <p>The algorithm sort vertices according to their collapse cost
- * ascending. It collapse from the "cheapest" vertex to the more expensive.<br>
+ * <p>The algorithm keeps vertices in a heap ordered by collapse cost. It
+ * collapses from the "cheapest" vertex to the more expensive, and all the
+ * requested lod levels are produced progressively in a single pass. Lod
+ * levels only contain index buffers, so a vertex is always collapsed onto
+ * one of its neighbors and never moved.<br>
  * <strong>Usage : </strong><br>
  * <pre>
  *      LodGenerator lODGenerator = new LodGenerator(geometry);
@@ -90,25 +93,59 @@ import java.util.logging.Logger;
  * </pre> redutionMethod type is VertexReductionMethod described here
  * {@link TriangleReductionMethod} reduction value depends on the
  * reductionMethod<p>
+ * To bake the lods of all the meshes of a scene in parallel use
+ * {@link #bakeLods(com.jme3.scene.Spatial, java.util.concurrent.ExecutorService, jme3tools.optimize.LodGenerator.TriangleReductionMethod, float[]) }.
  *
  *
  * @author Nehon
  */
 public class LodGenerator {
-    
+
     private static final Logger logger = Logger.getLogger(LodGenerator.class.getName());
     private static final float NEVER_COLLAPSE_COST = Float.MAX_VALUE;
-    private static final float UNINITIALIZED_COLLAPSE_COST = Float.POSITIVE_INFINITY;
-    private Vector3f tmpV1 = new Vector3f();
-    private Vector3f tmpV2 = new Vector3f();
-    private boolean bestQuality = true;
-    private int indexCount = 0;
-    private List<Vertex> collapseCostSet = new ArrayList<Vertex>();
-    private float collapseCostLimit;
-    private List<Triangle> triangleList;
-    private List<Vertex> vertexList = new ArrayList<Vertex>();
-    private float meshBoundingSphereRadius;
+    /**
+     * Weight of the planes constraining the border and seam edges, relative
+     * to the planes of the triangles.
+     */
+    private static final double BORDER_WEIGHT = 100.0;
+    private static final int NONE = -1;
+
     private Mesh mesh;
+    private VertexBuffer.Format indexFormat;
+    //unique positions, vertices sharing a position are welded into a point
+    private int pointCount;
+    private float[] positions;
+    //point of each vertex of the vertex buffer
+    private int[] pointOf;
+    //the original triangles, 3 vertex indices each
+    private int[] sourceTriangles;
+    //collapse state
+    private int triangleCount;
+    private int liveTriangleCount;
+    private int[] triangles;
+    private boolean[] removed;
+    //linked lists of the triangle corners of each point
+    private int[] firstCorner;
+    private int[] nextCorner;
+    //10 coefficients of the symmetric 4x4 quadric of each point
+    private double[] quadrics;
+    private float[] costs;
+    private int[] targets;
+    //indexed binary heap of the points ordered by collapse cost
+    private int[] heap;
+    private int[] heapIndex;
+    private int heapSize;
+    private int[] marks;
+    private int mark;
+    private int[] stamps;
+    private int stamp;
+    private int[] touched = new int[16];
+    private int touchedCount;
+    //maps the vertices of the collapsed point to the vertices of its target
+    private int[] mapSrc = new int[8];
+    private int[] mapDst = new int[8];
+    private int mapSize;
+    private float collapseCostLimit;
 
     /**
      * Describe the way triangles will be removed. <br> PROPORTIONAL :
@@ -137,122 +174,12 @@ public class LodGenerator {
         /**
          * Reduces the vertices, until the cost is bigger then the given value.
          *
-         * Collapse cost is equal to the amount of artifact the reduction
-         * causes. This generates the best Lod output, but the collapse cost
-         * depends on implementation.
+         * Collapse cost is the quadric error of the collapse, that is a sum of
+         * squared distances weighted by the area of the triangles, in world
+         * units.
          */
         COLLAPSE_COST
     };
-    
-    private class Edge {
-        
-        Vertex destination;
-        float collapseCost = UNINITIALIZED_COLLAPSE_COST;
-        int refCount;
-        
-        public Edge(Vertex destination) {
-            this.destination = destination;
-        }
-        
-        public void set(Edge other) {
-            destination = other.destination;
-            collapseCost = other.collapseCost;
-            refCount = other.refCount;
-        }
-        
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof Edge)) {
-                return false;
-            }
-            return destination == ((Edge) obj).destination;
-        }
-        
-        @Override
-        public int hashCode() {
-            return destination.hashCode();
-        }
-        
-        @Override
-        public String toString() {
-            return "Edge{" + "collapsTo " + destination.index + '}';
-        }
-    }
-    
-    private class Vertex {
-        
-        Vector3f position = new Vector3f();
-        float collapseCost = UNINITIALIZED_COLLAPSE_COST;
-        List<Edge> edges = new ArrayList<Edge>();
-        Set<Triangle> triangles = new HashSet<Triangle>();
-        Vertex collapseTo;
-        boolean isSeam;
-        int index;//index in the buffer for debugging
-
-        @Override
-        public String toString() {
-            return index + " : " + position.toString();
-        }
-    }
-    
-    private class Triangle {
-        
-        Vertex[] vertex = new Vertex[3];
-        Vector3f normal;
-        boolean isRemoved;
-        //indices of the vertices in the vertex buffer
-        int[] vertexId = new int[3];
-        
-        void computeNormal() {
-            // Cross-product 2 edges
-            tmpV1.set(vertex[1].position).subtractLocal(vertex[0].position);
-            tmpV2.set(vertex[2].position).subtractLocal(vertex[1].position);
-            
-            normal = tmpV1.cross(tmpV2);
-            normal.normalizeLocal();
-        }
-        
-        boolean hasVertex(Vertex v) {
-            return (v == vertex[0] || v == vertex[1] || v == vertex[2]);
-        }
-        
-        int getVertexIndex(Vertex v) {
-            for (int i = 0; i < 3; i++) {
-                if (vertex[i] == v) {
-                    return vertexId[i];
-                }
-            }
-            throw new IllegalArgumentException("Vertex " + v + "is not part of triangle" + this);
-        }
-        
-        boolean isMalformed() {
-            return vertex[0] == vertex[1] || vertex[0] == vertex[2] || vertex[1] == vertex[2];
-        }
-        
-        @Override
-        public String toString() {
-            String out = "Triangle{\n";
-            for (int i = 0; i < 3; i++) {
-                out += vertexId[i] + " : " + vertex[i].toString() + "\n";
-            }
-            out += '}';
-            return out;
-        }
-    }
-    /**
-     * Comparator used to sort vertices according to their collapse cost
-     */
-    private Comparator collapseComparator = new Comparator<Vertex>() {
-        public int compare(Vertex o1, Vertex o2) {
-            if (Float.compare(o1.collapseCost, o2.collapseCost) == 0) {
-                return 0;
-            }
-            if (o1.collapseCost < o2.collapseCost) {
-                return -1;
-            }
-            return 1;
-        }
-    };
 
     /**
      * Construct a LodGenerator for the given geometry
@@ -260,26 +187,29 @@ public class LodGenerator {
      * @param geom the geometry to consider to generate de Lods.
      */
     public LodGenerator(Geometry geom) {
-        mesh = geom.getMesh();
+        this(geom.getMesh());
+    }
+
+    /**
+     * Construct a LodGenerator for the given mesh
+     *
+     * @param mesh the mesh to consider to generate de Lods, it must be an
+     * indexed triangle mesh.
+     */
+    public LodGenerator(Mesh mesh) {
+        this.mesh = mesh;
         build();
     }
-    
+
     private void build() {
-        BoundingSphere bs = new BoundingSphere();
-        bs.computeFromPoints(mesh.getFloatBuffer(VertexBuffer.Type.Position));
-        meshBoundingSphereRadius = bs.getRadius();
-        List<Vertex> vertexLookup = new ArrayList<Vertex>();
-        initialize();
-        
-        gatherVertexData(mesh, vertexLookup);
-        gatherIndexData(mesh, vertexLookup);
-        computeCosts();
-       // assert (assertValidMesh());
-        
+        if (mesh.getMode() != Mesh.Mode.Triangles || mesh.getBuffer(VertexBuffer.Type.Index) == null) {
+            throw new IllegalArgumentException("Lods can only be generated for indexed triangle meshes");
+        }
+        gatherVertexData();
+        gatherIndexData();
     }
-    
-    private void gatherVertexData(Mesh mesh, List<Vertex> vertexLookup) {
 
+    private void gatherVertexData() {
         //in case the model is currently animating with software animation
         //attempting to retrieve the bind position instead of the position.
         VertexBuffer position = mesh.getBuffer(VertexBuffer.Type.BindPosePosition);
@@ -287,241 +217,526 @@ public class LodGenerator {
             position = mesh.getBuffer(VertexBuffer.Type.Position);
         }
         FloatBuffer pos = (FloatBuffer) position.getDataReadOnly();
-        pos.rewind();
-        
-        while (pos.remaining() != 0) {
-            Vertex v = new Vertex();
-            v.position.setX(pos.get());
-            v.position.setY(pos.get());
-            v.position.setZ(pos.get());
-            v.isSeam = false;
-            Vertex existingV = findSimilar(v);
-            if (existingV != null) {
-                //vertex position already exists
-                existingV.isSeam = true;
-                v.isSeam = true;
-            } else {
-                vertexList.add(v);
+        int vertexCount = pos.limit() / 3;
+        pointOf = new int[vertexCount];
+        positions = new float[vertexCount * 3];
+        pointCount = 0;
+
+        //welding the vertices with the same position, they are split by uv
+        //or normal seams. Open addressing on the position bits.
+        int tableSize = 2;
+        while (tableSize < vertexCount * 2) {
+            tableSize <<= 1;
+        }
+        int tableMask = tableSize - 1;
+        int[] table = new int[tableSize];
+        Arrays.fill(table, NONE);
+        for (int v = 0; v < vertexCount; v++) {
+            //adding 0 turns -0 into 0 so that both are welded
+            float x = pos.get(v * 3) + 0f;
+            float y = pos.get(v * 3 + 1) + 0f;
+            float z = pos.get(v * 3 + 2) + 0f;
+            int hash = Float.floatToIntBits(x) * 73856093
+                    ^ Float.floatToIntBits(y) * 19349663
+                    ^ Float.floatToIntBits(z) * 83492791;
+            int slot = (hash ^ (hash >>> 16)) & tableMask;
+            int point = NONE;
+            while (table[slot] != NONE) {
+                int p = table[slot] * 3;
+                if (positions[p] == x && positions[p + 1] == y && positions[p + 2] == z) {
+                    point = table[slot];
+                    break;
+                }
+                slot = (slot + 1) & tableMask;
             }
-            vertexLookup.add(v);
-        }
-        pos.rewind();
-    }
-    
-    private Vertex findSimilar(Vertex v) {
-        for (Vertex vertex : vertexList) {
-            if (vertex.position.equals(v.position)) {
-                return vertex;
+            if (point == NONE) {
+                point = pointCount++;
+                positions[point * 3] = x;
+                positions[point * 3 + 1] = y;
+                positions[point * 3 + 2] = z;
+                table[slot] = point;
             }
+            pointOf[v] = point;
         }
-        return null;
     }
-    
-    private void gatherIndexData(Mesh mesh, List<Vertex> vertexLookup) {
+
+    private void gatherIndexData() {
         VertexBuffer indexBuffer = mesh.getBuffer(VertexBuffer.Type.Index);
-        indexCount = indexBuffer.getNumElements() * 3;
+        indexFormat = indexBuffer.getFormat();
         Buffer b = indexBuffer.getDataReadOnly();
-        b.rewind();
-        
-        while (b.remaining() != 0) {
-            Triangle tri = new Triangle();
-            tri.isRemoved = false;
-            triangleList.add(tri);            
-            for (int i = 0; i < 3; i++) {
-                if (b instanceof IntBuffer) {
-                    tri.vertexId[i] = ((IntBuffer) b).get();
-                } else {
-                    //bit shift to avoid negative values due to conversion form short to int.
-                    //we need an unsigned int here.
-                    tri.vertexId[i] = ((ShortBuffer) b).get()& 0xffff;
-                }
-               // assert (tri.vertexId[i] < vertexLookup.size());
-                tri.vertex[i] = vertexLookup.get(tri.vertexId[i]);
-                //debug only;
-                tri.vertex[i].index = tri.vertexId[i];
+        int count = b.limit() / 3 * 3;
+        sourceTriangles = new int[count];
+        if (b instanceof IntBuffer) {
+            IntBuffer ib = (IntBuffer) b;
+            for (int i = 0; i < count; i++) {
+                sourceTriangles[i] = ib.get(i);
+            }
+        } else if (b instanceof ShortBuffer) {
+            ShortBuffer sb = (ShortBuffer) b;
+            for (int i = 0; i < count; i++) {
+                //we need an unsigned int here.
+                sourceTriangles[i] = sb.get(i) & 0xffff;
+            }
+        } else {
+            ByteBuffer bb = (ByteBuffer) b;
+            for (int i = 0; i < count; i++) {
+                sourceTriangles[i] = bb.get(i) & 0xff;
             }
-            if (tri.isMalformed()) {
-                if (!tri.isRemoved) {
-                    logger.log(Level.FINE, "malformed triangle found with ID:{0}\n{1} It will be excluded from Lod level calculations.", new Object[]{triangleList.indexOf(tri), tri.toString()});
-                    tri.isRemoved = true;
-                    indexCount -= 3;
+        }
+        triangleCount = count / 3;
+    }
+
+    private void initialize() {
+        triangles = sourceTriangles.clone();
+        removed = new boolean[triangleCount];
+        liveTriangleCount = triangleCount;
+        firstCorner = new int[pointCount];
+        Arrays.fill(firstCorner, NONE);
+        nextCorner = new int[triangleCount * 3];
+        quadrics = new double[pointCount * 10];
+        costs = new float[pointCount];
+        targets = new int[pointCount];
+        heap = new int[pointCount];
+        heapIndex = new int[pointCount];
+        Arrays.fill(heapIndex, NONE);
+        heapSize = 0;
+        marks = new int[pointCount];
+        mark = 0;
+        stamps = new int[pointCount];
+        stamp = 0;
+
+        for (int t = 0; t < triangleCount; t++) {
+            int a = pointOf[triangles[t * 3]];
+            int b = pointOf[triangles[t * 3 + 1]];
+            int c = pointOf[triangles[t * 3 + 2]];
+            if (a == b || a == c || b == c) {
+                logger.log(Level.FINE, "malformed triangle found with ID:{0} It will be excluded from Lod level calculations.", t);
+                removed[t] = true;
+                liveTriangleCount--;
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int corner = t * 3 + k;
+                int p = pointOf[triangles[corner]];
+                nextCorner[corner] = firstCorner[p];
+                firstCorner[p] = corner;
+            }
+            addTriangleQuadric(a, b, c);
+        }
+
+        //constraint planes, perpendicular to the triangle along its border
+        //and seam edges, they keep silhouettes and uv islands in shape
+        for (int t = 0; t < triangleCount; t++) {
+            if (removed[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int wa = triangles[t * 3 + k];
+                int wb = triangles[t * 3 + (k + 1) % 3];
+                if (isBorderOrSeam(t, wa, wb)) {
+                    addBorderQuadric(t, pointOf[wa], pointOf[wb]);
                 }
-                
-            } else {
-                tri.computeNormal();
-                addTriangleToEdges(tri);
             }
         }
-        b.rewind();
+
+        for (int p = 0; p < pointCount; p++) {
+            computeCost(p);
+            if (targets[p] != NONE) {
+                heap[heapSize] = p;
+                heapIndex[p] = heapSize++;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void addTriangleQuadric(int a, int b, int c) {
+        float[] pos = positions;
+        float ux = pos[b * 3] - pos[a * 3], uy = pos[b * 3 + 1] - pos[a * 3 + 1], uz = pos[b * 3 + 2] - pos[a * 3 + 2];
+        float vx = pos[c * 3] - pos[a * 3], vy = pos[c * 3 + 1] - pos[a * 3 + 1], vz = pos[c * 3 + 2] - pos[a * 3 + 2];
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return;
+        }
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        double d = -(nx * pos[a * 3] + ny * pos[a * 3 + 1] + nz * pos[a * 3 + 2]);
+        //weighted by the area of the triangle
+        double weight = length * 0.5;
+        addPlane(a, nx, ny, nz, d, weight);
+        addPlane(b, nx, ny, nz, d, weight);
+        addPlane(c, nx, ny, nz, d, weight);
+    }
+
+    private void addBorderQuadric(int t, int a, int b) {
+        float[] pos = positions;
+        int c = pointOf[triangles[t * 3]] != a && pointOf[triangles[t * 3]] != b ? pointOf[triangles[t * 3]]
+                : pointOf[triangles[t * 3 + 1]] != a && pointOf[triangles[t * 3 + 1]] != b ? pointOf[triangles[t * 3 + 1]]
+                : pointOf[triangles[t * 3 + 2]];
+        double ex = pos[b * 3] - pos[a * 3], ey = pos[b * 3 + 1] - pos[a * 3 + 1], ez = pos[b * 3 + 2] - pos[a * 3 + 2];
+        double vx = pos[c * 3] - pos[a * 3], vy = pos[c * 3 + 1] - pos[a * 3 + 1], vz = pos[c * 3 + 2] - pos[a * 3 + 2];
+        //face normal
+        double fx = ey * vz - ez * vy;
+        double fy = ez * vx - ex * vz;
+        double fz = ex * vy - ey * vx;
+        //plane containing the edge, perpendicular to the face
+        double nx = ey * fz - ez * fy;
+        double ny = ez * fx - ex * fz;
+        double nz = ex * fy - ey * fx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return;
+        }
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        double d = -(nx * pos[a * 3] + ny * pos[a * 3 + 1] + nz * pos[a * 3 + 2]);
+        double weight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+        addPlane(a, nx, ny, nz, d, weight);
+        addPlane(b, nx, ny, nz, d, weight);
+    }
+
+    private void addPlane(int p, double a, double b, double c, double d, double weight) {
+        double[] q = quadrics;
+        int i = p * 10;
+        q[i] += weight * a * a;
+        q[i + 1] += weight * a * b;
+        q[i + 2] += weight * a * c;
+        q[i + 3] += weight * a * d;
+        q[i + 4] += weight * b * b;
+        q[i + 5] += weight * b * c;
+        q[i + 6] += weight * b * d;
+        q[i + 7] += weight * c * c;
+        q[i + 8] += weight * c * d;
+        q[i + 9] += weight * d * d;
+    }
+
+    private double quadricError(int p, double x, double y, double z) {
+        double[] q = quadrics;
+        int i = p * 10;
+        return q[i] * x * x + 2 * q[i + 1] * x * y + 2 * q[i + 2] * x * z + 2 * q[i + 3] * x
+                + q[i + 4] * y * y + 2 * q[i + 5] * y * z + 2 * q[i + 6] * y
+                + q[i + 7] * z * z + 2 * q[i + 8] * z
+                + q[i + 9];
     }
-    
-    private void computeCosts() {
-        collapseCostSet.clear();
-        
-        for (Vertex vertex : vertexList) {
-            
-            if (!vertex.edges.isEmpty()) {
-                computeVertexCollapseCost(vertex);
-            } else {
-                logger.log(Level.FINE, "Found isolated vertex {0} It will be excluded from Lod level calculations.", vertex);
+
+    /**
+     * An edge is a border if no other triangle uses it, and a seam if another
+     * triangle uses it with different vertices, so with other texture
+     * coordinates or normals.
+     */
+    private boolean isBorderOrSeam(int t, int wa, int wb) {
+        int a = pointOf[wa];
+        int b = pointOf[wb];
+        boolean shared = false;
+        for (int c = firstCorner[a]; c != NONE; c = nextCorner[c]) {
+            int t2 = c / 3;
+            if (t2 == t || removed[t2]) {
+                continue;
+            }
+            int k = cornerOf(t2, b);
+            if (k != NONE) {
+                if (triangles[c] != wa || triangles[t2 * 3 + k] != wb) {
+                    return true;
+                }
+                shared = true;
             }
         }
-//        assert (vertexList.size() == collapseCostSet.size());
-//        assert (checkCosts());
+        return !shared;
     }
 
-    //Debug only
-    private boolean checkCosts() {
-        for (Vertex vertex : vertexList) {
-            boolean test = find(collapseCostSet, vertex);
-            if (!test) {
-                System.out.println("vertex " + vertex.index + " not present in collapse costs");
-                return false;
+    private int cornerOf(int t, int point) {
+        for (int k = 0; k < 3; k++) {
+            if (pointOf[triangles[t * 3 + k]] == point) {
+                return k;
             }
         }
-        return true;
+        return NONE;
     }
-    
-    private void computeVertexCollapseCost(Vertex vertex) {
-        
-        vertex.collapseCost = UNINITIALIZED_COLLAPSE_COST;
-      //  assert (!vertex.edges.isEmpty());
-        for (Edge edge : vertex.edges) {
-            edge.collapseCost = computeEdgeCollapseCost(vertex, edge);
-         //   assert (edge.collapseCost != UNINITIALIZED_COLLAPSE_COST);
-            if (vertex.collapseCost > edge.collapseCost) {
-                vertex.collapseCost = edge.collapseCost;
-                vertex.collapseTo = edge.destination;
+
+    /**
+     * Computes the cheapest collapse of a point among its neighbors. Also
+     * unlinks the corners of the removed triangles from the point.
+     */
+    private void computeCost(int p) {
+        float best = NEVER_COLLAPSE_COST;
+        int target = NONE;
+        int m = ++mark;
+        marks[p] = m;
+        int prev = NONE;
+        for (int c = firstCorner[p]; c != NONE; c = nextCorner[c]) {
+            int t = c / 3;
+            if (removed[t]) {
+                if (prev == NONE) {
+                    firstCorner[p] = nextCorner[c];
+                } else {
+                    nextCorner[prev] = nextCorner[c];
+                }
+                continue;
+            }
+            prev = c;
+            for (int k = 0; k < 3; k++) {
+                int q = pointOf[triangles[t * 3 + k]];
+                if (marks[q] == m) {
+                    continue;
+                }
+                marks[q] = m;
+                float cost = evaluateCollapse(p, q);
+                if (cost < best) {
+                    best = cost;
+                    target = q;
+                }
             }
         }
-       // assert (vertex.collapseCost != UNINITIALIZED_COLLAPSE_COST);
-        collapseCostSet.add(vertex);
+        costs[p] = best;
+        targets[p] = firstCorner[p] == NONE ? NONE : target;
     }
-    
-    float computeEdgeCollapseCost(Vertex src, Edge dstEdge) {
-        // This is based on Ogre's collapse cost calculation algorithm.
 
-        Vertex dest = dstEdge.destination;
+    /**
+     * Computes the cost of collapsing p onto q, and fills the vertex map of
+     * the collapse.
+     */
+    private float evaluateCollapse(int p, int q) {
+        mapSize = 0;
+        int liveCount = 0;
+        boolean allShared = true;
+        for (int c = firstCorner[p]; c != NONE; c = nextCorner[c]) {
+            int t = c / 3;
+            if (removed[t]) {
+                continue;
+            }
+            liveCount++;
+            int k = cornerOf(t, q);
+            if (k == NONE) {
+                allShared = false;
+            } else if (findMapping(triangles[c]) == NONE) {
+                addMapping(triangles[c], triangles[t * 3 + k]);
+            }
+        }
 
         // Check for singular triangle destruction
         // If src and dest both only have 1 triangle (and it must be a shared one)
         // then this would destroy the shape, so don't do this
-        if (src.triangles.size() == 1 && dest.triangles.size() == 1) {
+        if (liveCount == 1 && allShared && countTriangles(q) == 1) {
             return NEVER_COLLAPSE_COST;
         }
 
-        // Degenerate case check
-        // Are we going to invert a face normal of one of the neighbouring faces?
-        // Can occur when we have a very small remaining edge and collapse crosses it
-        // Look for a face normal changing by > 90 degrees
-        for (Triangle triangle : src.triangles) {
-            // Ignore the deleted faces (those including src & dest)
-            if (!triangle.hasVertex(dest)) {
-                // Test the new face normal
-                Vertex pv0, pv1, pv2;
+        float[] pos = positions;
+        float qx = pos[q * 3], qy = pos[q * 3 + 1], qz = pos[q * 3 + 2];
+        float px = pos[p * 3], py = pos[p * 3 + 1], pz = pos[p * 3 + 2];
+        for (int c = firstCorner[p]; c != NONE; c = nextCorner[c]) {
+            int t = c / 3;
+            if (removed[t] || cornerOf(t, q) != NONE) {
+                continue;
+            }
+            // A vertex of p without a counterpart on q is on a seam that
+            // the collapse would rip
+            if (findMapping(triangles[c]) == NONE) {
+                return NEVER_COLLAPSE_COST;
+            }
 
-                // Replace src with dest wherever it is
-                pv0 = (triangle.vertex[0] == src) ? dest : triangle.vertex[0];
-                pv1 = (triangle.vertex[1] == src) ? dest : triangle.vertex[1];
-                pv2 = (triangle.vertex[2] == src) ? dest : triangle.vertex[2];
+            // Are we going to invert a face normal of one of the neighbouring faces?
+            int k = c - t * 3;
+            int u = pointOf[triangles[t * 3 + (k + 1) % 3]] * 3;
+            int v = pointOf[triangles[t * 3 + (k + 2) % 3]] * 3;
+            float ux = pos[u] - px, uy = pos[u + 1] - py, uz = pos[u + 2] - pz;
+            float vx = pos[v] - px, vy = pos[v + 1] - py, vz = pos[v + 2] - pz;
+            float oldX = uy * vz - uz * vy, oldY = uz * vx - ux * vz, oldZ = ux * vy - uy * vx;
+            ux = pos[u] - qx;
+            uy = pos[u + 1] - qy;
+            uz = pos[u + 2] - qz;
+            vx = pos[v] - qx;
+            vy = pos[v + 1] - qy;
+            vz = pos[v + 2] - qz;
+            float newX = uy * vz - uz * vy, newY = uz * vx - ux * vz, newZ = ux * vy - uy * vx;
+            if (oldX * newX + oldY * newY + oldZ * newZ < 0f) {
+                return NEVER_COLLAPSE_COST;
+            }
+        }
 
-                // Cross-product 2 edges
-                tmpV1.set(pv1.position).subtractLocal(pv0.position);
-                tmpV2.set(pv2.position).subtractLocal(pv1.position);
+        double error = quadricError(p, qx, qy, qz) + quadricError(q, qx, qy, qz);
+        //rounding may give slightly negative errors
+        return (float) Math.min(Math.max(error, 0.0), NEVER_COLLAPSE_COST * 0.5);
+    }
 
-                //computing the normal
-                Vector3f newNormal = tmpV1.crossLocal(tmpV2);
-                newNormal.normalizeLocal();
+    private int countTriangles(int p) {
+        int count = 0;
+        for (int c = firstCorner[p]; c != NONE; c = nextCorner[c]) {
+            if (!removed[c / 3]) {
+                count++;
+            }
+        }
+        return count;
+    }
 
-                // Dot old and new face normal
-                // If < 0 then more than 90 degree difference
-                if (newNormal.dot(triangle.normal) < 0.0f) {
-                    // Don't do it!
-                    return NEVER_COLLAPSE_COST;
-                }
+    private int findMapping(int vertex) {
+        for (int i = 0; i < mapSize; i++) {
+            if (mapSrc[i] == vertex) {
+                return i;
             }
         }
-        
-        float cost;
+        return NONE;
+    }
+
+    private void addMapping(int src, int dst) {
+        if (mapSize == mapSrc.length) {
+            mapSrc = Arrays.copyOf(mapSrc, mapSize * 2);
+            mapDst = Arrays.copyOf(mapDst, mapSize * 2);
+        }
+        mapSrc[mapSize] = src;
+        mapDst[mapSize++] = dst;
+    }
+
+    /**
+     * Collapses a point onto its target.
+     *
+     * @return false if the collapse was no longer valid, the cost of the
+     * point is then updated.
+     */
+    private boolean collapse(int p) {
+        int q = targets[p];
+        if (q == NONE || evaluateCollapse(p, q) == NEVER_COLLAPSE_COST) {
+            computeCost(p);
+            updateHeap(p);
+            return false;
+        }
 
-        // Special cases
-        // If we're looking at a border vertex
-        if (isBorderVertex(src)) {
-            if (dstEdge.refCount > 1) {
-                // src is on a border, but the src-dest edge has more than one tri on it
-                // So it must be collapsing inwards
-                // Mark as very high-value cost
-                // curvature = 1.0f;
-                cost = 1.0f;
+        //the points whose cost may change: neighbors of p before the
+        //collapse and neighbors of q after it
+        stamp++;
+        touchedCount = 0;
+        touchNeighbors(p);
+
+        int last = NONE;
+        for (int c = firstCorner[p]; c != NONE; c = nextCorner[c]) {
+            last = c;
+            int t = c / 3;
+            if (removed[t]) {
+                continue;
+            }
+            if (cornerOf(t, q) != NONE) {
+                removed[t] = true;
+                liveTriangleCount--;
             } else {
-                // Collapsing ALONG a border
-                // We can't use curvature to measure the effect on the model
-                // Instead, see what effect it has on 'pulling' the other border edges
-                // The more colinear, the less effect it will have
-                // So measure the 'kinkiness' (for want of a better term)
+                triangles[c] = mapDst[findMapping(triangles[c])];
+            }
+        }
+        //the corners of p now belong to q
+        if (last != NONE) {
+            nextCorner[last] = firstCorner[q];
+            firstCorner[q] = firstCorner[p];
+            firstCorner[p] = NONE;
+        }
+        int ip = p * 10, iq = q * 10;
+        for (int i = 0; i < 10; i++) {
+            quadrics[iq + i] += quadrics[ip + i];
+        }
+        targets[p] = NONE;
+        removeFromHeap(p);
 
-                // Find the only triangle using this edge.
-                // PMTriangle* triangle = findSideTriangle(src, dst);
+        touchNeighbors(q);
+        for (int i = 0; i < touchedCount; i++) {
+            int r = touched[i];
+            if (r != p) {
+                computeCost(r);
+                updateHeap(r);
+            }
+        }
+        return true;
+    }
 
-                cost = 0.0f;
-                Vector3f collapseEdge = tmpV1.set(src.position).subtractLocal(dest.position);
-                collapseEdge.normalizeLocal();
-                
-                for (Edge edge : src.edges) {
-                    
-                    Vertex neighbor = edge.destination;
-                    //reference check intended
-                    if (neighbor != dest && edge.refCount == 1) {
-                        Vector3f otherBorderEdge = tmpV2.set(src.position).subtractLocal(neighbor.position);
-                        otherBorderEdge.normalizeLocal();
-                        // This time, the nearer the dot is to -1, the better, because that means
-                        // the edges are opposite each other, therefore less kinkiness
-                        // Scale into [0..1]
-                        float kinkiness = (otherBorderEdge.dot(collapseEdge) + 1.002f) * 0.5f;
-                        cost = Math.max(cost, kinkiness);
+    private void touchNeighbors(int p) {
+        for (int c = firstCorner[p]; c != NONE; c = nextCorner[c]) {
+            int t = c / 3;
+            if (removed[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int r = pointOf[triangles[t * 3 + k]];
+                if (stamps[r] != stamp) {
+                    stamps[r] = stamp;
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
                     }
+                    touched[touchedCount++] = r;
                 }
             }
-        } else { // not a border
+        }
+    }
 
-            // Standard inner vertex
-            // Calculate curvature
-            // use the triangle facing most away from the sides
-            // to determine our curvature term
-            // Iterate over src's faces again
-            cost = 0.001f;
-            
-            for (Triangle triangle : src.triangles) {
-                float mincurv = 1.0f; // curve for face i and closer side to it
+    private void updateHeap(int p) {
+        int i = heapIndex[p];
+        if (targets[p] == NONE) {
+            removeFromHeap(p);
+        } else if (i == NONE) {
+            heap[heapSize] = p;
+            heapIndex[p] = heapSize++;
+            siftUp(heapSize - 1);
+        } else {
+            siftUp(i);
+            siftDown(heapIndex[p]);
+        }
+    }
 
-                for (Triangle triangle2 : src.triangles) {
-                    if (triangle2.hasVertex(dest)) {
+    private void removeFromHeap(int p) {
+        int i = heapIndex[p];
+        if (i == NONE) {
+            return;
+        }
+        heapIndex[p] = NONE;
+        int lastPoint = heap[--heapSize];
+        if (i < heapSize) {
+            heap[i] = lastPoint;
+            heapIndex[lastPoint] = i;
+            siftUp(i);
+            siftDown(heapIndex[lastPoint]);
+        }
+    }
 
-                        // Dot product of face normal gives a good delta angle
-                        float dotprod = triangle.normal.dot(triangle2.normal);
-                        // NB we do (1-..) to invert curvature where 1 is high curvature [0..1]
-                        // Whilst dot product is high when angle difference is low
-                        mincurv = Math.min(mincurv, (1.002f - dotprod) * 0.5f);
-                    }
-                }
-                cost = Math.max(cost, mincurv);
+    private void siftUp(int i) {
+        int p = heap[i];
+        float cost = costs[p];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int pp = heap[parent];
+            if (costs[pp] <= cost) {
+                break;
             }
+            heap[i] = pp;
+            heapIndex[pp] = i;
+            i = parent;
         }
+        heap[i] = p;
+        heapIndex[p] = i;
+    }
 
-        // check for texture seam ripping
-        if (src.isSeam) {
-            if (!dest.isSeam) {
-                cost += meshBoundingSphereRadius;
-            } else {
-                cost += meshBoundingSphereRadius * 0.5;
+    private void siftDown(int i) {
+        int p = heap[i];
+        float cost = costs[p];
+        while (true) {
+            int child = i * 2 + 1;
+            if (child >= heapSize) {
+                break;
             }
+            if (child + 1 < heapSize && costs[heap[child + 1]] < costs[heap[child]]) {
+                child++;
+            }
+            int cp = heap[child];
+            if (costs[cp] >= cost) {
+                break;
+            }
+            heap[i] = cp;
+            heapIndex[cp] = i;
+            i = child;
         }
-        
-     //   assert (cost >= 0);
-        
-        return cost * src.position.distanceSquared(dest.position);
+        heap[i] = p;
+        heapIndex[p] = i;
     }
-    int nbCollapsedTri = 0;
 
     /**
      * Computes the lod and return a list of VertexBuffers that can then be used
@@ -531,6 +746,10 @@ public class LodGenerator {
      * {@link TriangleReductionMethod} and a list of reduction values.<br> for
      * each value a lod will be generated. <br> The resulting array will always
      * contain at index 0 the original index buffer of the mesh. <p>
+     * The lods are generated in a single pass, each level continuing the
+     * reduction of the previous one, so the reduction values should be
+     * given in increasing order. A value that doesn't reduce the mesh further
+     * produces no level.<p>
      * <strong>Important note :</strong> some meshes cannot be decimated, so the
      * result of this method can vary depending of the given mesh. Also the
      * reduction values are indicative and the produces mesh will not always
@@ -542,53 +761,36 @@ public class LodGenerator {
      * representing the lod levels.
      */
     public VertexBuffer[] computeLods(TriangleReductionMethod reductionMethod, float... reductionValues) {
-        int tricount = triangleList.size();
-        int lastBakeVertexCount = tricount;
-        int lodCount = reductionValues.length;
-        VertexBuffer[] lods = new VertexBuffer[lodCount + 1];
-        int numBakedLods = 1;
-        lods[0] = mesh.getBuffer(VertexBuffer.Type.Index);
-        for (int curLod = 0; curLod < lodCount; curLod++) {
-            int neededTriCount = calcLodTriCount(reductionMethod, reductionValues[curLod]);
-            while (neededTriCount < tricount) {
-                Collections.sort(collapseCostSet, collapseComparator);
-                Iterator<Vertex> it = collapseCostSet.iterator();
-                
-                if (it.hasNext()) {
-                    Vertex v = it.next();
-                    if (v.collapseCost < collapseCostLimit) {
-                        if (!collapse(v)) {
-                            logger.log(Level.FINE, "Couldn''t collapse vertex{0}", v.index);
-                        }
-                        Iterator<Vertex> it2 = collapseCostSet.iterator();
-                        if (it2.hasNext()) {
-                            it2.next();
-                            it2.remove();// Remove src from collapse costs.
-                        }
-                        
-                    } else {
-                        break;
-                    }
-                } else {
+        initialize();
+        List<VertexBuffer> lods = new ArrayList<VertexBuffer>(reductionValues.length + 1);
+        lods.add(mesh.getBuffer(VertexBuffer.Type.Index));
+        int lastBakeTriangleCount = liveTriangleCount;
+        int collapsed = 0;
+        for (float reductionValue : reductionValues) {
+            int neededTriCount = calcLodTriCount(reductionMethod, reductionValue);
+            while (neededTriCount < liveTriangleCount && heapSize > 0) {
+                int p = heap[0];
+                if (costs[p] >= collapseCostLimit) {
                     break;
                 }
-                tricount = triangleList.size() - nbCollapsedTri;
+                if (collapse(p)) {
+                    collapsed++;
+                } else {
+                    logger.log(Level.FINE, "Couldn''t collapse vertex{0}", p);
+                }
             }
-            logger.log(Level.FINE, "collapsed {0} tris", nbCollapsedTri);
-            boolean outSkipped = (lastBakeVertexCount == tricount);
-            if (!outSkipped) {
-                lastBakeVertexCount = tricount;
-                lods[curLod + 1] = makeLod(mesh);
-                numBakedLods++;
+            logger.log(Level.FINE, "collapsed {0} vertices, {1} tris left", new Object[]{collapsed, liveTriangleCount});
+            if (lastBakeTriangleCount != liveTriangleCount) {
+                lastBakeTriangleCount = liveTriangleCount;
+                lods.add(makeLod());
             }
         }
-        if (numBakedLods <= lodCount) {
-            VertexBuffer[] bakedLods = new VertexBuffer[numBakedLods];
-            System.arraycopy(lods, 0, bakedLods, 0, numBakedLods);
-            return bakedLods;
-        } else {
-            return lods;
-        }
+        //releasing the collapse state
+        triangles = null;
+        removed = null;
+        nextCorner = null;
+        quadrics = null;
+        return lods.toArray(new VertexBuffer[lods.size()]);
     }
 
     /**
@@ -607,428 +809,119 @@ public class LodGenerator {
     public void bakeLods(TriangleReductionMethod reductionMethod, float... reductionValues) {
         mesh.setLodLevels(computeLods(reductionMethod, reductionValues));
     }
-    
-    private VertexBuffer makeLod(Mesh mesh) {
-        VertexBuffer indexBuffer = mesh.getBuffer(VertexBuffer.Type.Index);
-        
-        boolean isShortBuffer = indexBuffer.getFormat() == VertexBuffer.Format.UnsignedShort;
-        // Create buffers.	
-        VertexBuffer lodBuffer = new VertexBuffer(VertexBuffer.Type.Index);
-        int bufsize = indexCount == 0 ? 3 : indexCount;
-        
-        if (isShortBuffer) {
-            lodBuffer.setupData(VertexBuffer.Usage.Static, 3, VertexBuffer.Format.UnsignedShort, BufferUtils.createShortBuffer(bufsize));
-        } else {
-            lodBuffer.setupData(VertexBuffer.Usage.Static, 3, VertexBuffer.Format.UnsignedInt, BufferUtils.createIntBuffer(bufsize));
-        }
-        
-        
-        
-        lodBuffer.getData().rewind();
-        //Check if we should fill it with a "dummy" triangle.
-        if (indexCount == 0) {
-            if (isShortBuffer) {
-                for (int m = 0; m < 3; m++) {
-                    ((ShortBuffer) lodBuffer.getData()).put((short) 0);
-                }
-            } else {
-                for (int m = 0; m < 3; m++) {
-                    ((IntBuffer) lodBuffer.getData()).put(0);
+
+    /**
+     * Computes the lods of all the indexed triangle meshes of a scene and
+     * bakes them into the meshes, on a shared pool of daemon threads.
+     *
+     * @param scene the scene
+     * @param reductionMethod the reduction method to use
+     * @param reductionValues the reduction value to use for each lod level.
+     * @see #bakeLods(com.jme3.scene.Spatial, java.util.concurrent.ExecutorService, jme3tools.optimize.LodGenerator.TriangleReductionMethod, float[])
+     */
+    public static void bakeLods(Spatial scene, TriangleReductionMethod reductionMethod, float... reductionValues) {
+        bakeLods(scene, ParallelTasks.getSharedExecutor(), reductionMethod, reductionValues);
+    }
+
+    /**
+     * Computes the lods of all the indexed triangle meshes of a scene and
+     * bakes them into the meshes. Each mesh is decimated by its own task on
+     * the given executor, meshes shared by several geometries are only
+     * decimated once. The lods are set on the meshes by the calling thread
+     * once all the tasks are done, so the scene may be attached. If a task
+     * fails, its exception is rethrown and no lod is set.
+     *
+     * @param scene the scene
+     * @param executor the executor running the tasks, or null to decimate
+     * the meshes on the calling thread
+     * @param reductionMethod the reduction method to use
+     * @param reductionValues the reduction value to use for each lod level.
+     */
+    public static void bakeLods(Spatial scene, ExecutorService executor,
+            final TriangleReductionMethod reductionMethod, final float... reductionValues) {
+        final Set<Mesh> meshes = new HashSet<Mesh>();
+        scene.breadthFirstTraversal(new SceneGraphVisitor() {
+            @Override
+            public void visit(Spatial spatial) {
+                if (spatial instanceof Geometry) {
+                    Mesh mesh = ((Geometry) spatial).getMesh();
+                    if (mesh.getMode() == Mesh.Mode.Triangles
+                            && mesh.getBuffer(VertexBuffer.Type.Index) != null) {
+                        meshes.add(mesh);
+                    }
                 }
             }
+        });
+        final List<Mesh> meshList = new ArrayList<Mesh>(meshes);
+        final VertexBuffer[][] lods = new VertexBuffer[meshList.size()][];
+        List<Runnable> tasks = new ArrayList<Runnable>(meshList.size());
+        for (int i = 0; i < meshList.size(); i++) {
+            final int index = i;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    lods[index] = new LodGenerator(meshList.get(index)).computeLods(reductionMethod, reductionValues);
+                }
+            });
+        }
+        ParallelTasks.runAll(tasks, executor);
+        for (int i = 0; i < meshList.size(); i++) {
+            meshList.get(i).setLodLevels(lods[i]);
         }
+    }
 
-        // Fill buffers.       
-        Buffer buf = lodBuffer.getData();
-        buf.rewind();
-        for (Triangle triangle : triangleList) {
-            if (!triangle.isRemoved) {
-            //    assert (indexCount != 0);
-                if (isShortBuffer) {
-                    for (int m = 0; m < 3; m++) {
-                        ((ShortBuffer) buf).put((short) triangle.vertexId[m]);
-                        
-                    }
-                } else {
-                    for (int m = 0; m < 3; m++) {
-                        ((IntBuffer) buf).put(triangle.vertexId[m]);
-                    }
-                    
+    private VertexBuffer makeLod() {
+        boolean isIntBuffer = indexFormat == VertexBuffer.Format.UnsignedInt;
+        // Create buffers.
+        VertexBuffer lodBuffer = new VertexBuffer(VertexBuffer.Type.Index);
+        //Check if we should fill it with a "dummy" triangle.
+        int bufsize = liveTriangleCount == 0 ? 3 : liveTriangleCount * 3;
+
+        // Fill buffers.
+        if (isIntBuffer) {
+            IntBuffer buf = BufferUtils.createIntBuffer(bufsize);
+            for (int t = 0; t < triangleCount; t++) {
+                if (!removed[t]) {
+                    buf.put(triangles, t * 3, 3);
+                }
+            }
+            buf.clear();
+            lodBuffer.setupData(VertexBuffer.Usage.Static, 3, VertexBuffer.Format.UnsignedInt, buf);
+        } else {
+            ShortBuffer buf = BufferUtils.createShortBuffer(bufsize);
+            for (int t = 0; t < triangleCount; t++) {
+                if (!removed[t]) {
+                    buf.put((short) triangles[t * 3]);
+                    buf.put((short) triangles[t * 3 + 1]);
+                    buf.put((short) triangles[t * 3 + 2]);
                 }
             }
+            buf.clear();
+            lodBuffer.setupData(VertexBuffer.Usage.Static, 3, VertexBuffer.Format.UnsignedShort, buf);
         }
-        buf.clear();
-        lodBuffer.updateData(buf);
         return lodBuffer;
     }
-    
+
     private int calcLodTriCount(TriangleReductionMethod reductionMethod, float reductionValue) {
-        int nbTris = mesh.getTriangleCount();
+        int nbTris = triangleCount;
         switch (reductionMethod) {
             case PROPORTIONAL:
                 collapseCostLimit = NEVER_COLLAPSE_COST;
                 return (int) (nbTris - (nbTris * (reductionValue)));
-            
+
             case CONSTANT:
                 collapseCostLimit = NEVER_COLLAPSE_COST;
                 if (reductionValue < nbTris) {
                     return nbTris - (int) reductionValue;
                 }
                 return 0;
-            
+
             case COLLAPSE_COST:
                 collapseCostLimit = reductionValue;
                 return 0;
-            
+
             default:
                 return nbTris;
         }
     }
-    
-    private int findDstID(int srcId, List<CollapsedEdge> tmpCollapsedEdges) {
-        int i = 0;
-        for (CollapsedEdge collapsedEdge : tmpCollapsedEdges) {
-            if (collapsedEdge.srcID == srcId) {
-                return i;
-            }
-            i++;
-        }
-        return Integer.MAX_VALUE;
-    }
-    
-    private class CollapsedEdge {
-        
-        int srcID;
-        int dstID;
-    };
-    
-    private void removeTriangleFromEdges(Triangle triangle, Vertex skip) {
-        // skip is needed if we are iterating on the vertex's edges or triangles.
-        for (int i = 0; i < 3; i++) {
-            if (triangle.vertex[i] != skip) {
-                triangle.vertex[i].triangles.remove(triangle);
-            }
-        }
-        for (int i = 0; i < 3; i++) {
-            for (int n = 0; n < 3; n++) {
-                if (i != n) {
-                    removeEdge(triangle.vertex[i], new Edge(triangle.vertex[n]));
-                }
-            }
-        }
-    }
-    
-    private void removeEdge(Vertex v, Edge edge) {
-        Edge ed = null;
-        for (Edge edge1 : v.edges) {
-            if (edge1.equals(edge)) {
-                ed = edge1;
-                break;
-            }
-        }
-        
-        if (ed.refCount == 1) {
-            v.edges.remove(ed);
-        } else {
-            ed.refCount--;
-        }
-        
-    }
-    
-    boolean isBorderVertex(Vertex vertex) {
-        for (Edge edge : vertex.edges) {
-            if (edge.refCount == 1) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    private void addTriangleToEdges(Triangle tri) {
-        if (bestQuality) {
-            Triangle duplicate = getDuplicate(tri);
-            if (duplicate != null) {
-                if (!tri.isRemoved) {
-                    tri.isRemoved = true;
-                    indexCount -= 3;
-                    logger.log(Level.FINE, "duplicate triangle found{0}{1} It will be excluded from Lod level calculations.", new Object[]{tri, duplicate});
-                }
-            }
-        }
-        for (int i = 0; i < 3; i++) {
-            tri.vertex[i].triangles.add(tri);
-        }
-        for (int i = 0; i < 3; i++) {
-            for (int n = 0; n < 3; n++) {
-                if (i != n) {
-                    addEdge(tri.vertex[i], new Edge(tri.vertex[n]));
-                }
-            }
-        }
-    }
-    
-    private void addEdge(Vertex v, Edge edge) {
-      //  assert (edge.destination != v);
-        
-        for (Edge ed : v.edges) {
-            if (ed.equals(edge)) {
-                ed.refCount++;
-                return;
-            }
-        }
-        
-        v.edges.add(edge);
-        edge.refCount = 1;
-        
-    }
-    
-    private void initialize() {
-        triangleList = new ArrayList<LodGenerator.Triangle>();
-    }
-    
-    private Triangle getDuplicate(Triangle triangle) {
-        // duplicate triangle detection (where all vertices has the same position)
-        for (Triangle tri : triangle.vertex[0].triangles) {
-            if (isDuplicateTriangle(triangle, tri)) {
-                return tri;
-            }
-        }
-        return null;
-    }
-    
-    private boolean isDuplicateTriangle(Triangle triangle, Triangle triangle2) {
-        for (int i = 0; i < 3; i++) {
-            if (triangle.vertex[i] != triangle2.vertex[0]
-                    || triangle.vertex[i] != triangle2.vertex[1]
-                    || triangle.vertex[i] != triangle2.vertex[2]) {
-                return false;
-            }
-        }
-        return true;
-    }
-    
-    private void replaceVertexID(Triangle triangle, int oldID, int newID, Vertex dst) {
-        dst.triangles.add(triangle);
-        // NOTE: triangle is not removed from src. This is implementation specific optimization.
-
-        // Its up to the compiler to unroll everything.
-        for (int i = 0; i < 3; i++) {
-            if (triangle.vertexId[i] == oldID) {
-                for (int n = 0; n < 3; n++) {
-                    if (i != n) {
-                        // This is implementation specific optimization to remove following line.
-                        //removeEdge(triangle.vertex[i], new Edge(triangle.vertex[n]));
-
-                        removeEdge(triangle.vertex[n], new Edge(triangle.vertex[i]));
-                        addEdge(triangle.vertex[n], new Edge(dst));
-                        addEdge(dst, new Edge(triangle.vertex[n]));
-                    }
-                }
-                triangle.vertex[i] = dst;
-                triangle.vertexId[i] = newID;
-                return;
-            }
-        }
-     //   assert (false);
-    }
-    
-    private void updateVertexCollapseCost(Vertex vertex) {
-        float collapseCost = UNINITIALIZED_COLLAPSE_COST;
-        Vertex collapseTo = null;
-        
-        for (Edge edge : vertex.edges) {
-            edge.collapseCost = computeEdgeCollapseCost(vertex, edge);
-          //  assert (edge.collapseCost != UNINITIALIZED_COLLAPSE_COST);
-            if (collapseCost > edge.collapseCost) {
-                collapseCost = edge.collapseCost;
-                collapseTo = edge.destination;
-            }
-        }
-        if (collapseCost != vertex.collapseCost || vertex.collapseTo != collapseTo) {
-//            assert (vertex.collapseTo != null);
-//            assert (find(collapseCostSet, vertex));
-            collapseCostSet.remove(vertex);
-            if (collapseCost != UNINITIALIZED_COLLAPSE_COST) {
-                vertex.collapseCost = collapseCost;
-                vertex.collapseTo = collapseTo;
-                collapseCostSet.add(vertex);
-            }
-        }
-      //  assert (vertex.collapseCost != UNINITIALIZED_COLLAPSE_COST);
-    }
-    
-    private boolean hasSrcID(int srcID, List<CollapsedEdge> cEdges) {
-        // This will only return exact matches.
-        for (CollapsedEdge collapsedEdge : cEdges) {
-            if (collapsedEdge.srcID == srcID) {
-                return true;
-            }
-        }
-        
-        return false; // Not found
-    }
-    
-    private boolean collapse(Vertex src) {
-        Vertex dest = src.collapseTo;
-        if (src.edges.isEmpty()) {
-            return false;
-        }
-//        assert (assertValidVertex(dest));
-//        assert (assertValidVertex(src));
-        
-//        assert (src.collapseCost != NEVER_COLLAPSE_COST);
-//        assert (src.collapseCost != UNINITIALIZED_COLLAPSE_COST);
-//        assert (!src.edges.isEmpty());
-//        assert (!src.triangles.isEmpty());
-//        assert (src.edges.contains(new Edge(dest)));
-
-        // It may have vertexIDs and triangles from different submeshes(different vertex buffers),
-        // so we need to connect them correctly based on deleted triangle's edge.
-        // mCollapsedEdgeIDs will be used, when looking up the connections for replacement.
-        List<CollapsedEdge> tmpCollapsedEdges = new ArrayList<CollapsedEdge>();
-        for (Iterator<Triangle> it = src.triangles.iterator(); it.hasNext();) {
-            Triangle triangle = it.next();
-            if (triangle.hasVertex(dest)) {
-                // Remove a triangle
-                // Tasks:
-                // 1. Add it to the collapsed edges list.
-                // 2. Reduce index count for the Lods, which will not have this triangle.
-                // 3. Mark as removed, so it will not be added in upcoming Lod levels.
-                // 4. Remove references/pointers to this triangle.
-
-                // 1. task
-                int srcID = triangle.getVertexIndex(src);
-                if (!hasSrcID(srcID, tmpCollapsedEdges)) {
-                    CollapsedEdge cEdge = new CollapsedEdge();
-                    cEdge.srcID = srcID;
-                    cEdge.dstID = triangle.getVertexIndex(dest);
-                    tmpCollapsedEdges.add(cEdge);
-                }
-
-                // 2. task
-                indexCount -= 3;
-
-                // 3. task
-                triangle.isRemoved = true;
-                nbCollapsedTri++;
-
-                // 4. task
-                removeTriangleFromEdges(triangle, src);
-                it.remove();
-                
-            }
-        }
-//        assert (!tmpCollapsedEdges.isEmpty());
-//        assert (!dest.edges.contains(new Edge(src)));
-        
-        
-        for (Iterator<Triangle> it = src.triangles.iterator(); it.hasNext();) {
-            Triangle triangle = it.next();
-            if (!triangle.hasVertex(dest)) {
-                // Replace a triangle
-                // Tasks:
-                // 1. Determine the edge which we will move along. (we need to modify single vertex only)
-                // 2. Move along the selected edge.
-
-                // 1. task
-                int srcID = triangle.getVertexIndex(src);
-                int id = findDstID(srcID, tmpCollapsedEdges);
-                if (id == Integer.MAX_VALUE) {
-                    // Not found any edge to move along.
-                    // Destroy the triangle.
-                    //     if (!triangle.isRemoved) {
-                    triangle.isRemoved = true;
-                    indexCount -= 3;
-                    removeTriangleFromEdges(triangle, src);
-                    it.remove();
-                    nbCollapsedTri++;
-                    continue;
-                }
-                int dstID = tmpCollapsedEdges.get(id).dstID;
-
-                // 2. task
-                replaceVertexID(triangle, srcID, dstID, dest);
-                
-                
-                if (bestQuality) {
-                    triangle.computeNormal();
-                }
-                
-            }
-        }
-        
-        if (bestQuality) {
-            for (Edge edge : src.edges) {
-                updateVertexCollapseCost(edge.destination);
-            }
-            updateVertexCollapseCost(dest);
-            for (Edge edge : dest.edges) {
-                updateVertexCollapseCost(edge.destination);
-            }
-            
-        } else {
-            // TODO: Find out why is this needed. assertOutdatedCollapseCost() fails on some
-            // rare situations without this. For example goblin.mesh fails.	
-            //Treeset to have an ordered list with unique values
-            SortedSet<Vertex> updatable = new TreeSet<Vertex>(collapseComparator);
-            
-            for (Edge edge : src.edges) {
-                updatable.add(edge.destination);
-                for (Edge edge1 : edge.destination.edges) {
-                    updatable.add(edge1.destination);
-                }
-            }
-            
-            
-            for (Vertex vertex : updatable) {
-                updateVertexCollapseCost(vertex);
-            }
-            
-        }
-        return true;
-    }
-    
-    private boolean assertValidMesh() {
-        // Allows to find bugs in collapsing.
-        for (Vertex vertex : collapseCostSet) {
-            assertValidVertex(vertex);
-        }
-        return true;
-        
-    }
-    
-    private boolean assertValidVertex(Vertex v) {
-        // Allows to find bugs in collapsing.
-        //       System.out.println("Asserting " + v.index);
-        for (Triangle t : v.triangles) {
-            for (int i = 0; i < 3; i++) {
-                //             System.out.println("check " + t.vertex[i].index);
-
-                //assert (collapseCostSet.contains(t.vertex[i]));
-                assert (find(collapseCostSet, t.vertex[i]));
-                
-                assert (t.vertex[i].edges.contains(new Edge(t.vertex[i].collapseTo)));
-                for (int n = 0; n < 3; n++) {
-                    if (i != n) {
-                        
-                        int id = t.vertex[i].edges.indexOf(new Edge(t.vertex[n]));
-                        Edge ed = t.vertex[i].edges.get(id);
-                        //assert (ed.collapseCost != UNINITIALIZED_COLLAPSE_COST);
-                    } else {
-                        assert (!t.vertex[i].edges.contains(new Edge(t.vertex[n])));
-                    }
-                }
-            }
-        }
-        return true;
-    }
-    
-    private boolean find(List<Vertex> set, Vertex v) {
-        for (Vertex vertex : set) {
-            if (v == vertex) {
-                return true;
-            }
-        }
-        return false;
-    }
 }
@@ -49,14 +49,19 @@ import com.jme3.texture.Texture;
 import com.jme3.texture.Texture2D;
 import com.jme3.texture.image.ColorSpace;
 import com.jme3.util.BufferUtils;
+import com.jme3.util.ParallelTasks;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,6 +92,11 @@ import java.util.logging.Logger;
  * will not work correctly as their new coordinates leak into other parts of the atlas and thus display
  * other textures instead of repeating the texture.</p>
  * 
+ * <p>The textures are packed with the MaxRects algorithm, optionally rotating them
+ * ({@link #setAllowRotation(boolean) }) and keeping a padding of repeated border texels around them
+ * ({@link #setPadding(int) }). The images of the maps are drawn when their texture is requested, or
+ * in parallel, one map per task, by {@link #buildImages(java.util.concurrent.ExecutorService) }.</p>
+ * 
  * <p>Also note that textures are not scaled and the atlas needs to be large enough to hold all textures.
  * All methods that allow adding textures return false if the texture could not be added due to the
  * atlas being full. Furthermore secondary textures (normal, spcular maps etc.) have to be the same size
@@ -125,17 +135,21 @@ public class TextureAtlas {
     private Map<String, byte[]> images;
     private int atlasWidth, atlasHeight;
     private Format format = Format.ABGR8;
-    private Node root;
+    private Packer packer;
     private Map<String, TextureAtlasTile> locationMap;
     private Map<String, String> mapNameMap;
+    private Map<String, List<Blit>> pendingBlits;
     private String rootMapName;
+    private boolean allowRotation = false;
+    private int padding = 0;
 
     public TextureAtlas(int width, int height) {
         this.atlasWidth = width;
         this.atlasHeight = height;
-        root = new Node(0, 0, width, height);
+        packer = new Packer(width, height);
         locationMap = new TreeMap<String, TextureAtlasTile>();
         mapNameMap = new HashMap<String, String>();
+        pendingBlits = new LinkedHashMap<String, List<Blit>>();
     }
 
     /**
@@ -244,18 +258,17 @@ public class TextureAtlas {
             //have location for texture
             if (!mapName.equals(mapNameMap.get(name))) {
                 logger.log(Level.WARNING, "Same texture " + name + " is used in different maps! (" + mapName + " and " + mapNameMap.get(name) + "). Location will be based on location in " + mapNameMap.get(name) + "!");
-                drawImage(image, location.getX(), location.getY(), mapName);
+                drawImage(image, location, mapName);
                 return true;
             } else {
                 return true;
             }
         } else if (sourceTextureName == null) {
             //need to make new tile
-            Node node = root.insert(image);
-            if (node == null) {
+            location = packer.insert(image.getWidth(), image.getHeight());
+            if (location == null) {
                 return false;
             }
-            location = node.location;
         } else {
             //got old tile to align to
             location = locationMap.get(sourceTextureName);
@@ -267,87 +280,124 @@ public class TextureAtlas {
         }
         mapNameMap.put(name, mapName);
         locationMap.put(name, location);
-        drawImage(image, location.getX(), location.getY(), mapName);
+        drawImage(image, location, mapName);
         return true;
     }
 
-    private void drawImage(Image source, int x, int y, String mapName) {
+    /**
+     * Queues an image to be drawn on the given map, the maps are drawn by
+     * {@link #buildImages(java.util.concurrent.ExecutorService) } or when
+     * their texture is requested.
+     */
+    private void drawImage(Image source, TextureAtlasTile location, String mapName) {
+        List<Blit> blits = pendingBlits.get(mapName);
+        if (blits == null) {
+            blits = new ArrayList<Blit>();
+            pendingBlits.put(mapName, blits);
+        }
+        blits.add(new Blit(source, location));
+    }
+
+    /**
+     * Sets whether textures may be rotated by 90 degrees to pack the atlas
+     * more tightly, the texture coordinates are changed accordingly.
+     * Rotated textures are transposed, so the tangents of geometries using
+     * tangent space normal maps from the atlas have to be generated after
+     * their coordinates were applied.
+     * Only affects the textures added after this call.
+     *
+     * @param allowRotation true to allow rotation, false by default.
+     */
+    public void setAllowRotation(boolean allowRotation) {
+        this.allowRotation = allowRotation;
+    }
+
+    /**
+     * @return true if textures may be rotated in the atlas.
+     * @see #setAllowRotation(boolean)
+     */
+    public boolean isAllowRotation() {
+        return allowRotation;
+    }
+
+    /**
+     * Sets the number of texels kept around each texture, they are filled
+     * with the border texels of the texture so that filtering and mip maps
+     * don't bleed neighbouring textures in. Each mip level halves the
+     * padding, a padding of 2^n texels is safe for n mip levels.
+     *
+     * @param padding the padding in texels, 0 by default.
+     * @throws IllegalStateException if textures were already added.
+     */
+    public void setPadding(int padding) {
+        if (!locationMap.isEmpty()) {
+            throw new IllegalStateException("The padding has to be set before textures are added.");
+        }
+        if (padding < 0) {
+            throw new IllegalArgumentException("The padding cannot be negative.");
+        }
+        this.padding = padding;
+    }
+
+    /**
+     * @return the number of texels kept around each texture.
+     * @see #setPadding(int)
+     */
+    public int getPadding() {
+        return padding;
+    }
+
+    /**
+     * Draws the textures added since the last call into the atlas images
+     * using a default thread pool.
+     *
+     * @see #buildImages(java.util.concurrent.ExecutorService)
+     */
+    public void buildImages() {
+        buildImages(ParallelTasks.getSharedExecutor());
+    }
+
+    /**
+     * Draws the textures added since the last call into the atlas images,
+     * each map is drawn in its own task. Maps that are not built explicitly
+     * are drawn on the calling thread by {@link #getAtlasTexture(java.lang.String) }.
+     *
+     * @param executor the executor running the tasks, null to draw all maps
+     * on the calling thread.
+     */
+    public void buildImages(ExecutorService executor) {
+        if (pendingBlits.isEmpty()) {
+            return;
+        }
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (Map.Entry<String, List<Blit>> entry : pendingBlits.entrySet()) {
+            final byte[] image = getImage(entry.getKey());
+            final List<Blit> blits = entry.getValue();
+            tasks.add(new Runnable() {
+                public void run() {
+                    for (Blit blit : blits) {
+                        blit.draw(image);
+                    }
+                }
+            });
+        }
+        pendingBlits.clear();
+        ParallelTasks.runAll(tasks, executor);
+    }
+
+    private byte[] getImage(String mapName) {
         if (images == null) {
             images = new HashMap<String, byte[]>();
         }
         byte[] image = images.get(mapName);
-        
+
         //FIXME this is not accounting for color space.
-        //Texture Atlas should linearize the data if the source image isSRGB        
+        //Texture Atlas should linearize the data if the source image isSRGB
         if (image == null) {
             image = new byte[atlasWidth * atlasHeight * 4];
             images.put(mapName, image);
         }
-        //TODO: all buffers?
-        ByteBuffer sourceData = source.getData(0);
-        int height = source.getHeight();
-        int width = source.getWidth();
-        Image newImage = null;
-        for (int yPos = 0; yPos < height; yPos++) {
-            for (int xPos = 0; xPos < width; xPos++) {
-                int i = ((xPos + x) + (yPos + y) * atlasWidth) * 4;
-                if (source.getFormat() == Format.ABGR8) {
-                    int j = (xPos + yPos * width) * 4;
-                    image[i] = sourceData.get(j); //a
-                    image[i + 1] = sourceData.get(j + 1); //b
-                    image[i + 2] = sourceData.get(j + 2); //g
-                    image[i + 3] = sourceData.get(j + 3); //r
-                } else if (source.getFormat() == Format.BGR8) {
-                    int j = (xPos + yPos * width) * 3;
-                    image[i] = 1; //a
-                    image[i + 1] = sourceData.get(j); //b
-                    image[i + 2] = sourceData.get(j + 1); //g
-                    image[i + 3] = sourceData.get(j + 2); //r
-                } else if (source.getFormat() == Format.RGB8) {
-                    int j = (xPos + yPos * width) * 3;
-                    image[i] = 1; //a
-                    image[i + 1] = sourceData.get(j + 2); //b
-                    image[i + 2] = sourceData.get(j + 1); //g
-                    image[i + 3] = sourceData.get(j); //r
-                } else if (source.getFormat() == Format.RGBA8) {
-                    int j = (xPos + yPos * width) * 4;
-                    image[i] = sourceData.get(j + 3); //a
-                    image[i + 1] = sourceData.get(j + 2); //b
-                    image[i + 2] = sourceData.get(j + 1); //g
-                    image[i + 3] = sourceData.get(j); //r
-                } else if (source.getFormat() == Format.Luminance8) {
-                    int j = (xPos + yPos * width) * 1;
-                    image[i] = 1; //a
-                    image[i + 1] = sourceData.get(j); //b
-                    image[i + 2] = sourceData.get(j); //g
-                    image[i + 3] = sourceData.get(j); //r
-                } else if (source.getFormat() == Format.Luminance8Alpha8) {
-                    int j = (xPos + yPos * width) * 2;
-                    image[i] = sourceData.get(j + 1); //a
-                    image[i + 1] = sourceData.get(j); //b
-                    image[i + 2] = sourceData.get(j); //g
-                    image[i + 3] = sourceData.get(j); //r
-                } else {
-                    //ImageToAwt conversion
-                    if (newImage == null) {
-                        newImage = convertImageToAwt(source);
-                        if (newImage != null) {
-                            source = newImage;
-                            sourceData = source.getData(0);
-                            int j = (xPos + yPos * width) * 4;
-                            image[i] = sourceData.get(j); //a
-                            image[i + 1] = sourceData.get(j + 1); //b
-                            image[i + 2] = sourceData.get(j + 2); //g
-                            image[i + 3] = sourceData.get(j + 3); //r
-                        }else{
-                            throw new UnsupportedOperationException("Cannot draw or convert textures with format " + source.getFormat());
-                        }
-                    } else {
-                        throw new UnsupportedOperationException("Cannot draw textures with format " + source.getFormat());
-                    }
-                }
-            }
-        }
+        return image;
     }
 
     private Image convertImageToAwt(Image source) {
@@ -371,6 +421,170 @@ public class TextureAtlas {
         return null;
     }
 
+    /**
+     * An image waiting to be drawn at the location of its tile.
+     */
+    private class Blit {
+
+        private final Image source;
+        private final TextureAtlasTile tile;
+
+        Blit(Image source, TextureAtlasTile tile) {
+            this.source = source;
+            this.tile = tile;
+        }
+
+        void draw(byte[] image) {
+            Image source = this.source;
+            int bytes = getSourceBytes(source.getFormat());
+            if (bytes == 0) {
+                //ImageToAwt conversion
+                source = convertImageToAwt(source);
+                if (source == null) {
+                    throw new UnsupportedOperationException("Cannot draw or convert textures with format " + this.source.getFormat());
+                }
+                bytes = 4;
+            }
+            //TODO: all buffers?
+            ByteBuffer sourceData = source.getData(0).duplicate();
+            int width = source.getWidth();
+            int height = source.getHeight();
+            int rowLength = width * bytes;
+            byte[] sourceRow = new byte[rowLength];
+            byte[] row = new byte[width * 4];
+            for (int yPos = 0; yPos < height; yPos++) {
+                sourceData.position(yPos * rowLength);
+                if (!tile.rotated) {
+                    int i = (tile.x + (tile.y + yPos) * atlasWidth) * 4;
+                    if (source.getFormat() == Format.ABGR8) {
+                        sourceData.get(image, i, rowLength);
+                    } else {
+                        sourceData.get(sourceRow, 0, rowLength);
+                        convertRow(source.getFormat(), sourceRow, image, i, width);
+                    }
+                } else {
+                    //the texture is transposed, a source row becomes a column
+                    sourceData.get(sourceRow, 0, rowLength);
+                    convertRow(source.getFormat(), sourceRow, row, 0, width);
+                    int i = (tile.x + yPos + tile.y * atlasWidth) * 4;
+                    for (int xPos = 0; xPos < width; xPos++) {
+                        int j = xPos * 4;
+                        image[i] = row[j];
+                        image[i + 1] = row[j + 1];
+                        image[i + 2] = row[j + 2];
+                        image[i + 3] = row[j + 3];
+                        i += atlasWidth * 4;
+                    }
+                }
+            }
+            if (tile.padding > 0) {
+                extrudeBorders(image);
+            }
+        }
+
+        /**
+         * Repeats the border texels of the tile into its padding.
+         */
+        private void extrudeBorders(byte[] image) {
+            int padding = tile.padding;
+            int width = tile.getAtlasWidth();
+            int height = tile.getAtlasHeight();
+            int rowStride = atlasWidth * 4;
+            for (int yPos = tile.y; yPos < tile.y + height; yPos++) {
+                int first = (tile.x + yPos * atlasWidth) * 4;
+                int last = first + (width - 1) * 4;
+                for (int p = 1; p <= padding; p++) {
+                    System.arraycopy(image, first, image, first - p * 4, 4);
+                    System.arraycopy(image, last, image, last + p * 4, 4);
+                }
+            }
+            int rowLength = (width + 2 * padding) * 4;
+            int firstRow = (tile.x - padding + tile.y * atlasWidth) * 4;
+            int lastRow = firstRow + (height - 1) * rowStride;
+            for (int p = 1; p <= padding; p++) {
+                System.arraycopy(image, firstRow, image, firstRow - p * rowStride, rowLength);
+                System.arraycopy(image, lastRow, image, lastRow + p * rowStride, rowLength);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes per pixel of the formats that can be drawn
+     * directly, 0 for the others.
+     */
+    private static int getSourceBytes(Format format) {
+        switch (format) {
+            case ABGR8:
+            case RGBA8:
+                return 4;
+            case BGR8:
+            case RGB8:
+                return 3;
+            case Luminance8Alpha8:
+                return 2;
+            case Luminance8:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Converts a row of texels to ABGR8.
+     */
+    private static void convertRow(Format format, byte[] in, byte[] out, int offset, int width) {
+        int i = offset;
+        int end = offset + width * 4;
+        int j = 0;
+        switch (format) {
+            case ABGR8:
+                System.arraycopy(in, 0, out, offset, width * 4);
+                break;
+            case BGR8:
+                for (; i < end; i += 4, j += 3) {
+                    out[i] = 1; //a
+                    out[i + 1] = in[j]; //b
+                    out[i + 2] = in[j + 1]; //g
+                    out[i + 3] = in[j + 2]; //r
+                }
+                break;
+            case RGB8:
+                for (; i < end; i += 4, j += 3) {
+                    out[i] = 1; //a
+                    out[i + 1] = in[j + 2]; //b
+                    out[i + 2] = in[j + 1]; //g
+                    out[i + 3] = in[j]; //r
+                }
+                break;
+            case RGBA8:
+                for (; i < end; i += 4, j += 4) {
+                    out[i] = in[j + 3]; //a
+                    out[i + 1] = in[j + 2]; //b
+                    out[i + 2] = in[j + 1]; //g
+                    out[i + 3] = in[j]; //r
+                }
+                break;
+            case Luminance8:
+                for (; i < end; i += 4, j++) {
+                    out[i] = 1; //a
+                    out[i + 1] = in[j]; //b
+                    out[i + 2] = in[j]; //g
+                    out[i + 3] = in[j]; //r
+                }
+                break;
+            case Luminance8Alpha8:
+                for (; i < end; i += 4, j += 2) {
+                    out[i] = in[j + 1]; //a
+                    out[i + 1] = in[j]; //b
+                    out[i + 2] = in[j]; //g
+                    out[i + 3] = in[j]; //r
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Cannot draw textures with format " + format);
+        }
+    }
+
     /**
      * Get the <code>TextureAtlasTile</code> for the given Texture
      * @param texture The texture to retrieve the <code>TextureAtlasTile</code> for.
@@ -399,6 +613,13 @@ public class TextureAtlas {
      * @return the atlas texture
      */
     public Texture getAtlasTexture(String mapName) {
+        List<Blit> blits = pendingBlits.remove(mapName);
+        if (blits != null) {
+            byte[] image = getImage(mapName);
+            for (Blit blit : blits) {
+                blit.draw(image);
+            }
+        }
         if (images == null) {
             return null;
         }
@@ -473,6 +694,14 @@ public class TextureAtlas {
         List<Geometry> geometries = new ArrayList<Geometry>();
         GeometryBatchFactory.gatherGeoms(root, geometries);
         TextureAtlas atlas = new TextureAtlas(atlasSize, atlasSize);
+        //packing the largest textures first fills the atlas much better
+        Collections.sort(geometries, new Comparator<Geometry>() {
+            public int compare(Geometry g1, Geometry g2) {
+                long a1 = getMasterTextureArea(g1);
+                long a2 = getMasterTextureArea(g2);
+                return a1 > a2 ? -1 : (a1 == a2 ? 0 : 1);
+            }
+        });
         for (Geometry geometry : geometries) {
             if (!atlas.addGeometry(geometry)) {
                 logger.log(Level.WARNING, "Texture atlas size too small, cannot add all textures");
@@ -491,6 +720,19 @@ public class TextureAtlas {
      * @return A new geometry that uses the generated texture atlas and merges all meshes of the root spatial, null if the atlas cannot be created because not all textures fit.
      */
     public static Geometry makeAtlasBatch(Spatial spat, AssetManager mgr, int atlasSize) {
+        return makeAtlasBatch(spat, mgr, atlasSize, ParallelTasks.getSharedExecutor());
+    }
+
+    /**
+     * Creates one geometry out of the given root spatial and merges all single
+     * textures into one texture of the given size.
+     * @param spat The root spatial of the scene to batch
+     * @param mgr An assetmanager that can be used to create the material.
+     * @param atlasSize A size for the atlas texture, it has to be large enough to hold all single textures.
+     * @param executor The executor drawing the atlas maps and merging the meshes, null to do all the work on the calling thread.
+     * @return A new geometry that uses the generated texture atlas and merges all meshes of the root spatial, null if the atlas cannot be created because not all textures fit.
+     */
+    public static Geometry makeAtlasBatch(Spatial spat, AssetManager mgr, int atlasSize, ExecutorService executor) {
         List<Geometry> geometries = new ArrayList<Geometry>();
         GeometryBatchFactory.gatherGeoms(spat, geometries);
         TextureAtlas atlas = createAtlas(spat, atlasSize);
@@ -499,7 +741,8 @@ public class TextureAtlas {
         }
         Geometry geom = new Geometry();
         Mesh mesh = new Mesh();
-        GeometryBatchFactory.mergeGeometries(geometries, mesh);
+        atlas.buildImages(executor);
+        GeometryBatchFactory.mergeGeometries(geometries, mesh, executor);
         applyAtlasCoords(geometries, mesh, atlas);
         mesh.updateCounts();
         mesh.updateBound();
@@ -561,61 +804,139 @@ public class TextureAtlas {
 
     }
 
-    private class Node {
+    private static long getMasterTextureArea(Geometry geometry) {
+        Texture texture = getMaterialTexture(geometry, "DiffuseMap");
+        if (texture == null) {
+            texture = getMaterialTexture(geometry, "ColorMap");
+        }
+        if (texture == null || texture.getImage() == null) {
+            return 0;
+        }
+        return (long) texture.getImage().getWidth() * texture.getImage().getHeight();
+    }
 
-        public TextureAtlasTile location;
-        public Node child[];
-        public boolean occupied;
+    /**
+     * Packs rectangles in the atlas with the MaxRects algorithm, keeping the
+     * list of maximal free rectangles and choosing the one leaving the
+     * shortest side free (best short side fit).
+     */
+    private class Packer {
 
-        public Node(int x, int y, int width, int height) {
-            location = new TextureAtlasTile(x, y, width, height);
-            child = new Node[2];
-            child[0] = null;
-            child[1] = null;
-            occupied = false;
-        }
+        private List<Rect> freeRects = new ArrayList<Rect>();
 
-        public boolean isLeaf() {
-            return child[0] == null && child[1] == null;
+        public Packer(int width, int height) {
+            freeRects.add(new Rect(0, 0, width, height));
         }
 
-        // Algorithm from http://www.blackpawn.com/texts/lightmaps/
-        public Node insert(IImage image) {
-            if (!isLeaf()) {
-                Node newNode = child[0].insert(image);
-
-                if (newNode != null) {
-                    return newNode;
+        /**
+         * @return the tile of a texture of the given size, null if it doesn't fit.
+         */
+        public TextureAtlasTile insert(int width, int height) {
+            int paddedWidth = width + 2 * padding;
+            int paddedHeight = height + 2 * padding;
+            Rect best = null;
+            boolean bestRotated = false;
+            int bestShortSide = Integer.MAX_VALUE;
+            int bestLongSide = Integer.MAX_VALUE;
+            for (Rect free : freeRects) {
+                for (int r = 0; r < 2; r++) {
+                    boolean rotated = r == 1;
+                    if (rotated && (!allowRotation || width == height)) {
+                        break;
+                    }
+                    int w = rotated ? paddedHeight : paddedWidth;
+                    int h = rotated ? paddedWidth : paddedHeight;
+                    if (w > free.width || h > free.height) {
+                        continue;
+                    }
+                    int leftoverX = free.width - w;
+                    int leftoverY = free.height - h;
+                    int shortSide = Math.min(leftoverX, leftoverY);
+                    int longSide = Math.max(leftoverX, leftoverY);
+                    if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide)) {
+                        best = free;
+                        bestRotated = rotated;
+                        bestShortSide = shortSide;
+                        bestLongSide = longSide;
+                    }
                 }
+            }
+            if (best == null) {
+                return null;
+            }
+            Rect placed = new Rect(best.x, best.y,
+                    bestRotated ? paddedHeight : paddedWidth,
+                    bestRotated ? paddedWidth : paddedHeight);
+            splitFreeRects(placed);
+            pruneFreeRects();
+            return new TextureAtlasTile(placed.x + padding, placed.y + padding, width, height, bestRotated, padding);
+        }
 
-                return child[1].insert(image);
-            } else {
-                if (occupied) {
-                    return null; // occupied
+        /**
+         * Replaces the free rectangles overlapping the placed one by their
+         * maximal parts outside of it.
+         */
+        private void splitFreeRects(Rect placed) {
+            int count = freeRects.size();
+            for (int i = count - 1; i >= 0; i--) {
+                Rect free = freeRects.get(i);
+                if (placed.x >= free.x + free.width || placed.x + placed.width <= free.x
+                        || placed.y >= free.y + free.height || placed.y + placed.height <= free.y) {
+                    continue;
                 }
-
-                if (image.getWidth() > location.getWidth() || image.getHeight() > location.getHeight()) {
-                    return null; // does not fit
+                freeRects.remove(i);
+                if (placed.x > free.x) {
+                    freeRects.add(new Rect(free.x, free.y, placed.x - free.x, free.height));
                 }
+                if (placed.x + placed.width < free.x + free.width) {
+                    freeRects.add(new Rect(placed.x + placed.width, free.y, free.x + free.width - placed.x - placed.width, free.height));
+                }
+                if (placed.y > free.y) {
+                    freeRects.add(new Rect(free.x, free.y, free.width, placed.y - free.y));
+                }
+                if (placed.y + placed.height < free.y + free.height) {
+                    freeRects.add(new Rect(free.x, placed.y + placed.height, free.width, free.y + free.height - placed.y - placed.height));
+                }
+            }
+        }
 
-                if (image.getWidth() == location.getWidth() && image.getHeight() == location.getHeight()) {
-                    occupied = true; // perfect fit
-                    return this;
+        /**
+         * Removes the free rectangles contained in another one.
+         */
+        private void pruneFreeRects() {
+            for (int i = 0; i < freeRects.size(); i++) {
+                Rect a = freeRects.get(i);
+                for (int j = i + 1; j < freeRects.size(); j++) {
+                    Rect b = freeRects.get(j);
+                    if (b.contains(a)) {
+                        freeRects.remove(i);
+                        i--;
+                        break;
+                    }
+                    if (a.contains(b)) {
+                        freeRects.remove(j);
+                        j--;
+                    }
                 }
+            }
+        }
+    }
 
-                int dw = location.getWidth() - image.getWidth();
-                int dh = location.getHeight() - image.getHeight();
+    private static class Rect {
 
-                if (dw > dh) {
-                    child[0] = new Node(location.getX(), location.getY(), image.getWidth(), location.getHeight());
-                    child[1] = new Node(location.getX() + image.getWidth(), location.getY(), location.getWidth() - image.getWidth(), location.getHeight());
-                } else {
-                    child[0] = new Node(location.getX(), location.getY(), location.getWidth(), image.getHeight());
-                    child[1] = new Node(location.getX(), location.getY() + image.getHeight(), location.getWidth(), location.getHeight() - image.getHeight());
-                }
+        final int x, y, width, height;
 
-                return child[0].insert(image);
-            }
+        Rect(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean contains(Rect other) {
+            return other.x >= x && other.y >= y
+                    && other.x + other.width <= x + width
+                    && other.y + other.height <= y + height;
         }
     }
 
@@ -625,12 +946,29 @@ public class TextureAtlas {
         private int y;
         private int width;
         private int height;
+        private boolean rotated;
+        private int padding;
 
         public TextureAtlasTile(int x, int y, int width, int height) {
+            this(x, y, width, height, false, 0);
+        }
+
+        /**
+         * @param x The left of the texture in the atlas, without padding.
+         * @param y The bottom of the texture in the atlas, without padding.
+         * @param width The width of the texture.
+         * @param height The height of the texture.
+         * @param rotated True if the texture is transposed in the atlas, it
+         * then covers height x width texels.
+         * @param padding The number of texels of padding around the texture.
+         */
+        public TextureAtlasTile(int x, int y, int width, int height, boolean rotated, int padding) {
             this.x = x;
             this.y = y;
             this.width = width;
             this.height = height;
+            this.rotated = rotated;
+            this.padding = padding;
         }
 
         /**
@@ -641,11 +979,11 @@ public class TextureAtlas {
         public Vector2f getLocation(Vector2f previousLocation) {
             float x = (float) getX() / (float) atlasWidth;
             float y = (float) getY() / (float) atlasHeight;
-            float w = (float) getWidth() / (float) atlasWidth;
-            float h = (float) getHeight() / (float) atlasHeight;
+            float w = (float) getAtlasWidth() / (float) atlasWidth;
+            float h = (float) getAtlasHeight() / (float) atlasHeight;
             Vector2f location = new Vector2f(x, y);
-            float prevX = previousLocation.x;
-            float prevY = previousLocation.y;
+            float prevX = rotated ? previousLocation.y : previousLocation.x;
+            float prevY = rotated ? previousLocation.x : previousLocation.y;
             location.addLocal(prevX * w, prevY * h);
             return location;
         }
@@ -657,19 +995,22 @@ public class TextureAtlas {
          * @param outBuf The output buffer.
          */
         public void transformTextureCoords(FloatBuffer inBuf, int offset, FloatBuffer outBuf) {
-            Vector2f tex = new Vector2f();
+            float x = (float) getX() / (float) atlasWidth;
+            float y = (float) getY() / (float) atlasHeight;
+            float w = (float) getAtlasWidth() / (float) atlasWidth;
+            float h = (float) getAtlasHeight() / (float) atlasHeight;
+            int u = rotated ? 1 : 0;
+            int v = 1 - u;
 
             // offset is given in element units
             // convert to be in component units
             offset *= 2;
 
-            for (int i = 0; i < inBuf.limit() / 2; i++) {
-                tex.x = inBuf.get(i * 2 + 0);
-                tex.y = inBuf.get(i * 2 + 1);
-                Vector2f location = getLocation(tex);
+            int length = inBuf.limit() / 2 * 2;
+            for (int i = 0; i < length; i += 2) {
                 //TODO: add proper texture wrapping for atlases..
-                outBuf.put(offset + i * 2 + 0, location.x);
-                outBuf.put(offset + i * 2 + 1, location.y);
+                outBuf.put(offset + i, x + inBuf.get(i + u) * w);
+                outBuf.put(offset + i + 1, y + inBuf.get(i + v) * h);
             }
         }
 
@@ -688,5 +1029,26 @@ public class TextureAtlas {
         public int getHeight() {
             return height;
         }
+
+        /**
+         * @return true if the texture is transposed in the atlas.
+         */
+        public boolean isRotated() {
+            return rotated;
+        }
+
+        /**
+         * @return the number of texels the texture covers horizontally in the atlas.
+         */
+        public int getAtlasWidth() {
+            return rotated ? height : width;
+        }
+
+        /**
+         * @return the number of texels the texture covers vertically in the atlas.
+         */
+        public int getAtlasHeight() {
+            return rotated ? width : height;
+        }
     }
 }
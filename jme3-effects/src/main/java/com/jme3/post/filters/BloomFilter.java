@@ -154,6 +154,7 @@ public class BloomFilter extends Filter {
             }
         };
 
+        extractPass.setTransient(true);
         extractPass.init(renderManager.getRenderer(), screenWidth, screenHeight, Format.RGBA8, Format.Depth, 1, extractMat);
         postRenderPasses.add(extractPass);
 
@@ -169,6 +170,7 @@ public class BloomFilter extends Filter {
             }
         };
 
+        horizontalBlur.setTransient(true);
         horizontalBlur.init(renderManager.getRenderer(), screenWidth, screenHeight, Format.RGBA8, Format.Depth, 1, hBlurMat);
         postRenderPasses.add(horizontalBlur);
 
@@ -184,6 +186,7 @@ public class BloomFilter extends Filter {
             }
         };
 
+        verticalalBlur.setTransient(true);
         verticalalBlur.init(renderManager.getRenderer(), screenWidth, screenHeight, Format.RGBA8, Format.Depth, 1, vBlurMat);
         postRenderPasses.add(verticalalBlur);
 
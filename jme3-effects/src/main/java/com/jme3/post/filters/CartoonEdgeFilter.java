@@ -35,12 +35,9 @@ import com.jme3.asset.AssetManager;
 import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.post.Filter;
-import com.jme3.post.Filter.Pass;
 import com.jme3.renderer.RenderManager;
-import com.jme3.renderer.Renderer;
 import com.jme3.renderer.ViewPort;
-import com.jme3.renderer.queue.RenderQueue;
-import com.jme3.texture.Format;
+import com.jme3.texture.Texture;
 
 /**
  * Applies a cartoon-style edge detection filter to all objects in the scene.
@@ -49,7 +46,7 @@ import com.jme3.texture.Format;
  */
 public class CartoonEdgeFilter extends Filter {
 
-    private Pass normalPass;
+    private Texture normalTexture;
     private float edgeWidth = 1.0f;
     private float edgeIntensity = 1.0f;
     private float normalThreshold = 0.5f;
@@ -57,8 +54,6 @@ public class CartoonEdgeFilter extends Filter {
     private float normalSensitivity = 1.0f;
     private float depthSensitivity = 10.0f;
     private ColorRGBA edgeColor = new ColorRGBA(0, 0, 0, 1);
-    private RenderManager renderManager;
-    private ViewPort viewPort;
 
     /**
      * Creates a CartoonEdgeFilter
@@ -73,28 +68,23 @@ public class CartoonEdgeFilter extends Filter {
     }
 
     @Override
-    protected void postQueue(RenderQueue queue) {
-        Renderer r = renderManager.getRenderer();
-        r.setFrameBuffer(normalPass.getRenderFrameBuffer());
-        renderManager.getRenderer().clearBuffers(true, true, true);
-        renderManager.setForcedTechnique("PreNormalPass");
-        renderManager.renderViewPortQueues(viewPort, false);
-        renderManager.setForcedTechnique(null);
-        renderManager.getRenderer().setFrameBuffer(viewPort.getOutputFrameBuffer());
+    protected boolean isRequiresNormalTexture() {
+        return true;
+    }
+
+    @Override
+    protected void setNormalTexture(Texture normalTexture) {
+        this.normalTexture = normalTexture;
     }
 
     @Override
     protected Material getMaterial() {
-        material.setTexture("NormalsTexture", normalPass.getRenderedTexture());
+        material.setTexture("NormalsTexture", normalTexture);
         return material;
     }
 
     @Override
     protected void initFilter(AssetManager manager, RenderManager renderManager, ViewPort vp, int w, int h) {
-        this.renderManager = renderManager;
-        this.viewPort = vp;
-        normalPass = new Pass();
-        normalPass.init(renderManager.getRenderer(), w, h, Format.RGBA8, Format.Depth);
         material = new Material(manager, "Common/MatDefs/Post/CartoonEdge.j3md");
         material.setFloat("EdgeWidth", edgeWidth);
         material.setFloat("EdgeIntensity", edgeIntensity);
@@ -105,11 +95,6 @@ public class CartoonEdgeFilter extends Filter {
         material.setColor("EdgeColor", edgeColor);
     }
 
-    @Override
-    protected void cleanUpFilter(Renderer r) {
-        normalPass.cleanup(r);
-    }
-
     
     
     /**
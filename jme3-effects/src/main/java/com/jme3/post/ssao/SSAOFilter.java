@@ -37,6 +37,7 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.material.Material;
+import com.jme3.math.Matrix4f;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.post.Filter;
@@ -47,8 +48,10 @@ import com.jme3.renderer.ViewPort;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.shader.VarType;
 import com.jme3.texture.Format;
-import com.jme3.texture.ITexture;
+import com.jme3.texture.MagFilter;
+import com.jme3.texture.MinFilter;
 import com.jme3.texture.Texture;
+import com.jme3.texture.WrapMode;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -58,11 +61,18 @@ import java.util.ArrayList;
  * under the effect of an ambient light
  * more info on this in this blog post <a href="http://jmonkeyengine.org/2010/08/16/screen-space-ambient-occlusion-for-jmonkeyengine-3-0/">http://jmonkeyengine.org/2010/08/16/screen-space-ambient-occlusion-for-jmonkeyengine-3-0/</a>
  * 
+ * The AO can be computed at a lower resolution (see {@link #setDownSampleFactor(float)}),
+ * it's then upsampled by the depth aware blur of the final pass.
+ * The AO can also be accumulated over several frames (see {@link #setTemporalAccumulation(boolean)}),
+ * the previous result is reprojected with the previous frame view projection
+ * and blended with the current one, which allows to take half the samples per frame.
+ * The normals are shared with the other filters of the processor needing them.
+ * 
  * @author Rémy Bouquet aka Nehon
  */
 public class SSAOFilter extends Filter {
 
-    private Pass normalPass;
+    private Texture normalTexture;
     private Vector3f frustumCorner;
     private Vector2f frustumNearFar;
     private Vector2f[] samples = {new Vector2f(1.0f, 0.0f), new Vector2f(-1.0f, 0.0f), new Vector2f(0.0f, 1.0f), new Vector2f(0.0f, -1.0f)};
@@ -79,7 +89,22 @@ public class SSAOFilter extends Filter {
     private float downSampleFactor = 1f;
     private RenderManager renderManager;
     private ViewPort viewPort;
+    private AssetManager assetManager;
+    private int initialWidth;
+    private int initialHeight;
     private boolean approximateNormals = false;
+    private boolean temporalAccumulation = false;
+    private float temporalBlendFactor = 0.2f;
+    private Material temporalMat;
+    private Pass temporalPass;
+    private Pass[] historyPasses;
+    private int historyIndex = 0;
+    private boolean historyValid = false;
+    private int frameIndex = 0;
+    private final Vector2f randomOffset = new Vector2f();
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f prevViewProjection = new Matrix4f();
+    private final Matrix4f viewProjectionInverse = new Matrix4f();
 
     /**
      * Create a Screen Space Ambient Occlusion Filter
@@ -108,17 +133,37 @@ public class SSAOFilter extends Filter {
         return true;
     }
 
+    @Override
+    protected boolean isRequiresNormalTexture() {
+        return !approximateNormals;
+    }
+
+    @Override
+    protected void setNormalTexture(Texture normalTexture) {
+        this.normalTexture = normalTexture;
+        if (ssaoMat != null) {
+            ssaoMat.setTexture("Normals", normalTexture);
+        }
+    }
+
     @Override
     protected void postQueue(RenderQueue queue) {
-        if(!approximateNormals) {
-            Renderer r = renderManager.getRenderer();
-            r.setFrameBuffer(normalPass.getRenderFrameBuffer());
-            renderManager.getRenderer().clearBuffers(true, true, true);
-            renderManager.setForcedTechnique("PreNormalPass");
-            renderManager.renderViewPortQueues(viewPort, false);
-            renderManager.setForcedTechnique(null);
-            renderManager.getRenderer().setFrameBuffer(viewPort.getOutputFrameBuffer());
+        if (!temporalAccumulation) {
+            return;
         }
+        //keeping the previous view projection to reproject the AO history
+        prevViewProjection.set(viewProjection);
+        viewProjection.set(viewPort.getCamera().getViewProjectionMatrix());
+        viewProjection.invert(viewProjectionInverse);
+        temporalMat.setMatrix4("ViewProjectionMatrixInverse", viewProjectionInverse);
+        temporalMat.setMatrix4("PrevViewProjectionMatrix", prevViewProjection);
+        temporalMat.setFloat("BlendFactor", historyValid ? temporalBlendFactor : 1f);
+
+        //rotating the sampling pattern each frame so that the accumulated
+        //samples differ from one frame to another
+        frameIndex = (frameIndex + 1) % 16;
+        randomOffset.set((frameIndex * 0.618034f) % 1f, (frameIndex * 0.414214f) % 1f);
+        ssaoMat.setVector2("RandomOffset", randomOffset);
     }
 
     @Override
@@ -130,14 +175,15 @@ public class SSAOFilter extends Filter {
     protected void initFilter(AssetManager manager, RenderManager renderManager, ViewPort vp, int w, int h) {
         this.renderManager = renderManager;
         this.viewPort = vp;
+        this.assetManager = manager;
+        this.initialWidth = w;
+        this.initialHeight = h;
         int screenWidth = w;
         int screenHeight = h;
+        int aoWidth = (int) Math.max(1, screenWidth / downSampleFactor);
+        int aoHeight = (int) Math.max(1, screenHeight / downSampleFactor);
         postRenderPasses = new ArrayList<Pass>();
 
-        normalPass = new Pass();
-        normalPass.init(renderManager.getRenderer(), (int) (screenWidth / downSampleFactor), (int) (screenHeight / downSampleFactor), Format.RGBA8, Format.Depth);
-
-
         frustumNearFar = new Vector2f();
 
         float farY = (vp.getCamera().getFrustumTop() / vp.getCamera().getFrustumNear()) * vp.getCamera().getFrustumFar();
@@ -152,9 +198,11 @@ public class SSAOFilter extends Filter {
 
         //ssao Pass
         ssaoMat = new Material(manager, "Common/MatDefs/SSAO/ssao.j3md");
-        ssaoMat.setTexture("Normals", normalPass.getRenderedTexture());
+        if (normalTexture != null) {
+            ssaoMat.setTexture("Normals", normalTexture);
+        }
         Texture random = manager.loadTexture("Common/MatDefs/SSAO/Textures/random.png");
-        random.setWrap(ITexture.WrapMode.Repeat);
+        random.setWrap(WrapMode.Repeat);
         ssaoMat.setTexture("RandomMap", random);
 
         ssaoPass = new Pass() {
@@ -165,13 +213,23 @@ public class SSAOFilter extends Filter {
             }
         };
 
-        ssaoPass.init(renderManager.getRenderer(), (int) (screenWidth / downSampleFactor), (int) (screenHeight / downSampleFactor), Format.RGBA8, Format.Depth, 1, ssaoMat);
-//        ssaoPass.getRenderedTexture().setMinFilter(Texture.MinFilter.Trilinear);
-//        ssaoPass.getRenderedTexture().setMagFilter(Texture.MagFilter.Bilinear);
+        ssaoPass.setTransient(true);
+        ssaoPass.init(renderManager.getRenderer(), aoWidth, aoHeight, Format.RGBA8, Format.Depth, 1, ssaoMat);
+        if (downSampleFactor > 1) {
+            //the low resolution AO is upsampled by the depth aware blur
+            ssaoPass.getRenderedTexture().setMinFilter(MinFilter.BilinearNoMipMaps);
+            ssaoPass.getRenderedTexture().setMagFilter(MagFilter.Bilinear);
+        }
         postRenderPasses.add(ssaoPass);
         material = new Material(manager, "Common/MatDefs/SSAO/ssaoBlur.j3md");
         material.setTexture("SSAOMap", ssaoPass.getRenderedTexture());
 
+        if (temporalAccumulation) {
+            initTemporalPass(manager, aoWidth, aoHeight);
+            //half the samples per frame, the history makes up for the rest
+            ssaoMat.setInt("Iterations", 2);
+        }
+
         ssaoMat.setVector3("FrustumCorner", frustumCorner);
         ssaoMat.setFloat("SampleRadius", sampleRadius);
         ssaoMat.setFloat("Intensity", intensity);
@@ -187,16 +245,73 @@ public class SSAOFilter extends Filter {
         float xScale = 1.0f / w;
         float yScale = 1.0f / h;
 
-        float blurScale = 2f;
+        //widening the blur to cover the low resolution texels
+        float blurScale = Math.max(2f, downSampleFactor);
         material.setFloat("XScale", blurScale * xScale);
         material.setFloat("YScale", blurScale * yScale);
 
     }
 
+    private void initTemporalPass(AssetManager manager, int aoWidth, int aoHeight) {
+        temporalMat = new Material(manager, "Common/MatDefs/SSAO/ssaoTemporal.j3md");
+        temporalMat.setTexture("SSAOMap", ssaoPass.getRenderedTexture());
+
+        //the history is ping ponged between 2 targets that are kept from one frame to the next
+        historyPasses = new Pass[2];
+        for (int i = 0; i < historyPasses.length; i++) {
+            historyPasses[i] = new Pass();
+            historyPasses[i].init(renderManager.getRenderer(), aoWidth, aoHeight, Format.RGBA8, Format.Depth);
+            historyPasses[i].getRenderedTexture().setMinFilter(MinFilter.BilinearNoMipMaps);
+            historyPasses[i].getRenderedTexture().setMagFilter(MagFilter.Bilinear);
+        }
+        historyValid = false;
+
+        temporalPass = new Pass() {
+
+            @Override
+            public boolean requiresDepthAsTexture() {
+                return true;
+            }
+
+            @Override
+            public void beforeRender() {
+                Pass previous = historyPasses[historyIndex];
+                historyIndex = (historyIndex + 1) % 2;
+                Pass current = historyPasses[historyIndex];
+                temporalMat.setTexture("History", previous.getRenderedTexture());
+                setRenderFrameBuffer(current.getRenderFrameBuffer());
+                material.setTexture("SSAOMap", current.getRenderedTexture());
+                historyValid = true;
+            }
+
+            @Override
+            public void cleanup(Renderer r) {
+                //the frame buffers belong to the history passes
+            }
+        };
+        temporalPass.setPassMaterial(temporalMat);
+        postRenderPasses.add(temporalPass);
+    }
+
     @Override
     protected void cleanUpFilter(Renderer r) {
-        normalPass.cleanup(r);
-    }    
+        if (historyPasses != null) {
+            for (Pass pass : historyPasses) {
+                pass.cleanup(r);
+            }
+            historyPasses = null;
+        }
+    }
+
+    protected void reInitFilter() {
+        Renderer r = renderManager.getRenderer();
+        //the passes are rebuilt at the new size, release the current targets first
+        if (ssaoPass != null) {
+            ssaoPass.cleanup(r);
+        }
+        cleanUpFilter(r);
+        initFilter(assetManager, renderManager, viewPort, initialWidth, initialHeight);
+    }
     
     /**
      * Return the bias<br>
@@ -310,6 +425,77 @@ public class SSAOFilter extends Filter {
         return approximateNormals;
     }
 
+    /**
+     * returns the down sample factor<br>
+     * see {@link #setDownSampleFactor(float downSampleFactor)}
+     * @return the down sample factor
+     */
+    public float getDownSampleFactor() {
+        return downSampleFactor;
+    }
+
+    /**
+     * Sets the down sample factor : the AO is computed on a texture which size
+     * is the screen size divided by this factor, and is upsampled with a depth
+     * aware blur.
+     * 2 computes the AO at half resolution, 4 at quarter resolution.
+     * default is 1 for a full resolution AO.
+     * @param downSampleFactor
+     */
+    public void setDownSampleFactor(float downSampleFactor) {
+        if (downSampleFactor < 1) {
+            throw new IllegalArgumentException("downSampleFactor must be >= 1");
+        }
+        this.downSampleFactor = downSampleFactor;
+        if (assetManager != null) {
+            reInitFilter();
+        }
+    }
+
+    /**
+     * returns true if the AO is accumulated over several frames<br>
+     * see {@link #setTemporalAccumulation(boolean temporalAccumulation)}
+     * @return true if temporal accumulation is enabled
+     */
+    public boolean isTemporalAccumulation() {
+        return temporalAccumulation;
+    }
+
+    /**
+     * Enables temporal accumulation of the AO : each frame computes half the
+     * samples with a rotated pattern, and blends the result with the previous
+     * frames AO reprojected with the previous view projection.
+     * The history is clamped to the neighborhood of the current AO to limit
+     * ghosting on disocclusions.
+     * default is false
+     * @param temporalAccumulation true to enable temporal accumulation
+     */
+    public void setTemporalAccumulation(boolean temporalAccumulation) {
+        this.temporalAccumulation = temporalAccumulation;
+        if (assetManager != null) {
+            reInitFilter();
+        }
+    }
+
+    /**
+     * returns the weight of the current frame in the temporal accumulation<br>
+     * see {@link #setTemporalBlendFactor(float temporalBlendFactor)}
+     * @return the blend factor
+     */
+    public float getTemporalBlendFactor() {
+        return temporalBlendFactor;
+    }
+
+    /**
+     * Sets the weight of the current frame when blended with the AO history.
+     * Lower values converge to a smoother result but react slower to changes.
+     * default is 0.2f
+     * @param temporalBlendFactor a value between 0 and 1
+     */
+    public void setTemporalBlendFactor(float temporalBlendFactor) {
+        this.temporalBlendFactor = temporalBlendFactor;
+    }
+
     /**
      * debugging only , will be removed
      * @return useOnlyAo
@@ -336,6 +522,9 @@ public class SSAOFilter extends Filter {
         oc.write(intensity, "intensity", 1.5f);
         oc.write(scale, "scale", 0.2f);
         oc.write(bias, "bias", 0.1f);
+        oc.write(downSampleFactor, "downSampleFactor", 1f);
+        oc.write(temporalAccumulation, "temporalAccumulation", false);
+        oc.write(temporalBlendFactor, "temporalBlendFactor", 0.2f);
     }
 
     @Override
@@ -346,5 +535,8 @@ public class SSAOFilter extends Filter {
         intensity = ic.readFloat("intensity", 1.5f);
         scale = ic.readFloat("scale", 0.2f);
         bias = ic.readFloat("bias", 0.1f);
+        downSampleFactor = ic.readFloat("downSampleFactor", 1f);
+        temporalAccumulation = ic.readBoolean("temporalAccumulation", false);
+        temporalBlendFactor = ic.readFloat("temporalBlendFactor", 0.2f);
     }
 }
@@ -31,17 +31,30 @@
  */
 package com.jme3.water;
 
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
 import com.jme3.math.Plane;
 import com.jme3.post.SceneProcessor;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.GeometryList;
 import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
 import com.jme3.texture.FrameBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Reflection Processor
  * Used to render the reflected scene in an off view port
+ * 
+ * Geometries that are entirely under the reflection clip plane are removed 
+ * from the reflection queue, as well as geometries that are too small in the 
+ * reflection according to the lod bias (see {@link #setLodBias(float)}).
+ * A cheaper technique can also be used to render the reflected opaque 
+ * geometries (see {@link #setReflectionTechnique(java.lang.String)}).
  */
 public class ReflectionProcessor implements SceneProcessor {
 
@@ -50,6 +63,9 @@ public class ReflectionProcessor implements SceneProcessor {
     private Camera reflectionCam;
     private FrameBuffer reflectionBuffer;
     private Plane reflectionClipPlane;
+    private float lodBias = 0;
+    private String reflectionTechnique;
+    private final List<Geometry> keptGeometries = new ArrayList<Geometry>();
 
     /**
      * Creates a ReflectionProcessor
@@ -88,10 +104,89 @@ public class ReflectionProcessor implements SceneProcessor {
         rm.getRenderer().setDepthRange(1, 1);
         vp.getQueue().renderQueue(RenderQueue.Bucket.Sky, rm, reflectionCam, true);
         rm.getRenderer().setDepthRange(0, 1);
+        //removing what can't be seen in the reflection before clipping
+        cullQueue(rq.getList(RenderQueue.Bucket.Opaque));
+        cullQueue(rq.getList(RenderQueue.Bucket.Transparent));
+        cullQueue(rq.getList(RenderQueue.Bucket.Translucent));
         //setting the clip plane to the cam
         reflectionCam.setClipPlane(reflectionClipPlane, Plane.Side.Positive);//,1
         rm.setCamera(reflectionCam, false);
+        
+        if (reflectionTechnique != null) {
+            renderOpaqueQueue(rq.getList(RenderQueue.Bucket.Opaque));
+        }
+    }
+
+    /**
+     * Removes from the list the geometries that are under the clip plane, 
+     * or smaller than the lod bias.
+     */
+    private void cullQueue(GeometryList list) {
+        keptGeometries.clear();
+        for (int i = 0; i < list.size(); i++) {
+            Geometry geom = list.get(i);
+            if (isVisibleInReflection(geom)) {
+                keptGeometries.add(geom);
+            }
+        }
+        if (keptGeometries.size() != list.size()) {
+            list.clear();
+            for (int i = 0; i < keptGeometries.size(); i++) {
+                list.add(keptGeometries.get(i));
+            }
+        }
+        keptGeometries.clear();
+    }
+
+    private boolean isVisibleInReflection(Geometry geom) {
+        BoundingVolume bound = geom.getWorldBound();
+        if (bound == null) {
+            return true;
+        }
+        if (reflectionClipPlane != null && bound.whichSide(reflectionClipPlane) == Plane.Side.Negative) {
+            return false;
+        }
+        if (lodBias > 0 && !reflectionCam.isParallelProjection()) {
+            float radius;
+            if (bound instanceof BoundingSphere) {
+                radius = ((BoundingSphere) bound).getRadius();
+            } else if (bound instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox) bound;
+                radius = (float) Math.sqrt(box.getXExtent() * box.getXExtent()
+                        + box.getYExtent() * box.getYExtent()
+                        + box.getZExtent() * box.getZExtent());
+            } else {
+                return true;
+            }
+            float distance = bound.getCenter().distance(reflectionCam.getLocation());
+            if (distance > radius) {
+                //size of the object relatively to the half height of the view
+                float viewHeight = distance * reflectionCam.getFrustumTop() / reflectionCam.getFrustumNear();
+                if (radius / viewHeight < lodBias) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
+    /**
+     * Renders the opaque geometries with the reflection technique when their
+     * material defines it, the queue is then cleared.
+     */
+    private void renderOpaqueQueue(GeometryList list) {
+        list.setCamera(reflectionCam);
+        list.sort();
+        for (int i = 0; i < list.size(); i++) {
+            Geometry geom = list.get(i);
+            if (geom.getMaterial().getMaterialDef().getTechniqueDefs(reflectionTechnique) != null) {
+                rm.setForcedTechnique(reflectionTechnique);
+            }
+            rm.renderGeometry(geom);
+            rm.setForcedTechnique(null);
+            geom.queueDistance = Float.NEGATIVE_INFINITY;
+        }
+        list.clear();
     }
 
     public void postFrame(FrameBuffer out) {
@@ -149,4 +244,42 @@ public class ReflectionProcessor implements SceneProcessor {
     public void setReflectionClipPlane(Plane reflectionClipPlane) {
         this.reflectionClipPlane = reflectionClipPlane;
     }
+
+    /**
+     * returns the lod bias
+     * @return 
+     */
+    public float getLodBias() {
+        return lodBias;
+    }
+
+    /**
+     * Sets the lod bias : geometries whose bounding radius is smaller than 
+     * this ratio of the reflection view half height are not rendered in the 
+     * reflection. 0.01 drops objects covering less than about 1% of the view.
+     * default is 0 : all geometries are rendered
+     * @param lodBias 
+     */
+    public void setLodBias(float lodBias) {
+        this.lodBias = lodBias;
+    }
+
+    /**
+     * returns the technique used to render the reflected geometries
+     * @return 
+     */
+    public String getReflectionTechnique() {
+        return reflectionTechnique;
+    }
+
+    /**
+     * Sets the technique used to render the opaque reflected geometries, for 
+     * example a technique without normal mapping or specular.
+     * Geometries whose material doesn't define it use their default technique.
+     * default is null : geometries are rendered with their default technique
+     * @param reflectionTechnique the technique name
+     */
+    public void setReflectionTechnique(String reflectionTechnique) {
+        this.reflectionTechnique = reflectionTechnique;
+    }
 }
@@ -125,6 +125,16 @@ public class SimpleWaterProcessor implements SceneProcessor {
     private float distortionScale = 0.2f;
     private float distortionMix = 0.5f;
     private float texScale = 1f;
+    private ReflectionProcessor reflectionProcessor;
+    private int reflectionUpdateInterval = 1;
+    private int framesSinceReflectionUpdate = 0;
+    private boolean reflectionRendered = false;
+    private float reflectionRefreshDistance = 0.05f;
+    private float reflectionRefreshAngle = FastMath.DEG_TO_RAD;
+    private final Vector3f reflectionCamLocation = new Vector3f();
+    private final Quaternion reflectionCamRotation = new Quaternion();
+    private float reflectionLodBias = 0;
+    private String reflectionTechnique;
     
        
     /**
@@ -200,17 +210,39 @@ public class SimpleWaterProcessor implements SceneProcessor {
                 sceneCam.getFrustumBottom());
         refractionCam.setParallelProjection(sceneCam.isParallelProjection());
 
-        //update reflection cam
-        WaterUtils.updateReflectionCam(reflectionCam, plane, sceneCam);
-        
-        //Rendering reflection and refraction
-        rm.renderViewPort(reflectionView, savedTpf);
+        //Rendering reflection, only every reflectionUpdateInterval frames
+        framesSinceReflectionUpdate++;
+        if (!reflectionRendered || framesSinceReflectionUpdate >= reflectionUpdateInterval
+                || hasCameraMoved(sceneCam)) {
+            framesSinceReflectionUpdate = 0;
+            reflectionRendered = true;
+            reflectionCamLocation.set(sceneCam.getLocation());
+            reflectionCamRotation.set(sceneCam.getRotation());
+            //update reflection cam
+            WaterUtils.updateReflectionCam(reflectionCam, plane, sceneCam);
+            rm.renderViewPort(reflectionView, savedTpf);
+        }
+        //Rendering refraction
         rm.renderViewPort(refractionView, savedTpf);
         rm.getRenderer().setFrameBuffer(vp.getOutputFrameBuffer());
         rm.setCamera(sceneCam, false);
 
     }
 
+    /**
+     * A reused reflection is only valid for the point of view it was rendered
+     * from, returns true when the scene camera went past the refresh thresholds.
+     */
+    private boolean hasCameraMoved(Camera sceneCam) {
+        if (reflectionCamLocation.distanceSquared(sceneCam.getLocation())
+                > reflectionRefreshDistance * reflectionRefreshDistance) {
+            return true;
+        }
+        //the angle between two rotations is 2 * acos(|q1.q2|)
+        float dot = FastMath.abs(reflectionCamRotation.dot(sceneCam.getRotation()));
+        return dot < FastMath.cos(reflectionRefreshAngle * 0.5f);
+    }
+
     public void postFrame(FrameBuffer out) {
         if (debug) {
             displayMap(rm.getRenderer(), dispRefraction, 64);
@@ -281,7 +313,11 @@ public class SimpleWaterProcessor implements SceneProcessor {
 
         //set viewport to render to offscreen framebuffer
         reflectionView.setOutputFrameBuffer(reflectionBuffer);
-        reflectionView.addProcessor(new ReflectionProcessor(reflectionCam, reflectionBuffer, reflectionClipPlane));
+        reflectionProcessor = new ReflectionProcessor(reflectionCam, reflectionBuffer, reflectionClipPlane);
+        reflectionProcessor.setLodBias(reflectionLodBias);
+        reflectionProcessor.setReflectionTechnique(reflectionTechnique);
+        reflectionView.addProcessor(reflectionProcessor);
+        reflectionRendered = false;
         // attach the scene to the viewport to be rendered
         reflectionView.attachScene(reflectionScene);
 
@@ -351,6 +387,107 @@ public class SimpleWaterProcessor implements SceneProcessor {
         renderHeight = height;
     }
 
+    /**
+     * returns the number of frames between two updates of the reflection texture
+     * @return
+     */
+    public int getReflectionUpdateInterval() {
+        return reflectionUpdateInterval;
+    }
+
+    /**
+     * Sets the number of frames between two updates of the reflection texture,
+     * in between the last reflection texture is reused.
+     * default is 1 : the reflection is rendered every frame
+     * @param reflectionUpdateInterval
+     */
+    public void setReflectionUpdateInterval(int reflectionUpdateInterval) {
+        if (reflectionUpdateInterval < 1) {
+            throw new IllegalArgumentException("reflectionUpdateInterval must be >= 1");
+        }
+        this.reflectionUpdateInterval = reflectionUpdateInterval;
+    }
+
+    /**
+     * returns the distance the camera can move before the reflection is refreshed
+     * @return
+     */
+    public float getReflectionRefreshDistance() {
+        return reflectionRefreshDistance;
+    }
+
+    /**
+     * Sets the distance the camera can move before the reflection texture is
+     * rendered again, regardless of the update interval.
+     * default is 0.05
+     * @param reflectionRefreshDistance
+     */
+    public void setReflectionRefreshDistance(float reflectionRefreshDistance) {
+        this.reflectionRefreshDistance = reflectionRefreshDistance;
+    }
+
+    /**
+     * returns the angle (in radians) the camera can turn before the reflection is refreshed
+     * @return
+     */
+    public float getReflectionRefreshAngle() {
+        return reflectionRefreshAngle;
+    }
+
+    /**
+     * Sets the angle (in radians) the camera can turn before the reflection
+     * texture is rendered again, regardless of the update interval.
+     * default is 1 degree
+     * @param reflectionRefreshAngle
+     */
+    public void setReflectionRefreshAngle(float reflectionRefreshAngle) {
+        this.reflectionRefreshAngle = reflectionRefreshAngle;
+    }
+
+    /**
+     * returns the lod bias of the reflected scene
+     * @return
+     */
+    public float getReflectionLodBias() {
+        return reflectionLodBias;
+    }
+
+    /**
+     * Sets the lod bias of the reflected scene : objects that are smaller than 
+     * this ratio of the reflection view are not rendered in the reflection.
+     * see {@link ReflectionProcessor#setLodBias(float)}
+     * default is 0 : all objects are reflected
+     * @param reflectionLodBias
+     */
+    public void setReflectionLodBias(float reflectionLodBias) {
+        this.reflectionLodBias = reflectionLodBias;
+        if (reflectionProcessor != null) {
+            reflectionProcessor.setLodBias(reflectionLodBias);
+        }
+    }
+
+    /**
+     * returns the technique used to render the reflected scene
+     * @return
+     */
+    public String getReflectionTechnique() {
+        return reflectionTechnique;
+    }
+
+    /**
+     * Sets the technique used to render the opaque objects of the reflected 
+     * scene, materials that don't define it use their default technique.
+     * see {@link ReflectionProcessor#setReflectionTechnique(java.lang.String)}
+     * default is null
+     * @param reflectionTechnique
+     */
+    public void setReflectionTechnique(String reflectionTechnique) {
+        this.reflectionTechnique = reflectionTechnique;
+        if (reflectionProcessor != null) {
+            reflectionProcessor.setReflectionTechnique(reflectionTechnique);
+        }
+    }
+
     /**
      * returns the water plane
      * @return
@@ -384,6 +521,9 @@ public class SimpleWaterProcessor implements SceneProcessor {
         reflectionClipPlane.setConstant(reflectionClipPlane.getConstant() + reflectionClippingOffset);
         refractionClipPlane = plane.clone();
         refractionClipPlane.setConstant(refractionClipPlane.getConstant() + refractionClippingOffset);
+        if (reflectionProcessor != null) {
+            reflectionProcessor.setReflectionClipPlane(reflectionClipPlane);
+        }
 
     }
 
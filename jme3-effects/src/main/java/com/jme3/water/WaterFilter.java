@@ -81,6 +81,8 @@ public class WaterFilter extends Filter {
             0.0f, 0.0f, 0.0f, 1.0f);
     private Matrix4f textureProjMatrix = new Matrix4f();
     private boolean underWater;
+    private boolean reflectionMapValid = false;
+    private int framesSinceReflectionUpdate = 0;
     private RenderManager renderManager;
     private ViewPort viewPort;
     private float time = 0;
@@ -116,6 +118,10 @@ public class WaterFilter extends Filter {
     private float underWaterFogDistance = 120;
     private boolean useCaustics = true;
     private float causticsIntensity = 0.5f;
+    private int reflectionUpdateInterval = 1;
+    private float reflectionLodBias = 0;
+    private String reflectionTechnique;
+    private boolean useScreenSpaceReflection = false;
     //positional attributes
     private Vector3f center;
     private float radius;
@@ -149,19 +155,29 @@ public class WaterFilter extends Filter {
         time = time + (tpf * speed);
         material.setFloat("Time", time);
         Camera sceneCam = viewPort.getCamera();
-        biasMatrix.mult(sceneCam.getViewProjectionMatrix(), textureProjMatrix);
-        material.setMatrix4("TextureProjMatrix", textureProjMatrix);
         material.setVector3("CameraPosition", sceneCam.getLocation());
         //material.setFloat("WaterHeight", waterHeight);
 
-        //update reflection cam      
-        //plane = new Plane(Vector3f.UNIT_Y, new Vector3f(0, waterHeight, 0).dot(Vector3f.UNIT_Y));
-        //reflectionProcessor.setReflectionClipPlane(plane);        
-        WaterUtils.updateReflectionCam(reflectionCam, plane, sceneCam);
-      
-
         //if we're under water no need to compute reflection
         if (sceneCam.getLocation().y >= waterHeight) {
+            //the reflection map is only refreshed every reflectionUpdateInterval frames
+            framesSinceReflectionUpdate++;
+            if (reflectionMapValid && framesSinceReflectionUpdate < reflectionUpdateInterval) {
+                underWater = false;
+                return;
+            }
+            framesSinceReflectionUpdate = 0;
+            reflectionMapValid = true;
+
+            //the map is projected with the camera it was rendered from
+            biasMatrix.mult(sceneCam.getViewProjectionMatrix(), textureProjMatrix);
+            material.setMatrix4("TextureProjMatrix", textureProjMatrix);
+
+            //update reflection cam      
+            //plane = new Plane(Vector3f.UNIT_Y, new Vector3f(0, waterHeight, 0).dot(Vector3f.UNIT_Y));
+            //reflectionProcessor.setReflectionClipPlane(plane);        
+            WaterUtils.updateReflectionCam(reflectionCam, plane, sceneCam);
+
             boolean rtb = true;
             if (!renderManager.isHandleTranslucentBucket()) {
                 renderManager.setHandleTranslucentBucket(true);
@@ -178,6 +194,7 @@ public class WaterFilter extends Filter {
             underWater = false;
         } else {
             underWater = true;
+            reflectionMapValid = false;
         }
     }
 
@@ -225,7 +242,10 @@ public class WaterFilter extends Filter {
         plane = new Plane(Vector3f.UNIT_Y, new Vector3f(0, waterHeight, 0).dot(Vector3f.UNIT_Y));
         reflectionProcessor = new ReflectionProcessor(reflectionCam, reflectionPass.getRenderFrameBuffer(), plane);
         reflectionProcessor.setReflectionClipPlane(plane);
+        reflectionProcessor.setLodBias(reflectionLodBias);
+        reflectionProcessor.setReflectionTechnique(reflectionTechnique);
         reflectionView.addProcessor(reflectionProcessor);
+        reflectionMapValid = false;
 
         normalTexture = (Texture2D) manager.loadTexture("Common/MatDefs/Water/Textures/water_normalmap.dds");
         if (foamTexture == null) {
@@ -271,6 +291,7 @@ public class WaterFilter extends Filter {
         material.setBoolean("UseFoam", useFoam);
         material.setBoolean("UseCaustics", useCaustics);
         material.setBoolean("UseRefraction", useRefraction);
+        material.setBoolean("UseScreenSpaceReflection", useScreenSpaceReflection);
         material.setFloat("ReflectionDisplace", reflectionDisplace);
         material.setFloat("FoamIntensity", foamIntensity);
         material.setFloat("UnderWaterFogDistance", underWaterFogDistance);
@@ -332,6 +353,10 @@ public class WaterFilter extends Filter {
         oc.write(causticsIntensity, "causticsIntensity", 0.5f);
 
         oc.write(useCaustics, "useCaustics", true);
+        oc.write(reflectionUpdateInterval, "reflectionUpdateInterval", 1);
+        oc.write(reflectionLodBias, "reflectionLodBias", 0f);
+        oc.write(reflectionTechnique, "reflectionTechnique", null);
+        oc.write(useScreenSpaceReflection, "useScreenSpaceReflection", false);
     }
 
     @Override
@@ -376,6 +401,10 @@ public class WaterFilter extends Filter {
         causticsIntensity = ic.readFloat("causticsIntensity", 0.5f);
 
         useCaustics = ic.readBoolean("useCaustics", true);
+        reflectionUpdateInterval = ic.readInt("reflectionUpdateInterval", 1);
+        reflectionLodBias = ic.readFloat("reflectionLodBias", 0f);
+        reflectionTechnique = ic.readString("reflectionTechnique", null);
+        useScreenSpaceReflection = ic.readBoolean("useScreenSpaceReflection", false);
 
     }
 
@@ -841,9 +870,103 @@ public class WaterFilter extends Filter {
             reflectionPass.init(renderManager.getRenderer(), reflectionMapSize, reflectionMapSize, Format.RGBA8, Format.Depth);
             reflectionCam.resize(reflectionMapSize, reflectionMapSize, true);
             reflectionProcessor.setReflectionBuffer(reflectionPass.getRenderFrameBuffer());
+            reflectionView.setOutputFrameBuffer(reflectionPass.getRenderFrameBuffer());
             material.setTexture("ReflectionMap", reflectionPass.getRenderedTexture());
+            reflectionMapValid = false;
+        }
+
+    }
+
+    /**
+     * returns the number of frames between two updates of the reflection map
+     * @return
+     */
+    public int getReflectionUpdateInterval() {
+        return reflectionUpdateInterval;
+    }
+
+    /**
+     * Sets the number of frames between two updates of the reflection map.
+     * The reflected scene is rendered once every reflectionUpdateInterval 
+     * frames, in between the last reflection map is reused. Works well with 
+     * slow cameras, or combined with screen space reflections.
+     * default is 1 : the reflection is rendered every frame
+     * @param reflectionUpdateInterval
+     */
+    public void setReflectionUpdateInterval(int reflectionUpdateInterval) {
+        if (reflectionUpdateInterval < 1) {
+            throw new IllegalArgumentException("reflectionUpdateInterval must be >= 1");
+        }
+        this.reflectionUpdateInterval = reflectionUpdateInterval;
+    }
+
+    /**
+     * returns the lod bias of the reflected scene
+     * see {@link #setReflectionLodBias(float)}
+     * @return
+     */
+    public float getReflectionLodBias() {
+        return reflectionLodBias;
+    }
+
+    /**
+     * Sets the lod bias of the reflected scene : objects that are smaller than 
+     * this ratio of the reflection view are not rendered in the reflection.
+     * see {@link ReflectionProcessor#setLodBias(float)}
+     * default is 0 : all objects are reflected
+     * @param reflectionLodBias
+     */
+    public void setReflectionLodBias(float reflectionLodBias) {
+        this.reflectionLodBias = reflectionLodBias;
+        if (reflectionProcessor != null) {
+            reflectionProcessor.setLodBias(reflectionLodBias);
+        }
+    }
+
+    /**
+     * returns the technique used to render the reflected scene
+     * @return
+     */
+    public String getReflectionTechnique() {
+        return reflectionTechnique;
+    }
+
+    /**
+     * Sets the technique used to render the opaque objects of the reflected 
+     * scene, materials that don't define it use their default technique.
+     * see {@link ReflectionProcessor#setReflectionTechnique(java.lang.String)}
+     * default is null
+     * @param reflectionTechnique
+     */
+    public void setReflectionTechnique(String reflectionTechnique) {
+        this.reflectionTechnique = reflectionTechnique;
+        if (reflectionProcessor != null) {
+            reflectionProcessor.setReflectionTechnique(reflectionTechnique);
         }
+    }
+
+    /**
+     * returns true if screen space reflections are used
+     * @return
+     */
+    public boolean isUseScreenSpaceReflection() {
+        return useScreenSpaceReflection;
+    }
 
+    /**
+     * Enables screen space reflections : the reflected ray is marched in the 
+     * scene depth buffer and the scene color is used where it hits. Rays that 
+     * leave the screen fall back to the reflection map, that can then be 
+     * small and rarely updated (see {@link #setReflectionMapSize(int)} and 
+     * {@link #setReflectionUpdateInterval(int)}).
+     * default is false
+     * @param useScreenSpaceReflection
+     */
+    public void setUseScreenSpaceReflection(boolean useScreenSpaceReflection) {
+        this.useScreenSpaceReflection = useScreenSpaceReflection;
+        if (material != null) {
+            material.setBoolean("UseScreenSpaceReflection", useScreenSpaceReflection);
+        }
     }
 
     /**
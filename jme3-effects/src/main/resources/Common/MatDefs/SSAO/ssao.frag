@@ -13,6 +13,7 @@ uniform float m_Bias;
 uniform bool m_UseOnlyAo;
 uniform bool m_UseAo;
 uniform vec2[4] m_Samples;
+uniform vec2 m_RandomOffset;
 
 varying vec2 texCoord;
 
@@ -45,7 +46,7 @@ vec3 getNormal(in vec2 uv){
 }
 
 vec2 getRandom(in vec2 uv){  
-   vec4 rand=texture2D(m_RandomMap,g_Resolution * uv / 128.0 * 3.0)*2.0 -1.0;
+   vec4 rand=texture2D(m_RandomMap, g_Resolution * uv / 128.0 * 3.0 + m_RandomOffset)*2.0 -1.0;
    return normalize(rand.xy);
 }
 
@@ -91,7 +92,11 @@ void main(){
    float rad =m_SampleRadius / position.z;
 
 
-   int iterations = 4;
+   #ifdef ITERATIONS
+        int iterations = ITERATIONS;
+   #else
+        int iterations = 4;
+   #endif
    for (int j = 0; j < iterations; ++j){
       vec2 coord1 = reflection(vec2(m_Samples[j]), vec2(rand)) * vec2(rad,rad);
       vec2 coord2 = vec2(coord1.x* 0.707 - coord1.y* 0.707, coord1.x* 0.707 + coord1.y* 0.707) ;
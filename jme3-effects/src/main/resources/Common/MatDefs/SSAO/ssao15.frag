@@ -14,6 +14,7 @@ uniform float m_Intensity;
 uniform float m_Scale;
 uniform float m_Bias;
 uniform vec2[4] m_Samples;
+uniform vec2 m_RandomOffset;
 
 in vec2 texCoord;
 
@@ -51,7 +52,7 @@ vec3 approximateNormal(in vec3 pos,in vec2 texCoord){
 
 vec2 getRandom(in vec2 uv){
    //float rand=(fract(uv.x*(g_Resolution.x/2.0))*0.25)+(fract(uv.y*(g_Resolution.y/2.0))*0.5);
-   vec4 rand=texture2D(m_RandomMap, g_Resolution * uv / 128.0 * 3.0)*2.0 -1.0;
+   vec4 rand=texture2D(m_RandomMap, g_Resolution * uv / 128.0 * 3.0 + m_RandomOffset)*2.0 -1.0;
 
    return normalize(rand.xy);
 }
@@ -97,7 +98,11 @@ void main(){
    float rad =m_SampleRadius / position.z;
 
 
-   int iterations = 4;
+   #ifdef ITERATIONS
+        int iterations = ITERATIONS;
+   #else
+        int iterations = 4;
+   #endif
    for (int j = 0; j < iterations; ++j){
       vec2 coord1 = reflection(vec2(m_Samples[j]), rand) * vec2(rad,rad);
       vec2 coord2 = vec2(coord1.x* 0.707 - coord1.y* 0.707, coord1.x* 0.707 + coord1.y* 0.707) ;
@@ -0,0 +1,49 @@
+#import "Common/ShaderLib/MultiSample.glsllib"
+
+uniform DEPTHTEXTURE m_DepthTexture;
+uniform sampler2D m_SSAOMap;
+uniform sampler2D m_History;
+uniform mat4 m_ViewProjectionMatrixInverse;
+uniform mat4 m_PrevViewProjectionMatrix;
+uniform float m_BlendFactor;
+uniform vec2 g_ResolutionInverse;
+
+in vec2 texCoord;
+out vec4 fragColor;
+
+vec2 reproject(in vec2 uv, in float depthv){
+    //world position from the current frame depth
+    vec4 worldPos = m_ViewProjectionMatrixInverse * vec4(vec3(uv, depthv) * 2.0 - 1.0, 1.0);
+    worldPos /= worldPos.w;
+    //position of the same point on the previous frame
+    vec4 prevPos = m_PrevViewProjectionMatrix * worldPos;
+    return prevPos.xy / prevPos.w * 0.5 + 0.5;
+}
+
+void main(){
+    float ao = texture2D(m_SSAOMap, texCoord).r;
+    float depthv = getDepth(m_DepthTexture, texCoord).r;
+    if(depthv == 1.0 || m_BlendFactor >= 1.0){
+        fragColor = vec4(ao, ao, ao, 1.0);
+        return;
+    }
+
+    vec2 prevCoord = reproject(texCoord, depthv);
+    if(prevCoord.x < 0.0 || prevCoord.x > 1.0 || prevCoord.y < 0.0 || prevCoord.y > 1.0){
+        //disoccluded from the screen borders, no history
+        fragColor = vec4(ao, ao, ao, 1.0);
+        return;
+    }
+
+    //clamping the history to the current neighborhood to reject stale values
+    float ao1 = texture2D(m_SSAOMap, texCoord + vec2(g_ResolutionInverse.x, 0.0)).r;
+    float ao2 = texture2D(m_SSAOMap, texCoord - vec2(g_ResolutionInverse.x, 0.0)).r;
+    float ao3 = texture2D(m_SSAOMap, texCoord + vec2(0.0, g_ResolutionInverse.y)).r;
+    float ao4 = texture2D(m_SSAOMap, texCoord - vec2(0.0, g_ResolutionInverse.y)).r;
+    float minAo = min(ao, min(min(ao1, ao2), min(ao3, ao4)));
+    float maxAo = max(ao, max(max(ao1, ao2), max(ao3, ao4)));
+    float history = clamp(texture2D(m_History, prevCoord).r, minAo, maxAo);
+
+    float result = mix(history, ao, m_BlendFactor);
+    fragColor = vec4(result, result, result, 1.0);
+}
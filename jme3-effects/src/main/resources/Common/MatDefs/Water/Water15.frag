@@ -108,6 +108,39 @@ vec3 getPosition(in float depth, in vec2 uv){
     return pos.xyz / pos.w;
 }
 
+#ifdef ENABLE_SSR
+uniform mat4 g_ViewProjectionMatrix;
+const int SSR_STEPS = 24;
+
+// Function marching the reflected ray in the scene depth buffer.
+// Returns the fallback color if the ray leaves the screen without a hit.
+vec3 screenSpaceReflection(in vec3 origin, in vec3 normal, in vec3 eyeVecNorm, in vec3 fallback, int sampleNum){
+    vec3 dir = reflect(-eyeVecNorm, normal);
+    float stepLength = length(m_CameraPosition - origin) * 0.02;
+    vec3 pos = origin;
+    for (int i = 0; i < SSR_STEPS; i++){
+        pos += dir * stepLength;
+        stepLength *= 1.15;
+        vec4 clip = g_ViewProjectionMatrix * vec4(pos, 1.0);
+        vec3 ndc = clip.xyz / clip.w * 0.5 + 0.5;
+        if(ndc.x < 0.0 || ndc.x > 1.0 || ndc.y < 0.0 || ndc.y > 1.0 || ndc.z > 1.0){
+            return fallback;
+        }
+        float sceneDepth = fetchTextureSample(m_DepthTexture, ndc.xy, sampleNum).r;
+        if(ndc.z > sceneDepth){
+            vec3 hitPos = getPosition(sceneDepth, ndc.xy);
+            //rejecting the hits behind thin objects
+            if(distance(hitPos, pos) < stepLength * 2.0){
+                //fading out near the screen borders
+                vec2 edge = smoothstep(0.0, 0.1, ndc.xy) * (1.0 - smoothstep(0.9, 1.0, ndc.xy));
+                return mix(fallback, fetchTextureSample(m_Texture, ndc.xy, sampleNum).rgb, edge.x * edge.y);
+            }
+        }
+    }
+    return fallback;
+}
+#endif
+
 // Function calculating fresnel term.
 // - normal - normalized normal vector
 // - eyeVec - normalized eye vector
@@ -370,6 +403,9 @@ vec4 main_multiSample(int sampleNum){
     texCoordProj.y = 1.0 - texCoordProj.y;
 
     vec3 reflection = texture(m_ReflectionMap, texCoordProj.xy).rgb;
+    #ifdef ENABLE_SSR
+        reflection = screenSpaceReflection(surfacePoint, normal, eyeVecNorm, reflection, sampleNum);
+    #endif
 
     float fresnel = fresnelTerm(normal, eyeVecNorm);
 